@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.enterprise.client.cdi.api;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Identifies an annotated event type as a state update for which only the latest value matters. When such an event
+ * is fired on the server, it is not sent to the observing clients right away. Instead, the server waits for the
+ * configured {@link #window()} and then delivers only the most recently fired event. All events fired within the
+ * window are dropped before they are marshalled.
+ * <p>
+ * Events are coalesced separately for each client session and qualifier combination. If {@link #key()} is set, events
+ * are further separated by the value of the named property of the event (e.g. the id of the task a progress event
+ * refers to), so that updates for different keys do not supersede one another.
+ * <p>
+ * The annotated class must also be annotated with {@link org.jboss.errai.common.client.api.annotations.Portable}. Like
+ * {@link Conversational}, this annotation is not inherited by subclasses.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+@Target({ElementType.TYPE})
+@Retention(RUNTIME)
+@Documented
+public @interface Coalesced {
+
+  /**
+   * The time in milliseconds during which subsequent events supersede a pending event.
+   */
+  long window() default 100;
+
+  /**
+   * The name of a property of the event type used to partition the events being coalesced. Defaults to no partition
+   * (all events of the annotated type routed to the same session supersede each other).
+   */
+  String key() default "";
+}
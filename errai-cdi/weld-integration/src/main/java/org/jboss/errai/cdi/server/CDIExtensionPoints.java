@@ -63,9 +63,11 @@ import org.jboss.errai.bus.server.util.ServiceMethodParser;
 import org.jboss.errai.bus.server.util.ServiceParser;
 import org.jboss.errai.bus.server.util.ServiceTypeParser;
 import org.jboss.errai.cdi.server.events.AnyEventObserver;
+import org.jboss.errai.cdi.server.events.AsyncObserverExecutor;
 import org.jboss.errai.cdi.server.events.ConversationalEvent;
 import org.jboss.errai.cdi.server.events.EventDispatcher;
 import org.jboss.errai.cdi.server.events.EventRoutingTable;
+import org.jboss.errai.cdi.server.events.ObserverMethodCache;
 import org.jboss.errai.cdi.server.events.ShutdownEventObserver;
 import org.jboss.errai.codegen.util.ProxyUtil;
 import org.jboss.errai.common.client.api.Assert;
@@ -106,6 +108,9 @@ public class CDIExtensionPoints implements Extension {
   private static final Set<String> vetoClasses;
 
   private static final String ERRAI_CDI_STANDALONE = "errai.cdi.standalone";
+  private static final String ERRAI_CDI_ASYNC_OBSERVERS = "errai.cdi.async_observers";
+  private static final String ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE = "errai.cdi.async_observers.pool_size";
+  private static final String ERRAI_CDI_ASYNC_OBSERVERS_QUEUE_SIZE = "errai.cdi.async_observers.queue_size";
 
   static {
     final Set<String> veto = new HashSet<String>();
@@ -354,22 +359,81 @@ public class CDIExtensionPoints implements Extension {
     // Support to inject the request dispatcher.
     abd.addBean(new RequestDispatcherMetaData(bm, service.getDispatcher()));
 
+    // initialize the CDI event bridge to the client
+    final ObserverMethodCache observerMethodCache = new ObserverMethodCache(bm, eventQualifiers);
+    final EventDispatcher eventDispatcher = new EventDispatcher(bm, eventRoutingTable, bus, observableEvents,
+            observerMethodCache, createAsyncObserverExecutor());
+
     // Register observers
-    abd.addObserverMethod(new ShutdownEventObserver(managedTypes, bus));
+    abd.addObserverMethod(new ShutdownEventObserver(managedTypes, bus, eventDispatcher));
 
     // subscribe service and rpc endpoints
     subscribeServices(bm, bus);
 
-    // initialize the CDI event bridge to the client
-    final EventDispatcher eventDispatcher = 
-            new EventDispatcher(bm, eventRoutingTable, bus, observableEvents, eventQualifiers);
-    
     AnyEventObserver.init(eventDispatcher);
 
     // subscribe event dispatcher
     bus.subscribe(CDI.SERVER_DISPATCHER_SUBJECT, eventDispatcher);
   }
 
+  /**
+   * Creates the executor for notifying server-side observers of client-originated events, if asynchronous delivery
+   * was enabled using the {@value #ERRAI_CDI_ASYNC_OBSERVERS} property in ErraiService.properties.
+   *
+   * @return the executor, or null if observers should be notified synchronously on the bus worker thread.
+   */
+  private AsyncObserverExecutor createAsyncObserverExecutor() {
+    final ResourceBundle erraiServiceConfig;
+    try {
+      erraiServiceConfig = getBundle("ErraiService");
+    } catch (MissingResourceException e) {
+      return null;
+    }
+
+    if (!getBooleanProperty(erraiServiceConfig, ERRAI_CDI_ASYNC_OBSERVERS)) {
+      return null;
+    }
+
+    final int poolSize = getPositiveIntProperty(erraiServiceConfig, ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE,
+            Runtime.getRuntime().availableProcessors());
+    final int queueSize = getPositiveIntProperty(erraiServiceConfig, ERRAI_CDI_ASYNC_OBSERVERS_QUEUE_SIZE, 1024);
+
+    log.info("errai cdi delivering client events to observers asynchronously (pool size: " + poolSize
+            + ", queue size: " + queueSize + ")");
+    return new AsyncObserverExecutor(poolSize, queueSize);
+  }
+
+  /**
+   * @return true if the given property is set to "true", ignoring case and surrounding whitespace.
+   */
+  static boolean getBooleanProperty(final ResourceBundle config, final String key) {
+    return config.containsKey(key) && Boolean.parseBoolean(config.getString(key).trim());
+  }
+
+  /**
+   * @return the value of the given property, or the default value if the property is missing or not a positive
+   *         integer.
+   */
+  static int getPositiveIntProperty(final ResourceBundle config, final String key, final int defaultValue) {
+    if (!config.containsKey(key)) {
+      return defaultValue;
+    }
+
+    final String value = config.getString(key).trim();
+    try {
+      final int parsed = Integer.parseInt(value);
+      if (parsed > 0) {
+        return parsed;
+      }
+    }
+    catch (NumberFormatException e) {
+      // fall through to the warning below
+    }
+    log.warn("ignoring invalid value '" + value + "' of " + key + " (expected a positive integer), using "
+            + defaultValue);
+    return defaultValue;
+  }
+
   /**
    * Registers beans (type and method services) as they become available from the bean manager.
    */
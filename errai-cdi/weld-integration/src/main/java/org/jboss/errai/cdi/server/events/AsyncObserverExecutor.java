@@ -0,0 +1,321 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.errai.cdi.server.events;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.inject.spi.ObserverMethod;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Notifies server-side observers of client-originated events on a dedicated, bounded thread pool instead of the bus
+ * worker thread that received the event. This way, a slow observer cannot starve the bus workers.
+ * <p>
+ * Events originating from the same session are delivered in the order they were received: each session has its own
+ * queue that is drained by at most one pool thread at a time. The {@link EventConversationContext} is activated on the
+ * pool thread for each event. If the pool is saturated, the calling thread delivers the events of its session one at a
+ * time until a pool thread becomes available, so it never takes over the whole backlog of the session.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class AsyncObserverExecutor {
+  private static final Logger log = LoggerFactory.getLogger(AsyncObserverExecutor.class);
+
+  private final ThreadPoolExecutor executor;
+  private final ConcurrentMap<String, SessionQueue> sessionQueues = new ConcurrentHashMap<String, SessionQueue>();
+
+  private final AtomicLong deliveredCount = new AtomicLong();
+  private final AtomicLong totalQueueingDelayNanos = new AtomicLong();
+  private final AtomicLong maxQueueingDelayNanos = new AtomicLong();
+  private final AtomicLong callerDeliveredCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  public AsyncObserverExecutor(final int poolSize, final int queueSize) {
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Errai CDI Observer " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            }, new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Schedules the notification of the given observers.
+   *
+   * @param event
+   *          the event fired by the client.
+   * @param session
+   *          the session of the client that fired the event.
+   * @param observers
+   *          the observers to notify, in order.
+   */
+  public void notifyObservers(final Object event, final QueueSession session,
+          final List<ObserverMethod<? super Object>> observers) {
+    if (observers.isEmpty()) {
+      return;
+    }
+
+    final String sessionId = session.getSessionId();
+    final Delivery delivery = new Delivery(event, session, observers);
+
+    while (true) {
+      SessionQueue queue = sessionQueues.get(sessionId);
+      if (queue == null) {
+        final SessionQueue newQueue = new SessionQueue(sessionId);
+        queue = sessionQueues.putIfAbsent(sessionId, newQueue);
+        if (queue == null) {
+          queue = newQueue;
+        }
+      }
+
+      if (queue.offer(delivery)) {
+        return;
+      }
+      // the queue was retired concurrently, try again with a fresh one
+    }
+  }
+
+  /**
+   * @return the number of events delivered to observers so far.
+   */
+  public long getDeliveredCount() {
+    return deliveredCount.get();
+  }
+
+  /**
+   * @return the average time in milliseconds that events spent queued before their observers were notified.
+   */
+  public double getAverageQueueingDelayMillis() {
+    final long count = deliveredCount.get();
+    return count == 0 ? 0 : (totalQueueingDelayNanos.get() / (double) count) / 1000000;
+  }
+
+  /**
+   * @return the longest time in milliseconds that an event spent queued before its observers were notified.
+   */
+  public double getMaxQueueingDelayMillis() {
+    return maxQueueingDelayNanos.get() / 1000000d;
+  }
+
+  /**
+   * @return the number of events delivered on the calling thread because the pool was saturated.
+   */
+  public long getCallerDeliveredCount() {
+    return callerDeliveredCount.get();
+  }
+
+  /**
+   * @return the number of events that were never delivered because this executor was stopped.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @return the number of tasks currently waiting for a pool thread.
+   */
+  public int getQueuedTaskCount() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Stops the pool. Events that are still queued at this point, or that arrive afterwards, are not delivered; their
+   * number is logged and available from {@link #getDroppedCount()}.
+   */
+  public void stop() {
+    executor.shutdownNow();
+
+    long dropped = 0;
+    for (final SessionQueue queue : sessionQueues.values()) {
+      dropped += queue.discard();
+    }
+    sessionQueues.clear();
+
+    if (dropped > 0) {
+      droppedCount.addAndGet(dropped);
+      log.warn("stopped asynchronous observer delivery with " + dropped + " undelivered client event(s)");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncObserverExecutor [delivered=" + getDeliveredCount() + ", callerDelivered="
+            + getCallerDeliveredCount() + ", dropped=" + getDroppedCount() + ", avgQueueingDelayMs="
+            + getAverageQueueingDelayMillis() + ", maxQueueingDelayMs=" + getMaxQueueingDelayMillis() + "]";
+  }
+
+  private void recordDelay(final long delayNanos) {
+    deliveredCount.incrementAndGet();
+    totalQueueingDelayNanos.addAndGet(delayNanos);
+
+    long max;
+    while ((max = maxQueueingDelayNanos.get()) < delayNanos) {
+      if (maxQueueingDelayNanos.compareAndSet(max, delayNanos)) {
+        break;
+      }
+    }
+  }
+
+  private static class Delivery {
+    private final Object event;
+    private final QueueSession session;
+    private final List<ObserverMethod<? super Object>> observers;
+    private final long enqueuedAt = System.nanoTime();
+
+    private Delivery(final Object event, final QueueSession session,
+            final List<ObserverMethod<? super Object>> observers) {
+      this.event = event;
+      this.session = session;
+      this.observers = observers;
+    }
+  }
+
+  private void deliver(final Delivery delivery) {
+    recordDelay(System.nanoTime() - delivery.enqueuedAt);
+
+    EventConversationContext.activate(delivery.event, delivery.session);
+    try {
+      for (final ObserverMethod<? super Object> observer : delivery.observers) {
+        observer.notify(delivery.event);
+      }
+    }
+    catch (Throwable t) {
+      log.error("Failed to notify observers of client event: " + delivery.event, t);
+    }
+    finally {
+      EventConversationContext.deactivate();
+    }
+  }
+
+  /**
+   * The pending deliveries of one session. At most one thread drains the queue at any time, which preserves the order
+   * of events per session.
+   */
+  private class SessionQueue implements Runnable {
+    private final String sessionId;
+    private final Queue<Delivery> deliveries = new ConcurrentLinkedQueue<Delivery>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean retired;
+
+    private SessionQueue(final String sessionId) {
+      this.sessionId = sessionId;
+    }
+
+    private boolean offer(final Delivery delivery) {
+      synchronized (this) {
+        if (retired) {
+          return false;
+        }
+        deliveries.add(delivery);
+        if (!scheduled.compareAndSet(false, true)) {
+          // a pool thread or a calling thread is already draining this queue
+          return true;
+        }
+      }
+      schedule();
+      return true;
+    }
+
+    /**
+     * Hands this queue to a pool thread. While the pool is saturated, the calling thread delivers the oldest pending
+     * event itself and tries again, so it does no more work than necessary to make progress.
+     */
+    private void schedule() {
+      while (true) {
+        try {
+          executor.execute(this);
+          return;
+        }
+        catch (RejectedExecutionException e) {
+          if (executor.isShutdown()) {
+            droppedCount.addAndGet(discard());
+            return;
+          }
+        }
+
+        final Delivery delivery = deliveries.poll();
+        if (delivery != null) {
+          callerDeliveredCount.incrementAndGet();
+          deliver(delivery);
+        }
+
+        synchronized (this) {
+          if (deliveries.isEmpty()) {
+            scheduled.set(false);
+            return;
+          }
+        }
+      }
+    }
+
+    /**
+     * Retires this queue and removes all pending deliveries from it.
+     *
+     * @return the number of deliveries removed.
+     */
+    private int discard() {
+      synchronized (this) {
+        retired = true;
+        sessionQueues.remove(sessionId, this);
+        int count = 0;
+        while (deliveries.poll() != null) {
+          count++;
+        }
+        return count;
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Delivery delivery;
+        while ((delivery = deliveries.poll()) != null) {
+          deliver(delivery);
+        }
+
+        synchronized (this) {
+          if (deliveries.isEmpty()) {
+            // nothing left to do for this session: drop the queue so idle sessions don't accumulate
+            retired = true;
+            sessionQueues.remove(sessionId, this);
+            return;
+          }
+          // a delivery arrived after we stopped polling: keep draining on this thread
+        }
+      }
+    }
+  }
+}
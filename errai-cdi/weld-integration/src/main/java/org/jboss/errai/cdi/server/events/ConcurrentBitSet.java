@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.errai.cdi.server.events;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bit set that can be read without locking while it is being modified. Modifications are serialized. It is used
+ * by the {@link EventRoutingTable} to record which sessions (identified by their interned index) listen to a route:
+ * routes are read on every event fired but only change when clients subscribe or go away.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+class ConcurrentBitSet {
+  private volatile AtomicLongArray words = new AtomicLongArray(1);
+
+  public synchronized void set(final int index) {
+    final int wordIndex = index >>> 6;
+    AtomicLongArray w = words;
+    if (wordIndex >= w.length()) {
+      final AtomicLongArray grown = new AtomicLongArray(Math.max(wordIndex + 1, w.length() * 2));
+      for (int i = 0; i < w.length(); i++) {
+        grown.set(i, w.get(i));
+      }
+      words = w = grown;
+    }
+    w.set(wordIndex, w.get(wordIndex) | (1L << index));
+  }
+
+  /**
+   * Clears the given bit. Shrinks the set once no more than a quarter of its words are in use, so a route doesn't keep
+   * the size it had at its peak.
+   */
+  public synchronized void clear(final int index) {
+    final int wordIndex = index >>> 6;
+    final AtomicLongArray w = words;
+    if (wordIndex < w.length()) {
+      w.set(wordIndex, w.get(wordIndex) & ~(1L << index));
+
+      int used = w.length();
+      while (used > 0 && w.get(used - 1) == 0) {
+        used--;
+      }
+      if (used * 4 <= w.length() && w.length() > 1) {
+        final AtomicLongArray shrunk = new AtomicLongArray(Math.max(1, used * 2));
+        for (int i = 0; i < used; i++) {
+          shrunk.set(i, w.get(i));
+        }
+        words = shrunk;
+      }
+    }
+  }
+
+  /**
+   * @return the number of 64-bit words currently allocated.
+   */
+  int capacity() {
+    return words.length();
+  }
+
+  public boolean get(final int index) {
+    final int wordIndex = index >>> 6;
+    final AtomicLongArray w = words;
+    return wordIndex < w.length() && (w.get(wordIndex) & (1L << index)) != 0;
+  }
+
+  /**
+   * Returns the index of the first set bit at or after {@code fromIndex}, or -1 if there is none.
+   */
+  public int nextSetBit(final int fromIndex) {
+    final AtomicLongArray w = words;
+    int wordIndex = fromIndex >>> 6;
+    if (wordIndex >= w.length()) {
+      return -1;
+    }
+
+    long word = w.get(wordIndex) & (-1L << fromIndex);
+    while (true) {
+      if (word != 0) {
+        return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+      }
+      if (++wordIndex == w.length()) {
+        return -1;
+      }
+      word = w.get(wordIndex);
+    }
+  }
+
+  public int cardinality() {
+    final AtomicLongArray w = words;
+    int count = 0;
+    for (int i = 0; i < w.length(); i++) {
+      count += Long.bitCount(w.get(i));
+    }
+    return count;
+  }
+
+  public boolean isEmpty() {
+    final AtomicLongArray w = words;
+    for (int i = 0; i < w.length(); i++) {
+      if (w.get(i) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Sets all bits that are set in the given bit set.
+   */
+  public synchronized void or(final ConcurrentBitSet other) {
+    final AtomicLongArray o = other.words;
+    for (int i = o.length() - 1; i >= 0; i--) {
+      final long word = o.get(i);
+      if (word != 0) {
+        final int highest = (i << 6) + 63 - Long.numberOfLeadingZeros(word);
+        // make sure there is room for the highest bit before merging the word
+        set(highest);
+        final AtomicLongArray w = words;
+        w.set(i, w.get(i) | word);
+      }
+    }
+  }
+}
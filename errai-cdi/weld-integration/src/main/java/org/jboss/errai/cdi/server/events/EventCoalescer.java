@@ -0,0 +1,280 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.errai.cdi.server.events;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.enterprise.client.cdi.CDIProtocol;
+import org.jboss.errai.enterprise.client.cdi.api.Coalesced;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds back client-bound events whose type is annotated with {@link Coalesced}, so that only the latest event fired
+ * within the configured window is sent to each session. Superseded events are dropped before they reach the bus and
+ * are therefore never marshalled.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class EventCoalescer {
+  private static final Logger log = LoggerFactory.getLogger(EventCoalescer.class);
+
+  private final MessageBus messageBus;
+
+  /**
+   * Created by the first coalesced event, so that deployments without {@link Coalesced} event types don't start a
+   * thread. Guarded by this.
+   */
+  private ScheduledExecutorService scheduler;
+  private boolean stopped;
+
+  private final Map<PendingKey, Map<String, Object>> pending = new ConcurrentHashMap<PendingKey, Map<String, Object>>();
+  private final Map<Class<?>, KeyAccessor> keyAccessors = new ConcurrentHashMap<Class<?>, KeyAccessor>();
+
+  private final AtomicLong sentCount = new AtomicLong();
+  private final AtomicLong droppedCount = new AtomicLong();
+
+  public EventCoalescer(final MessageBus messageBus) {
+    this.messageBus = messageBus;
+  }
+
+  /**
+   * @return the scheduler for the pending events, or null if the coalescer was stopped.
+   */
+  private synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null && !stopped) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+          final Thread thread = new Thread(r, "Errai CDI Event Coalescer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return scheduler;
+  }
+
+  /**
+   * @return true if events of the given type must be passed through {@link #send(Object, String, Map)}.
+   */
+  public static boolean isCoalesced(final Class<?> eventType) {
+    return eventType.isAnnotationPresent(Coalesced.class);
+  }
+
+  /**
+   * Schedules the message for delivery at the end of the coalescing window, replacing any message for the same
+   * session, qualifiers and key that is still pending.
+   *
+   * @param event
+   *          the event instance. Its type must be annotated with {@link Coalesced}.
+   * @param sessionId
+   *          the id of the session the message is routed to.
+   * @param messageParts
+   *          the parts of the message to send, including the session id.
+   */
+  public void send(final Object event, final String sessionId, final Map<String, Object> messageParts) {
+    final Class<?> eventType = event.getClass();
+    final Coalesced coalesced = eventType.getAnnotation(Coalesced.class);
+
+    final PendingKey key = new PendingKey(sessionId, eventType, messageParts, getKeyAccessor(eventType, coalesced)
+            .get(event));
+
+    final ScheduledExecutorService scheduler = getScheduler();
+    if (scheduler == null) {
+      log.debug("dropping event fired after the coalescer was stopped: " + event);
+      return;
+    }
+
+    if (pending.put(key, messageParts) != null) {
+      droppedCount.incrementAndGet();
+      return;
+    }
+
+    try {
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          final Map<String, Object> latest = pending.remove(key);
+          if (latest != null) {
+            sentCount.incrementAndGet();
+            messageBus.send(CommandMessage.createWithParts(latest));
+          }
+        }
+      }, coalesced.window(), TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e) {
+      // stopped concurrently
+      pending.remove(key);
+    }
+  }
+
+  private KeyAccessor getKeyAccessor(final Class<?> eventType, final Coalesced coalesced) {
+    KeyAccessor accessor = keyAccessors.get(eventType);
+    if (accessor == null) {
+      accessor = KeyAccessor.create(eventType, coalesced.key());
+      keyAccessors.put(eventType, accessor);
+    }
+    return accessor;
+  }
+
+  /**
+   * @return the number of coalesced events that were sent to clients.
+   */
+  public long getSentCount() {
+    return sentCount.get();
+  }
+
+  /**
+   * @return the number of events that were superseded by a later event and never sent.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * Stops the coalescer. Pending events are discarded.
+   */
+  public void stop() {
+    synchronized (this) {
+      stopped = true;
+      if (scheduler != null) {
+        scheduler.shutdownNow();
+      }
+    }
+    pending.clear();
+  }
+
+  /**
+   * @return true if the coalescer has started its scheduler thread.
+   */
+  public synchronized boolean isStarted() {
+    return scheduler != null;
+  }
+
+  private static abstract class KeyAccessor {
+    private static final KeyAccessor NONE = new KeyAccessor() {
+      @Override
+      Object get(final Object event) {
+        return null;
+      }
+    };
+
+    abstract Object get(Object event);
+
+    static KeyAccessor create(final Class<?> eventType, final String property) {
+      if (property.isEmpty()) {
+        return NONE;
+      }
+
+      final String capitalized = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+      for (final String methodName : new String[] { "get" + capitalized, "is" + capitalized }) {
+        try {
+          final Method method = eventType.getMethod(methodName);
+          method.setAccessible(true);
+          return new KeyAccessor() {
+            @Override
+            Object get(final Object event) {
+              try {
+                return method.invoke(event);
+              }
+              catch (Exception e) {
+                throw new RuntimeException("could not read coalescing key of event: " + event, e);
+              }
+            }
+          };
+        }
+        catch (NoSuchMethodException e) {
+          // try next
+        }
+      }
+
+      Class<?> type = eventType;
+      while (type != null) {
+        try {
+          final Field field = type.getDeclaredField(property);
+          field.setAccessible(true);
+          return new KeyAccessor() {
+            @Override
+            Object get(final Object event) {
+              try {
+                return field.get(event);
+              }
+              catch (IllegalAccessException e) {
+                throw new RuntimeException("could not read coalescing key of event: " + event, e);
+              }
+            }
+          };
+        }
+        catch (NoSuchFieldException e) {
+          type = type.getSuperclass();
+        }
+      }
+
+      log.warn("coalescing key property '" + property + "' not found on " + eventType.getName()
+              + ". Coalescing all events of this type.");
+      return NONE;
+    }
+  }
+
+  private static class PendingKey {
+    private final String sessionId;
+    private final Class<?> eventType;
+    private final Object qualifiers;
+    private final Object key;
+
+    private PendingKey(final String sessionId, final Class<?> eventType, final Map<String, Object> messageParts,
+            final Object key) {
+      this.sessionId = sessionId;
+      this.eventType = eventType;
+      this.qualifiers = messageParts.get(CDIProtocol.Qualifiers.name());
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof PendingKey))
+        return false;
+
+      final PendingKey other = (PendingKey) obj;
+      return sessionId.equals(other.sessionId) && eventType.equals(other.eventType)
+              && (qualifiers == null ? other.qualifiers == null : qualifiers.equals(other.qualifiers))
+              && (key == null ? other.key == null : key.equals(other.key));
+    }
+
+    @Override
+    public int hashCode() {
+      int result = sessionId.hashCode();
+      result = 31 * result + eventType.hashCode();
+      result = 31 * result + (qualifiers == null ? 0 : qualifiers.hashCode());
+      result = 31 * result + (key == null ? 0 : key.hashCode());
+      return result;
+    }
+  }
+}
@@ -18,7 +18,6 @@ package org.jboss.errai.cdi.server.events;
 import static org.jboss.errai.enterprise.client.cdi.api.CDI.getSubjectNameByType;
 
 import java.lang.annotation.Annotation;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -63,19 +62,66 @@ public class EventDispatcher implements MessageCallback {
   private final EventRoutingTable eventRoutingTable;
   private final MessageBus messagebus;
   private final Set<String> observedEvents;
-  private final Map<String, Annotation> allQualifiers;
+  private final ObserverMethodCache observerMethodCache;
+  private final EventCoalescer eventCoalescer;
+  private final AsyncObserverExecutor asyncObserverExecutor;
 
   private final Set<ClientObserverMetadata> clientObservers = Collections
           .newSetFromMap(new ConcurrentHashMap<ClientObserverMetadata, Boolean>());
 
   public EventDispatcher(final BeanManager beanManager, final EventRoutingTable eventRoutingTable,
           final MessageBus messageBus, final Set<String> observedEvents, final Map<String, Annotation> qualifiers) {
+    this(beanManager, eventRoutingTable, messageBus, observedEvents, new ObserverMethodCache(beanManager, qualifiers));
+  }
+
+  public EventDispatcher(final BeanManager beanManager, final EventRoutingTable eventRoutingTable,
+          final MessageBus messageBus, final Set<String> observedEvents, final ObserverMethodCache observerMethodCache) {
+    this(beanManager, eventRoutingTable, messageBus, observedEvents, observerMethodCache, null);
+  }
+
+  /**
+   * @param asyncObserverExecutor
+   *          the executor used to notify server-side observers of client-originated events. If null, observers are
+   *          notified synchronously on the bus worker thread.
+   */
+  public EventDispatcher(final BeanManager beanManager, final EventRoutingTable eventRoutingTable,
+          final MessageBus messageBus, final Set<String> observedEvents, final ObserverMethodCache observerMethodCache,
+          final AsyncObserverExecutor asyncObserverExecutor) {
 
     this.beanManager = beanManager;
     this.eventRoutingTable = eventRoutingTable;
     this.messagebus = messageBus;
     this.observedEvents = observedEvents;
-    this.allQualifiers = qualifiers;
+    this.observerMethodCache = observerMethodCache;
+    this.eventCoalescer = new EventCoalescer(messageBus);
+    this.asyncObserverExecutor = asyncObserverExecutor;
+  }
+
+  /**
+   * @return the cache of server-side observers used to deliver events fired by clients. Exposes hit and miss counters.
+   */
+  public ObserverMethodCache getObserverMethodCache() {
+    return observerMethodCache;
+  }
+
+  /**
+   * @return the coalescer holding back client-bound events annotated with
+   *         {@link org.jboss.errai.enterprise.client.cdi.api.Coalesced}.
+   */
+  public EventCoalescer getEventCoalescer() {
+    return eventCoalescer;
+  }
+
+  /**
+   * Releases the resources held by this dispatcher. Called when the deployment is shut down.
+   */
+  public void stop() {
+    if (asyncObserverExecutor != null) {
+      log.info("stopping asynchronous observer delivery: " + asyncObserverExecutor);
+      asyncObserverExecutor.stop();
+    }
+    eventCoalescer.stop();
+    observerMethodCache.invalidate();
   }
 
   @Override
@@ -114,27 +160,19 @@ public class EventDispatcher implements MessageCallback {
         }
 
         final Object o = message.get(Object.class, CDIProtocol.BeanReference);
+        final Set<String> qualifierNames = message.get(Set.class, CDIProtocol.Qualifiers);
+        final List<ObserverMethod<? super Object>> observers = observerMethodCache.getObserverMethods(o, qualifierNames);
+
+        if (asyncObserverExecutor != null) {
+          asyncObserverExecutor.notifyObservers(o, CDIServerUtil.getSession(message), observers);
+          break;
+        }
+
         EventConversationContext.activate(o, CDIServerUtil.getSession(message));
         try {
-          final Set<String> qualifierNames = message.get(Set.class, CDIProtocol.Qualifiers);
-          List<Annotation> qualifiers = new ArrayList<Annotation>();
-
-          if (qualifierNames != null) {
-            for (final String qualifierName : qualifierNames) {
-              final Annotation qualifier = allQualifiers.get(qualifierName);
-              if (qualifier != null) {
-                qualifiers.add(qualifier);
-              }
-            }
-          }
           // Fire event to all local observers
-          Annotation[] qualArray = qualifiers.toArray(new Annotation[qualifiers.size()]);
-          Set<ObserverMethod<? super Object>> observerMethods = beanManager.resolveObserverMethods(o, qualArray);
-          for (ObserverMethod<? super Object> observer : observerMethods) {
-            // Don't mirror the event back to the clients
-            if (!(AnyEventObserver.class.equals(observer.getBeanClass()))) {
-              observer.notify(o);
-            }
+          for (final ObserverMethod<? super Object> observer : observers) {
+            observer.notify(o);
           }
         } finally {
           EventConversationContext.deactivate();
@@ -209,13 +247,24 @@ public class EventDispatcher implements MessageCallback {
       messageParts.put(CDIProtocol.Qualifiers.name(), qualifierTypes);
     }
 
+    final boolean coalesced = EventCoalescer.isCoalesced(eventType);
     if (sessionId != null) {
       messageParts.put(MessageParts.SessionID.name(), sessionId);
-      messagebus.send(CommandMessage.createWithParts(messageParts));
+      if (coalesced) {
+        eventCoalescer.send(event, sessionId, messageParts);
+      }
+      else {
+        messagebus.send(CommandMessage.createWithParts(messageParts));
+      }
     }
     else {
       for (final String id : eventRoutingTable.getQueueIdsForRoute(eventType.getName(), qualifierTypes)) {
-        messagebus.send(CommandMessage.createWithParts(new RoutingMap(messageParts, id)));
+        if (coalesced) {
+          eventCoalescer.send(event, id, new RoutingMap(messageParts, id));
+        }
+        else {
+          messagebus.send(CommandMessage.createWithParts(new RoutingMap(messageParts, id)));
+        }
       }
     }
   }
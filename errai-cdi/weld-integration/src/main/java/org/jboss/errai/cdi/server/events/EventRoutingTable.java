@@ -1,30 +1,45 @@
 package org.jboss.errai.cdi.server.events;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.laundry.Laundry;
 import org.jboss.errai.bus.client.api.laundry.LaundryList;
 import org.jboss.errai.bus.client.api.laundry.LaundryListProviderFactory;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * <a href="http://www.youtube.com/watch?v=qBXn9PptgN8">Architectural Overview</a>
+ * <p>
+ * Session ids are interned to small ints while the session has active routes, and each route records its sessions in a
+ * {@link ConcurrentBitSet}. Every session keeps track of the routes it joined, so that removing a session only touches
+ * those routes. Released indexes are reused lowest first, which keeps the bit sets small.
  *
  * @author Mike Brock
  */
 public class EventRoutingTable {
-  private static final String CDI_EVENT_ROUTES_ACTIVE = "cdi.event.routesActive";
+  // type to (set<annotations> to set<session indexes>)
+  private final Map<String, Map<Set<String>, ConcurrentBitSet>> activeRoutes
+      = new ConcurrentHashMap<String, Map<Set<String>, ConcurrentBitSet>>();
 
-  // type to (set<annotations> to set<session ids>)
-  private final Map<String, Map<Set<String>, Set<String>>> activeRoutes
-      = new ConcurrentHashMap<String, Map<Set<String>, Set<String>>>();
+  // session id to interned session
+  private final Map<String, SessionEntry> sessions = new ConcurrentHashMap<String, SessionEntry>();
+
+  // session index to session id
+  private volatile AtomicReferenceArray<String> sessionIds = new AtomicReferenceArray<String>(64);
+  // guarded by sessionChangeLock
+  private final BitSet freeIndexes = new BitSet();
+  private int nextIndex;
 
   private final Object routeChangeLock = new Object();
   private final Object sessionChangeLock = new Object();
@@ -34,121 +49,281 @@ public class EventRoutingTable {
                             final QueueSession queueSession) {
 
 
-    Map<Set<String>, Set<String>> route = activeRoutes.get(eventType);
+    Map<Set<String>, ConcurrentBitSet> route = activeRoutes.get(eventType);
     if (route == null) {
       synchronized (routeChangeLock) {
         route = activeRoutes.get(eventType);
         if (route == null) {
-          activeRoutes.put(eventType, route = new ConcurrentHashMap<Set<String>, Set<String>>());
+          activeRoutes.put(eventType, route = new ConcurrentHashMap<Set<String>, ConcurrentBitSet>());
         }
       }
     }
 
-    Set<String> sessions = route.get(annotations);
+    ConcurrentBitSet routeSessions = route.get(annotations);
 
-    if (sessions == null) {
-      synchronized (sessionChangeLock) {
-        sessions = route.get(annotations);
-        if (sessions == null) {
-          route.put(annotations, sessions =
-              Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+    if (routeSessions == null) {
+      synchronized (routeChangeLock) {
+        routeSessions = route.get(annotations);
+        if (routeSessions == null) {
+          route.put(annotations, routeSessions = new ConcurrentBitSet());
         }
       }
     }
 
-    sessions.add(queueSession.getSessionId());
-
-    updateLaundry(queueSession);
+    while (true) {
+      final SessionEntry session = getOrCreateSession(queueSession);
+      synchronized (session) {
+        if (session.removed) {
+          // the session was cleaned up concurrently, it will be interned again
+          continue;
+        }
+        routeSessions.set(session.index);
+        if (!session.routes.contains(routeSessions)) {
+          session.routes.add(routeSessions);
+        }
+        return;
+      }
+    }
   }
 
   public void deactivateRoute(final String eventType,
                               final Set<String> annotations,
                               final QueueSession queueSession) {
 
-    final Map<Set<String>, Set<String>> route = activeRoutes.get(eventType);
+    final Map<Set<String>, ConcurrentBitSet> route = activeRoutes.get(eventType);
     if (route == null) {
       return;
     }
 
-    final Set<String> sessions = route.get(annotations);
-    if (sessions == null) {
-      for (final Map.Entry<Set<String>, Set<String>> entry : activeRoutes.get(eventType).entrySet()) {
-        if (annotations.containsAll(entry.getKey())) {
-          entry.getValue().remove(queueSession.getSessionId());
+    final SessionEntry session = sessions.get(queueSession.getSessionId());
+    if (session == null) {
+      return;
+    }
+
+    synchronized (session) {
+      if (session.removed) {
+        // the session went away and its index may already belong to another session
+        return;
+      }
+      final ConcurrentBitSet routeSessions = route.get(annotations);
+      if (routeSessions == null) {
+        for (final Map.Entry<Set<String>, ConcurrentBitSet> entry : route.entrySet()) {
+          if (annotations.containsAll(entry.getKey())) {
+            entry.getValue().clear(session.index);
+            session.routes.remove(entry.getValue());
+          }
         }
       }
-    }
-    else {
-      sessions.remove(queueSession.getSessionId());
+      else {
+        routeSessions.clear(session.index);
+        session.routes.remove(routeSessions);
+      }
     }
   }
 
   public boolean isRouteActive(final String eventType,
                                final Set<String> annotations,
                                final QueueSession queueSession) {
-    final Map<Set<String>, Set<String>> route = activeRoutes.get(eventType);
+    final Map<Set<String>, ConcurrentBitSet> route = activeRoutes.get(eventType);
     if (route == null) {
       return false;
     }
-    final Set<String> sessions = route.get(annotations);
-    boolean active = sessions != null && sessions.contains(queueSession.getSessionId());
-    return active;
+    final ConcurrentBitSet routeSessions = route.get(annotations);
+    final SessionEntry session = sessions.get(queueSession.getSessionId());
+    // check for removal after reading the bit: once removed, the index may have been handed to another session
+    return routeSessions != null && session != null && routeSessions.get(session.index) && !session.removed;
   }
 
+  /**
+   * Returns the ids of the queue sessions listening to the given route. The returned collection is a live view of the
+   * route: sessions subscribing or going away while it is iterated may or may not be included.
+   */
   public Collection<String> getQueueIdsForRoute(final String eventType,
                                                 final Set<String> annotations) {
 
-    final Map<Set<String>, Set<String>> route = activeRoutes.get(eventType);
+    final Map<Set<String>, ConcurrentBitSet> route = activeRoutes.get(eventType);
     if (route == null) {
       return Collections.emptySet();
     }
 
-    final Set<String> sessions = route.get(annotations);
-    if (sessions == null) {
-      final Set<String> ids = new HashSet<String>();
-      for (final Map.Entry<Set<String>, Set<String>> entry : activeRoutes.get(eventType).entrySet()) {
+    final ConcurrentBitSet routeSessions = route.get(annotations);
+    if (routeSessions == null) {
+      final ConcurrentBitSet union = new ConcurrentBitSet();
+      for (final Map.Entry<Set<String>, ConcurrentBitSet> entry : route.entrySet()) {
         if (annotations.containsAll(entry.getKey())) {
-          ids.addAll(entry.getValue());
+          union.or(entry.getValue());
         }
       }
+      return new SessionIdCollection(union);
+    }
+
+    return new SessionIdCollection(routeSessions);
+  }
+
+  /**
+   * @return the number of sessions that currently have at least one active route.
+   */
+  public int getSessionCount() {
+    return sessions.size();
+  }
 
+  private SessionEntry getOrCreateSession(final QueueSession queueSession) {
+    final String sessionId = queueSession.getSessionId();
+    SessionEntry session = sessions.get(sessionId);
+    if (session == null) {
       synchronized (sessionChangeLock) {
-        final Map<Set<String>, Set<String>> routeMap = new ConcurrentHashMap<Set<String>, Set<String>>();
-        routeMap.put(annotations, ids);
-        activeRoutes.put(eventType, routeMap);
+        session = sessions.get(sessionId);
+        if (session == null) {
+          session = new SessionEntry(sessionId, allocateIndex(sessionId));
+          sessions.put(sessionId, session);
+          registerLaundry(queueSession);
+        }
       }
+    }
+    return session;
+  }
 
-      return ids;
+  private int allocateIndex(final String sessionId) {
+    final int free = freeIndexes.nextSetBit(0);
+    final int index;
+    if (free == -1) {
+      index = nextIndex++;
+    }
+    else {
+      freeIndexes.clear(free);
+      index = free;
     }
 
-    return sessions;
+    AtomicReferenceArray<String> ids = sessionIds;
+    if (index >= ids.length()) {
+      final AtomicReferenceArray<String> grown = new AtomicReferenceArray<String>(ids.length() * 2);
+      for (int i = 0; i < ids.length(); i++) {
+        grown.set(i, ids.get(i));
+      }
+      sessionIds = ids = grown;
+    }
+    ids.set(index, sessionId);
+    return index;
+  }
+
+  private void releaseIndex(final int index) {
+    sessionIds.set(index, null);
+    freeIndexes.set(index);
+    // give back the free indexes at the end of the range so that new sessions are packed at the start
+    while (nextIndex > 0 && freeIndexes.get(nextIndex - 1)) {
+      freeIndexes.clear(--nextIndex);
+    }
   }
 
-  private void removeAllForId(final String id) {
+  /**
+   * Removes the given session from all of its routes. Called when the session's laundry is cleaned.
+   */
+  void removeAllForId(final String id) {
+    final SessionEntry session = sessions.get(id);
+    if (session == null) {
+      return;
+    }
+
+    synchronized (session) {
+      for (final ConcurrentBitSet routeSessions : session.routes) {
+        routeSessions.clear(session.index);
+      }
+      session.routes.clear();
+      session.removed = true;
+    }
+
     synchronized (sessionChangeLock) {
-      for (final Map<Set<String>, Set<String>> routeMaps : activeRoutes.values()) {
-        for (final Map.Entry<Set<String>, Set<String>> entry : routeMaps.entrySet()) {
-          entry.getValue().remove(id);
-        }
+      sessions.remove(id);
+      releaseIndex(session.index);
+    }
+  }
+
+  private void registerLaundry(final QueueSession queueSession) {
+    final LaundryList laundryList = LaundryListProviderFactory.get().getLaundryList(queueSession);
+    laundryList.add(new Laundry() {
+      @Override
+      public void clean() throws Exception {
+        removeAllForId(queueSession.getSessionId());
       }
+    });
+  }
+
+  private static class SessionEntry {
+    private final String sessionId;
+    private final int index;
+    // the route bit sets this session joined; guarded by this
+    private final List<ConcurrentBitSet> routes = new ArrayList<ConcurrentBitSet>(4);
+    // written while holding the lock on this, but read without it by isRouteActive()
+    private volatile boolean removed;
+
+    private SessionEntry(final String sessionId, final int index) {
+      this.sessionId = sessionId;
+      this.index = index;
+    }
+
+    @Override
+    public String toString() {
+      return sessionId + "#" + index;
     }
   }
 
-  private void updateLaundry(final QueueSession queueSession) {
-    Boolean routesActive = queueSession.getAttribute(Boolean.class, CDI_EVENT_ROUTES_ACTIVE);
-    if (routesActive == null) {
-      synchronized (queueSession) {
-        routesActive = queueSession.getAttribute(Boolean.class, CDI_EVENT_ROUTES_ACTIVE);
-        if (routesActive == null) {
-          final LaundryList laundryList = LaundryListProviderFactory.get().getLaundryList(queueSession);
-          laundryList.add(new Laundry() {
-            @Override
-            public void clean() throws Exception {
-              removeAllForId(queueSession.getSessionId());
+  /**
+   * Maps the session indexes of a route back to session ids as it is iterated.
+   */
+  private class SessionIdCollection extends AbstractCollection<String> {
+    private final ConcurrentBitSet routeSessions;
+
+    private SessionIdCollection(final ConcurrentBitSet routeSessions) {
+      this.routeSessions = routeSessions;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      final AtomicReferenceArray<String> ids = sessionIds;
+      return new Iterator<String>() {
+        private int index = -1;
+        private String next = advance();
+
+        private String advance() {
+          while ((index = routeSessions.nextSetBit(index + 1)) != -1) {
+            final String id = (index < ids.length()) ? ids.get(index) : sessionIds.get(index);
+            if (id != null) {
+              return id;
             }
-          });
+          }
+          return null;
         }
-      }
+
+        @Override
+        public boolean hasNext() {
+          return next != null;
+        }
+
+        @Override
+        public String next() {
+          if (next == null) {
+            throw new NoSuchElementException();
+          }
+          final String current = next;
+          next = advance();
+          return current;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return routeSessions.cardinality();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return routeSessions.isEmpty();
     }
   }
 }
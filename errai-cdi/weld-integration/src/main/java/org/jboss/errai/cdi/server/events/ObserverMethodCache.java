@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.errai.cdi.server.events;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.ObserverMethod;
+
+/**
+ * Caches the server-side {@link ObserverMethod}s resolved for events fired by clients. Entries are keyed by the
+ * runtime event class and the set of qualifier names sent along with the event, and only contain observers that
+ * should be notified (i.e. the {@link AnyEventObserver} bridging events back to the clients is filtered out).
+ * <p>
+ * The set of observer methods is fixed once the container is deployed, so the cache only has to be invalidated when
+ * the deployment changes (see {@link ShutdownEventObserver}).
+ * <p>
+ * The qualifier names come from the clients, so only the names of qualifiers known on the server are part of the key
+ * (unknown names don't affect the resolution anyway). The number of entries is still bounded by
+ * {@link #MAX_ENTRIES}: once the cache is full, further combinations are resolved without being cached.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class ObserverMethodCache {
+
+  /**
+   * The maximum number of cached observer lists.
+   */
+  public static final int MAX_ENTRIES = 1024;
+
+  private final BeanManager beanManager;
+  private final Map<String, Annotation> allQualifiers;
+
+  private final Map<Key, List<ObserverMethod<? super Object>>> cache =
+          new ConcurrentHashMap<Key, List<ObserverMethod<? super Object>>>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public ObserverMethodCache(final BeanManager beanManager, final Map<String, Annotation> allQualifiers) {
+    this.beanManager = beanManager;
+    this.allQualifiers = allQualifiers;
+  }
+
+  /**
+   * Returns the observers to notify for the given client-originated event.
+   *
+   * @param event
+   *          the event instance, must not be null.
+   * @param qualifierNames
+   *          the fully qualified names of the event qualifiers, may be null.
+   * @return an unmodifiable list of observer methods, never null.
+   */
+  public List<ObserverMethod<? super Object>> getObserverMethods(final Object event, final Set<String> qualifierNames) {
+    final Set<String> knownQualifierNames = knownQualifierNames(qualifierNames);
+    final Key key = new Key(event.getClass(), knownQualifierNames);
+
+    List<ObserverMethod<? super Object>> observers = cache.get(key);
+    if (observers != null) {
+      hits.incrementAndGet();
+      return observers;
+    }
+
+    misses.incrementAndGet();
+    observers = resolve(event, knownQualifierNames);
+    if (cache.size() < MAX_ENTRIES) {
+      cache.put(key, observers);
+    }
+    return observers;
+  }
+
+  /**
+   * Returns a new set with the given qualifier names that are known on the server. The given set belongs to the
+   * message, so it is never retained.
+   */
+  private Set<String> knownQualifierNames(final Set<String> qualifierNames) {
+    final Set<String> known = new HashSet<String>();
+    if (qualifierNames != null) {
+      for (final String qualifierName : qualifierNames) {
+        if (allQualifiers.containsKey(qualifierName)) {
+          known.add(qualifierName);
+        }
+      }
+    }
+    return known;
+  }
+
+  private List<ObserverMethod<? super Object>> resolve(final Object event, final Set<String> qualifierNames) {
+    final List<Annotation> qualifiers = new ArrayList<Annotation>();
+    for (final String qualifierName : qualifierNames) {
+      qualifiers.add(allQualifiers.get(qualifierName));
+    }
+
+    final Annotation[] qualArray = qualifiers.toArray(new Annotation[qualifiers.size()]);
+    final Set<ObserverMethod<? super Object>> resolved = beanManager.resolveObserverMethods(event, qualArray);
+    final List<ObserverMethod<? super Object>> observers = new ArrayList<ObserverMethod<? super Object>>(resolved.size());
+    for (final ObserverMethod<? super Object> observer : resolved) {
+      // Don't mirror the event back to the clients
+      if (!(AnyEventObserver.class.equals(observer.getBeanClass()))) {
+        observers.add(observer);
+      }
+    }
+
+    return Collections.unmodifiableList(observers);
+  }
+
+  /**
+   * Discards all cached observer lists. Must be called whenever the set of deployed observers changes.
+   */
+  public void invalidate() {
+    cache.clear();
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return "ObserverMethodCache [size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+  }
+
+  private static class Key {
+    private final Class<?> eventType;
+    private final Set<String> qualifierNames;
+    private final int hashCode;
+
+    private Key(final Class<?> eventType, final Set<String> qualifierNames) {
+      this.eventType = eventType;
+      this.qualifierNames = qualifierNames;
+      this.hashCode = 31 * eventType.hashCode() + qualifierNames.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Key))
+        return false;
+
+      final Key other = (Key) obj;
+      return eventType.equals(other.eventType) && qualifierNames.equals(other.qualifierNames);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
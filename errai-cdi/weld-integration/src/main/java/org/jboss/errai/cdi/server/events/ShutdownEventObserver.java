@@ -44,10 +44,16 @@ public class ShutdownEventObserver implements ObserverMethod {
 
   private TypeRegistry managedTypes;
   private MessageBus bus;
+  private EventDispatcher eventDispatcher;
 
   public ShutdownEventObserver(TypeRegistry managedTypes, MessageBus bus) {
+    this(managedTypes, bus, null);
+  }
+
+  public ShutdownEventObserver(TypeRegistry managedTypes, MessageBus bus, EventDispatcher eventDispatcher) {
     this.managedTypes = managedTypes;
     this.bus = bus;
+    this.eventDispatcher = eventDispatcher;
   }
 
   @Override
@@ -95,5 +101,11 @@ public class ShutdownEventObserver implements ObserverMethod {
 
     // unsubscribe event dispatcher endpoint
     bus.unsubscribeAll(CDI.SERVER_DISPATCHER_SUBJECT);
+
+    // the observers resolved for this deployment are no longer valid
+    if (eventDispatcher != null) {
+      log.debug("stopping event dispatcher: " + eventDispatcher.getObserverMethodCache());
+      eventDispatcher.stop();
+    }
   }
 }
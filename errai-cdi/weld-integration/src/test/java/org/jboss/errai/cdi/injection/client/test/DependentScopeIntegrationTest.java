@@ -211,6 +211,21 @@ public class DependentScopeIntegrationTest extends AbstractErraiCDITest {
     assertFalse("bean should no longer be managed", IOC.getBeanManager().isManaged(bean));
   }
 
+  public void testOnlyDependentBeansWithSomethingToDestroyAreManaged() {
+    final DependentScopedBean untracked = IOC.getBeanManager()
+            .lookupBean(DependentScopedBean.class).getInstance();
+
+    // nothing to destroy, so the bean manager doesn't hold on to the bean
+    assertFalse("bean without destruction callbacks should not be managed", IOC.getBeanManager().isManaged(untracked));
+
+    final DepScopedBeanWithASBeanDep tracked = IOC.getBeanManager()
+            .lookupBean(DepScopedBeanWithASBeanDep.class).getInstance();
+
+    assertTrue("bean with a pre-destroy method should be managed", IOC.getBeanManager().isManaged(tracked));
+    IOC.getBeanManager().destroyBean(tracked);
+    assertFalse("bean should no longer be managed", IOC.getBeanManager().isManaged(tracked));
+  }
+
   public void testNonModuleTranslatableClassInjectableAsDependent() {
     final BeanInjectsNonModuleDependentBean bean = IOC.getBeanManager()
             .lookupBean(BeanInjectsNonModuleDependentBean.class).getInstance();
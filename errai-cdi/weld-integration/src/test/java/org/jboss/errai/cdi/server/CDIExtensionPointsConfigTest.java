@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ListResourceBundle;
+import java.util.ResourceBundle;
+
+import org.junit.Test;
+
+public class CDIExtensionPointsConfigTest {
+
+  private static final String ERRAI_CDI_ASYNC_OBSERVERS = "errai.cdi.async_observers";
+  private static final String ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE = "errai.cdi.async_observers.pool_size";
+  private static final String ERRAI_CDI_ASYNC_OBSERVERS_QUEUE_SIZE = "errai.cdi.async_observers.queue_size";
+
+  private static ResourceBundle config(final String key, final String value) {
+    return new ListResourceBundle() {
+      @Override
+      protected Object[][] getContents() {
+        return new Object[][] { { key, value } };
+      }
+    };
+  }
+
+  @Test
+  public void testBooleanPropertyIgnoresCaseAndWhitespace() {
+    assertTrue(CDIExtensionPoints.getBooleanProperty(config(ERRAI_CDI_ASYNC_OBSERVERS, "true"),
+            ERRAI_CDI_ASYNC_OBSERVERS));
+    assertTrue(CDIExtensionPoints.getBooleanProperty(config(ERRAI_CDI_ASYNC_OBSERVERS, " TRUE "),
+            ERRAI_CDI_ASYNC_OBSERVERS));
+    assertFalse(CDIExtensionPoints.getBooleanProperty(config(ERRAI_CDI_ASYNC_OBSERVERS, "yes"),
+            ERRAI_CDI_ASYNC_OBSERVERS));
+    assertFalse(CDIExtensionPoints.getBooleanProperty(config("other", "true"), ERRAI_CDI_ASYNC_OBSERVERS));
+  }
+
+  @Test
+  public void testValidIntProperty() {
+    assertEquals(8, CDIExtensionPoints.getPositiveIntProperty(
+            config(ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE, " 8 "), ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE, 4));
+  }
+
+  @Test
+  public void testInvalidIntPropertyFallsBackToDefault() {
+    assertEquals(4, CDIExtensionPoints.getPositiveIntProperty(
+            config(ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE, "eight"), ERRAI_CDI_ASYNC_OBSERVERS_POOL_SIZE, 4));
+    assertEquals(1024, CDIExtensionPoints.getPositiveIntProperty(
+            config(ERRAI_CDI_ASYNC_OBSERVERS_QUEUE_SIZE, "0"), ERRAI_CDI_ASYNC_OBSERVERS_QUEUE_SIZE, 1024));
+    assertEquals(1024, CDIExtensionPoints.getPositiveIntProperty(
+            config("other", "16"), ERRAI_CDI_ASYNC_OBSERVERS_QUEUE_SIZE, 1024));
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.spi.ObserverMethod;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncObserverExecutorTest {
+
+  private final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final CountDownLatch blocking = new CountDownLatch(1);
+  private AsyncObserverExecutor executor;
+
+  @After
+  public void stopExecutor() {
+    release.countDown();
+    if (executor != null) {
+      executor.stop();
+    }
+  }
+
+  private static QueueSession session(final String sessionId) {
+    return (QueueSession) Proxy.newProxyInstance(AsyncObserverExecutorTest.class.getClassLoader(),
+            new Class<?>[] { QueueSession.class }, new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if (method.getName().equals("getSessionId")) {
+                  return sessionId;
+                }
+                throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  /**
+   * Returns an observer that records the event and the name of the notifying thread. The event "block" holds the
+   * notifying thread until the test releases it, ignoring interrupts.
+   */
+  @SuppressWarnings("unchecked")
+  private List<ObserverMethod<? super Object>> observer() {
+    final ObserverMethod<? super Object> observer = (ObserverMethod<? super Object>) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { ObserverMethod.class }, new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if (method.getName().equals("notify")) {
+                  final String event = (String) args[0];
+                  if (event.equals("block")) {
+                    blocking.countDown();
+                    awaitUninterruptibly(release);
+                  }
+                  delivered.add(event + "@" + Thread.currentThread().getName());
+                  return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+              }
+            });
+    return Collections.<ObserverMethod<? super Object>> singletonList(observer);
+  }
+
+  private static void awaitUninterruptibly(final CountDownLatch latch) {
+    while (true) {
+      try {
+        latch.await();
+        return;
+      }
+      catch (InterruptedException e) {
+        // keep waiting
+      }
+    }
+  }
+
+  private void awaitDelivered(final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testEventsOfOneSessionAreDeliveredInOrderOnPoolThreads() throws Exception {
+    executor = new AsyncObserverExecutor(4, 16);
+    final QueueSession session = session("session-1");
+    for (int i = 0; i < 100; i++) {
+      executor.notifyObservers("event" + i, session, observer());
+    }
+
+    awaitDelivered(100);
+    assertEquals(100, delivered.size());
+    for (int i = 0; i < 100; i++) {
+      final String delivery = delivered.get(i);
+      assertEquals("event" + i, delivery.substring(0, delivery.indexOf('@')));
+      assertTrue(delivery, delivery.contains("@Errai CDI Observer "));
+    }
+    assertEquals(0, executor.getCallerDeliveredCount());
+  }
+
+  @Test
+  public void testCallerDeliversOnlyItsOwnEventWhenPoolIsSaturated() throws Exception {
+    executor = new AsyncObserverExecutor(1, 1);
+    executor.notifyObservers("block", session("session-1"), observer());
+    assertTrue(blocking.await(5, TimeUnit.SECONDS));
+    // takes the only slot in the pool's queue
+    executor.notifyObservers("queued", session("session-2"), observer());
+
+    executor.notifyObservers("first", session("session-3"), observer());
+    executor.notifyObservers("second", session("session-3"), observer());
+
+    final String caller = Thread.currentThread().getName();
+    assertEquals(2, delivered.size());
+    assertEquals("first@" + caller, delivered.get(0));
+    assertEquals("second@" + caller, delivered.get(1));
+    assertEquals(2, executor.getCallerDeliveredCount());
+
+    release.countDown();
+    awaitDelivered(4);
+    assertEquals(4, delivered.size());
+  }
+
+  @Test
+  public void testStopCountsUndeliveredEvents() throws Exception {
+    executor = new AsyncObserverExecutor(1, 16);
+    executor.notifyObservers("block", session("session-1"), observer());
+    assertTrue(blocking.await(5, TimeUnit.SECONDS));
+    executor.notifyObservers("pending", session("session-1"), observer());
+    executor.notifyObservers("pending", session("session-2"), observer());
+
+    executor.stop();
+    release.countDown();
+
+    assertEquals(2, executor.getDroppedCount());
+    awaitDelivered(1);
+    Thread.sleep(100);
+    assertEquals(1, delivered.size());
+  }
+
+  @Test
+  public void testEventsAfterStopAreDropped() throws Exception {
+    executor = new AsyncObserverExecutor(1, 16);
+    executor.stop();
+    executor.notifyObservers("late", session("session-1"), observer());
+    executor.notifyObservers("late", session("session-1"), observer());
+
+    assertEquals(2, executor.getDroppedCount());
+    assertTrue(delivered.isEmpty());
+  }
+}
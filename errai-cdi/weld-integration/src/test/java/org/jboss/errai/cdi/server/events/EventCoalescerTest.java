@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.enterprise.client.cdi.api.Coalesced;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventCoalescerTest {
+
+  @Coalesced(window = 50)
+  public static class Progress {
+    private final int percent;
+
+    public Progress(final int percent) {
+      this.percent = percent;
+    }
+
+    public int getPercent() {
+      return percent;
+    }
+  }
+
+  @Coalesced(window = 50, key = "taskId")
+  public static class TaskProgress {
+    private final String taskId;
+
+    public TaskProgress(final String taskId) {
+      this.taskId = taskId;
+    }
+
+    public String getTaskId() {
+      return taskId;
+    }
+  }
+
+  private final List<Message> sent = Collections.synchronizedList(new ArrayList<Message>());
+  private EventCoalescer coalescer;
+
+  @Before
+  public void setupCoalescer() {
+    final MessageBus messageBus = (MessageBus) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { MessageBus.class }, new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if (method.getName().equals("send")) {
+                  sent.add((Message) args[0]);
+                  return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+              }
+            });
+    coalescer = new EventCoalescer(messageBus);
+  }
+
+  @After
+  public void stopCoalescer() {
+    coalescer.stop();
+  }
+
+  private static Map<String, Object> parts(final String sessionId, final Object event) {
+    final Map<String, Object> parts = new HashMap<String, Object>();
+    parts.put("SessionID", sessionId);
+    parts.put("BeanReference", event);
+    return parts;
+  }
+
+  private void awaitSent(final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (sent.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    // give superseded events a chance to show up if they were (wrongly) scheduled
+    Thread.sleep(100);
+  }
+
+  @Test
+  public void testNoThreadWithoutCoalescedEvents() {
+    assertFalse(coalescer.isStarted());
+    assertTrue(EventCoalescer.isCoalesced(Progress.class));
+    assertFalse(EventCoalescer.isCoalesced(String.class));
+    assertFalse(coalescer.isStarted());
+  }
+
+  @Test
+  public void testOnlyLatestEventIsSent() throws Exception {
+    for (int i = 0; i <= 10; i++) {
+      final Progress event = new Progress(i * 10);
+      coalescer.send(event, "session-1", parts("session-1", event));
+    }
+    assertTrue(coalescer.isStarted());
+
+    awaitSent(1);
+    assertEquals(1, sent.size());
+    assertEquals(100, ((Progress) sent.get(0).getParts().get("BeanReference")).getPercent());
+    assertEquals(10, coalescer.getDroppedCount());
+    assertEquals(1, coalescer.getSentCount());
+  }
+
+  @Test
+  public void testSessionsAndKeysAreCoalescedSeparately() throws Exception {
+    for (final String sessionId : new String[] { "session-1", "session-2" }) {
+      for (final String taskId : new String[] { "a", "b", "a" }) {
+        final TaskProgress event = new TaskProgress(taskId);
+        coalescer.send(event, sessionId, parts(sessionId, event));
+      }
+    }
+
+    awaitSent(4);
+    assertEquals(4, sent.size());
+    assertEquals(2, coalescer.getDroppedCount());
+  }
+
+  @Test
+  public void testEventsAfterStopAreDropped() throws Exception {
+    coalescer.stop();
+    final Progress event = new Progress(1);
+    coalescer.send(event, "session-1", parts("session-1", event));
+
+    awaitSent(1);
+    assertTrue(sent.isEmpty());
+    assertFalse(coalescer.isStarted());
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server.events;
+
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.util.AnnotationLiteral;
+
+import org.jboss.errai.bus.client.api.BusMonitor;
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.SessionEndListener;
+import org.jboss.errai.bus.client.api.SubscribeListener;
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.UnsubscribeListener;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.laundry.Laundry;
+import org.jboss.errai.bus.client.api.laundry.LaundryList;
+import org.jboss.errai.bus.client.api.laundry.LaundryListProvider;
+import org.jboss.errai.bus.client.api.laundry.LaundryListProviderFactory;
+import org.jboss.errai.bus.client.api.laundry.LaundryReclaim;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutEventA;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutEventB;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutEventC;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutEventD;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutQualifierA;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutQualifierB;
+import org.jboss.errai.enterprise.client.cdi.CDICommands;
+import org.jboss.errai.enterprise.client.cdi.CDIProtocol;
+import org.jboss.weld.environment.se.Weld;
+import org.jboss.weld.environment.se.WeldContainer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Load harness for the server side of the CDI event bridge. Boots Weld SE (which picks up the
+ * {@link org.jboss.errai.cdi.server.CDIExtensionPoints} extension), subscribes a configurable number of simulated
+ * client sessions to a set of portable event types and qualifier combinations through {@link CDICommands#RemoteSubscribe}
+ * and then fires server-side events through the {@link BeanManager}.
+ * <p>
+ * The messages created for the clients are counted by an in-memory {@link MessageBus} sink, so the harness runs
+ * without a servlet container or network connection. It reports fan-out throughput, bytes allocated per fired event
+ * and the cost of {@link EventRoutingTable} lookups.
+ * <p>
+ * The size of the run is controlled by the system properties {@code errai.perf.sessions},
+ * {@code errai.perf.event_types} (1 to 4), and {@code errai.perf.events}.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class EventFanOutPerformanceTests {
+  private static final Class<?>[] EVENT_TYPES = { FanOutEventA.class, FanOutEventB.class, FanOutEventC.class,
+      FanOutEventD.class };
+
+  @SuppressWarnings("all")
+  private static final Annotation QUALIFIER_A = new AnnotationLiteral<FanOutQualifierA>() {};
+  @SuppressWarnings("all")
+  private static final Annotation QUALIFIER_B = new AnnotationLiteral<FanOutQualifierB>() {};
+
+  private static final Annotation[][] QUALIFIER_COMBINATIONS = { {}, { QUALIFIER_A }, { QUALIFIER_B },
+      { QUALIFIER_A, QUALIFIER_B } };
+
+  private static final int SESSIONS = Integer.getInteger("errai.perf.sessions", 10000);
+  private static final int EVENT_TYPE_COUNT = Math.min(EVENT_TYPES.length, Integer.getInteger("errai.perf.event_types",
+          EVENT_TYPES.length));
+  private static final int EVENTS = Integer.getInteger("errai.perf.events", 10000);
+
+  private static final NumberFormat nf = new DecimalFormat("###,###.###");
+
+  private static Weld weld;
+  private static BeanManager beanManager;
+  private static CountingMessageBus sink;
+  private static EventRoutingTable routingTable;
+  private static EventDispatcher dispatcher;
+
+  @BeforeClass
+  public static void bootContainer() {
+    LaundryListProviderFactory.setLaundryListProvider(new LaundryListProvider() {
+      @Override
+      public LaundryList getLaundryList(final Object ref) {
+        return NoopLaundryList.INSTANCE;
+      }
+    });
+
+    weld = new Weld();
+    final WeldContainer container = weld.initialize();
+    beanManager = container.getBeanManager();
+
+    sink = new CountingMessageBus();
+    routingTable = new EventRoutingTable();
+    dispatcher = new EventDispatcher(beanManager, routingTable, sink, Collections.<String> emptySet(),
+            new ObserverMethodCache(beanManager, Collections.<String, Annotation> emptyMap()));
+
+    // route server-side events to our dispatcher instead of the one created by the extension
+    AnyEventObserver.init(dispatcher);
+
+    for (int i = 0; i < SESSIONS; i++) {
+      final SimulatedSession session = new SimulatedSession("session-" + i);
+
+      // every session observes one event type, spread evenly over the types and qualifier combinations
+      final Class<?> eventType = EVENT_TYPES[i % EVENT_TYPE_COUNT];
+      final Annotation[] qualifiers = QUALIFIER_COMBINATIONS[(i / EVENT_TYPE_COUNT) % QUALIFIER_COMBINATIONS.length];
+      subscribe(session, eventType, qualifiers);
+    }
+
+    System.out.println("Simulated Sessions : " + nf.format(SESSIONS));
+    System.out.println("Event Types        : " + nf.format(EVENT_TYPE_COUNT));
+  }
+
+  @AfterClass
+  public static void shutdownContainer() {
+    dispatcher.stop();
+    weld.shutdown();
+  }
+
+  @Test
+  @Ignore
+  public void testFanOutThroughput() throws Exception {
+    // warm up
+    fireEvents(EVENTS / 10);
+    sink.reset();
+
+    final long allocatedBefore = getAllocatedBytes();
+    final long start = System.nanoTime();
+    fireEvents(EVENTS);
+    final long time = System.nanoTime() - start;
+    final long allocated = getAllocatedBytes() - allocatedBefore;
+
+    System.out.println("Total Test Time    : " + nf.format(time / 1000000000d) + " seconds.");
+    System.out.println("Events Fired       : " + nf.format(EVENTS));
+    System.out.println("Messages Fanned Out: " + nf.format(sink.getSent()));
+    System.out.println("Event Rate         : " + nf.format(EVENTS / (time / 1000000000d)) + " per second.");
+    System.out.println("Message Rate       : " + nf.format(sink.getSent() / (time / 1000000000d)) + " per second.");
+    if (allocatedBefore >= 0) {
+      System.out.println("Allocated Per Event: " + nf.format(allocated / (double) EVENTS) + " bytes.");
+    }
+  }
+
+  @Test
+  @Ignore
+  public void testRoutingTableLookupCost() throws Exception {
+    final List<Set<String>> qualifierSets = new ArrayList<Set<String>>();
+    for (final Annotation[] qualifiers : QUALIFIER_COMBINATIONS) {
+      qualifierSets.add(getQualifierNames(qualifiers));
+    }
+
+    final int iterations = EVENTS * 10;
+    long routed = 0;
+    final long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      final String eventType = EVENT_TYPES[i % EVENT_TYPE_COUNT].getName();
+      final Collection<String> ids = routingTable.getQueueIdsForRoute(eventType, qualifierSets.get(i
+              % qualifierSets.size()));
+      for (final String id : ids) {
+        if (id != null) {
+          routed++;
+        }
+      }
+    }
+    final long time = System.nanoTime() - start;
+
+    System.out.println("Route Lookups      : " + nf.format(iterations));
+    System.out.println("Sessions Iterated  : " + nf.format(routed));
+    System.out.println("Time Per Lookup    : " + nf.format(time / (double) iterations) + " ns.");
+    System.out.println("Time Per Session   : " + nf.format(time / (double) Math.max(1, routed)) + " ns.");
+  }
+
+  private static void fireEvents(final int count) throws Exception {
+    for (int i = 0; i < count; i++) {
+      final Object event = EVENT_TYPES[i % EVENT_TYPE_COUNT].getConstructor(int.class).newInstance(i);
+      beanManager.fireEvent(event, QUALIFIER_COMBINATIONS[i % QUALIFIER_COMBINATIONS.length]);
+    }
+  }
+
+  private static void subscribe(final QueueSession session, final Class<?> eventType, final Annotation[] qualifiers) {
+    final Message message = CommandMessage.create()
+            .command(CDICommands.RemoteSubscribe)
+            .set(CDIProtocol.BeanType, eventType.getName())
+            .set(CDIProtocol.Qualifiers, getQualifierNames(qualifiers))
+            .setFlag(RoutingFlag.FromRemote)
+            .setResource("Session", session);
+    dispatcher.callback(message);
+  }
+
+  private static Set<String> getQualifierNames(final Annotation[] qualifiers) {
+    final Set<String> names = new HashSet<String>();
+    for (final Annotation qualifier : qualifiers) {
+      names.add(qualifier.annotationType().getName());
+    }
+    return names;
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread so far, or -1 if the JVM can't tell.
+   */
+  private static long getAllocatedBytes() {
+    final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  /**
+   * Stands in for the server message bus, counting the messages that would be queued for the clients.
+   */
+  private static class CountingMessageBus implements MessageBus {
+    private final AtomicLong sent = new AtomicLong();
+
+    long getSent() {
+      return sent.get();
+    }
+
+    void reset() {
+      sent.set(0);
+    }
+
+    @Override
+    public void sendGlobal(final Message message) {
+      sent.incrementAndGet();
+    }
+
+    @Override
+    public void send(final Message message) {
+      sent.incrementAndGet();
+    }
+
+    @Override
+    public void send(final Message message, final boolean fireListeners) {
+      sent.incrementAndGet();
+    }
+
+    @Override
+    public Subscription subscribe(final String subject, final MessageCallback receiver) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Subscription subscribeLocal(final String subject, final MessageCallback receiver) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unsubscribeAll(final String subject) {
+    }
+
+    @Override
+    public boolean isSubscribed(final String subject) {
+      return false;
+    }
+
+    @Override
+    public void addSubscribeListener(final SubscribeListener listener) {
+    }
+
+    @Override
+    public void addUnsubscribeListener(final UnsubscribeListener listener) {
+    }
+
+    @Override
+    public void attachMonitor(final BusMonitor monitor) {
+    }
+  }
+
+  private static class SimulatedSession implements QueueSession {
+    private final String sessionId;
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+    private SimulatedSession(final String sessionId) {
+      this.sessionId = sessionId;
+    }
+
+    @Override
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    @Override
+    public String getParentSessionId() {
+      return null;
+    }
+
+    @Override
+    public boolean endSession() {
+      return false;
+    }
+
+    @Override
+    public void setAttribute(final String attribute, final Object value) {
+      attributes.put(attribute, value);
+    }
+
+    @Override
+    public <T> T getAttribute(final Class<T> type, final String attribute) {
+      return type.cast(attributes.get(attribute));
+    }
+
+    @Override
+    public Collection<String> getAttributeNames() {
+      return attributes.keySet();
+    }
+
+    @Override
+    public boolean hasAttribute(final String attribute) {
+      return attributes.containsKey(attribute);
+    }
+
+    @Override
+    public Object removeAttribute(final String attribute) {
+      return attributes.remove(attribute);
+    }
+
+    @Override
+    public void addSessionEndListener(final SessionEndListener listener) {
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+  }
+
+  private static class NoopLaundryList implements LaundryList {
+    private static final NoopLaundryList INSTANCE = new NoopLaundryList();
+
+    @Override
+    public LaundryReclaim add(final Laundry laundry) {
+      return new LaundryReclaim() {
+        @Override
+        public boolean reclaim() {
+          return false;
+        }
+      };
+    }
+
+    @Override
+    public boolean remove(final Laundry laundry) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.laundry.Laundry;
+import org.jboss.errai.bus.client.api.laundry.LaundryList;
+import org.jboss.errai.bus.client.api.laundry.LaundryListProvider;
+import org.jboss.errai.bus.client.api.laundry.LaundryListProviderFactory;
+import org.jboss.errai.bus.client.api.laundry.LaundryReclaim;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class EventRoutingTableTest {
+
+  private static final String EVENT = "org.example.Event";
+  private static final Set<String> NONE = Collections.emptySet();
+  private static final Set<String> QUALIFIED = Collections.singleton("org.example.Qualifier");
+
+  private final EventRoutingTable table = new EventRoutingTable();
+
+  @BeforeClass
+  public static void setupLaundry() {
+    LaundryListProviderFactory.setLaundryListProvider(new LaundryListProvider() {
+      @Override
+      public LaundryList getLaundryList(final Object ref) {
+        return new LaundryList() {
+          @Override
+          public LaundryReclaim add(final Laundry laundry) {
+            return new LaundryReclaim() {
+              @Override
+              public boolean reclaim() {
+                return false;
+              }
+            };
+          }
+
+          @Override
+          public boolean remove(final Laundry laundry) {
+            return false;
+          }
+        };
+      }
+    });
+  }
+
+  private static QueueSession session(final String sessionId) {
+    return (QueueSession) Proxy.newProxyInstance(EventRoutingTableTest.class.getClassLoader(),
+            new Class<?>[] { QueueSession.class }, new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if (method.getName().equals("getSessionId")) {
+                  return sessionId;
+                }
+                throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  private List<String> queueIds(final Set<String> annotations) {
+    return new ArrayList<String>(table.getQueueIdsForRoute(EVENT, annotations));
+  }
+
+  @Test
+  public void testActivateAndDeactivate() {
+    final QueueSession a = session("a");
+    final QueueSession b = session("b");
+    table.activateRoute(EVENT, NONE, a);
+    table.activateRoute(EVENT, QUALIFIED, b);
+
+    assertTrue(table.isRouteActive(EVENT, NONE, a));
+    assertFalse(table.isRouteActive(EVENT, QUALIFIED, a));
+    assertTrue(table.isRouteActive(EVENT, QUALIFIED, b));
+    assertEquals(Arrays.asList("a"), queueIds(NONE));
+    assertEquals(Arrays.asList("b"), queueIds(QUALIFIED));
+    // an event with qualifiers nobody listens to exactly reaches all routes whose qualifiers it has
+    final Set<String> moreQualified = new HashSet<String>(Arrays.asList("org.example.Qualifier", "org.example.Other"));
+    assertEquals(new HashSet<String>(Arrays.asList("a", "b")), new HashSet<String>(queueIds(moreQualified)));
+
+    table.deactivateRoute(EVENT, NONE, a);
+    assertFalse(table.isRouteActive(EVENT, NONE, a));
+    assertTrue(queueIds(NONE).isEmpty());
+    assertEquals(Arrays.asList("b"), queueIds(QUALIFIED));
+  }
+
+  @Test
+  public void testRemovedSessionIndexIsReused() {
+    final QueueSession a = session("a");
+    final QueueSession b = session("b");
+    table.activateRoute(EVENT, NONE, a);
+    table.removeAllForId("a");
+    assertEquals(0, table.getSessionCount());
+
+    // b takes over the index a had
+    table.activateRoute(EVENT, NONE, b);
+    assertFalse(table.isRouteActive(EVENT, NONE, a));
+    assertTrue(table.isRouteActive(EVENT, NONE, b));
+
+    table.deactivateRoute(EVENT, NONE, a);
+    assertTrue(table.isRouteActive(EVENT, NONE, b));
+    assertEquals(Arrays.asList("b"), queueIds(NONE));
+  }
+
+  @Test
+  public void testConcurrentRemoval() throws Exception {
+    final QueueSession stable = session("stable");
+    table.activateRoute(EVENT, NONE, stable);
+
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      final int thread = t;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 1000; i++) {
+              final String id = "session-" + thread + "-" + i;
+              final QueueSession session = session(id);
+              table.activateRoute(EVENT, NONE, session);
+              assertTrue(table.isRouteActive(EVENT, NONE, session));
+              assertTrue(queueIds(NONE).contains(id));
+
+              table.removeAllForId(id);
+              // a late unsubscribe of the removed session must not touch whoever got its index
+              table.deactivateRoute(EVENT, NONE, session);
+              assertFalse(table.isRouteActive(EVENT, NONE, session));
+            }
+          }
+          catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          }
+        }
+      });
+    }
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    assertEquals(1, table.getSessionCount());
+    assertTrue(table.isRouteActive(EVENT, NONE, stable));
+    assertEquals(Arrays.asList("stable"), queueIds(NONE));
+  }
+
+  @Test
+  public void testBitSetShrinksWhenBitsAreCleared() {
+    final ConcurrentBitSet bits = new ConcurrentBitSet();
+    for (int i = 0; i < 1024; i++) {
+      bits.set(i);
+    }
+    assertEquals(16, bits.capacity());
+
+    for (int i = 1023; i > 0; i--) {
+      bits.clear(i);
+    }
+    assertTrue(bits.capacity() <= 2);
+    assertTrue(bits.get(0));
+    assertEquals(1, bits.cardinality());
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.cdi.server.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.util.AnnotationLiteral;
+
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutEventA;
+import org.jboss.errai.cdi.server.events.perf.client.shared.FanOutQualifierA;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ObserverMethodCacheTest {
+
+  private int resolutions;
+  private ObserverMethodCache cache;
+
+  @Before
+  public void setupCache() {
+    final BeanManager beanManager = (BeanManager) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] { BeanManager.class }, new InvocationHandler() {
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if (method.getName().equals("resolveObserverMethods")) {
+                  resolutions++;
+                  return Collections.emptySet();
+                }
+                throw new UnsupportedOperationException(method.getName());
+              }
+            });
+
+    final Map<String, Annotation> qualifiers = new HashMap<String, Annotation>();
+    qualifiers.put(FanOutQualifierA.class.getName(), new AnnotationLiteral<FanOutQualifierA>() {});
+    cache = new ObserverMethodCache(beanManager, qualifiers);
+  }
+
+  @Test
+  public void testRepeatedLookupIsCached() {
+    final Set<String> qualifiers = Collections.singleton(FanOutQualifierA.class.getName());
+    cache.getObserverMethods(new FanOutEventA(), qualifiers);
+    cache.getObserverMethods(new FanOutEventA(), new HashSet<String>(qualifiers));
+
+    assertEquals(1, resolutions);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testUnknownQualifierNamesDoNotCreateEntries() {
+    cache.getObserverMethods(new FanOutEventA(), null);
+    for (int i = 0; i < 100; i++) {
+      cache.getObserverMethods(new FanOutEventA(), new HashSet<String>(Arrays.asList("com.example.Random" + i)));
+    }
+
+    assertEquals(1, resolutions);
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testInvalidate() {
+    cache.getObserverMethods(new FanOutEventA(), null);
+    cache.invalidate();
+    cache.getObserverMethods(new FanOutEventA(), null);
+
+    assertEquals(2, resolutions);
+  }
+}
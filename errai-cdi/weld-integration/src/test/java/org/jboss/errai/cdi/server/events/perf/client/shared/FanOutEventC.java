@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.errai.cdi.server.events.perf.client.shared;
+
+import org.jboss.errai.common.client.api.annotations.Portable;
+
+/**
+ * Event type used by the {@link org.jboss.errai.cdi.server.events.EventFanOutPerformanceTests}.
+ */
+@Portable
+public class FanOutEventC {
+  private int sequence;
+
+  public FanOutEventC() {
+  }
+
+  public FanOutEventC(int sequence) {
+    this.sequence = sequence;
+  }
+
+  public int getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(int sequence) {
+    this.sequence = sequence;
+  }
+}
@@ -245,4 +245,12 @@ public abstract class MetaClass implements HasAnnotations, MetaType, MetaGeneric
   
   public abstract int hashContent();
 
+  /**
+   * Returns a digest of the content that {@link #hashContent()} covers. Unlike the content hash, the digest is wide
+   * enough to identify a version of a class across builds, for example in a persistent cache.
+   */
+  public String digestContent() {
+    return String.valueOf(hashContent());
+  }
+
 }
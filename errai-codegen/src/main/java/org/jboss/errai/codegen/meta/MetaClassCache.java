@@ -24,17 +24,23 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.errai.common.rebind.CacheStore;
 
 /**
+ * Caches the {@link MetaClass}es created by the {@link MetaClassFactory}. Generators run concurrently and share this
+ * cache, so all operations are safe for concurrent use: if two threads create a {@link MetaClass} for the same type at
+ * the same time, the push methods return the instance that was cached first.
+ *
  * @author Mike Brock
  */
 public class MetaClassCache implements CacheStore {
-  private final Map<String, CacheEntry> PRIMARY_CLASS_CACHE
+  private final ConcurrentMap<String, CacheEntry> PRIMARY_CLASS_CACHE
       = new ConcurrentHashMap<String, CacheEntry>(2000);
 
-  private final Map<String, MetaClass> ERASED_CLASS_CACHE
+  private final ConcurrentMap<String, MetaClass> ERASED_CLASS_CACHE
       = new ConcurrentHashMap<String, MetaClass>(2000);
 
   private final Set<String> invalidated =  Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
@@ -42,6 +48,9 @@ public class MetaClassCache implements CacheStore {
   private final Set<String> removed =  Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
   private final Map<String, CacheEntry> backupClassCache = new ConcurrentHashMap<String, MetaClassCache.CacheEntry>();
 
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
   @Override
   public void clear() {
     backupClassCache.clear();
@@ -53,6 +62,9 @@ public class MetaClassCache implements CacheStore {
 
     PRIMARY_CLASS_CACHE.clear();
     ERASED_CLASS_CACHE.clear();
+
+    hits.set(0);
+    misses.set(0);
   }
 
   public void updateCache(Map<String, MetaClass> mapToPush) {
@@ -85,22 +97,29 @@ public class MetaClassCache implements CacheStore {
     }
   }
 
-  public void pushCache(final MetaClass clazz) {
-    pushCache(clazz.getFullyQualifiedName(), clazz);
+  public MetaClass pushCache(final MetaClass clazz) {
+    return pushCache(clazz.getFullyQualifiedName(), clazz);
   }
 
-  public void pushCache(final String fqcn, final MetaClass clazz) {
-    if (!PRIMARY_CLASS_CACHE.containsKey(fqcn)) {
-      PRIMARY_CLASS_CACHE.put(fqcn, new CacheEntry(clazz, CacheEntry.PLACE_HOLDER));
-      if (!backupClassCache.containsKey(clazz.getFullyQualifiedName())) {
-        invalidated.add(fqcn);
-      }
+  /**
+   * Caches the given class unless a class with the same name is already cached.
+   *
+   * @return the cached class.
+   */
+  public MetaClass pushCache(final String fqcn, final MetaClass clazz) {
+    final CacheEntry existing = PRIMARY_CLASS_CACHE.putIfAbsent(fqcn, new CacheEntry(clazz, CacheEntry.PLACE_HOLDER));
+    if (existing != null) {
+      return existing.cachedClass;
+    }
+    if (!backupClassCache.containsKey(clazz.getFullyQualifiedName())) {
+      invalidated.add(fqcn);
     }
+    return clazz;
   }
 
   public MetaClass get(String fqcn) {
     final CacheEntry entry = PRIMARY_CLASS_CACHE.get(fqcn);
-    return (entry != null) ? entry.cachedClass : null;
+    return count((entry != null) ? entry.cachedClass : null);
   }
 
   public Collection<MetaClass> getAllCached() {
@@ -117,7 +136,10 @@ public class MetaClassCache implements CacheStore {
   public Collection<MetaClass> getAllNewOrUpdated() {
     final Collection<MetaClass> newOrUpdated = new ArrayList<MetaClass>(invalidated.size());
     for (final String fqcn : invalidated) {
-      newOrUpdated.add(PRIMARY_CLASS_CACHE.get(fqcn).cachedClass);
+      final CacheEntry entry = PRIMARY_CLASS_CACHE.get(fqcn);
+      if (entry != null) {
+        newOrUpdated.add(entry.cachedClass);
+      }
     }
     return newOrUpdated;
   }
@@ -135,11 +157,17 @@ public class MetaClassCache implements CacheStore {
   }
 
   public MetaClass getErased(final String fqcn) {
-    return ERASED_CLASS_CACHE.get(fqcn);
+    return count(ERASED_CLASS_CACHE.get(fqcn));
   }
 
-  public void pushErasedCache(final String fqcn, final MetaClass clazz) {
-    ERASED_CLASS_CACHE.put(fqcn, clazz);
+  /**
+   * Caches the given erased class unless an erased class with the same name is already cached.
+   *
+   * @return the cached class.
+   */
+  public MetaClass pushErasedCache(final String fqcn, final MetaClass clazz) {
+    final MetaClass existing = ERASED_CLASS_CACHE.putIfAbsent(fqcn, clazz);
+    return (existing != null) ? existing : clazz;
   }
 
   public int size() {
@@ -154,6 +182,25 @@ public class MetaClassCache implements CacheStore {
     return invalidated.contains(fqcn);
   }
 
+  /**
+   * @return the number of lookups that found a cached class since the cache was last cleared.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of lookups that did not find a cached class since the cache was last cleared.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  private MetaClass count(final MetaClass lookedUp) {
+    (lookedUp != null ? hits : misses).incrementAndGet();
+    return lookedUp;
+  }
+
   private class CacheEntry {
     final MetaClass cachedClass;
     final int hashCode;
@@ -212,13 +212,13 @@ public final class MetaClassFactory {
     if (erased) {
       mCls = getMetaClassCache().getErased(clsName);
       if (mCls == null) {
-        getMetaClassCache().pushErasedCache(clsName, mCls = JavaReflectionClass.newUncachedInstance(loadClass(clsName), erased));
+        mCls = getMetaClassCache().pushErasedCache(clsName, JavaReflectionClass.newUncachedInstance(loadClass(clsName), erased));
       }
     }
     else {
       mCls = getMetaClassCache().get(clsName);
       if (mCls == null) {
-        getMetaClassCache().pushCache(clsName, mCls = JavaReflectionClass.newUncachedInstance(loadClass(clsName), erased));
+        mCls = getMetaClassCache().pushCache(clsName, JavaReflectionClass.newUncachedInstance(loadClass(clsName), erased));
       }
     }
     return mCls;
@@ -245,7 +245,7 @@ public final class MetaClassFactory {
       MetaClass mCls;
       mCls = getMetaClassCache().get(cls.getName());
       if (mCls == null) {
-        getMetaClassCache().pushCache(cls.getName(), mCls = JavaReflectionClass.newUncachedInstance(cls));
+        mCls = getMetaClassCache().pushCache(cls.getName(), JavaReflectionClass.newUncachedInstance(cls));
       }
       return mCls;
     }
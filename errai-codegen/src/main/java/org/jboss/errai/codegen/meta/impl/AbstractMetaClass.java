@@ -21,6 +21,7 @@ import static org.jboss.errai.codegen.util.GenUtil.getArrayDimensions;
 
 import java.beans.Introspector;
 import java.lang.annotation.Annotation;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -41,6 +42,7 @@ import org.jboss.errai.codegen.meta.MetaType;
 import org.jboss.errai.codegen.meta.MetaTypeVariable;
 import org.jboss.errai.codegen.meta.MetaWildcardType;
 import org.jboss.errai.codegen.util.GenUtil;
+import org.jboss.errai.common.metadata.RebindUtils;
 import org.mvel2.util.NullType;
 import org.mvel2.util.ReflectionUtil;
 
@@ -730,9 +732,13 @@ public abstract class AbstractMetaClass<T> extends MetaClass {
   }
 
   private String contentString;
-  
-  @Override
-  public int hashContent() {
+  private Integer contentHash;
+  private String contentDigest;
+
+  /**
+   * @return the annotations, members, interfaces and nested classes of this class, without its superclass.
+   */
+  private String getContentString() {
     if (contentString == null) {
       StringBuilder sb = new StringBuilder();
       if (getAnnotations() != null) {
@@ -755,16 +761,39 @@ public abstract class AbstractMetaClass<T> extends MetaClass {
       for (MetaClass dc : getDeclaredClasses()) {
         sb.append(dc.getFullyQualifiedNameWithTypeParms());
       }
-      if (getSuperClass() != null) {
-        sb.append(getSuperClass().hashContent());
-      }
-      
+
       contentString = sb.toString();
     }
-    
-    return contentString.hashCode();
+    return contentString;
   }
-  
+
+  @Override
+  public int hashContent() {
+    if (contentHash == null) {
+      contentHash = (getSuperClass() != null) ? (getContentString() + getSuperClass().hashContent()).hashCode()
+          : getContentString().hashCode();
+    }
+    return contentHash;
+  }
+
+  @Override
+  public String digestContent() {
+    if (contentDigest == null) {
+      try {
+        final MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(getContentString().getBytes("UTF-8"));
+        if (getSuperClass() != null) {
+          md.update(getSuperClass().digestContent().getBytes("UTF-8"));
+        }
+        contentDigest = RebindUtils.hashToHexString(md.digest());
+      }
+      catch (Exception e) {
+        throw new RuntimeException("failed to compute content digest of " + getFullyQualifiedName(), e);
+      }
+    }
+    return contentDigest;
+  }
+
   private String _hashString;
   public String hashString() {
     if (_hashString == null) {
@@ -77,10 +77,7 @@ public class JavaReflectionClass extends AbstractMetaClass<Class> {
     if (type == null) return null;
 
     if (!MetaClassFactory.isCached(type.getName())) {
-      final MetaClass clazz = newUncachedInstance(type);
-      MetaClassFactory.getMetaClassCache().pushCache(clazz);
-
-      return clazz;
+      return MetaClassFactory.getMetaClassCache().pushCache(newUncachedInstance(type));
     }
     else {
       return MetaClassFactory.get(type);
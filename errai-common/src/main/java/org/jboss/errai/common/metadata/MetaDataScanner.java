@@ -28,8 +28,11 @@ import java.net.URL;
 import java.net.URLDecoder;
 import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.jboss.errai.common.rebind.CacheStore;
@@ -54,7 +57,9 @@ import com.google.common.collect.Multimap;
  * href="http://code.google.com/p/reflections/">Reflections</a> library.
  * <p/>
  * <p/>
- * The initial set of config URLs (entry points) is discovered through ErraiApp.properties.
+ * The initial set of config URLs (entry points) is discovered through ErraiApp.properties. The URLs are scanned in
+ * parallel, using one thread per available core. If {@code errai.reflections.snapshot} is set, the results of
+ * each URL are kept in a {@link ScanSnapshot}, and URLs that did not change since are not scanned again.
  * 
  * @author Heiko Braun <hbraun@redhat.com>
  * @author Mike Brock <cbrock@redhat.com>
@@ -101,11 +106,79 @@ public class MetaDataScanner extends Reflections {
     if (cacheFile != null) {
       collect(cacheFile);
     }
+    else if (ScanSnapshot.isEnabled()) {
+      scanWithSnapshots();
+    }
     else {
       scan();
     }
   }
 
+  /**
+   * Creates a scanner for a single classpath root, used to build a snapshot.
+   */
+  private MetaDataScanner(final Configuration configuration) {
+    super(configuration);
+  }
+
+  /**
+   * Merges the snapshots of all unchanged URLs and scans the others, writing new snapshots for them.
+   */
+  private void scanWithSnapshots() {
+    final long start = System.currentTimeMillis();
+
+    final List<URL> changedUrls = new ArrayList<URL>();
+    final List<String> changedChecksums = new ArrayList<String>();
+    for (final URL url : configuration.getUrls()) {
+      final String checksum = ScanSnapshot.checksum(url);
+      final Reflections snapshot = (checksum != null) ? ScanSnapshot.load(checksum) : null;
+      if (snapshot != null) {
+        merge(snapshot);
+      }
+      else {
+        changedUrls.add(url);
+        changedChecksums.add(checksum);
+      }
+    }
+
+    if (!changedUrls.isEmpty()) {
+      // a single changed URL is scanned file by file in parallel, several changed URLs are scanned side by side
+      final boolean parallelFiles = changedUrls.size() == 1;
+      final ExecutorService executorService = Executors.newFixedThreadPool(getScanThreadCount());
+      try {
+        final List<Future<MetaDataScanner>> futures = new ArrayList<Future<MetaDataScanner>>(changedUrls.size());
+        for (int i = 0; i < changedUrls.size(); i++) {
+          final URL url = changedUrls.get(i);
+          final String checksum = changedChecksums.get(i);
+          futures.add(executorService.submit(new Callable<MetaDataScanner>() {
+            @Override
+            public MetaDataScanner call() throws Exception {
+              final MetaDataScanner rootScanner = new MetaDataScanner(getRootConfiguration(url, parallelFiles));
+              rootScanner.scan();
+              if (checksum != null) {
+                ScanSnapshot.save(checksum, rootScanner);
+              }
+              return rootScanner;
+            }
+          }));
+        }
+
+        for (final Future<MetaDataScanner> future : futures) {
+          merge(future.get());
+        }
+      }
+      catch (Exception e) {
+        throw new RuntimeException("failed to scan class metadata", e);
+      }
+      finally {
+        executorService.shutdown();
+      }
+    }
+
+    log.info("scanned " + changedUrls.size() + " of " + configuration.getUrls().size() + " urls in "
+            + (System.currentTimeMillis() - start) + "ms; the others were loaded from their snapshots");
+  }
+
   private List<Class<? extends Vfs.UrlType>> findExtensions() {
     final Collection<URL> erraiAppProperties = getErraiAppProperties();
 
@@ -172,11 +245,27 @@ public class MetaDataScanner extends Reflections {
   private static Configuration getConfiguration(final List<URL> urls) {
     return new ConfigurationBuilder()
             .setUrls(urls)
-            .setExecutorService(Executors.newFixedThreadPool(2))
+            .setExecutorService(Executors.newFixedThreadPool(getScanThreadCount()))
             .setScanners(new FieldAnnotationsScanner(), new MethodAnnotationsScanner(),
                     new ExtendedTypeAnnotationScanner(), propScanner);
   }
 
+  /**
+   * The configuration for scanning a single root. It has its own property scanner, because the shared one is bound to
+   * the store of the scanner that the results are merged into.
+   */
+  private static Configuration getRootConfiguration(final URL url, final boolean parallel) {
+    return new ConfigurationBuilder()
+            .setUrls(Collections.singletonList(url))
+            .setExecutorService(parallel ? Executors.newFixedThreadPool(getScanThreadCount()) : null)
+            .setScanners(new FieldAnnotationsScanner(), new MethodAnnotationsScanner(),
+                    new ExtendedTypeAnnotationScanner(), new ErraiPropertyScanner(propScanner.predicate));
+  }
+
+  private static int getScanThreadCount() {
+    return Math.max(2, Runtime.getRuntime().availableProcessors());
+  }
+
   static MetaDataScanner createInstanceFromCache() {
     try {
       return createInstance(getConfigUrls(), RebindUtils.getCacheFile(RebindUtils.getClasspathHash() + ".cache.xml"));
@@ -17,7 +17,6 @@ import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -74,7 +73,7 @@ public class RebindUtils {
 
   private static volatile String _classpathHashCache;
 
-  private static final String[] hashableExtensions = { ".java", ".class", ".properties", ".xml" };
+  private static final String[] hashableExtensions = { ".java", ".class", ".properties", ".xml", ".html", ".css", ".less", ".json" };
 
   private static boolean isValidFileType(final String fileName) {
     for (final String extension : hashableExtensions) {
@@ -84,8 +83,12 @@ public class RebindUtils {
     return false;
   }
 
+  /**
+   * Returns a fingerprint of the classpath, computed once per JVM. Loose resources are identified by name, size and
+   * modification time, jars by path, size and modification time, so that upgrading a dependency changes the hash.
+   */
   public static String getClasspathHash() {
-    if (_hasClasspathChanged != null) {
+    if (_classpathHashCache != null) {
       return _classpathHashCache;
     }
 
@@ -102,7 +105,12 @@ public class RebindUtils {
           @Override
           public void visit(final File f) {
             final String fileName = f.getName();
-            if (isValidFileType(fileName)) {
+            if (fileName.endsWith(".jar")) {
+              md.update(f.getAbsolutePath().getBytes());
+              updateLong(md, f.lastModified());
+              updateLong(md, f.length());
+            }
+            else if (isValidFileType(fileName)) {
               md.update(fileName.getBytes());
               final long lastModified = f.lastModified();
               // md.update((byte) ((lastModified >> 56 & 0xFF)));
@@ -136,6 +144,12 @@ public class RebindUtils {
     }
   }
 
+  private static void updateLong(final MessageDigest md, final long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      md.update((byte) (value >> shift & 0xFF));
+    }
+  }
+
   public static String hashToHexString(final byte[] hash) {
     final StringBuilder hexString = new StringBuilder();
     for (final byte b : hash) {
@@ -188,7 +202,7 @@ public class RebindUtils {
   }
 
   private static Map<Class<? extends Annotation>, Boolean> _changeMapForAnnotationScope =
-      new HashMap<Class<? extends Annotation>, Boolean>();
+      new ConcurrentHashMap<Class<? extends Annotation>, Boolean>();
 
   public static boolean hasClasspathChangedForAnnotatedWith(final Set<Class<? extends Annotation>> annotations) {
     if (Boolean.getBoolean("errai.devel.forcecache"))
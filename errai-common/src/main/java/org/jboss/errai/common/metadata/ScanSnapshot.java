@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.common.metadata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.jboss.errai.reflections.Reflections;
+import org.jboss.errai.reflections.serializers.BinarySerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the scan results of single classpath roots (jars or class directories), keyed by a checksum of the root.
+ * The {@link MetaDataScanner} loads the results of unchanged roots from their snapshot instead of scanning them again.
+ * <p>
+ * Jars are checksummed by content, so that a jar that was extracted again (e.g. from a redeployed WAR) still matches
+ * its snapshot. Directories are checksummed by the names, sizes and modification times of their files.
+ * <p>
+ * Snapshots are enabled by setting the system property {@code errai.reflections.snapshot} to true, and are stored in
+ * the {@code scan} folder of the errai cache directory.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+class ScanSnapshot {
+  private static final Logger log = LoggerFactory.getLogger(ScanSnapshot.class);
+
+  public static final String SNAPSHOT_PROPERTY = "errai.reflections.snapshot";
+
+  /**
+   * Part of every checksum. Must be changed whenever the scanners used by the {@link MetaDataScanner} change.
+   */
+  private static final String SCANNER_VERSION = "errai-scan-1";
+
+  private static final BinarySerializer serializer = new BinarySerializer();
+
+  static boolean isEnabled() {
+    return Boolean.getBoolean(SNAPSHOT_PROPERTY) && !Boolean.getBoolean("errai.devel.nocache");
+  }
+
+  /**
+   * @return the checksum of the given classpath root, or null if the root isn't a local jar or directory.
+   */
+  static String checksum(final URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return null;
+    }
+
+    try {
+      final File file = new File(URLDecoder.decode(url.getPath().replaceAll("\\+", "%2b"), "UTF-8"));
+      if (!file.exists()) {
+        return null;
+      }
+
+      final MessageDigest md = MessageDigest.getInstance("SHA-1");
+      md.update(SCANNER_VERSION.getBytes("UTF-8"));
+      if (file.isDirectory()) {
+        updateWithDirectory(md, file, "");
+      }
+      else {
+        updateWithContents(md, file);
+      }
+      return RebindUtils.hashToHexString(md.digest());
+    }
+    catch (Exception e) {
+      log.warn("could not compute checksum of " + url + "; it will be scanned", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the scan results stored for the given checksum, or null if there are none.
+   */
+  static Reflections load(final String checksum) {
+    final File file = getFile(checksum);
+    if (!file.exists()) {
+      return null;
+    }
+
+    InputStream inputStream = null;
+    try {
+      inputStream = new FileInputStream(file);
+      return serializer.read(inputStream);
+    }
+    catch (Exception e) {
+      log.warn("could not read scan snapshot " + file + "; scanning again", e);
+      return null;
+    }
+    finally {
+      closeQuietly(inputStream);
+    }
+  }
+
+  static void save(final String checksum, final Reflections reflections) {
+    final File file = getFile(checksum);
+    final File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    try {
+      serializer.save(reflections, tmpFile.getAbsolutePath());
+      // rename, so that a concurrently starting JVM never reads a partial snapshot
+      if (!tmpFile.renameTo(file)) {
+        // noinspection ResultOfMethodCallIgnored
+        tmpFile.delete();
+      }
+    }
+    catch (Exception e) {
+      log.warn("could not write scan snapshot " + file, e);
+    }
+  }
+
+  private static File getFile(final String checksum) {
+    final File dir = new File(RebindUtils.getErraiCacheDir(), "scan");
+    // noinspection ResultOfMethodCallIgnored
+    dir.mkdirs();
+    return new File(dir, checksum + ".bin");
+  }
+
+  private static void updateWithDirectory(final MessageDigest md, final File dir, final String path) throws IOException {
+    final File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files);
+
+    for (final File file : files) {
+      final String relativePath = path + "/" + file.getName();
+      if (file.isDirectory()) {
+        updateWithDirectory(md, file, relativePath);
+      }
+      else {
+        md.update(relativePath.getBytes("UTF-8"));
+        updateWithLong(md, file.length());
+        updateWithLong(md, file.lastModified());
+      }
+    }
+  }
+
+  private static void updateWithContents(final MessageDigest md, final File file) throws IOException {
+    final InputStream inputStream = new FileInputStream(file);
+    try {
+      final byte[] buffer = new byte[16384];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1) {
+        md.update(buffer, 0, read);
+      }
+    }
+    finally {
+      closeQuietly(inputStream);
+    }
+  }
+
+  private static void updateWithLong(final MessageDigest md, final long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      md.update((byte) (value >> shift));
+    }
+  }
+
+  private static void closeQuietly(final InputStream inputStream) {
+    if (inputStream != null) {
+      try {
+        inputStream.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+}
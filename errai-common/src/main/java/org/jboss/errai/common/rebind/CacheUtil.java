@@ -19,10 +19,14 @@ package org.jboss.errai.common.rebind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Holds the {@link CacheStore}s of all generators. Generators run concurrently, so the stores are looked up without
+ * blocking each other and each store is created exactly once.
+ *
  * @author Mike Brock
  */
 public abstract class CacheUtil {
@@ -31,12 +35,17 @@ public abstract class CacheUtil {
   private CacheUtil() {
   }
 
-  private static final Map<Class<? extends CacheStore>, CacheStore> CACHE_STORE_MAP
-      = new HashMap<Class<? extends CacheStore>, CacheStore>();
+  private static final ConcurrentMap<Class<? extends CacheStore>, CacheStore> CACHE_STORE_MAP
+      = new ConcurrentHashMap<Class<? extends CacheStore>, CacheStore>();
 
   public static <T extends CacheStore> T getCache(final Class<T> type) {
+    T cacheStore = (T) CACHE_STORE_MAP.get(type);
+    if (cacheStore != null) {
+      return cacheStore;
+    }
+
     synchronized (type) {
-      T cacheStore = (T) CACHE_STORE_MAP.get(type);
+      cacheStore = (T) CACHE_STORE_MAP.get(type);
       if (cacheStore == null) {
         try {
           cacheStore = type.newInstance();
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
@@ -48,6 +49,8 @@ public abstract class AbstractAsyncGenerator extends Generator implements AsyncC
   private static final Map<Class<? extends AbstractAsyncGenerator>, Set<String>> cacheRelevantClasses = 
           new ConcurrentHashMap<Class<? extends AbstractAsyncGenerator>, Set<String>>();
   
+  private static final Map<String, Long> generationTimes = new ConcurrentHashMap<String, Long>();
+
   private static Logger log = LoggerFactory.getLogger(AbstractAsyncGenerator.class);
 
   @Override
@@ -55,24 +58,54 @@ public abstract class AbstractAsyncGenerator extends Generator implements AsyncC
     return ThreadUtil.submit(new Callable<String>() {
       @Override
       public String call() throws Exception {
+        final long start = System.currentTimeMillis();
         final String generatedCode;
+        final String cachedCode;
+        final BuildProfile.Outcome outcome;
 
         if (isCacheValid()) {
           log.info("Using cached output from " + AbstractAsyncGenerator.this.getClass().getName());
           generatedCode = getGeneratedCache();
+          outcome = BuildProfile.Outcome.REUSED;
+        }
+        else if (isPersistentCacheEnabled() && (cachedCode = GeneratorOutputCache.get(AbstractAsyncGenerator.this,
+                context)) != null) {
+          log.info("Using output of a previous compile from " + AbstractAsyncGenerator.this.getClass().getName());
+          generatedCode = cachedCode;
+          setGeneratedCache(generatedCode);
+          outcome = BuildProfile.Outcome.CACHED;
         }
         else {
           log.info("Running generator " + AbstractAsyncGenerator.this.getClass().getName());
           clearCacheRelevantClasses();
           generatedCode = generate(logger, context);
           setGeneratedCache(generatedCode);
+          outcome = BuildProfile.Outcome.GENERATED;
+
+          if (isPersistentCacheEnabled()) {
+            GeneratorOutputCache.put(AbstractAsyncGenerator.this, context,
+                    cacheRelevantClasses.get(AbstractAsyncGenerator.this.getClass()), generatedCode);
+          }
         }
 
+        final long time = System.currentTimeMillis() - start;
+        generationTimes.put(AbstractAsyncGenerator.this.getClass().getName(), time);
+        BuildProfile.record(AbstractAsyncGenerator.this.getClass().getName(), outcome, time, generatedCode);
+        log.info("Generator " + AbstractAsyncGenerator.this.getClass().getName() + " finished in " + time + "ms");
+
         return generatedCode;
       }
     });
   }
 
+  /**
+   * @return the time in milliseconds that each generator took to produce its output during its last run, by
+   *         generator class name. Generators run concurrently, so these times overlap.
+   */
+  public static Map<String, Long> getGenerationTimes() {
+    return new TreeMap<String, Long>(generationTimes);
+  }
+
   /**
    * @return True iff there is a cached output for this generator. Useful for subclasses that must override {@link #isCacheValid()}.
    */
@@ -96,6 +129,18 @@ public abstract class AbstractAsyncGenerator extends Generator implements AsyncC
     return hasGenerationCache() && !hasChanges;
   }
   
+  /**
+   * @return True iff the output of this generator may be reused from a previous compile in another JVM, if its inputs
+   *         did not change. This is only the case for full compiles with the cache enabled, where the output is
+   *         generated once per JVM. Generators that have side effects besides producing code (such as writing files)
+   *         must override this method and return false, because a reused output skips the generator entirely.
+   * 
+   * @see GeneratorOutputCache
+   */
+  protected boolean isPersistentCacheEnabled() {
+    return GeneratorOutputCache.isEnabled() && EnvUtil.isProdMode();
+  }
+
   private boolean hasRelevantChanges() {
     Set<String> relevantClasses = cacheRelevantClasses.get(this.getClass());
     if (relevantClasses == null) {
@@ -110,7 +110,7 @@ public final class AsyncGenerators {
     @Override
     public String get() throws InterruptedException, ExecutionException {
       final String val = delegate.get();
-      activeFutures.remove(interfaceType);
+      collected();
       return val;
     }
 
@@ -118,9 +118,16 @@ public final class AsyncGenerators {
     public String get(final long timeout, final TimeUnit unit)
         throws InterruptedException, ExecutionException, TimeoutException {
       final String val = delegate.get(timeout, unit);
-      activeFutures.remove(interfaceType);
+      collected();
       return val;
     }
+
+    private void collected() {
+      if (activeFutures.remove(interfaceType) != null && activeFutures.isEmpty()) {
+        // the output of every generator of this compile was used
+        GeneratorOutputCache.writeReport();
+      }
+    }
   }
 
   private static void startAll(final AsyncGenerationJob job) {
@@ -136,8 +143,12 @@ public final class AsyncGenerators {
       if (!started) {
         started = true;
 
+        // in case the previous compile didn't use the output of all generators
+        GeneratorOutputCache.writeReport();
+
         EnvUtil.recordEnvironmentState();
         CacheUtil.clearAll();
+        BuildProfile.start();
 
         currentContext = job.getGeneratorContext();
 
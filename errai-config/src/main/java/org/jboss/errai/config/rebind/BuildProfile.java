@@ -0,0 +1,165 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.rebind;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jboss.errai.codegen.meta.MetaClassCache;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.common.metadata.RebindUtils;
+import org.jboss.errai.config.util.ClassScanner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records what the asynchronous generators did during a build or refresh, and writes it as a JSON report to
+ * {@code build-profile.json} in the errai cache directory, so that build times can be compared from one build to the
+ * next.
+ * <p>
+ * The report has one entry per generator, with its wall time, the size of the code it produced and whether the code
+ * was generated, reused from the previous refresh or reused from a previous compile. The {@link MetaClassCache} and
+ * {@link ClassScanner} figures are totals for the whole build: generators run concurrently and share both, so they
+ * can't be attributed to a single generator. The report is written again whenever a generator finishes.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public final class BuildProfile {
+  private static final Logger log = LoggerFactory.getLogger(BuildProfile.class);
+
+  /**
+   * How a generator came by its output.
+   */
+  public enum Outcome {
+    GENERATED, REUSED, CACHED
+  }
+
+  private static class Entry {
+    final Outcome outcome;
+    final long wallTime;
+    final long sourceBytes;
+
+    Entry(final Outcome outcome, final long wallTime, final long sourceBytes) {
+      this.outcome = outcome;
+      this.wallTime = wallTime;
+      this.sourceBytes = sourceBytes;
+    }
+  }
+
+  private static final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+  private static long started = System.currentTimeMillis();
+  private static long scanTimeAtStart;
+  private static long classesScannedAtStart;
+
+  private BuildProfile() {
+  }
+
+  /**
+   * Starts a new profile. Called when the generators are started for a new build or refresh, after the generation
+   * caches were cleared.
+   */
+  public static void start() {
+    synchronized (entries) {
+      entries.clear();
+      started = System.currentTimeMillis();
+      scanTimeAtStart = ClassScanner.getTotalClassScanTime().get();
+      classesScannedAtStart = ClassScanner.getTotalClassesScanned().get();
+    }
+  }
+
+  /**
+   * Records the run of a generator and writes the report.
+   *
+   * @param generatorName
+   *          the fully qualified class name of the generator.
+   * @param outcome
+   *          how the generator came by its output.
+   * @param wallTime
+   *          the time in milliseconds the generator took.
+   * @param generatedCode
+   *          the output of the generator, may be null.
+   */
+  public static void record(final String generatorName, final Outcome outcome, final long wallTime,
+          final String generatedCode) {
+    final Entry entry = new Entry(outcome, wallTime, sizeOf(generatedCode));
+
+    // generators run concurrently, so write the report while holding the lock
+    synchronized (entries) {
+      entries.put(generatorName, entry);
+      try {
+        RebindUtils.writeStringToFile(RebindUtils.getCacheFile("build-profile.json"), getReport());
+      }
+      catch (Throwable t) {
+        log.debug("could not write build profile", t);
+      }
+    }
+  }
+
+  /**
+   * @return the current profile as a JSON object.
+   */
+  public static String getReport() {
+    final MetaClassCache metaClassCache = MetaClassFactory.getMetaClassCache();
+
+    final StringBuilder sb = new StringBuilder();
+    synchronized (entries) {
+      long totalBytes = 0;
+      for (final Entry entry : entries.values()) {
+        totalBytes += entry.sourceBytes;
+      }
+
+      sb.append("{\n");
+      sb.append("  \"started\": ").append(started).append(",\n");
+      sb.append("  \"elapsedMillis\": ").append(System.currentTimeMillis() - started).append(",\n");
+      sb.append("  \"sourceBytes\": ").append(totalBytes).append(",\n");
+      sb.append("  \"metaClassCache\": { \"hits\": ").append(metaClassCache.getHitCount())
+          .append(", \"misses\": ").append(metaClassCache.getMissCount())
+          .append(", \"size\": ").append(metaClassCache.size()).append(" },\n");
+      sb.append("  \"classScanner\": { \"classesScanned\": ")
+          .append(ClassScanner.getTotalClassesScanned().get() - classesScannedAtStart)
+          .append(", \"scanMillis\": ").append(ClassScanner.getTotalClassScanTime().get() - scanTimeAtStart)
+          .append(" },\n");
+      sb.append("  \"generators\": [");
+
+      boolean first = true;
+      for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+        sb.append(first ? "\n" : ",\n");
+        sb.append("    { \"name\": \"").append(entry.getKey())
+            .append("\", \"outcome\": \"").append(entry.getValue().outcome.name().toLowerCase())
+            .append("\", \"wallMillis\": ").append(entry.getValue().wallTime)
+            .append(", \"sourceBytes\": ").append(entry.getValue().sourceBytes).append(" }");
+        first = false;
+      }
+      sb.append("\n  ]\n}\n");
+    }
+    return sb.toString();
+  }
+
+  private static long sizeOf(final String generatedCode) {
+    if (generatedCode == null) {
+      return 0;
+    }
+    try {
+      return generatedCode.getBytes("UTF-8").length;
+    }
+    catch (UnsupportedEncodingException e) {
+      return generatedCode.length();
+    }
+  }
+}
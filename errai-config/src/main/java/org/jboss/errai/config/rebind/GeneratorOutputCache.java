@@ -0,0 +1,370 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.rebind;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.common.metadata.RebindUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gwt.core.ext.GeneratorContext;
+
+/**
+ * Keeps the output of {@link AbstractAsyncGenerator}s on disk, so that a full compile in a fresh JVM can reuse the
+ * output of every generator whose inputs did not change since the previous compile.
+ * <p>
+ * Generated sources are stored in the {@code gencache} folder of the errai cache directory, named after the hash of
+ * the generator's inputs:
+ * <ul>
+ * <li>For generators that declare the classes they read (see
+ * {@link AbstractAsyncGenerator#addCacheRelevantClasses(Collection)}), the inputs are these classes and their super
+ * types, plus all classes the generator considers {@link AbstractAsyncGenerator#isRelevantNewClass(MetaClass)
+ * relevant}, hashed by content (see {@link MetaClass#digestContent()}). This key is independent of file locations and
+ * time stamps, so it also matches on a fresh checkout. Other types the declared classes refer to, such as the types of
+ * their fields and method parameters, are not part of the key: a generator whose output depends on their content has
+ * to declare them too.
+ * <li>For all other generators, the inputs are the whole classpath including its jars, as fingerprinted by
+ * {@link RebindUtils#getClasspathHash()}.
+ * </ul>
+ * Both keys also cover the generator, the module under compilation, the contents of all ErraiApp.properties files and
+ * the effective values of all {@code errai.*} framework and system properties, as these switch generator features on
+ * and off. A per generator and module manifest remembers which classes were declared, so that the key can be computed
+ * before the generator runs.
+ * <p>
+ * The hits and misses of each generator are logged, and written to {@code generator-cache-report.txt} in the errai
+ * cache directory once the generators of a compile are done (see {@link #writeReport()}).
+ * <p>
+ * The cache is off by default. It is enabled by setting the system property {@value #ENABLED_PROPERTY} to true, and
+ * always disabled by setting {@code errai.devel.nocache}.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public final class GeneratorOutputCache {
+  private static final Logger log = LoggerFactory.getLogger(GeneratorOutputCache.class);
+
+  public static final String ENABLED_PROPERTY = "errai.gencache.enabled";
+
+  private static final boolean nocache = Boolean.getBoolean("errai.devel.nocache");
+
+  private static final String CLASSPATH_INPUTS = "#classpath";
+
+  /**
+   * The {@code errai.*} properties that configure the caches, but don't change the generated code.
+   */
+  private static final Set<String> CACHE_PROPERTIES = new HashSet<String>(Arrays.asList(ENABLED_PROPERTY,
+          "errai.devel.nocache", "errai.devel.debugCacheDir"));
+
+  private static final Map<String, Stats> stats = new TreeMap<String, Stats>();
+
+  /**
+   * True if there were lookups since the report was last written. Guarded by {@link #stats}.
+   */
+  private static boolean reportOutdated;
+
+  private GeneratorOutputCache() {
+  }
+
+  private static class Stats {
+    final AtomicInteger hits = new AtomicInteger();
+    final AtomicInteger misses = new AtomicInteger();
+  }
+
+  public static boolean isEnabled() {
+    return !nocache && Boolean.getBoolean(ENABLED_PROPERTY);
+  }
+
+  /**
+   * Looks up the output of the given generator for its current inputs.
+   *
+   * @return the generated code, or null if there is no output for the current inputs.
+   */
+  public static String get(final AbstractAsyncGenerator generator, final GeneratorContext context) {
+    final String generatorName = generator.getClass().getName();
+    try {
+      final File manifest = getManifestFile(generator, context);
+      if (manifest.exists()) {
+        final List<String> declaredInputs = readManifest(manifest);
+        final File output = getOutputFile(computeKey(generator, context, declaredInputs));
+        if (output.exists()) {
+          final String generatedCode = RebindUtils.readFileToString(output);
+          record(generatorName, true);
+          if (declaredInputs != null) {
+            for (final String className : declaredInputs) {
+              final MetaClass metaClass = MetaClassFactory.getMetaClassCache().get(className);
+              if (metaClass != null) {
+                generator.addCacheRelevantClass(metaClass);
+              }
+            }
+          }
+          return generatedCode;
+        }
+      }
+    }
+    catch (Throwable t) {
+      log.warn("could not read cached output of " + generatorName, t);
+    }
+
+    record(generatorName, false);
+    return null;
+  }
+
+  /**
+   * Stores the output of the given generator.
+   *
+   * @param declaredInputs
+   *          the names of the classes the generator declared as relevant while generating the code, or null if it
+   *          didn't declare any.
+   */
+  public static void put(final AbstractAsyncGenerator generator, final GeneratorContext context,
+          final Collection<String> declaredInputs, final String generatedCode) {
+    try {
+      final List<String> inputs = (declaredInputs == null) ? null : new ArrayList<String>(new TreeSet<String>(
+              declaredInputs));
+      final String key = computeKey(generator, context, inputs);
+
+      final File manifest = getManifestFile(generator, context);
+      if (manifest.exists()) {
+        // drop the output of the previous inputs, it can't be used anymore
+        final List<String> lines = readLines(manifest);
+        if (!lines.isEmpty() && !lines.get(0).equals(key)) {
+          // noinspection ResultOfMethodCallIgnored
+          getOutputFile(lines.get(0)).delete();
+        }
+      }
+
+      RebindUtils.writeStringToFile(getOutputFile(key), generatedCode);
+
+      final StringBuilder sb = new StringBuilder(key).append('\n');
+      if (inputs == null) {
+        sb.append(CLASSPATH_INPUTS).append('\n');
+      }
+      else {
+        for (final String className : inputs) {
+          sb.append(className).append('\n');
+        }
+      }
+      RebindUtils.writeStringToFile(manifest, sb.toString());
+    }
+    catch (Throwable t) {
+      log.warn("could not cache output of " + generator.getClass().getName(), t);
+    }
+  }
+
+  /**
+   * @return one line per generator that consulted the cache in this JVM, with its hit and miss count.
+   */
+  public static String getReport() {
+    final StringBuilder sb = new StringBuilder();
+    synchronized (stats) {
+      for (final Map.Entry<String, Stats> entry : stats.entrySet()) {
+        sb.append(entry.getKey()).append(": hits=").append(entry.getValue().hits.get())
+            .append(", misses=").append(entry.getValue().misses.get()).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void record(final String generatorName, final boolean hit) {
+    log.info((hit ? "generator cache hit: " : "generator cache miss: ") + generatorName);
+
+    synchronized (stats) {
+      Stats generatorStats = stats.get(generatorName);
+      if (generatorStats == null) {
+        stats.put(generatorName, generatorStats = new Stats());
+      }
+      (hit ? generatorStats.hits : generatorStats.misses).incrementAndGet();
+      reportOutdated = true;
+    }
+  }
+
+  /**
+   * Writes the {@link #getReport() report} to the errai cache directory, if there were lookups since it was last
+   * written. Called by {@link AsyncGenerators} when the generators of a compile are done.
+   */
+  public static void writeReport() {
+    synchronized (stats) {
+      if (!reportOutdated) {
+        return;
+      }
+      reportOutdated = false;
+      try {
+        RebindUtils.writeStringToFile(RebindUtils.getCacheFile("generator-cache-report.txt"), getReport());
+      }
+      catch (Throwable t) {
+        log.debug("could not write generator cache report", t);
+      }
+    }
+  }
+
+  private static String computeKey(final AbstractAsyncGenerator generator, final GeneratorContext context,
+          final List<String> declaredInputs) throws NoSuchAlgorithmException, IOException {
+    final MessageDigest md = MessageDigest.getInstance("SHA-1");
+    update(md, generator.getClass().getName());
+    update(md, String.valueOf(RebindUtils.getModuleName(context)));
+
+    // the properties files are hashed by content, so that their location doesn't matter
+    final Set<String> propertiesHashes = new TreeSet<String>();
+    for (final URL url : EnvUtil.getErraiAppProperties()) {
+      propertiesHashes.add(hashContents(url));
+    }
+    for (final String propertiesHash : propertiesHashes) {
+      update(md, propertiesHash);
+    }
+    for (final Map.Entry<String, String> property : getErraiProperties().entrySet()) {
+      update(md, property.getKey());
+      update(md, property.getValue());
+    }
+
+    if (declaredInputs == null) {
+      update(md, CLASSPATH_INPUTS);
+      update(md, RebindUtils.getClasspathHash());
+    }
+    else {
+      final Map<String, String> inputs = new TreeMap<String, String>();
+      for (final String className : declaredInputs) {
+        final MetaClass metaClass = MetaClassFactory.getMetaClassCache().get(className);
+        if (metaClass == null) {
+          inputs.put(className, "-");
+        }
+        else {
+          addWithSuperTypes(inputs, metaClass);
+        }
+      }
+      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
+        if (!inputs.containsKey(metaClass.getFullyQualifiedName()) && generator.isRelevantNewClass(metaClass)) {
+          inputs.put(metaClass.getFullyQualifiedName(), metaClass.digestContent());
+        }
+      }
+      for (final Map.Entry<String, String> input : inputs.entrySet()) {
+        update(md, input.getKey());
+        update(md, input.getValue());
+      }
+    }
+
+    return RebindUtils.hashToHexString(md.digest());
+  }
+
+  /**
+   * Adds the content digest of the given class and its super classes and interfaces to the given inputs.
+   */
+  private static void addWithSuperTypes(final Map<String, String> inputs, final MetaClass metaClass) {
+    if (metaClass == null || inputs.containsKey(metaClass.getFullyQualifiedName())
+            || metaClass.getFullyQualifiedName().equals(Object.class.getName())) {
+      return;
+    }
+    inputs.put(metaClass.getFullyQualifiedName(), metaClass.digestContent());
+    addWithSuperTypes(inputs, metaClass.getSuperClass());
+    for (final MetaClass iface : metaClass.getInterfaces()) {
+      addWithSuperTypes(inputs, iface);
+    }
+  }
+
+  /**
+   * @return the effective values of the {@code errai.*} framework and system properties, by name.
+   */
+  private static Map<String, String> getErraiProperties() {
+    final EnvironmentConfig config = EnvUtil.getEnvironmentConfig();
+    final Set<String> names = new TreeSet<String>();
+    names.addAll(config.getFrameworkProperties().keySet());
+    names.addAll(System.getProperties().stringPropertyNames());
+
+    final Map<String, String> properties = new TreeMap<String, String>();
+    for (final String name : names) {
+      if (name.startsWith("errai.") && !CACHE_PROPERTIES.contains(name)) {
+        properties.put(name, String.valueOf(config.getFrameworkOrSystemProperty(name)));
+      }
+    }
+    return properties;
+  }
+
+  private static String hashContents(final URL url) throws NoSuchAlgorithmException, IOException {
+    final MessageDigest md = MessageDigest.getInstance("SHA-1");
+    final InputStream in = url.openStream();
+    try {
+      final byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        md.update(buffer, 0, read);
+      }
+    }
+    finally {
+      in.close();
+    }
+    return RebindUtils.hashToHexString(md.digest());
+  }
+
+  private static void update(final MessageDigest md, final String value) throws IOException {
+    md.update(value.getBytes("UTF-8"));
+    md.update((byte) 0);
+  }
+
+  /**
+   * @return the declared input classes recorded in the manifest, or null if the output was keyed by the classpath.
+   */
+  private static List<String> readManifest(final File manifest) {
+    final List<String> lines = readLines(manifest);
+    if (lines.size() > 1 && lines.get(1).equals(CLASSPATH_INPUTS)) {
+      return null;
+    }
+    return (lines.size() > 1) ? lines.subList(1, lines.size()) : Collections.<String>emptyList();
+  }
+
+  private static List<String> readLines(final File file) {
+    final List<String> lines = new ArrayList<String>();
+    for (final String line : RebindUtils.readFileToString(file).split("\n")) {
+      if (!line.isEmpty()) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  private static File getCacheDir() {
+    final File dir = new File(RebindUtils.getErraiCacheDir(), "gencache");
+    // noinspection ResultOfMethodCallIgnored
+    dir.mkdirs();
+    return dir;
+  }
+
+  private static File getManifestFile(final AbstractAsyncGenerator generator, final GeneratorContext context) {
+    final String moduleName = String.valueOf(RebindUtils.getModuleName(context));
+    return new File(getCacheDir(), generator.getClass().getName() + "_" + moduleName + ".inputs");
+  }
+
+  private static File getOutputFile(final String key) {
+    return new File(getCacheDir(), key + ".java");
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.annotation.Annotation;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassCache;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
+import org.jboss.errai.common.metadata.RebindUtils;
+import org.jboss.errai.common.rebind.CacheStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps annotation types to the names of the classes in the {@link MetaClassCache} that use them on the type, on a
+ * declared method, on a declared field or on a parameter of a declared method. The {@link ClassScanner} uses this
+ * index to only look at the classes that can possibly match a query, instead of walking every member of every cached
+ * class for each query.
+ * <p>
+ * The index is built in one pass over the cached classes and kept up to date incrementally: classes reported as new,
+ * updated or deleted by the {@link MetaClassFactory} are re-indexed on refresh, and classes added to the cache while
+ * generators run are indexed as they appear. The index survives {@link #clear()} (which is called on every refresh)
+ * and is persisted to the errai cache directory, keyed by the classpath hash (which covers the jars on the classpath),
+ * so that a fresh JVM with an unchanged classpath does not need to rescan.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class AnnotationIndex implements CacheStore {
+  private static final Logger log = LoggerFactory.getLogger(AnnotationIndex.class);
+
+  private static final boolean nocache = Boolean.getBoolean("errai.devel.nocache");
+
+  private static final int TYPE = 0;
+  private static final int METHOD = 1;
+  private static final int FIELD = 2;
+  private static final int PARAMETER = 3;
+
+  private static final String[] NONE = new String[0];
+
+  /**
+   * The annotations found on one class, by kind.
+   */
+  private static class Entry {
+    final String[][] annotations;
+
+    /**
+     * True if this entry was read from disk and has not yet been confirmed against the current class.
+     */
+    boolean fromDisk;
+
+    Entry(final String[][] annotations, final boolean fromDisk) {
+      this.annotations = annotations;
+      this.fromDisk = fromDisk;
+    }
+  }
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>(2000);
+
+  @SuppressWarnings("unchecked")
+  private final Map<String, Set<String>>[] classesByAnnotation = new Map[] { new HashMap<String, Set<String>>(),
+      new HashMap<String, Set<String>>(), new HashMap<String, Set<String>>(), new HashMap<String, Set<String>>() };
+
+  private final Set<String> processedChanges = new HashSet<String>();
+  private int lastCacheSize = -1;
+  private int lastDeletedCount = -1;
+
+  private File indexFile;
+  private boolean loaded;
+  private boolean dirty;
+  private boolean shutdownHookRegistered;
+
+  private long hits;
+  private long syncs;
+
+  public AnnotationIndex() {
+  }
+
+  /**
+   * Creates an index that is persisted to the given file instead of the one named after the classpath hash.
+   */
+  AnnotationIndex(final File indexFile) {
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Called when the generation caches are cleared, at the start of every refresh. The index itself is kept, only the
+   * bookkeeping about which changes have been applied is reset.
+   */
+  @Override
+  public synchronized void clear() {
+    save();
+    processedChanges.clear();
+    lastCacheSize = -1;
+    lastDeletedCount = -1;
+  }
+
+  public Collection<String> getTypesAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return lookup(TYPE, annotation);
+  }
+
+  public Collection<String> getTypesWithMethodsAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return lookup(METHOD, annotation);
+  }
+
+  public Collection<String> getTypesWithFieldsAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return lookup(FIELD, annotation);
+  }
+
+  public Collection<String> getTypesWithParametersAnnotatedWith(final Class<? extends Annotation> annotation) {
+    return lookup(PARAMETER, annotation);
+  }
+
+  public synchronized long getQueryCount() {
+    return hits;
+  }
+
+  public synchronized long getSyncCount() {
+    return syncs;
+  }
+
+  private synchronized Collection<String> lookup(final int kind, final Class<? extends Annotation> annotation) {
+    sync();
+    hits++;
+
+    final Set<String> classNames = classesByAnnotation[kind].get(annotation.getName());
+    if (classNames == null) {
+      return Collections.emptySet();
+    }
+    // copy, so that callers can resolve classes (and thereby grow the cache) while iterating
+    return new HashSet<String>(classNames);
+  }
+
+  /**
+   * Brings the index up to date with the {@link MetaClassCache}.
+   */
+  private void sync() {
+    if (!loaded) {
+      loaded = true;
+      load();
+    }
+
+    final MetaClassCache cache = MetaClassFactory.getMetaClassCache();
+    final Set<String> deleted = MetaClassFactory.getAllDeletedClasses();
+    if (cache.size() == lastCacheSize && deleted.size() == lastDeletedCount) {
+      return;
+    }
+    syncs++;
+
+    for (final String className : deleted) {
+      if (processedChanges.add(className)) {
+        remove(className);
+      }
+    }
+
+    for (final MetaClass metaClass : MetaClassFactory.getAllNewOrUpdatedClasses()) {
+      final String className = metaClass.getFullyQualifiedName();
+      if (!processedChanges.add(className)) {
+        continue;
+      }
+
+      final Entry entry = entries.get(className);
+      if (entry != null && entry.fromDisk) {
+        // everything is new in a fresh JVM. The persisted entry is valid as long as the classpath hash matches.
+        entry.fromDisk = false;
+      }
+      else {
+        index(metaClass);
+      }
+    }
+
+    for (final MetaClass metaClass : cache.getAllCached()) {
+      final Entry entry = entries.get(metaClass.getFullyQualifiedName());
+      if (entry == null) {
+        index(metaClass);
+      }
+      else {
+        entry.fromDisk = false;
+      }
+    }
+
+    lastCacheSize = cache.size();
+    lastDeletedCount = deleted.size();
+  }
+
+  private void index(final MetaClass metaClass) {
+    final Set<String> typeAnnotations = new HashSet<String>();
+    final Set<String> methodAnnotations = new HashSet<String>();
+    final Set<String> fieldAnnotations = new HashSet<String>();
+    final Set<String> parameterAnnotations = new HashSet<String>();
+
+    try {
+      addNames(typeAnnotations, metaClass.getAnnotations());
+      for (final MetaMethod method : metaClass.getDeclaredMethods()) {
+        addNames(methodAnnotations, method.getAnnotations());
+        for (final MetaParameter parameter : method.getParameters()) {
+          addNames(parameterAnnotations, parameter.getAnnotations());
+        }
+      }
+      for (final MetaField field : metaClass.getDeclaredFields()) {
+        addNames(fieldAnnotations, field.getAnnotations());
+      }
+    }
+    catch (Throwable t) {
+      // some classes can't be introspected (e.g. missing dependencies). The full scans ignored them as well.
+      log.debug("could not index annotations of " + metaClass.getFullyQualifiedName(), t);
+    }
+
+    put(metaClass.getFullyQualifiedName(), new Entry(new String[][] { toArray(typeAnnotations),
+        toArray(methodAnnotations), toArray(fieldAnnotations), toArray(parameterAnnotations) }, false));
+  }
+
+  private void put(final String className, final Entry entry) {
+    remove(className);
+    entries.put(className, entry);
+    for (int kind = 0; kind < classesByAnnotation.length; kind++) {
+      for (final String annotationName : entry.annotations[kind]) {
+        Set<String> classNames = classesByAnnotation[kind].get(annotationName);
+        if (classNames == null) {
+          classesByAnnotation[kind].put(annotationName, classNames = new HashSet<String>());
+        }
+        classNames.add(className);
+      }
+    }
+    dirty = true;
+  }
+
+  private void remove(final String className) {
+    final Entry entry = entries.remove(className);
+    if (entry == null) {
+      return;
+    }
+    for (int kind = 0; kind < classesByAnnotation.length; kind++) {
+      for (final String annotationName : entry.annotations[kind]) {
+        final Set<String> classNames = classesByAnnotation[kind].get(annotationName);
+        if (classNames != null) {
+          classNames.remove(className);
+        }
+      }
+    }
+    dirty = true;
+  }
+
+  private static void addNames(final Set<String> names, final Annotation[] annotations) {
+    if (annotations != null) {
+      for (final Annotation annotation : annotations) {
+        names.add(annotation.annotationType().getName());
+      }
+    }
+  }
+
+  private static String[] toArray(final Set<String> names) {
+    return names.isEmpty() ? NONE : names.toArray(new String[names.size()]);
+  }
+
+  private synchronized File getIndexFile() {
+    if (indexFile == null) {
+      indexFile = RebindUtils.getCacheFile(RebindUtils.getClasspathHash() + ".annotations.idx");
+    }
+    return indexFile;
+  }
+
+  /**
+   * Reads the persisted index for the current classpath, if there is one. Each line holds a class name followed by
+   * one tab-separated, comma-delimited list of annotation names per kind.
+   */
+  private void load() {
+    if (nocache) {
+      return;
+    }
+
+    registerShutdownHook();
+
+    final File indexFile = getIndexFile();
+    if (!indexFile.exists()) {
+      return;
+    }
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final String[] columns = line.split("\t", -1);
+        if (columns.length != 5) {
+          continue;
+        }
+        final String[][] annotations = new String[4][];
+        for (int kind = 0; kind < 4; kind++) {
+          annotations[kind] = columns[kind + 1].isEmpty() ? NONE : columns[kind + 1].split(",");
+        }
+        put(columns[0], new Entry(annotations, true));
+      }
+      dirty = false;
+      log.info("loaded annotation index for " + entries.size() + " classes from " + indexFile);
+    }
+    catch (IOException e) {
+      log.warn("could not read annotation index " + indexFile + "; rescanning", e);
+      entries.clear();
+      for (final Map<String, Set<String>> map : classesByAnnotation) {
+        map.clear();
+      }
+    }
+    finally {
+      closeQuietly(reader);
+    }
+  }
+
+  private synchronized void save() {
+    if (nocache || !dirty || entries.isEmpty()) {
+      return;
+    }
+
+    final File indexFile = getIndexFile();
+    BufferedWriter writer = null;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile, false), "UTF-8"));
+      for (final Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+        writer.write(mapEntry.getKey());
+        for (final String[] names : mapEntry.getValue().annotations) {
+          writer.write('\t');
+          for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+              writer.write(',');
+            }
+            writer.write(names[i]);
+          }
+        }
+        writer.write('\n');
+      }
+      dirty = false;
+    }
+    catch (IOException e) {
+      log.warn("could not write annotation index " + indexFile, e);
+    }
+    finally {
+      closeQuietly(writer);
+    }
+  }
+
+  private void registerShutdownHook() {
+    if (shutdownHookRegistered) {
+      return;
+    }
+    shutdownHookRegistered = true;
+
+    // a full compile has no "end of generation" callback, so write the index when the compiler exits
+    Runtime.getRuntime().addShutdownHook(new Thread("Errai annotation index writer") {
+      @Override
+      public void run() {
+        save();
+      }
+    });
+  }
+
+  private static void closeQuietly(final Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      }
+      catch (IOException ignored) {
+      }
+    }
+  }
+}
@@ -50,17 +50,21 @@ public final class ClassScanner {
   };
 
   private static AtomicLong totalClassScanTime = new AtomicLong(0);
+  private static AtomicLong totalClassesScanned = new AtomicLong(0);
 
   private ClassScanner() {
   }
 
   public static Collection<MetaParameter> getParametersAnnotatedWith(final Class<? extends Annotation> annotation,
           final Set<String> packages, final GeneratorContext genCtx) {
+    final long start = System.currentTimeMillis();
 
     final Collection<MetaParameter> result = new HashSet<MetaParameter>();
 
+    final AnnotationIndex index = CacheUtil.getCache(AnnotationIndex.class);
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
+      for (final MetaClass metaClass : getReloadableCachedClasses(index.getTypesWithParametersAnnotatedWith(annotation),
+              genCtx)) {
         for (final MetaMethod method : metaClass.getDeclaredMethods()) {
           for (final MetaParameter parameter : method.getParameters()) {
             if (parameter.isAnnotationPresent(annotation)) {
@@ -85,7 +89,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
+      for (final MetaClass metaClass : getCachedClasses(index.getTypesWithParametersAnnotatedWith(annotation))) {
         for (final MetaMethod method : metaClass.getDeclaredMethods()) {
           for (final MetaParameter parameter : method.getParameters()) {
             if (parameter.isAnnotationPresent(annotation)) {
@@ -97,6 +101,7 @@ public final class ClassScanner {
     }
 
     filterResultsParameter(result, packages, null);
+    totalClassScanTime.addAndGet(System.currentTimeMillis() - start);
     return Collections.unmodifiableCollection(result);
   }
 
@@ -107,11 +112,13 @@ public final class ClassScanner {
 
   public static Collection<MetaClass> getTypesAnnotatedWith(final Class<? extends Annotation> annotation,
           final Set<String> packages, final String excludeRegEx, final GeneratorContext genCtx, boolean reflections) {
+    final long start = System.currentTimeMillis();
 
     final Collection<MetaClass> result = Collections.newSetFromMap(new ConcurrentHashMap<MetaClass, Boolean>());
 
+    final AnnotationIndex index = CacheUtil.getCache(AnnotationIndex.class);
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
+      for (final MetaClass metaClass : getReloadableCachedClasses(index.getTypesAnnotatedWith(annotation), genCtx)) {
         if (metaClass.isAnnotationPresent(annotation)) {
           result.add(metaClass);
         }
@@ -126,7 +133,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
+      for (final MetaClass metaClass : getCachedClasses(index.getTypesAnnotatedWith(annotation))) {
         if (metaClass.isAnnotationPresent(annotation)) {
           result.add(metaClass);
         }
@@ -143,6 +150,7 @@ public final class ClassScanner {
       }
     }
     filterResultsClass(result, packages, excludeRegEx);
+    totalClassScanTime.addAndGet(System.currentTimeMillis() - start);
     return Collections.unmodifiableCollection(result);
   }
 
@@ -172,10 +180,13 @@ public final class ClassScanner {
 
   public static Collection<MetaMethod> getMethodsAnnotatedWith(final Class<? extends Annotation> annotation,
           final Set<String> packages, final GeneratorContext genCtx) {
+    final long start = System.currentTimeMillis();
     final Collection<MetaMethod> result = new HashSet<MetaMethod>(50);
 
+    final AnnotationIndex index = CacheUtil.getCache(AnnotationIndex.class);
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
+      for (final MetaClass metaClass : getReloadableCachedClasses(index.getTypesWithMethodsAnnotatedWith(annotation),
+              genCtx)) {
         for (final MetaMethod metaMethod : metaClass.getDeclaredMethods()) {
           if (metaMethod.isAnnotationPresent(annotation)) {
             result.add(metaMethod);
@@ -194,7 +205,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
+      for (final MetaClass metaClass : getCachedClasses(index.getTypesWithMethodsAnnotatedWith(annotation))) {
         for (final MetaMethod metaMethod : metaClass.getDeclaredMethods()) {
           if (metaMethod.isAnnotationPresent(annotation)) {
             result.add(metaMethod);
@@ -204,15 +215,19 @@ public final class ClassScanner {
     }
 
     filterResultsMethod(result, packages, null);
+    totalClassScanTime.addAndGet(System.currentTimeMillis() - start);
     return Collections.unmodifiableCollection(result);
   }
 
   public static Collection<MetaField> getFieldsAnnotatedWith(final Class<? extends Annotation> annotation,
           final Set<String> packages, final GeneratorContext genCtx) {
+    final long start = System.currentTimeMillis();
     final Collection<MetaField> result = new HashSet<MetaField>(50);
 
+    final AnnotationIndex index = CacheUtil.getCache(AnnotationIndex.class);
     if (genCtx != null) {
-      for (final MetaClass metaClass : getAllReloadableCachedClasses(genCtx)) {
+      for (final MetaClass metaClass : getReloadableCachedClasses(index.getTypesWithFieldsAnnotatedWith(annotation),
+              genCtx)) {
         for (final MetaField metaField : metaClass.getDeclaredFields()) {
           if (metaField.isAnnotationPresent(annotation)) {
             result.add(metaField);
@@ -230,7 +245,7 @@ public final class ClassScanner {
       }
     }
     else {
-      for (final MetaClass metaClass : MetaClassFactory.getAllCachedClasses()) {
+      for (final MetaClass metaClass : getCachedClasses(index.getTypesWithFieldsAnnotatedWith(annotation))) {
         for (final MetaField metaField : metaClass.getDeclaredFields()) {
           if (metaField.isAnnotationPresent(annotation)) {
             result.add(metaField);
@@ -240,6 +255,7 @@ public final class ClassScanner {
     }
 
     filterResultsField(result, packages, null);
+    totalClassScanTime.addAndGet(System.currentTimeMillis() - start);
     return Collections.unmodifiableCollection(result);
   }
 
@@ -252,6 +268,7 @@ public final class ClassScanner {
       return cache.subtypesCache.get(root);
     }
 
+    final long start = System.currentTimeMillis();
     final Set<MetaClass> result = Collections.newSetFromMap(new ConcurrentHashMap<MetaClass, Boolean>());
 
     if (!Boolean.getBoolean("org.jboss.errai.skip.reloadable.subtypes")) {
@@ -266,6 +283,7 @@ public final class ClassScanner {
     final Class<?> cls = root.asClass();
     if (cls != null && !cls.equals(NullType.class)) {
       for (final Class<?> c : ScannerSingleton.getOrCreateInstance().getSubTypesOf(cls)) {
+        totalClassesScanned.incrementAndGet();
         if (!c.isAnonymousClass() && !c.isSynthetic()) {
           result.add(MetaClassFactory.get(c));
         }
@@ -273,6 +291,7 @@ public final class ClassScanner {
     }
 
     cache.subtypesCache.put(root, result);
+    totalClassScanTime.addAndGet(System.currentTimeMillis() - start);
     return result;
   }
 
@@ -285,6 +304,7 @@ public final class ClassScanner {
 
     Collection<MetaClass> clazzes = new ArrayList<MetaClass>();
     for (MetaClass clazz : MetaClassFactory.getAllCachedClasses()) {
+      totalClassesScanned.incrementAndGet();
       for (String reloadablePackage : reloadablePackages) {
         if (clazz.getFullyQualifiedName().startsWith(reloadablePackage)) {
           clazzes.add(clazz);
@@ -294,6 +314,43 @@ public final class ClassScanner {
     return clazzes;
   }
 
+  /**
+   * Resolves the given class names (as returned by the {@link AnnotationIndex}) against the {@link MetaClassFactory}
+   * cache, skipping names that are no longer cached.
+   */
+  private static Collection<MetaClass> getCachedClasses(final Collection<String> classNames) {
+    final Collection<MetaClass> clazzes = new ArrayList<MetaClass>(classNames.size());
+    for (final String className : classNames) {
+      final MetaClass clazz = MetaClassFactory.getMetaClassCache().get(className);
+      if (clazz != null) {
+        clazzes.add(clazz);
+      }
+    }
+    totalClassesScanned.addAndGet(clazzes.size());
+    return clazzes;
+  }
+
+  /**
+   * Like {@link #getCachedClasses(Collection)}, but only returns the classes in reloadable packages.
+   */
+  private static Collection<MetaClass> getReloadableCachedClasses(final Collection<String> classNames,
+          final GeneratorContext context) {
+    if (reloadablePackages == null) {
+      reloadablePackages = RebindUtils.getReloadablePackageNames(context);
+    }
+
+    final Collection<MetaClass> clazzes = new ArrayList<MetaClass>();
+    for (final MetaClass clazz : getCachedClasses(classNames)) {
+      for (final String reloadablePackage : reloadablePackages) {
+        if (clazz.getFullyQualifiedName().startsWith(reloadablePackage)) {
+          clazzes.add(clazz);
+          break;
+        }
+      }
+    }
+    return clazzes;
+  }
+
   private static boolean isReloadable(Class<?> clazz) {
     for (String reloadablePackage : reloadablePackages) {
       if (clazz.getName().startsWith(reloadablePackage)) {
@@ -389,7 +446,18 @@ public final class ClassScanner {
     reflectionScanLocal.set(bool);
   }
 
+  /**
+   * @return the time in milliseconds spent in the queries of this class since the JVM started. Queries run
+   *         concurrently, so this can exceed the wall time of a build.
+   */
   public static AtomicLong getTotalClassScanTime() {
     return totalClassScanTime;
   }
+
+  /**
+   * @return the number of classes the queries of this class inspected since the JVM started.
+   */
+  public static AtomicLong getTotalClassesScanned() {
+    return totalClassesScanned;
+  }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.rebind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.TreeLogger;
+
+public class GeneratorOutputCacheTest {
+
+  private static final String CACHE_DIR_PROPERTY = "errai.devel.debugCacheDir";
+
+  public static class TestGenerator extends AbstractAsyncGenerator {
+    @Override
+    public String generate(final TreeLogger logger, final GeneratorContext context, final String typeName) {
+      return null;
+    }
+
+    @Override
+    protected String generate(final TreeLogger logger, final GeneratorContext context) {
+      return null;
+    }
+  }
+
+  public static class Input {
+  }
+
+  private final AbstractAsyncGenerator generator = new TestGenerator();
+  private final GeneratorContext context = (GeneratorContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] { GeneratorContext.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+              return null;
+            }
+          });
+
+  private File cacheDir;
+  private String previousCacheDir;
+
+  @Before
+  public void setupCacheDir() throws IOException {
+    cacheDir = File.createTempFile("errai", "cache");
+    cacheDir.delete();
+    cacheDir.mkdirs();
+
+    previousCacheDir = System.getProperty(CACHE_DIR_PROPERTY);
+    System.setProperty(CACHE_DIR_PROPERTY, cacheDir.getAbsolutePath());
+  }
+
+  @After
+  public void restoreCacheDir() {
+    if (previousCacheDir == null) {
+      System.clearProperty(CACHE_DIR_PROPERTY);
+    }
+    else {
+      System.setProperty(CACHE_DIR_PROPERTY, previousCacheDir);
+    }
+    System.clearProperty(GeneratorOutputCache.ENABLED_PROPERTY);
+    delete(cacheDir);
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Test
+  public void testDisabledUnlessEnabledExplicitly() {
+    assertFalse(GeneratorOutputCache.isEnabled());
+    System.setProperty(GeneratorOutputCache.ENABLED_PROPERTY, "true");
+    assertTrue(GeneratorOutputCache.isEnabled());
+  }
+
+  @Test
+  public void testMissWithoutPreviousOutput() {
+    assertNull(GeneratorOutputCache.get(generator, context));
+  }
+
+  @Test
+  public void testHitForUnchangedClasspath() {
+    GeneratorOutputCache.put(generator, context, null, "class Generated {}");
+    assertEquals("class Generated {}", GeneratorOutputCache.get(generator, context));
+  }
+
+  @Test
+  public void testChangedErraiPropertyInvalidatesOutput() {
+    GeneratorOutputCache.put(generator, context, null, "class Generated {}");
+
+    System.setProperty("errai.gencache.test.feature", "true");
+    try {
+      assertNull(GeneratorOutputCache.get(generator, context));
+    }
+    finally {
+      System.clearProperty("errai.gencache.test.feature");
+    }
+    assertEquals("class Generated {}", GeneratorOutputCache.get(generator, context));
+  }
+
+  @Test
+  public void testReportIsOnlyWrittenOnRequest() {
+    final File report = new File(cacheDir, "generator-cache-report.txt");
+    GeneratorOutputCache.get(generator, context);
+    assertFalse(report.exists());
+
+    GeneratorOutputCache.writeReport();
+    assertTrue(report.exists());
+  }
+
+  @Test
+  public void testHitForUnchangedDeclaredInputs() {
+    MetaClassFactory.getMetaClassCache().pushCache(MetaClassFactory.get(Input.class));
+    final String input = MetaClassFactory.get(Input.class).getFullyQualifiedName();
+
+    GeneratorOutputCache.put(generator, context, Collections.singleton(input), "class Generated {}");
+    assertEquals("class Generated {}", GeneratorOutputCache.get(generator, context));
+  }
+
+  @Test
+  public void testChangedDeclaredInputInvalidatesOutput() {
+    final String input = GeneratorOutputCacheTest.class.getName() + ".AddedLater";
+
+    // the input doesn't exist yet when the output is generated
+    GeneratorOutputCache.put(generator, context, Collections.singleton(input), "class Generated {}");
+    assertEquals("class Generated {}", GeneratorOutputCache.get(generator, context));
+
+    MetaClassFactory.getMetaClassCache().pushCache(input, MetaClassFactory.get(Input.class));
+    assertNull(GeneratorOutputCache.get(generator, context));
+
+    // the output for the new inputs replaces the old one
+    GeneratorOutputCache.put(generator, context, Collections.singleton(input), "class Regenerated {}");
+    assertEquals("class Regenerated {}", GeneratorOutputCache.get(generator, context));
+    int outputs = 0;
+    for (final File file : new File(cacheDir, "gencache").listFiles()) {
+      if (file.getName().endsWith(".java")) {
+        outputs++;
+      }
+    }
+    assertEquals(1, outputs);
+  }
+}
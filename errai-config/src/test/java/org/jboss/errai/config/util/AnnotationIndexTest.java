@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.config.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AnnotationIndexTest {
+
+  @Retention(RetentionPolicy.RUNTIME)
+  public static @interface Marker {
+  }
+
+  @Marker
+  public static class Annotated {
+    @Marker
+    private String field;
+
+    @Marker
+    public void method(@Marker final String parameter) {
+    }
+  }
+
+  private static final String GHOST = "com.example.Ghost";
+
+  private File indexFile;
+  private File otherIndexFile;
+
+  @Before
+  public void setup() throws IOException {
+    indexFile = File.createTempFile("errai", ".annotations.idx");
+    otherIndexFile = File.createTempFile("errai", ".annotations.idx");
+    indexFile.delete();
+    otherIndexFile.delete();
+
+    MetaClassFactory.getMetaClassCache().pushCache(MetaClassFactory.get(Annotated.class));
+  }
+
+  @After
+  public void deleteIndexFiles() {
+    indexFile.delete();
+    otherIndexFile.delete();
+  }
+
+  private static String annotatedName() {
+    return MetaClassFactory.get(Annotated.class).getFullyQualifiedName();
+  }
+
+  private static void writeGhostEntry(final File file) throws IOException {
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(GHOST + "\t" + Marker.class.getName() + "\t\t\t\n");
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testIndexesCachedClasses() {
+    final AnnotationIndex index = new AnnotationIndex(indexFile);
+
+    assertTrue(index.getTypesAnnotatedWith(Marker.class).contains(annotatedName()));
+    assertTrue(index.getTypesWithMethodsAnnotatedWith(Marker.class).contains(annotatedName()));
+    assertTrue(index.getTypesWithFieldsAnnotatedWith(Marker.class).contains(annotatedName()));
+    assertTrue(index.getTypesWithParametersAnnotatedWith(Marker.class).contains(annotatedName()));
+    assertFalse(index.getTypesAnnotatedWith(Retention.class).contains(annotatedName()));
+  }
+
+  @Test
+  public void testClearSavesIndex() throws IOException {
+    final AnnotationIndex index = new AnnotationIndex(indexFile);
+    index.getTypesAnnotatedWith(Marker.class);
+    index.clear();
+
+    assertTrue(indexFile.exists());
+    boolean found = false;
+    final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(annotatedName() + "\t" + Marker.class.getName() + "\t")) {
+          found = true;
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void testLoadsPersistedIndex() throws IOException {
+    writeGhostEntry(indexFile);
+
+    // the ghost class is not in the MetaClassCache, so it can only come from the file
+    final AnnotationIndex index = new AnnotationIndex(indexFile);
+    assertTrue(index.getTypesAnnotatedWith(Marker.class).contains(GHOST));
+    assertTrue(index.getTypesAnnotatedWith(Marker.class).contains(annotatedName()));
+  }
+
+  @Test
+  public void testIndexOfOtherClasspathIsNotLoaded() throws IOException {
+    writeGhostEntry(otherIndexFile);
+
+    final AnnotationIndex index = new AnnotationIndex(indexFile);
+    assertFalse(index.getTypesAnnotatedWith(Marker.class).contains(GHOST));
+    assertTrue(index.getTypesAnnotatedWith(Marker.class).contains(annotatedName()));
+  }
+}
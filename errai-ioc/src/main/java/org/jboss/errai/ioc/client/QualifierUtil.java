@@ -58,7 +58,17 @@ public class QualifierUtil {
       factory = factoryProvider.provide();
   }
 
+  /**
+   * @return true if the qualifier equality factory is in place. Until then, qualifiers are only compared by type.
+   */
+  public static boolean isInitialized() {
+    return factory != null;
+  }
+
   public static boolean isEqual(final Annotation a1, final Annotation a2) {
+    if (factory == null) {
+      return isSameType(a1, a2);
+    }
     return factory.isEqual(a1, a2);
   }
 
@@ -67,7 +77,9 @@ public class QualifierUtil {
   }
 
   public static int hashCodeOf(final Annotation a1) {
-
+    if (factory == null) {
+      return a1.annotationType().hashCode();
+    }
     return factory.hashCodeOf(a1);
   }
 
@@ -99,6 +111,28 @@ public class QualifierUtil {
     return true;
   }
 
+  /**
+   * Same as {@link #matches(Collection, Collection)}, for a set of qualifiers that has already been indexed by
+   * annotation type name with {@link #toTypeNameMap(Collection)}.
+   */
+  public static boolean matches(final Collection<Annotation> allOf, final Map<String, Annotation> inMap) {
+    for (final Annotation a : allOf) {
+      final Annotation match = inMap.get(a.annotationType().getName());
+      if (match == null || (factory != null && !factory.isEqual(a, match))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static Map<String, Annotation> toTypeNameMap(final Collection<Annotation> annotations) {
+    final Map<String, Annotation> map = new HashMap<String, Annotation>(annotations.size() * 2);
+    for (final Annotation a : annotations) {
+      map.put(a.annotationType().getName(), a);
+    }
+    return map;
+  }
+
   public static boolean isDefaultAnnotations(final Annotation[] annotations) {
     return annotations == null || isDefaultAnnotations(Arrays.asList(annotations));
   }
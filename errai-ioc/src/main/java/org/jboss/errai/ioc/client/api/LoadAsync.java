@@ -19,7 +19,8 @@ import com.google.gwt.core.client.GWT;
  * @author Christian Sadilek <csadilek@redhat.com>
  */
 @Retention(RetentionPolicy.RUNTIME)
-@java.lang.annotation.Target({ ElementType.TYPE, ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER })
+@java.lang.annotation.Target({ ElementType.TYPE, ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER,
+    ElementType.ANNOTATION_TYPE })
 public @interface LoadAsync {
 
   /**
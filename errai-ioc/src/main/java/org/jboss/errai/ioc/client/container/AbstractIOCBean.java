@@ -17,6 +17,7 @@
 package org.jboss.errai.ioc.client.container;
 
 import java.lang.annotation.Annotation;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.errai.ioc.client.QualifierUtil;
@@ -32,6 +33,11 @@ public abstract class AbstractIOCBean<T> implements IOCBeanDef<T> {
   protected Set<Annotation> qualifiers;
   protected boolean concrete;
 
+  /**
+   * The qualifiers keyed by annotation type name, built on the first call to {@link #matches(Set)}.
+   */
+  private Map<String, Annotation> qualifiersByType;
+
   /**
    * Returns the absolute type of the bean
    *
@@ -75,7 +81,10 @@ public abstract class AbstractIOCBean<T> implements IOCBeanDef<T> {
    */
   @Override
   public boolean matches(final Set<Annotation> annotations) {
-    return QualifierUtil.matches(annotations, qualifiers);
+    if (qualifiersByType == null) {
+      qualifiersByType = QualifierUtil.toTypeNameMap(qualifiers);
+    }
+    return QualifierUtil.matches(annotations, qualifiersByType);
   }
 
   @Override
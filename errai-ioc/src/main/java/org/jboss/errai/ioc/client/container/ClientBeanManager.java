@@ -30,6 +30,10 @@ public interface ClientBeanManager {
 
   /**
    * Indicates whether the referenced object is currently a managed bean.
+   * <p>
+   * Dependent beans are only kept under management if there is something to do when they are destroyed: a
+   * {@code @PreDestroy} method or another destruction callback, or a proxy. For other dependent beans, this method
+   * returns false and {@link #destroyBean(Object)} has no effect.
    *
    * @param ref
    *     the reference to the bean
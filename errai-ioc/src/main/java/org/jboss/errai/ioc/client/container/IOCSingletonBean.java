@@ -26,7 +26,7 @@ import javax.enterprise.context.ApplicationScoped;
  * @author Mike Brock
  */
 public class IOCSingletonBean<T> extends IOCDependentBean<T> {
-  private final T instance;
+  private T instance;
 
   private IOCSingletonBean(final SyncBeanManagerImpl beanManager,
                            final Class<T> type,
@@ -52,7 +52,7 @@ public class IOCSingletonBean<T> extends IOCDependentBean<T> {
    * @param name
    *     The name of the bean
    * @param instance
-   *     The instance of the bean.
+   *     The instance of the bean, or null if the bean is created by the callback when it is first requested.
    * @param <T>
    *     The type of the bean
    * @param activator
@@ -76,6 +76,9 @@ public class IOCSingletonBean<T> extends IOCDependentBean<T> {
 
   @Override
   public T getInstance(final CreationalContext context) {
+    if (instance == null) {
+      instance = beanProvider.getInstance(context);
+    }
     return instance;
   }
 
@@ -38,6 +38,7 @@ import java.util.Map;
 public class SimpleCreationalContext extends AbstractCreationalContext {
 
   private final SyncBeanManager beanManager;
+  private boolean proxied;
 
   public SimpleCreationalContext(final SyncBeanManagerImpl beanManager, final Class<? extends Annotation> scopeName) {
     super(scopeName);
@@ -62,6 +63,7 @@ public class SimpleCreationalContext extends AbstractCreationalContext {
   @Override
   @SuppressWarnings("UnusedDeclaration") // used by generated code
   public void addProxyReference(final Object proxyRef, final Object realRef) {
+    proxied = true;
     beanManager.addProxyReference(proxyRef, realRef);
   }
 
@@ -171,11 +173,23 @@ public class SimpleCreationalContext extends AbstractCreationalContext {
   /**
    * Called to indicate all beans have been added to the context. Calling this method results in all post-initialization
    * tasks (such as @PostConstruct) and proxy closures to occur.
+   * <p/>
+   * The beans are then registered with the bean manager, so that they can be destroyed later. Beans of a dependent
+   * context without destruction callbacks and proxies have nothing to destroy, so they are not registered: this keeps
+   * the bean manager from holding on to every dependent bean (e.g. the rows of a list) for the rest of the
+   * application's lifetime. The bean manager does not consider these beans {@link ClientBeanManager#isManaged(Object)
+   * managed}.
    */
   public void finish() {
     resolveAllProxies();
     fireAllInitCallbacks();
-    registerAllBeans();
+    if (requiresTracking()) {
+      registerAllBeans();
+    }
+  }
+
+  private boolean requiresTracking() {
+    return immutableContext || proxied || !destructionCallbacks.isEmpty();
   }
 
   /**
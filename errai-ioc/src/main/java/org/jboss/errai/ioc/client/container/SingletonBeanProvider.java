@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.ioc.client.container;
+
+import java.lang.annotation.Annotation;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Creates a singleton bean the first time it is looked up or injected, instead of while bootstrapping the container.
+ * This provider is generated for singletons when the <tt>errai.ioc.lazy_singletons</tt> property is set. The instance
+ * is created in the application scoped {@link CreationalContext} it is requested from (the bootstrapper's or another
+ * singleton's), or else in a context of its own, so that destroying a dependent bean that requested it does not
+ * destroy the singleton.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class SingletonBeanProvider<T> implements BeanProvider<T> {
+  private final BeanProvider<T> beanProvider;
+  private final Class<?> beanType;
+  private final Annotation[] qualifiers;
+
+  private T instance;
+  private SimpleCreationalContext creatingContext;
+
+  public SingletonBeanProvider(final BeanProvider<T> beanProvider,
+                               final Class<?> beanType,
+                               final Annotation[] qualifiers) {
+    this.beanProvider = beanProvider;
+    this.beanType = beanType;
+    this.qualifiers = qualifiers;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T getInstance(final CreationalContext context) {
+    if (instance != null) {
+      return instance;
+    }
+
+    if (creatingContext != null) {
+      /*
+       * we are called back while the bean is being wired, e.g. while a bean it depends on resolves its proxies.
+       * the bean provider adds the bean to its context as soon as it is constructed.
+       */
+      final T constructed = (T) creatingContext.wired.get(creatingContext.getBeanReference(beanType, qualifiers));
+      if (constructed == null) {
+        throw new IOCResolutionException("cycle while creating singleton bean: " + beanType.getName());
+      }
+      return constructed;
+    }
+
+    if (isApplicationContext(context)) {
+      // requested by the bootstrapper or by another singleton: that context resolves our proxies when it finishes
+      final SimpleCreationalContext applicationContext = (SimpleCreationalContext) context;
+      creatingContext = applicationContext;
+      try {
+        instance = beanProvider.getInstance(applicationContext);
+      }
+      finally {
+        creatingContext = null;
+      }
+    }
+    else {
+      final SimpleCreationalContext singletonContext
+          = new SimpleCreationalContext(true, IOC.getBeanManager(), ApplicationScoped.class);
+      creatingContext = singletonContext;
+      try {
+        final T created = beanProvider.getInstance(singletonContext);
+        singletonContext.finish();
+        instance = created;
+      }
+      finally {
+        creatingContext = null;
+      }
+    }
+    return instance;
+  }
+
+  private static boolean isApplicationContext(final CreationalContext context) {
+    if (!(context instanceof SimpleCreationalContext)) {
+      return false;
+    }
+    final SimpleCreationalContext simpleContext = (SimpleCreationalContext) context;
+    return simpleContext.immutableContext && ApplicationScoped.class.equals(simpleContext.scope);
+  }
+}
@@ -44,6 +44,24 @@ public class SyncBeanManagerImpl implements SyncBeanManager, SyncBeanManagerSetu
   private final Map<Class<?>, List<IOCBeanDef>> beanMap
       = new HashMap<Class<?>, List<IOCBeanDef>>();
 
+  /**
+   * All beans managed by the bean manager, in registration order. Used for lookups of {@code java.lang.Object}.
+   */
+  private final List<IOCBeanDef> allBeans = new ArrayList<IOCBeanDef>();
+
+  /**
+   * The maximum number of lookup results kept in the {@link #lookupCache}. The cache is cleared when it is full.
+   */
+  private static final int MAX_CACHED_LOOKUPS = 1024;
+
+  /**
+   * The results of previous lookups, keyed by type and then by the requested qualifiers. Lookups only depend on the
+   * registered beans, so this is cleared whenever a bean is registered. Qualified lookups are only cached once the
+   * {@link QualifierUtil} can compare qualifiers by value.
+   */
+  private final Map<Class<?>, Map<QualifierKey, List>> lookupCache = new HashMap<Class<?>, Map<QualifierKey, List>>();
+  private int cachedLookupCount;
+
   /**
    * A map which contains bean instances as keys, and their associated {@link CreationalContext}s as values.
    */
@@ -170,7 +188,7 @@ public class SyncBeanManagerImpl implements SyncBeanManager, SyncBeanManagerSetu
       concreteBeans.add(type.getName());
     }
 
-    if (instance != null) {
+    if (instance != null || callback instanceof SingletonBeanProvider) {
       registerSingletonBean(type, beanType, callback, instance, qualifiers, name, concreteType, beanActivatorType);
     }
     else {
@@ -233,6 +251,8 @@ public class SyncBeanManagerImpl implements SyncBeanManager, SyncBeanManagerSetu
       beanMap.put(bean.getType(), new ArrayList<IOCBeanDef>());
     }
     beanMap.get(bean.getType()).add(bean);
+    allBeans.add(bean);
+    clearLookupCache();
     return bean;
   }
 
@@ -247,44 +267,74 @@ public class SyncBeanManagerImpl implements SyncBeanManager, SyncBeanManagerSetu
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public <T> Collection<IOCBeanDef<T>> lookupBeans(final Class<T> type) {
-    final List<IOCBeanDef> beanList;
+    final Map<QualifierKey, List> cached = getLookupCache(type);
+    List matching = cached.get(QualifierKey.NONE);
+    if (matching == null) {
+      final List<IOCBeanDef> beanList = getBeanList(type);
+      matching = (beanList == null) ? Collections.emptyList()
+          : Collections.unmodifiableList(new ArrayList<IOCBeanDef>(beanList));
+      putLookup(type, QualifierKey.NONE, matching);
+    }
 
-    if (type.getName().equals("java.lang.Object")) {
-      beanList = new ArrayList<IOCBeanDef>();
-      for (final List<IOCBeanDef> list : beanMap.values()) {
-        beanList.addAll(list);
-      }
+    return matching;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> Collection<IOCBeanDef<T>> lookupBeans(final Class<T> type, final Annotation... qualifierInstances) {
+    if (!QualifierUtil.isInitialized()) {
+      // qualifiers can only be compared by type yet, so @Named("a") and @Named("b") would share a cache entry
+      return lookupQualifiedBeans(type, qualifierInstances);
     }
-    else {
-      beanList = beanMap.get(type);
+
+    final Map<QualifierKey, List> cached = getLookupCache(type);
+    final QualifierKey key = new QualifierKey(qualifierInstances);
+    List matching = cached.get(key);
+    if (matching == null) {
+      matching = lookupQualifiedBeans(type, qualifierInstances);
+      putLookup(type, key, matching);
     }
 
-    final List<IOCBeanDef<T>> matching = new ArrayList<IOCBeanDef<T>>();
+    return matching;
+  }
 
-    if (beanList != null) {
-      for (final IOCBeanDef<T> beanDef : beanList) {
-        matching.add(beanDef);
-      }
+  private Map<QualifierKey, List> getLookupCache(final Class<?> type) {
+    final Map<QualifierKey, List> cached = lookupCache.get(type);
+    return (cached == null) ? Collections.<QualifierKey, List> emptyMap() : cached;
+  }
+
+  private void putLookup(final Class<?> type, final QualifierKey key, final List matching) {
+    if (cachedLookupCount >= MAX_CACHED_LOOKUPS) {
+      clearLookupCache();
     }
 
-    return Collections.unmodifiableList(matching);
+    Map<QualifierKey, List> cached = lookupCache.get(type);
+    if (cached == null) {
+      lookupCache.put(type, cached = new HashMap<QualifierKey, List>());
+    }
+    cached.put(key, matching);
+    cachedLookupCount++;
   }
 
-  @Override
-  @SuppressWarnings("unchecked")
-  public <T> Collection<IOCBeanDef<T>> lookupBeans(final Class<T> type, final Annotation... qualifierInstances) {
-    final List<IOCBeanDef> beanList;
+  private void clearLookupCache() {
+    lookupCache.clear();
+    cachedLookupCount = 0;
+  }
 
+  private List<IOCBeanDef> getBeanList(final Class<?> type) {
     if (type.getName().equals("java.lang.Object")) {
-      beanList = new ArrayList<IOCBeanDef>();
-      for (final List<IOCBeanDef> list : beanMap.values()) {
-        beanList.addAll(list);
-      }
+      return allBeans;
     }
     else {
-      beanList = beanMap.get(type);
+      return beanMap.get(type);
     }
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> List<IOCBeanDef<T>> lookupQualifiedBeans(final Class<T> type, final Annotation... qualifierInstances) {
+    final List<IOCBeanDef> beanList = getBeanList(type);
 
     if (beanList == null) {
       return Collections.emptyList();
@@ -358,5 +408,67 @@ public class SyncBeanManagerImpl implements SyncBeanManager, SyncBeanManagerSetu
   public void destroyAllBeans() {
     namedBeans.clear();
     beanMap.clear();
+    allBeans.clear();
+    clearLookupCache();
+  }
+
+  /**
+   * The qualifiers of a lookup, compared by value and regardless of order.
+   */
+  private static final class QualifierKey {
+    /**
+     * The key of lookups without qualifier matching, which differ from lookups with an empty set of qualifiers.
+     */
+    private static final QualifierKey NONE = new QualifierKey(new Annotation[0], true);
+
+    private final Annotation[] qualifiers;
+    private final boolean unqualified;
+    private final int hashCode;
+
+    private QualifierKey(final Annotation[] qualifiers) {
+      this((qualifiers == null) ? new Annotation[0] : qualifiers.clone(), false);
+    }
+
+    private QualifierKey(final Annotation[] qualifiers, final boolean unqualified) {
+      this.qualifiers = qualifiers;
+      this.unqualified = unqualified;
+
+      int hashCode = unqualified ? -1 : qualifiers.length;
+      for (final Annotation qualifier : this.qualifiers) {
+        hashCode += QualifierUtil.hashCodeOf(qualifier);
+      }
+      this.hashCode = hashCode;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof QualifierKey)) {
+        return false;
+      }
+
+      final QualifierKey other = (QualifierKey) o;
+      if (hashCode != other.hashCode || unqualified != other.unqualified
+          || qualifiers.length != other.qualifiers.length) {
+        return false;
+      }
+      outer:
+      for (final Annotation qualifier : qualifiers) {
+        for (final Annotation otherQualifier : other.qualifiers) {
+          if (QualifierUtil.isEqual(qualifier, otherQualifier)) {
+            continue outer;
+          }
+        }
+        return false;
+      }
+      return true;
+    }
   }
 }
@@ -68,6 +68,7 @@ import org.jboss.errai.ioc.client.api.EnabledByProperty;
 import org.jboss.errai.ioc.client.api.EntryPoint;
 import org.jboss.errai.ioc.client.api.IOCBootstrapTask;
 import org.jboss.errai.ioc.client.api.IOCProvider;
+import org.jboss.errai.ioc.client.api.LoadAsync;
 import org.jboss.errai.ioc.client.api.TaskOrder;
 import org.jboss.errai.ioc.client.api.TestMock;
 import org.jboss.errai.ioc.client.container.CreationalContext;
@@ -254,6 +255,11 @@ public class IOCBootstrapGenerator {
     injectionContextBuilder.reachableTypes(allDeps);
     injectionContextBuilder.asyncBootstrap(asyncBootstrap);
 
+    final String lazySingletons
+        = EnvUtil.getEnvironmentConfig().getFrameworkOrSystemProperty("errai.ioc.lazy_singletons");
+    injectionContextBuilder.lazySingletons(!asyncBootstrap && lazySingletons != null
+        && Boolean.parseBoolean(lazySingletons));
+
     final InjectionContext injectionContext = injectionContextBuilder.build();
 
     defaultConfigureProcessor(injectionContext);
@@ -464,6 +470,8 @@ public class IOCBootstrapGenerator {
 
     injectionContext.mapElementType(WiringElementType.AlternativeBean, Alternative.class);
     injectionContext.mapElementType(WiringElementType.TestMockBean, TestMock.class);
+
+    injectionContext.mapElementType(WiringElementType.LoadAsyncBean, LoadAsync.class);
   }
 
   private static boolean processStereoType(final InjectionContext injectionContext,
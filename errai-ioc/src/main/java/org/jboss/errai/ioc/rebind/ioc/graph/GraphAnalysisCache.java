@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.ioc.rebind.ioc.graph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.errai.common.rebind.CacheStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the analysis of the IOC dependency graph (the dependencies, depth and cycles of each type) between refreshes
+ * in development mode. When the graph is built again, only the types whose dependencies changed and the types that
+ * depend on them, directly or indirectly, are analysed again.
+ * <p>
+ * The analysis of a type only depends on the edges of the graph that can be reached from it, so it is still valid if
+ * none of the types it reaches has a different set of dependencies than before. Comparing the edges, rather than
+ * relying on the list of changed classes, also covers dependencies that come from configuration or generated code.
+ * <p>
+ * The analysis survives {@link #clear()}, which is called on every refresh. It is not kept when
+ * {@code errai.devel.nocache} is set.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class GraphAnalysisCache implements CacheStore {
+  private static final Logger log = LoggerFactory.getLogger(GraphAnalysisCache.class);
+
+  private static final boolean nocache = Boolean.getBoolean("errai.devel.nocache");
+
+  private static class Analysis {
+    final Set<String> reachableTypes;
+    final int depth;
+    final boolean cyclic;
+
+    Analysis(final Set<String> reachableTypes, final int depth, final boolean cyclic) {
+      this.reachableTypes = reachableTypes;
+      this.depth = depth;
+      this.cyclic = cyclic;
+    }
+  }
+
+  private final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+  private final Map<String, Analysis> analyses = new HashMap<String, Analysis>();
+
+  /**
+   * Called when the generation caches are cleared, at the start of every refresh. The analysis of the previous graph
+   * is kept, {@link #analyse(Collection)} decides which parts of it are still valid.
+   */
+  @Override
+  public synchronized void clear() {
+    if (nocache) {
+      dependencies.clear();
+      analyses.clear();
+    }
+  }
+
+  /**
+   * Analyses the given graph, restoring the analysis of the units whose part of the graph did not change since the
+   * previous call, and remembers the result for the next call.
+   *
+   * @param units
+   *          all units of the graph, including the ones only reachable as dependencies.
+   */
+  public synchronized void analyse(final Collection<SortUnit> units) {
+    final Map<String, Set<String>> newDependencies = new HashMap<String, Set<String>>();
+    final Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+    for (final SortUnit unit : units) {
+      final String type = unit.getType().getFullyQualifiedName();
+      final Set<String> deps = new HashSet<String>();
+      for (final SortUnit dep : unit.getDependencies()) {
+        final String depType = dep.getType().getFullyQualifiedName();
+        deps.add(depType);
+
+        Set<String> depDependents = dependents.get(depType);
+        if (depDependents == null) {
+          dependents.put(depType, depDependents = new HashSet<String>());
+        }
+        depDependents.add(type);
+      }
+      newDependencies.put(type, deps);
+    }
+
+    // the changed types and everything that reaches them have to be analysed again
+    final Set<String> invalid = new HashSet<String>();
+    final List<String> toVisit = new ArrayList<String>();
+    for (final Map.Entry<String, Set<String>> entry : newDependencies.entrySet()) {
+      if (!entry.getValue().equals(dependencies.get(entry.getKey()))) {
+        toVisit.add(entry.getKey());
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      final String type = toVisit.remove(toVisit.size() - 1);
+      if (invalid.add(type) && dependents.containsKey(type)) {
+        toVisit.addAll(dependents.get(type));
+      }
+    }
+
+    int restored = 0;
+    for (final SortUnit unit : units) {
+      final String type = unit.getType().getFullyQualifiedName();
+      final Analysis analysis = analyses.get(type);
+      if (analysis != null && !invalid.contains(type)) {
+        unit.restoreAnalysis(analysis.reachableTypes, analysis.depth, analysis.cyclic);
+        restored++;
+      }
+    }
+
+    dependencies.clear();
+    dependencies.putAll(newDependencies);
+    analyses.clear();
+    for (final SortUnit unit : units) {
+      analyses.put(unit.getType().getFullyQualifiedName(),
+          new Analysis(unit.getReachableTypes(), unit.getDepth(), unit.isCyclicGraph()));
+    }
+
+    log.debug("restored the dependency analysis of " + restored + " of " + units.size() + " types");
+  }
+}
@@ -3,6 +3,7 @@ package org.jboss.errai.ioc.rebind.ioc.graph;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.common.rebind.CacheUtil;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -75,6 +76,8 @@ public class GraphBuilder {
       sortUnitList.add(_build(sortUnitHashMap, type));
     }
 
+    CacheUtil.getCache(GraphAnalysisCache.class).analyse(sortUnitHashMap.values());
+
     return sortUnitList;
   }
 
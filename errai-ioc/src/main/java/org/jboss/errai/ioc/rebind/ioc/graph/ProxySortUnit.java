@@ -55,6 +55,26 @@ public class ProxySortUnit extends SortUnit {
     return delegate.compareTo(o);
   }
 
+  @Override
+  public boolean hasDependency(SortUnit unit) {
+    return delegate.hasDependency(unit);
+  }
+
+  @Override
+  public boolean isCyclicGraph() {
+    return delegate.isCyclicGraph();
+  }
+
+  @Override
+  public Set<String> getReachableTypes() {
+    return delegate.getReachableTypes();
+  }
+
+  @Override
+  void restoreAnalysis(Set<String> reachableTypes, int depth, boolean cyclic) {
+    delegate.restoreAnalysis(reachableTypes, depth, cyclic);
+  }
+
   @Override
   public String toString() {
     return delegate.toString();
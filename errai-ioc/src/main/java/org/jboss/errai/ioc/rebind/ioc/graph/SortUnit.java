@@ -39,6 +39,14 @@ public class SortUnit implements Comparable<SortUnit> {
   private final List<Object> items;
   private final Set<SortUnit> dependencies;
 
+  /*
+   * the results of the graph queries below are memoized: the sort compares every pair of units, and each comparison
+   * used to walk the graph. They are also restored from the GraphAnalysisCache for unchanged parts of the graph.
+   */
+  private Set<String> reachableTypes;
+  private int depth = -1;
+  private Boolean cyclic;
+
   protected SortUnit(final MetaClass type, final List<Object> items, final Set<SortUnit> dependencies) {
     this.type = type.getErased();
     this.items = Collections.unmodifiableList(items);
@@ -88,32 +96,44 @@ public class SortUnit implements Comparable<SortUnit> {
    * @return true if the specified SortUnit is a direct or indirect dependency of this SortUnit.
    */
   public boolean hasDependency(final SortUnit unit) {
-    return _hasDependency(new HashSet<String>(), this, unit);
+    return getReachableTypes().contains(unit.getType().getFullyQualifiedName());
   }
 
   public boolean isCyclicGraph() {
-    return _hasCycle(new HashSet<SortUnit>());
-  }
-
-  private static boolean _hasDependency(final Set<String> visited,
-                                        final SortUnit from,
-                                        final SortUnit to) {
-
-    final String fromType = from.getType().getFullyQualifiedName();
-    if (visited.contains(fromType)) {
-      return false;
+    if (cyclic == null) {
+      cyclic = _hasCycle(new HashSet<SortUnit>());
     }
-    visited.add(fromType);
+    return cyclic;
+  }
 
-    if (!from.getDependencies().contains(to)) {
-      for (SortUnit dep : from.getDependencies()) {
-        if (_hasDependency(visited, dep, to)) return true;
+  /**
+   * Returns the names of all types that are direct or indirect dependencies of this SortUnit. The name of this unit's
+   * own type is included if it depends on itself through a cycle.
+   *
+   * @return an unmodifiable set of fully qualified type names.
+   */
+  public Set<String> getReachableTypes() {
+    if (reachableTypes == null) {
+      final Set<String> reachable = new HashSet<String>();
+      final List<SortUnit> toVisit = new ArrayList<SortUnit>(getDependencies());
+      while (!toVisit.isEmpty()) {
+        final SortUnit unit = toVisit.remove(toVisit.size() - 1);
+        if (reachable.add(unit.getType().getFullyQualifiedName())) {
+          toVisit.addAll(unit.getDependencies());
+        }
       }
-      return false;
-    }
-    else {
-      return true;
+      reachableTypes = Collections.unmodifiableSet(reachable);
     }
+    return reachableTypes;
+  }
+
+  /**
+   * Restores the results of a previous analysis of the graph of this SortUnit.
+   */
+  void restoreAnalysis(final Set<String> reachableTypes, final int depth, final boolean cyclic) {
+    this.reachableTypes = reachableTypes;
+    this.depth = depth;
+    this.cyclic = cyclic;
   }
 
   /**
@@ -122,14 +142,17 @@ public class SortUnit implements Comparable<SortUnit> {
    * @return the outward depth of the graph from this SortUnit.
    */
   public int getDepth() {
-    int depth = 0;
-    for (SortUnit su : getDependencies()) {
-      if (su.equals(this)) continue;
-
-      int d = _getDepth(new IdentityHashSet<SortUnit>(), this, 1, su);
-      if (d > depth) {
-        depth = d;
+    if (depth < 0) {
+      int maxDepth = 0;
+      for (SortUnit su : getDependencies()) {
+        if (su.equals(this)) continue;
+
+        int d = _getDepth(new IdentityHashSet<SortUnit>(), this, 1, su);
+        if (d > maxDepth) {
+          maxDepth = d;
+        }
       }
+      depth = maxDepth;
     }
     return depth;
   }
@@ -63,6 +63,7 @@ public class InjectionContext {
   private final Multimap<WiringElementType, Class<? extends Annotation>> elementBindings = HashMultimap.create();
 
   private final boolean async;
+  private final boolean lazySingletons;
   private final InjectorFactory injectorFactory;
 
   // do not refactor to a MultiMap. the resolution algorithm has dynamic replacement of injectors that is difficult
@@ -115,6 +116,7 @@ public class InjectionContext {
     this.whitelist = Assert.notNull(builder.whitelist);
     this.blacklist = Assert.notNull(builder.blacklist);
     this.async = builder.async;
+    this.lazySingletons = builder.lazySingletons;
     this.injectorFactory = new InjectorFactory(this.async);
   }
 
@@ -122,6 +124,7 @@ public class InjectionContext {
     private IOCProcessingContext processingContext;
     private ReachableTypes reachableTypes = ReachableTypes.EVERYTHING_REACHABLE_INSTANCE;
     private boolean async;
+    private boolean lazySingletons;
     private final HashSet<String> enabledAlternatives = new HashSet<String>();
     private final HashSet<String> whitelist = new HashSet<String>();
     private final HashSet<String> blacklist = new HashSet<String>();
@@ -160,6 +163,11 @@ public class InjectionContext {
       return this;
     }
 
+    public Builder lazySingletons(final boolean lazySingletons) {
+      this.lazySingletons = lazySingletons;
+      return this;
+    }
+
     public InjectionContext build() {
       Assert.notNull("the processingContext cannot be null", processingContext);
 
@@ -894,4 +902,12 @@ public class InjectionContext {
   public boolean isAsync() {
     return async;
   }
+
+  /**
+   * @return true if singletons (other than entry points and beans that must observe events from the start) should
+   * be created when they are first looked up or injected, rather than while bootstrapping the container.
+   */
+  public boolean isLazySingletons() {
+    return lazySingletons;
+  }
 }
@@ -14,5 +14,10 @@ public enum WiringElementType {
   ProducerElement,
   AlternativeBean,
   TestMockBean,
+  /**
+   * Beans whose code is placed behind a split point and downloaded when the bean is first needed. Only supported by
+   * the asynchronous bean manager.
+   */
+  LoadAsyncBean,
   NotSupported
 }
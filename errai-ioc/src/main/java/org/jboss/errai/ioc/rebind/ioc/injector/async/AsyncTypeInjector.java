@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Set;
 
 import javax.enterprise.inject.Specializes;
+import javax.enterprise.inject.Stereotype;
 import javax.inject.Named;
 
 import org.jboss.errai.codegen.Cast;
@@ -119,7 +120,9 @@ public class AsyncTypeInjector extends AbstractAsyncInjector {
             Parameter.of(AsyncCreationalContext.class, "context", true));
 
 
-    final boolean loadAsync = type.isAnnotationPresent(LoadAsync.class);
+    final LoadAsync loadAsyncAnnotation = getLoadAsync(type);
+    final boolean loadAsync = loadAsyncAnnotation != null
+        || injectContext.isElementType(WiringElementType.LoadAsyncBean, type);
 
     final BlockBuilder<AnonymousClassStructureBuilder> targetBlock;
 
@@ -200,7 +203,8 @@ public class AsyncTypeInjector extends AbstractAsyncInjector {
       final String frameworkOrSystemProperty
           = EnvUtil.getEnvironmentConfig().getFrameworkOrSystemProperty("errai.ioc.testing.simulated_loadasync_latency");
       
-      Class<?> fragmentName = type.getAnnotation(LoadAsync.class).value();
+      // beans mapped to LoadAsyncBean by an extension get a split point of their own
+      Class<?> fragmentName = (loadAsyncAnnotation != null) ? loadAsyncAnnotation.value() : NO_FRAGMENT.class;
       
       Class<?> gwtClass = Boolean.parseBoolean(frameworkOrSystemProperty) ? FakeGWT.class : GWT.class;
       Statement asyncStatement = (NO_FRAGMENT.class.equals(fragmentName)) ? 
@@ -370,4 +374,33 @@ public class AsyncTypeInjector extends AbstractAsyncInjector {
   public boolean isRegularTypeInjector() {
     return true;
   }
+
+  /**
+   * Returns the {@link LoadAsync} annotation of the given type, or of one of its stereotypes.
+   *
+   * @return the annotation, or null if neither the type nor its stereotypes are annotated with {@link LoadAsync}.
+   */
+  static LoadAsync getLoadAsync(final MetaClass type) {
+    if (type.isAnnotationPresent(LoadAsync.class)) {
+      return type.getAnnotation(LoadAsync.class);
+    }
+    return getLoadAsync(type.getAnnotations(), new HashSet<Class<? extends Annotation>>());
+  }
+
+  private static LoadAsync getLoadAsync(final Annotation[] annotations, final Set<Class<? extends Annotation>> visited) {
+    for (final Annotation annotation : annotations) {
+      final Class<? extends Annotation> annotationType = annotation.annotationType();
+      if (!annotationType.isAnnotationPresent(Stereotype.class) || !visited.add(annotationType)) {
+        continue;
+      }
+      if (annotationType.isAnnotationPresent(LoadAsync.class)) {
+        return annotationType.getAnnotation(LoadAsync.class);
+      }
+      final LoadAsync inherited = getLoadAsync(annotationType.getAnnotations(), visited);
+      if (inherited != null) {
+        return inherited;
+      }
+    }
+    return null;
+  }
 }
@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.enterprise.event.Observes;
 import javax.enterprise.inject.Specializes;
 import javax.inject.Named;
 
@@ -38,10 +39,15 @@ import org.jboss.errai.codegen.Statement;
 import org.jboss.errai.codegen.builder.AnonymousClassStructureBuilder;
 import org.jboss.errai.codegen.builder.BlockBuilder;
 import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaMethod;
+import org.jboss.errai.codegen.meta.MetaParameter;
 import org.jboss.errai.codegen.util.Refs;
+import org.jboss.errai.codegen.util.Stmt;
+import org.jboss.errai.ioc.client.api.EntryPoint;
 import org.jboss.errai.ioc.client.api.qualifiers.BuiltInQualifiers;
 import org.jboss.errai.ioc.client.container.BeanProvider;
 import org.jboss.errai.ioc.client.container.CreationalContext;
+import org.jboss.errai.ioc.client.container.SingletonBeanProvider;
 import org.jboss.errai.ioc.rebind.ioc.bootstrapper.IOCProcessingContext;
 import org.jboss.errai.ioc.rebind.ioc.exception.InjectionFailure;
 import org.jboss.errai.ioc.rebind.ioc.injector.AbstractInjector;
@@ -62,9 +68,19 @@ import org.jboss.errai.ioc.rebind.ioc.metadata.JSR330QualifyingMetadata;
  * @author Mike Brock
  */
 public class TypeInjector extends AbstractInjector {
+  private static final String SERVICE_ANNOTATION = "org.jboss.errai.bus.server.annotations.Service";
+
   protected final MetaClass type;
   protected String instanceVarName;
 
+  /**
+   * True if this singleton is created on first use (see {@link InjectionContext#isLazySingletons()}). The bootstrapper
+   * then holds a {@link SingletonBeanProvider} instead of the instance, and the plain bean provider is kept in
+   * {@link #factoryVarName} for injection points qualified with {@code @New}.
+   */
+  private final boolean lazySingleton;
+  private String factoryVarName;
+
   public TypeInjector(final MetaClass type, final InjectionContext context) {
     this.type = type;
 
@@ -76,6 +92,7 @@ public class TypeInjector extends AbstractInjector {
     this.testMock = context.isElementType(WiringElementType.TestMockBean, type);
     this.singleton = context.isElementType(WiringElementType.SingletonBean, type);
     this.alternative = context.isElementType(WiringElementType.AlternativeBean, type);
+    this.lazySingleton = singleton && context.isLazySingletons() && !isEagerSingleton(type);
 
     this.instanceVarName = InjectUtil.getNewInjectorName().concat("_").concat(type.getName());
 
@@ -133,6 +150,7 @@ public class TypeInjector extends AbstractInjector {
      /* get a new unique variable for the creational callback */
     creationalCallbackVarName = InjectUtil.getNewInjectorName().concat("_")
         .concat(type.getName()).concat("_creational");
+    factoryVarName = lazySingleton ? creationalCallbackVarName.concat("_factory") : creationalCallbackVarName;
 
      /* get the construction strategy and execute it to wire the bean */
     getConstructionStrategy(this, injectContext).generateConstructor(new ConstructionStatusCallback() {
@@ -170,10 +188,24 @@ public class TypeInjector extends AbstractInjector {
      declare a final variable for the BeanProvider and initialize it with the anonymous class we just
      built.
      */
-    ctx.getBootstrapBuilder().privateField(creationalCallbackVarName, creationCallbackRef).modifiers(Modifier.Final)
+    ctx.getBootstrapBuilder().privateField(factoryVarName, creationCallbackRef).modifiers(Modifier.Final)
         .initializesWith(callbackBuilder.finish().finish()).finish();
 
-    if (isSingleton()) {
+    if (lazySingleton) {
+      /*
+       if the singleton is created on first use, the creational callback variable holds a SingletonBeanProvider
+       wrapping the bean provider. The bean manager and all injection points obtain the instance from it.
+       */
+      final MetaClass singletonProviderRef = parameterizedAs(SingletonBeanProvider.class, typeParametersOf(type));
+      ctx.getBootstrapBuilder().privateField(creationalCallbackVarName, singletonProviderRef)
+          .modifiers(Modifier.Final)
+          .initializesWith(Stmt.newObject(singletonProviderRef, Refs.get(factoryVarName), load(type),
+              load(qualifyingMetadata.getQualifiers())))
+          .finish();
+
+      registerWithBeanManager(injectContext, load(null));
+    }
+    else if (isSingleton()) {
        /*
         if the injector is for a singleton, we create a variable to hold the singleton reference in the bootstrapper
         method and assign it with SimpleCreationalContext.getInstance().
@@ -203,7 +235,13 @@ public class TypeInjector extends AbstractInjector {
   public Statement getBeanInstance(final InjectableInstance injectableInstance) {
     renderProvider(injectableInstance);
 
-    if (isSingleton() && !hasNewQualifier(injectableInstance)) {
+    if (lazySingleton) {
+      if (hasNewQualifier(injectableInstance)) {
+        return loadVariable(factoryVarName).invoke("getInstance", Refs.get("context"));
+      }
+      return loadVariable(creationalCallbackVarName).invoke("getInstance", Refs.get("context"));
+    }
+    else if (isSingleton() && !hasNewQualifier(injectableInstance)) {
 
       /**
        * if this bean is a singleton bean and there is no @New qualifier on the site we're injecting
@@ -221,6 +259,40 @@ public class TypeInjector extends AbstractInjector {
     }
   }
 
+  /**
+   * Entry points and singletons that observe events or receive bus messages have to exist from the start, even if
+   * nothing looks them up or injects them. Observer and service methods may have any visibility and may be inherited,
+   * so the declared methods of the whole class hierarchy are checked.
+   */
+  static boolean isEagerSingleton(final MetaClass type) {
+    if (type.isAnnotationPresent(EntryPoint.class) || hasAnnotation(type.getAnnotations(), SERVICE_ANNOTATION)) {
+      return true;
+    }
+
+    for (MetaClass c = type; c != null && !c.getFullyQualifiedName().equals("java.lang.Object"); c = c.getSuperClass()) {
+      for (final MetaMethod method : c.getDeclaredMethods()) {
+        if (hasAnnotation(method.getAnnotations(), SERVICE_ANNOTATION)) {
+          return true;
+        }
+        for (final MetaParameter parameter : method.getParameters()) {
+          if (parameter.isAnnotationPresent(Observes.class)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasAnnotation(final Annotation[] annotations, final String annotationName) {
+    for (final Annotation annotation : annotations) {
+      if (annotation.annotationType().getName().equals(annotationName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private Set<Annotation> makeSpecialized(final InjectionContext context) {
     final MetaClass type = getInjectedType();
 
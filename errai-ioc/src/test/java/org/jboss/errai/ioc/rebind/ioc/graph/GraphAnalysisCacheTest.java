@@ -0,0 +1,119 @@
+package org.jboss.errai.ioc.rebind.ioc.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+
+public class GraphAnalysisCacheTest extends TestCase {
+
+  public static class A {
+  }
+
+  public static class B {
+  }
+
+  public static class C {
+  }
+
+  public static class D {
+  }
+
+  private final GraphAnalysisCache cache = new GraphAnalysisCache();
+
+  /**
+   * Builds the units of a graph given as pairs of dependent and dependency types. A null dependency only adds the
+   * dependent type to the graph.
+   */
+  private static Map<Class<?>, SortUnit> graph(final Class<?>... edges) {
+    final Map<Class<?>, Set<SortUnit>> dependencies = new LinkedHashMap<Class<?>, Set<SortUnit>>();
+    for (final Class<?> type : edges) {
+      if (type != null && !dependencies.containsKey(type)) {
+        dependencies.put(type, new HashSet<SortUnit>());
+      }
+    }
+
+    final Map<Class<?>, SortUnit> units = new LinkedHashMap<Class<?>, SortUnit>();
+    for (final Map.Entry<Class<?>, Set<SortUnit>> entry : dependencies.entrySet()) {
+      // the unit keeps a view of the set, so edges can be added once all units exist
+      units.put(entry.getKey(), new SortUnit(MetaClassFactory.get(entry.getKey()), Collections.<Object> emptyList(),
+          entry.getValue()));
+    }
+    for (int i = 0; i < edges.length; i += 2) {
+      if (edges[i + 1] == null) {
+        continue;
+      }
+      dependencies.get(edges[i]).add(units.get(edges[i + 1]));
+    }
+    return units;
+  }
+
+  private void analyse(final Map<Class<?>, SortUnit> units) {
+    cache.analyse(new ArrayList<SortUnit>(units.values()));
+  }
+
+  private static Set<String> names(final Class<?>... types) {
+    final Set<String> names = new HashSet<String>();
+    for (final Class<?> type : types) {
+      names.add(MetaClassFactory.get(type).getFullyQualifiedName());
+    }
+    return names;
+  }
+
+  public void testUnchangedGraphIsRestored() {
+    analyse(graph(A.class, B.class, B.class, C.class));
+
+    final Map<Class<?>, SortUnit> units = graph(A.class, B.class, B.class, C.class);
+    analyse(units);
+    assertEquals(names(B.class, C.class), units.get(A.class).getReachableTypes());
+    assertEquals(2, units.get(A.class).getDepth());
+    assertFalse(units.get(A.class).isCyclicGraph());
+  }
+
+  public void testAddedEdgeInvalidatesDependents() {
+    final Map<Class<?>, SortUnit> before = graph(A.class, B.class, B.class, C.class, D.class, null);
+    analyse(before);
+    assertEquals(names(B.class, C.class), before.get(A.class).getReachableTypes());
+    assertEquals(2, before.get(A.class).getDepth());
+
+    // only C changes, but A and B reach it
+    final Map<Class<?>, SortUnit> after = graph(A.class, B.class, B.class, C.class, C.class, D.class);
+    analyse(after);
+    assertEquals(names(B.class, C.class, D.class), after.get(A.class).getReachableTypes());
+    assertEquals(3, after.get(A.class).getDepth());
+    assertEquals(names(C.class, D.class), after.get(B.class).getReachableTypes());
+    assertEquals(2, after.get(B.class).getDepth());
+  }
+
+  public void testAddedEdgeClosingCycleInvalidatesDependents() {
+    final Map<Class<?>, SortUnit> before = graph(A.class, B.class, B.class, C.class, C.class, D.class);
+    analyse(before);
+    assertFalse(before.get(A.class).isCyclicGraph());
+    assertFalse(before.get(B.class).isCyclicGraph());
+
+    final Map<Class<?>, SortUnit> after = graph(A.class, B.class, B.class, C.class, C.class, D.class, D.class, B.class);
+    analyse(after);
+    assertTrue(after.get(A.class).isCyclicGraph());
+    assertTrue(after.get(B.class).isCyclicGraph());
+    assertTrue(after.get(B.class).hasDependency(after.get(B.class)));
+    assertEquals(names(B.class, C.class, D.class), after.get(A.class).getReachableTypes());
+  }
+
+  public void testRemovedEdgeInvalidatesDependents() {
+    final Map<Class<?>, SortUnit> before = graph(A.class, B.class, B.class, C.class, C.class, D.class);
+    analyse(before);
+    assertEquals(3, before.get(A.class).getDepth());
+
+    final Map<Class<?>, SortUnit> after = graph(A.class, B.class, B.class, C.class, D.class, null);
+    analyse(after);
+    assertEquals(names(B.class, C.class), after.get(A.class).getReachableTypes());
+    assertEquals(2, after.get(A.class).getDepth());
+    assertEquals(Collections.<String> emptySet(), after.get(C.class).getReachableTypes());
+  }
+}
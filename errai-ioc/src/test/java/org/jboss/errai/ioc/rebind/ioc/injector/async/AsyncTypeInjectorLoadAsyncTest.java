@@ -0,0 +1,73 @@
+package org.jboss.errai.ioc.rebind.ioc.injector.async;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import javax.enterprise.inject.Stereotype;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.ioc.client.api.LoadAsync;
+
+public class AsyncTypeInjectorLoadAsyncTest extends TestCase {
+
+  public static class Fragment {
+  }
+
+  public static class OtherFragment {
+  }
+
+  @Stereotype
+  @LoadAsync(Fragment.class)
+  @Retention(RetentionPolicy.RUNTIME)
+  public static @interface AsyncStereotype {
+  }
+
+  @Stereotype
+  @AsyncStereotype
+  @Retention(RetentionPolicy.RUNTIME)
+  public static @interface NestedStereotype {
+  }
+
+  public static class PlainBean {
+  }
+
+  @LoadAsync(OtherFragment.class)
+  public static class AnnotatedBean {
+  }
+
+  @AsyncStereotype
+  public static class StereotypedBean {
+  }
+
+  @NestedStereotype
+  public static class NestedStereotypedBean {
+  }
+
+  @AsyncStereotype
+  @LoadAsync(OtherFragment.class)
+  public static class OverridingBean {
+  }
+
+  public void testBeanWithoutLoadAsync() {
+    assertNull(AsyncTypeInjector.getLoadAsync(MetaClassFactory.get(PlainBean.class)));
+  }
+
+  public void testLoadAsyncOnBean() {
+    assertEquals(OtherFragment.class, AsyncTypeInjector.getLoadAsync(MetaClassFactory.get(AnnotatedBean.class)).value());
+  }
+
+  public void testLoadAsyncOnStereotype() {
+    assertEquals(Fragment.class, AsyncTypeInjector.getLoadAsync(MetaClassFactory.get(StereotypedBean.class)).value());
+  }
+
+  public void testLoadAsyncOnNestedStereotype() {
+    assertEquals(Fragment.class,
+        AsyncTypeInjector.getLoadAsync(MetaClassFactory.get(NestedStereotypedBean.class)).value());
+  }
+
+  public void testLoadAsyncOnBeanOverridesStereotype() {
+    assertEquals(OtherFragment.class, AsyncTypeInjector.getLoadAsync(MetaClassFactory.get(OverridingBean.class)).value());
+  }
+}
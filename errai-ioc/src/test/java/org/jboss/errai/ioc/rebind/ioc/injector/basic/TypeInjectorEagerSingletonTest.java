@@ -0,0 +1,45 @@
+package org.jboss.errai.ioc.rebind.ioc.injector.basic;
+
+import javax.enterprise.event.Observes;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+
+public class TypeInjectorEagerSingletonTest extends TestCase {
+
+  public static class PlainBean {
+    public void onEvent(final String event) {
+    }
+  }
+
+  public static class PublicObserver {
+    public void onEvent(@Observes final String event) {
+    }
+  }
+
+  public static class PrivateObserver {
+    @SuppressWarnings("unused")
+    private void onEvent(@Observes final String event) {
+    }
+  }
+
+  public static class InheritedPrivateObserver extends PrivateObserver {
+  }
+
+  public void testBeanWithoutObserversIsLazy() {
+    assertFalse(TypeInjector.isEagerSingleton(MetaClassFactory.get(PlainBean.class)));
+  }
+
+  public void testPublicObserverIsEager() {
+    assertTrue(TypeInjector.isEagerSingleton(MetaClassFactory.get(PublicObserver.class)));
+  }
+
+  public void testPrivateObserverIsEager() {
+    assertTrue(TypeInjector.isEagerSingleton(MetaClassFactory.get(PrivateObserver.class)));
+  }
+
+  public void testInheritedPrivateObserverIsEager() {
+    assertTrue(TypeInjector.isEagerSingleton(MetaClassFactory.get(InheritedPrivateObserver.class)));
+  }
+}
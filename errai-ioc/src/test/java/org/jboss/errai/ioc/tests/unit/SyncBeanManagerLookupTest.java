@@ -0,0 +1,79 @@
+package org.jboss.errai.ioc.tests.unit;
+
+import java.lang.annotation.Annotation;
+import java.util.Collection;
+
+import javax.inject.Named;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.ioc.client.QualifierEqualityFactory;
+import org.jboss.errai.ioc.client.QualifierEqualityFactoryProvider;
+import org.jboss.errai.ioc.client.QualifierUtil;
+import org.jboss.errai.ioc.client.container.IOCBeanDef;
+import org.jboss.errai.ioc.client.container.SyncBeanManagerImpl;
+
+public class SyncBeanManagerLookupTest extends TestCase {
+
+  public static class Service {
+  }
+
+  private static Named named(final String value) {
+    return new Named() {
+      @Override
+      public String value() {
+        return value;
+      }
+
+      @Override
+      public Class<? extends Annotation> annotationType() {
+        return Named.class;
+      }
+    };
+  }
+
+  /**
+   * Stands in for the generated factory: compares {@link Named} qualifiers by value, all others by type.
+   */
+  private static class NamedEqualityFactory implements QualifierEqualityFactory {
+    @Override
+    public boolean isEqual(final Annotation a1, final Annotation a2) {
+      if (!QualifierUtil.isSameType(a1, a2)) {
+        return false;
+      }
+      return !(a1 instanceof Named) || ((Named) a1).value().equals(((Named) a2).value());
+    }
+
+    @Override
+    public int hashCodeOf(final Annotation a1) {
+      final int hashCode = a1.annotationType().hashCode();
+      return (a1 instanceof Named) ? hashCode * 31 + ((Named) a1).value().hashCode() : hashCode;
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public void testLookupsBeforeQualifierInitializationAreNotCached() {
+    final SyncBeanManagerImpl beanManager = new SyncBeanManagerImpl();
+    beanManager.addBean((Class) Service.class, Service.class, null, null, new Annotation[] { named("a") }, null,
+            true, null);
+    beanManager.addBean((Class) Service.class, Service.class, null, null, new Annotation[] { named("b") }, null,
+            true, null);
+
+    // before initialization, qualifiers are only compared by type and both beans match
+    assertFalse(QualifierUtil.isInitialized());
+    assertEquals(2, beanManager.lookupBeans(Service.class, named("a")).size());
+
+    QualifierUtil.initFromFactoryProvider(new QualifierEqualityFactoryProvider() {
+      @Override
+      public QualifierEqualityFactory provide() {
+        return new NamedEqualityFactory();
+      }
+    });
+
+    for (final String name : new String[] { "a", "b", "a", "b" }) {
+      final Collection<IOCBeanDef<Service>> matching = beanManager.lookupBeans(Service.class, named(name));
+      assertEquals(1, matching.size());
+      assertTrue(QualifierUtil.isEqual(named(name), matching.iterator().next().getQualifiers().iterator().next()));
+    }
+  }
+}
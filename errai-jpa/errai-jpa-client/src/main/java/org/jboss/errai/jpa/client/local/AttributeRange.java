@@ -0,0 +1,108 @@
+package org.jboss.errai.jpa.client.local;
+
+import org.jboss.errai.common.client.api.Assert;
+
+/**
+ * A restriction of an entity attribute to a single value or a range of values,
+ * which a query's WHERE clause requires every result to meet. Storage backends
+ * can use it to look up candidate entities in an index of the attribute. The
+ * bounds are compared the way JPQL comparisons are evaluated by Errai JPA, and
+ * a bound of null matches no entity at all.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class AttributeRange {
+
+  private final String attributeName;
+  private final Object lowerBound;
+  private final boolean lowerInclusive;
+  private final Object upperBound;
+  private final boolean upperInclusive;
+  private final boolean empty;
+
+  private AttributeRange(String attributeName,
+          Object lowerBound, boolean lowerInclusive,
+          Object upperBound, boolean upperInclusive,
+          boolean empty) {
+    this.attributeName = Assert.notNull(attributeName);
+    this.lowerBound = lowerBound;
+    this.lowerInclusive = lowerInclusive;
+    this.upperBound = upperBound;
+    this.upperInclusive = upperInclusive;
+    this.empty = empty;
+  }
+
+  // MAINTAINERS BEWARE: Errai JPA generates code that uses the factory methods below.
+
+  /**
+   * The range of attribute values equal to {@code value}.
+   */
+  public static AttributeRange equalTo(String attributeName, Object value) {
+    return new AttributeRange(attributeName, value, true, value, true, value == null);
+  }
+
+  /**
+   * The range of attribute values less than (or equal to) {@code value}.
+   */
+  public static AttributeRange lessThan(String attributeName, Object value, boolean inclusive) {
+    return new AttributeRange(attributeName, null, false, value, inclusive, value == null);
+  }
+
+  /**
+   * The range of attribute values greater than (or equal to) {@code value}.
+   */
+  public static AttributeRange greaterThan(String attributeName, Object value, boolean inclusive) {
+    return new AttributeRange(attributeName, value, inclusive, null, false, value == null);
+  }
+
+  /**
+   * The range of attribute values between {@code lower} and {@code upper}, inclusive.
+   */
+  public static AttributeRange between(String attributeName, Object lower, Object upper) {
+    return new AttributeRange(attributeName, lower, true, upper, true, lower == null || upper == null);
+  }
+
+  public String getAttributeName() {
+    return attributeName;
+  }
+
+  /**
+   * Returns the lower bound of this range, or null if it has none.
+   */
+  public Object getLowerBound() {
+    return lowerBound;
+  }
+
+  public boolean isLowerInclusive() {
+    return lowerInclusive;
+  }
+
+  /**
+   * Returns the upper bound of this range, or null if it has none.
+   */
+  public Object getUpperBound() {
+    return upperBound;
+  }
+
+  public boolean isUpperInclusive() {
+    return upperInclusive;
+  }
+
+  /**
+   * Returns true if no attribute value can be within this range, because one
+   * of its bounds was compared to null.
+   */
+  public boolean isEmpty() {
+    return empty;
+  }
+
+  @Override
+  public String toString() {
+    if (empty) {
+      return "AttributeRange [" + attributeName + ": empty]";
+    }
+    return "AttributeRange [" + attributeName + ": "
+            + (lowerBound == null ? "(*" : (lowerInclusive ? "[" : "(") + lowerBound) + ", "
+            + (upperBound == null ? "*)" : upperBound + (upperInclusive ? "]" : ")")) + "]";
+  }
+}
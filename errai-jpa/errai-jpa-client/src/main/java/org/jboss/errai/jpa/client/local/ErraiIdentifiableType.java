@@ -3,7 +3,6 @@ package org.jboss.errai.jpa.client.local;
 import java.util.Set;
 
 import javax.persistence.EntityManager;
-import javax.persistence.PersistenceException;
 import javax.persistence.PostLoad;
 import javax.persistence.PostPersist;
 import javax.persistence.PostRemove;
@@ -114,9 +113,29 @@ public abstract class ErraiIdentifiableType<X> extends ErraiManagedType<X> imple
    */
   @Override
   public X fromJson(EntityManager em, JSONValue jsonValue) {
+    return fromJson(em, JsonObjectOverlay.of(jsonValue.isObject()));
+  }
+
+  /**
+   * Converts the given JSON object, which represents an instance of this entity
+   * type, into the actual instance of this entity type that exists in the given
+   * EntityManager's persistence context. This does the same as
+   * {@link #fromJson(EntityManager, JSONValue)}, but reads the JSON through a
+   * lightweight overlay, which storage backends can get straight from the
+   * stored text with {@link JsonObjectOverlay#parse(String)}.
+   *
+   * @param em
+   *          The EntityManager that owns this entity type and houses the
+   *          persistence context.
+   * @param json
+   *          A JSON object that represents an instance of this entity type.
+   * @return A managed entity that is in the given EntityManager's persistence
+   *         context.
+   */
+  public X fromJson(EntityManager em, JsonObjectOverlay json) {
     final ErraiEntityManager eem = (ErraiEntityManager) em;
 
-    Key<X, ?> key = keyFromJson(jsonValue);
+    Key<X, ?> key = keyFromJson(json);
 
     X entity = eem.getPartiallyConstructedEntity(key);
     if (entity != null) {
@@ -126,43 +145,15 @@ public abstract class ErraiIdentifiableType<X> extends ErraiManagedType<X> imple
     entity = newInstance();
     try {
       eem.putPartiallyConstructedEntity(key, entity);
-      for (Attribute<? super X, ?> a : getAttributes()) {
-        ErraiAttribute<? super X, ?> attr = (ErraiAttribute<? super X, ?>) a;
-        JSONValue attrJsonValue = jsonValue.isObject().get(attr.getName());
-
-        // this attribute did not exist when the entity was originally persisted; skip it.
-        if (attrJsonValue == null) continue;
-
-        switch (attr.getPersistentAttributeType()) {
-        case ELEMENT_COLLECTION:
-        case EMBEDDED:
-        case BASIC:
-          parseInlineJson(entity, attr, attrJsonValue, eem);
-          break;
-
-        case MANY_TO_MANY:
-        case MANY_TO_ONE:
-        case ONE_TO_MANY:
-        case ONE_TO_ONE:
-          if (attr instanceof ErraiSingularAttribute) {
-            parseSingularJsonReference(entity, (ErraiSingularAttribute<? super X, ?>) attr, attrJsonValue, eem);
-          }
-          else if (attr instanceof ErraiPluralAttribute) {
-            parsePluralJsonReference(entity, (ErraiPluralAttribute<? super X, ?, ?>) attr, attrJsonValue.isArray(), eem);
-          }
-          else {
-            throw new PersistenceException("Unknown attribute type " + attr);
-          }
-        }
-      }
+      parseJsonAttributes(eem, entity, json);
       return entity;
     } finally {
       eem.removePartiallyConstructedEntity(key);
     }
   }
 
-  private Key<X, ?> keyFromJson(JSONValue json) {
-    JSONValue keyJson = json.isObject().get(id.getName());
+  private Key<X, ?> keyFromJson(JsonObjectOverlay json) {
+    JSONValue keyJson = json.get(id.getName());
     Object idValue = JsonUtil.basicValueFromJson(keyJson, id.getJavaType());
     return new Key<X, Object>(this, idValue);
   }
@@ -17,9 +17,11 @@ import javax.persistence.metamodel.SetAttribute;
 import javax.persistence.metamodel.SingularAttribute;
 
 import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.common.client.api.WrappedPortable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gwt.core.client.JsonUtils;
 import com.google.gwt.json.client.JSONArray;
 import com.google.gwt.json.client.JSONNull;
 import com.google.gwt.json.client.JSONObject;
@@ -142,32 +144,143 @@ public abstract class ErraiManagedType<X> implements ManagedType<X> {
 
     for (Attribute<? super X, ?> a : getAttributes()) {
       ErraiAttribute<? super X, ?> attr = (ErraiAttribute<? super X, ?>) a;
-      switch (attr.getPersistentAttributeType()) {
-      case ELEMENT_COLLECTION:
-      case EMBEDDED:
-      case BASIC:
-        jsonValue.put(attr.getName(), makeInlineJson(sourceEntity, attr, eem));
-      break;
+      jsonValue.put(attr.getName(), attributeToJson(sourceEntity, attr, eem));
+    }
 
-      case MANY_TO_MANY:
-      case MANY_TO_ONE:
-      case ONE_TO_MANY:
-      case ONE_TO_ONE:
-        JSONValue attributeValue;
-        if (attr instanceof ErraiSingularAttribute) {
-          attributeValue = makeJsonReference(sourceEntity, (ErraiSingularAttribute<? super X, ?>) attr, eem);
-        }
-        else if (attr instanceof ErraiPluralAttribute) {
-          attributeValue = makeJsonReference(sourceEntity, (ErraiPluralAttribute<? super X, ?, ?>) attr, eem);
-        }
-        else {
-          throw new PersistenceException("Unknown attribute type " + attr);
-        }
-        jsonValue.put(attr.getName(), attributeValue);
+    return jsonValue;
+  }
+
+  /**
+   * Returns the JSON text of the given entity. The result represents the same
+   * value as {@link #toJson(EntityManager, Object)}, but the generated entity
+   * types write most attributes straight into the text, without going through
+   * their metamodel attributes and JSONValue objects. The order of the
+   * attributes can differ from the one of {@code toJson()}.
+   *
+   * @param em
+   *          The EntityManager that owns this entity type. Not null.
+   * @param sourceEntity
+   *          The entity to convert. Not null.
+   * @return the JSON object text that represents the given entity.
+   */
+  @SuppressWarnings("unchecked")
+  public String toJsonString(EntityManager em, X sourceEntity) {
+    if (sourceEntity instanceof WrappedPortable) {
+      sourceEntity = (X) ((WrappedPortable) sourceEntity).unwrap();
+    }
+
+    // every attribute starts with a comma; the first one is replaced by the opening brace
+    StringBuilder out = new StringBuilder();
+    appendJsonAttributes(out, (ErraiEntityManager) em, sourceEntity);
+    if (out.length() == 0) {
+      return "{}";
+    }
+    out.setCharAt(0, '{');
+    return out.append('}').toString();
+  }
+
+  /**
+   * Appends all attributes of the given entity to the given buffer, each
+   * preceded by a comma. The generated entity types override this method with
+   * one that writes the values of basic attributes directly and calls
+   * {@link #appendAttributeJson(StringBuilder, ErraiEntityManager, Object, String)}
+   * for the others.
+   */
+  protected void appendJsonAttributes(StringBuilder out, ErraiEntityManager eem, X sourceEntity) {
+    for (Attribute<? super X, ?> a : getAttributes()) {
+      appendAttributeJson(out, eem, sourceEntity, (ErraiAttribute<? super X, ?>) a);
+    }
+  }
+
+  /**
+   * Appends a comma and the named attribute of the given entity to the given
+   * buffer.
+   */
+  protected void appendAttributeJson(StringBuilder out, ErraiEntityManager eem, X sourceEntity, String attributeName) {
+    appendAttributeJson(out, eem, sourceEntity, getAttribute(attributeName));
+  }
+
+  private void appendAttributeJson(StringBuilder out, ErraiEntityManager eem, X sourceEntity, ErraiAttribute<? super X, ?> attr) {
+    out.append(',').append(JsonUtils.escapeValue(attr.getName())).append(':');
+    out.append(attributeToJson(sourceEntity, attr, eem).toString());
+  }
+
+  private JSONValue attributeToJson(X sourceEntity, ErraiAttribute<? super X, ?> attr, ErraiEntityManager eem) {
+    switch (attr.getPersistentAttributeType()) {
+    case ELEMENT_COLLECTION:
+    case EMBEDDED:
+    case BASIC:
+      return makeInlineJson(sourceEntity, attr, eem);
+
+    case MANY_TO_MANY:
+    case MANY_TO_ONE:
+    case ONE_TO_MANY:
+    case ONE_TO_ONE:
+      if (attr instanceof ErraiSingularAttribute) {
+        return makeJsonReference(sourceEntity, (ErraiSingularAttribute<? super X, ?>) attr, eem);
+      }
+      else if (attr instanceof ErraiPluralAttribute) {
+        return makeJsonReference(sourceEntity, (ErraiPluralAttribute<? super X, ?, ?>) attr, eem);
       }
+      else {
+        throw new PersistenceException("Unknown attribute type " + attr);
+      }
+
+    default:
+      throw new IllegalArgumentException("Attribute has unknown type: " + attr);
     }
+  }
 
-    return jsonValue;
+  /**
+   * Reads all attributes of the given entity from the given JSON object.
+   * Attributes that are missing from the JSON (because they did not exist when
+   * the entity was persisted) are left alone. The generated entity types
+   * override this method with one that reads the values of basic attributes
+   * directly and calls
+   * {@link #parseAttributeJson(ErraiEntityManager, Object, JsonObjectOverlay, String)}
+   * for the others.
+   */
+  protected void parseJsonAttributes(ErraiEntityManager eem, X targetEntity, JsonObjectOverlay json) {
+    for (Attribute<? super X, ?> a : getAttributes()) {
+      parseAttributeJson(eem, targetEntity, json, (ErraiAttribute<? super X, ?>) a);
+    }
+  }
+
+  /**
+   * Reads the named attribute of the given entity from the given JSON object,
+   * if it is there.
+   */
+  protected void parseAttributeJson(ErraiEntityManager eem, X targetEntity, JsonObjectOverlay json, String attributeName) {
+    parseAttributeJson(eem, targetEntity, json, getAttribute(attributeName));
+  }
+
+  private void parseAttributeJson(ErraiEntityManager eem, X targetEntity, JsonObjectOverlay json, ErraiAttribute<? super X, ?> attr) {
+    JSONValue attrJsonValue = json.get(attr.getName());
+
+    // this attribute did not exist when the entity was originally persisted; skip it.
+    if (attrJsonValue == null) return;
+
+    switch (attr.getPersistentAttributeType()) {
+    case ELEMENT_COLLECTION:
+    case EMBEDDED:
+    case BASIC:
+      parseInlineJson(targetEntity, attr, attrJsonValue, eem);
+      break;
+
+    case MANY_TO_MANY:
+    case MANY_TO_ONE:
+    case ONE_TO_MANY:
+    case ONE_TO_ONE:
+      if (attr instanceof ErraiSingularAttribute) {
+        parseSingularJsonReference(targetEntity, (ErraiSingularAttribute<? super X, ?>) attr, attrJsonValue, eem);
+      }
+      else if (attr instanceof ErraiPluralAttribute) {
+        parsePluralJsonReference(targetEntity, (ErraiPluralAttribute<? super X, ?, ?>) attr, attrJsonValue.isArray(), eem);
+      }
+      else {
+        throw new PersistenceException("Unknown attribute type " + attr);
+      }
+    }
   }
 
   /**
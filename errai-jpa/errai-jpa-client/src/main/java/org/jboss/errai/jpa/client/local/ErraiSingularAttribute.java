@@ -28,4 +28,10 @@ public interface ErraiSingularAttribute<X, T> extends ErraiAttribute<X, T>, Sing
    *           if this attribute is not a {@code @GeneratedValue}.
    */
   public ErraiIdGenerator<T> getValueGenerator();
+
+  /**
+   * Does client-side storage keep an index of the values of this attribute
+   * (the attribute is annotated with {@code @Indexed}).
+   */
+  public boolean isIndexed();
 }
@@ -1,5 +1,6 @@
 package org.jboss.errai.jpa.client.local;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
@@ -29,7 +30,7 @@ import com.google.common.collect.ImmutableBiMap;
  * @param <X> The result type of this query
  * @author Jonathan Fuerth <jfuerth@gmail.com>
  */
-public abstract class ErraiTypedQuery<X> implements TypedQuery<X>, EntityJsonMatcher {
+public abstract class ErraiTypedQuery<X> implements TypedQuery<X>, IndexedEntityJsonMatcher {
 
   private int maxResults = Integer.MAX_VALUE;
   private int firstResult = 0;
@@ -126,6 +127,39 @@ public abstract class ErraiTypedQuery<X> implements TypedQuery<X>, EntityJsonMat
    */
   protected abstract Comparator<X> getComparator();
 
+  /**
+   * Returns the ranges the WHERE clause of this query restricts attributes to,
+   * with the current parameter values. Generated subclasses override this
+   * method if the WHERE clause is a conjunction that includes comparisons of
+   * attributes with parameters or literals.
+   */
+  @Override
+  public List<AttributeRange> getAttributeRanges() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Generated subclasses override this method if the first ORDER BY item of
+   * this query is a single-valued attribute of the entity.
+   */
+  @Override
+  public String getSortAttributeName() {
+    return null;
+  }
+
+  @Override
+  public boolean isSortDescending() {
+    return false;
+  }
+
+  @Override
+  public int getResultLimit() {
+    if (getSortAttributeName() == null || maxResults == Integer.MAX_VALUE) {
+      return Integer.MAX_VALUE;
+    }
+    return (int) Math.min((long) firstResult + maxResults, Integer.MAX_VALUE);
+  }
+
   // ========= JPA API below this line
 
   @Override
@@ -218,6 +252,11 @@ public abstract class ErraiTypedQuery<X> implements TypedQuery<X>, EntityJsonMat
     if (cmp != null) {
       Collections.sort(results, cmp);
     }
+    if (firstResult > 0 || maxResults < results.size()) {
+      int from = Math.min(firstResult, results.size());
+      int to = (int) Math.min((long) from + maxResults, results.size());
+      results = new ArrayList<X>(results.subList(from, to));
+    }
     return results;
   }
 
@@ -0,0 +1,49 @@
+package org.jboss.errai.jpa.client.local;
+
+import java.util.List;
+
+/**
+ * An entity matcher that tells the storage backend which attribute
+ * restrictions and which order its results are subject to, so that the backend
+ * can use attribute indexes to avoid matching every entity of the queried type.
+ * The backend must still pass every candidate entity to
+ * {@link #matches(com.google.gwt.json.client.JSONObject)}.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public interface IndexedEntityJsonMatcher extends EntityJsonMatcher {
+
+  /**
+   * Returns the attribute ranges that every matching entity is within. An
+   * entity outside any of them will never be accepted by this matcher.
+   *
+   * @return the attribute ranges of this matcher. Never null.
+   */
+  List<AttributeRange> getAttributeRanges();
+
+  /**
+   * Returns the name of the attribute the results are primarily ordered by.
+   *
+   * @return the attribute name, or null if the results are not ordered by a
+   *         single-valued attribute of the entity.
+   */
+  String getSortAttributeName();
+
+  /**
+   * Returns true if the results are primarily ordered by
+   * {@link #getSortAttributeName()} in descending order.
+   */
+  boolean isSortDescending();
+
+  /**
+   * Returns how many results, in the order given by
+   * {@link #getSortAttributeName()}, are needed. Backends that read the
+   * entities in that order may stop once they have found this many matches,
+   * plus all further matches that have the same attribute value as the last
+   * one.
+   *
+   * @return the number of results needed, or {@link Integer#MAX_VALUE} if all
+   *         are needed.
+   */
+  int getResultLimit();
+}
@@ -0,0 +1,138 @@
+package org.jboss.errai.jpa.client.local;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.json.client.JSONObject;
+import com.google.gwt.json.client.JSONValue;
+
+/**
+ * A lightweight view of the parsed JSON representation of an entity. Unlike
+ * {@link JSONObject}, reading an attribute doesn't create a {@link JSONValue}
+ * wrapper for it. The getters read the basic values in the format written by
+ * {@link JsonUtil#basicValueToJson(Object)}, and return null for JSON null
+ * values.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public final class JsonObjectOverlay extends JavaScriptObject {
+
+  protected JsonObjectOverlay() {
+  }
+
+  /**
+   * Parses the given JSON object text, which has to be valid JSON.
+   */
+  public static native JsonObjectOverlay parse(String json) /*-{
+    return JSON.parse(json);
+  }-*/;
+
+  /**
+   * Returns a view of the JavaScript object that backs the given JSON object.
+   */
+  public static JsonObjectOverlay of(JSONObject object) {
+    return object.getJavaScriptObject().cast();
+  }
+
+  /**
+   * Returns true if this object has the given attribute, even if its value is
+   * null.
+   */
+  public native boolean has(String name) /*-{
+    return Object.prototype.hasOwnProperty.call(this, name);
+  }-*/;
+
+  /**
+   * Returns true if the given attribute is null or missing.
+   */
+  public native boolean isNull(String name) /*-{
+    return this[name] == null;
+  }-*/;
+
+  /**
+   * Returns the given attribute as a JSONValue, or null if it is missing.
+   */
+  public JSONValue get(String name) {
+    return new JSONObject(this).get(name);
+  }
+
+  private native String stringValue(String name) /*-{
+    return this[name];
+  }-*/;
+
+  private native double numberValue(String name) /*-{
+    return this[name];
+  }-*/;
+
+  private native boolean booleanValue(String name) /*-{
+    return this[name];
+  }-*/;
+
+  public String getString(String name) {
+    return isNull(name) ? null : stringValue(name);
+  }
+
+  public Boolean getBoolean(String name) {
+    return isNull(name) ? null : Boolean.valueOf(booleanValue(name));
+  }
+
+  public Byte getByte(String name) {
+    return isNull(name) ? null : Byte.valueOf((byte) numberValue(name));
+  }
+
+  public Short getShort(String name) {
+    return isNull(name) ? null : Short.valueOf((short) numberValue(name));
+  }
+
+  public Integer getInteger(String name) {
+    return isNull(name) ? null : Integer.valueOf((int) numberValue(name));
+  }
+
+  public Float getFloat(String name) {
+    return isNull(name) ? null : Float.valueOf((float) numberValue(name));
+  }
+
+  public Double getDouble(String name) {
+    return isNull(name) ? null : Double.valueOf(numberValue(name));
+  }
+
+  public Long getLong(String name) {
+    return isNull(name) ? null : Long.valueOf(stringValue(name));
+  }
+
+  public Character getCharacter(String name) {
+    return isNull(name) ? null : Character.valueOf(stringValue(name).charAt(0));
+  }
+
+  public BigInteger getBigInteger(String name) {
+    return isNull(name) ? null : new BigInteger(stringValue(name));
+  }
+
+  public BigDecimal getBigDecimal(String name) {
+    return isNull(name) ? null : new BigDecimal(stringValue(name));
+  }
+
+  public Date getDate(String name) {
+    return isNull(name) ? null : new Date(Long.parseLong(stringValue(name)));
+  }
+
+  public java.sql.Date getSqlDate(String name) {
+    return isNull(name) ? null : new java.sql.Date(Long.parseLong(stringValue(name)));
+  }
+
+  public Time getTime(String name) {
+    return isNull(name) ? null : new Time(Long.parseLong(stringValue(name)));
+  }
+
+  public Timestamp getTimestamp(String name) {
+    return isNull(name) ? null : Timestamp.valueOf(stringValue(name));
+  }
+
+  public <E extends Enum<E>> E getEnum(String name, Class<E> enumType) {
+    return isNull(name) ? null : Enum.valueOf(enumType, stringValue(name));
+  }
+}
@@ -8,6 +8,7 @@ import java.util.Date;
 
 import org.jboss.errai.common.client.util.Base64Util;
 
+import com.google.gwt.core.client.JsonUtils;
 import com.google.gwt.json.client.JSONArray;
 import com.google.gwt.json.client.JSONBoolean;
 import com.google.gwt.json.client.JSONNull;
@@ -92,6 +93,81 @@ public class JsonUtil {
     }
   }
 
+  /*
+   * The append methods below write basic values in the same format as
+   * basicValueToJson(), straight into a buffer. The generated JSON writers of
+   * the entity types call them.
+   */
+
+  /**
+   * Appends the string value of the given value as a JSON string, or null.
+   * Used for String, Long, Character, BigInteger, BigDecimal, and Timestamp
+   * values.
+   */
+  public static void appendString(StringBuilder out, Object value) {
+    if (value == null) {
+      out.append("null");
+    }
+    else {
+      out.append(JsonUtils.escapeValue(value.toString()));
+    }
+  }
+
+  /**
+   * Appends the given Byte, Short, or Integer value as a JSON number, or null.
+   */
+  public static void appendInteger(StringBuilder out, Number value) {
+    if (value == null) {
+      out.append("null");
+    }
+    else {
+      out.append(value.intValue());
+    }
+  }
+
+  /**
+   * Appends the given Float or Double value as a JSON number, or null.
+   */
+  public static void appendDouble(StringBuilder out, Number value) {
+    if (value == null) {
+      out.append("null");
+    }
+    else {
+      out.append(value.doubleValue());
+    }
+  }
+
+  public static void appendBoolean(StringBuilder out, Boolean value) {
+    if (value == null) {
+      out.append("null");
+    }
+    else {
+      out.append(value.booleanValue());
+    }
+  }
+
+  /**
+   * Appends the milliseconds of the given Date, java.sql.Date, or Time value as
+   * a JSON string, or null.
+   */
+  public static void appendDate(StringBuilder out, Date value) {
+    if (value == null) {
+      out.append("null");
+    }
+    else {
+      out.append('"').append(value.getTime()).append('"');
+    }
+  }
+
+  public static void appendEnum(StringBuilder out, Enum<?> value) {
+    if (value == null) {
+      out.append("null");
+    }
+    else {
+      out.append(JsonUtils.escapeValue(value.name()));
+    }
+  }
+
   /**
    * Converts the given JSONValue to the Java value of the given type. No type
    * coercion is performed; the given JSONValue and Class must correspond with
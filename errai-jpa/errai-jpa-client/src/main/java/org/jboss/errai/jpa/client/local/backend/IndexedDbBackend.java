@@ -0,0 +1,142 @@
+package org.jboss.errai.jpa.client.local.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.jpa.client.local.EntityJsonMatcher;
+import org.jboss.errai.jpa.client.local.ErraiEntityManager;
+import org.jboss.errai.jpa.client.local.ErraiIdentifiableType;
+import org.jboss.errai.jpa.client.local.ErraiManagedType;
+import org.jboss.errai.jpa.client.local.JsonObjectOverlay;
+import org.jboss.errai.jpa.client.local.JsonUtil;
+import org.jboss.errai.jpa.client.local.Key;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gwt.json.client.JSONObject;
+import com.google.gwt.json.client.JSONParser;
+
+/**
+ * The storage backend for IndexedDB. Each entity type is stored in its own
+ * object store of an {@link IndexedDbDatabase}, under the JSON of its key.
+ * <p>
+ * Instances are created by an open {@link IndexedDbDatabase}, which keeps the
+ * entities in memory and writes the changes of all its backends to IndexedDB
+ * in batches.
+ * <p>
+ * {@link #getAll(ErraiIdentifiableType, EntityJsonMatcher)}, which named
+ * queries are based on, parses every stored entity of the queried types to
+ * match it. Unlike the WebStorage backend, this backend doesn't use the
+ * indexes of {@link org.jboss.errai.jpa.client.shared.Indexed @Indexed}
+ * attributes.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class IndexedDbBackend implements StorageBackend {
+
+  private final ErraiEntityManager em;
+  private final IndexedDbDatabase database;
+
+  private final Logger logger;
+
+  /**
+   * Creates an IndexedDbBackend that stores its entities in the given
+   * database.
+   *
+   * @param erraiEntityManager
+   *          the ErraiEntityManager this storage backend will be used with (it
+   *          is used for resolving entity references).
+   * @param database
+   *          The open database to store the entities in. Must not be null.
+   */
+  public IndexedDbBackend(ErraiEntityManager erraiEntityManager, IndexedDbDatabase database) {
+    this.em = Assert.notNull(erraiEntityManager);
+    this.database = Assert.notNull(database);
+    this.logger = LoggerFactory.getLogger(IndexedDbBackend.class);
+  }
+
+  @Override
+  public void removeAll() {
+    database.clear();
+  }
+
+  @Override
+  public <X> void put(Key<X, ?> key, X value) {
+    ErraiManagedType<X> entityType = key.getEntityType();
+    String keyJson = key.toJson();
+    logger.trace(">>>put '" + keyJson + "'");
+    database.put(entityType.getJavaType().getName(), keyJson, entityType.toJsonString(em, value));
+  }
+
+  @Override
+  public <X> X get(Key<X, ?> requestedKey) {
+    for (ErraiManagedType<? extends X> entityType : requestedKey.getEntityType().getSubtypes()) {
+      Key<X, ?> key = new Key<X, Object>((ErraiManagedType<X>) entityType, (Object) requestedKey.getId());
+      String keyJson = key.toJson();
+      String valueJson = database.get(entityType.getJavaType().getName(), keyJson);
+      logger.trace("<<<get '" + keyJson + "' : " + valueJson);
+      if (valueJson != null) {
+        X entity = ((ErraiIdentifiableType<? extends X>) entityType).fromJson(em, JsonObjectOverlay.parse(valueJson));
+        logger.trace("   returning " + entity);
+        return entity;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public <X> List<X> getAll(ErraiIdentifiableType<X> type, EntityJsonMatcher matcher) {
+    List<X> entities = new ArrayList<X>();
+    for (ErraiManagedType<X> entityType : type.getSubtypes()) {
+      for (Map.Entry<String, String> entry : database.getAll(entityType.getJavaType().getName())) {
+        JSONObject candidate = JSONParser.parseStrict(entry.getValue()).isObject();
+        Assert.notNull(candidate);
+        if (matcher.matches(candidate)) {
+          Key<?, ?> k = Key.fromJson(em, entry.getKey(), true);
+
+          // we have to go back to the entity manager in case the thing we want is in the persistence context.
+          entities.add(em.find(entityType.getJavaType(), k.getId()));
+        }
+      }
+    }
+    return entities;
+  }
+
+  @Override
+  public <X, Y> boolean contains(Key<X, Y> key) {
+    for (ErraiManagedType<X> type : key.getEntityType().getSubtypes()) {
+      Key<?, ?> k = new Key<X, Y>(type, key.getId());
+      if (database.get(type.getJavaType().getName(), k.toJson()) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public <X> void remove(Key<X, ?> key) {
+    database.remove(key.getEntityType().getJavaType().getName(), key.toJson());
+  }
+
+  @Override
+  public <X> boolean isModified(Key<X, ?> key, X value) {
+    ErraiManagedType<X> entityType = key.getEntityType();
+    String newValue = entityType.toJsonString(em, value);
+    String oldValue = database.get(entityType.getJavaType().getName(), key.toJson());
+    if (newValue.equals(oldValue)) {
+      return false;
+    }
+
+    // values read from IndexedDB may have their attributes in a different order
+    boolean modified = oldValue == null
+            || !JsonUtil.equals(JSONParser.parseStrict(newValue), JSONParser.parseStrict(oldValue));
+    if (modified) {
+      logger.trace("Detected modified entity " + key);
+      logger.trace("   Old: " + oldValue);
+      logger.trace("   New: " + newValue);
+    }
+    return modified;
+  }
+}
@@ -0,0 +1,684 @@
+package org.jboss.errai.jpa.client.local.backend;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.metamodel.EntityType;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.common.client.api.ErrorCallback;
+import org.jboss.errai.common.client.api.RemoteCallback;
+import org.jboss.errai.jpa.client.local.ErraiEntityManager;
+import org.jboss.errai.jpa.client.local.ErraiMetamodel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayString;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
+/**
+ * An IndexedDB database holding the entities of one or more
+ * {@link IndexedDbBackend}s, with one object store per entity type. Unlike
+ * WebStorage, IndexedDB is not limited to a few megabytes, and it writes in
+ * the background instead of blocking the browser's main thread.
+ * <p>
+ * IndexedDB can only be used asynchronously, while the {@link StorageBackend}
+ * methods and the JPA API built on them are synchronous. The database is
+ * therefore read completely into memory when it is {@link #open opened}, and
+ * the backends work on that copy. Their changes are written to IndexedDB at the
+ * end of the current event loop, all of them in a single transaction, so that
+ * flushing hundreds of entities doesn't freeze the UI. Use
+ * {@link #whenWritten(RemoteCallback, ErrorCallback)} to find out when the
+ * changes made so far are stored, or that writing them failed.
+ * <p>
+ * Changes made to the database by other windows are not seen until the
+ * database is opened again. When another window upgrades the database to add
+ * object stores, this window's connection is closed to let the upgrade go
+ * ahead, and it is opened again before the next changes are written. If two
+ * windows upgrade the database at the same time, the one that loses the race
+ * upgrades it again. An upgrade that is blocked by a connection another window
+ * doesn't close is reported as a failure to open the database.
+ * <p>
+ * Queries read every entity of the queried types from the in-memory copy and
+ * parse it to match it against the query. The database has no indexes: the
+ * {@link org.jboss.errai.jpa.client.shared.Indexed @Indexed} attributes of the
+ * WebStorage backend are not used here.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class IndexedDbDatabase implements StorageBackendFactory {
+
+  private static final Logger logger = LoggerFactory.getLogger(IndexedDbDatabase.class);
+
+  /**
+   * How often opening the database is retried when another window upgraded it
+   * at the same time.
+   */
+  private static final int MAX_UPGRADE_RETRIES = 3;
+
+  private final String name;
+  private final List<String> storeNames;
+  private final Driver driver;
+  private Object db;
+
+  /**
+   * The number of open requests so far. The callbacks of earlier requests are
+   * ignored.
+   */
+  private int openRequests;
+  private int upgradeRetries;
+
+  /**
+   * True once the entities were read. Opening the database again only resumes
+   * writing.
+   */
+  private boolean loaded;
+
+  private final Map<String, Map<String, String>> entities = new HashMap<String, Map<String, String>>();
+
+  /**
+   * Changes not written yet, by store and key. A null value means the entity was removed.
+   */
+  private final Map<String, Map<String, String>> pendingWrites = new LinkedHashMap<String, Map<String, String>>();
+  private boolean clearPending;
+  private boolean commitScheduled;
+  private int transactionsInFlight;
+  private boolean reopening;
+
+  /**
+   * The first error of the writes since the write callbacks were last called,
+   * or null.
+   */
+  private String writeError;
+  private final List<WriteCallback> writeCallbacks = new ArrayList<WriteCallback>();
+
+  private static class WriteCallback {
+    private final RemoteCallback<Void> onWritten;
+    private final ErrorCallback<String> onError;
+
+    private WriteCallback(RemoteCallback<Void> onWritten, ErrorCallback<String> onError) {
+      this.onWritten = onWritten;
+      this.onError = onError;
+    }
+  }
+
+  private RemoteCallback<IndexedDbDatabase> onOpen;
+  private ErrorCallback<String> onError;
+
+  private IndexedDbDatabase(String name, List<String> storeNames, Driver driver) {
+    this.name = Assert.notNull(name);
+    this.storeNames = storeNames;
+    this.driver = driver;
+    for (String storeName : storeNames) {
+      entities.put(storeName, new LinkedHashMap<String, String>());
+    }
+  }
+
+  /**
+   * Returns true if the browser supports IndexedDB.
+   */
+  public static native boolean isSupported() /*-{
+    return !!$wnd.indexedDB;
+  }-*/;
+
+  /**
+   * Opens the given IndexedDB database, creating the object stores of any
+   * entity types it doesn't have yet, and reads all entities in it. Once that
+   * is done, the database can be used to create entity managers that store
+   * their entities in it:
+   *
+   * <pre>
+   * IndexedDbDatabase.open(&quot;my-app&quot;, entityManager, new RemoteCallback&lt;IndexedDbDatabase&gt;() {
+   *   public void callback(IndexedDbDatabase database) {
+   *     EntityManager indexedDbEntityManager = new ErraiEntityManager(entityManager, database);
+   *   }
+   * }, errorCallback);
+   * </pre>
+   *
+   * @param databaseName
+   *          The name of the IndexedDB database. Not null.
+   * @param entityManager
+   *          An entity manager whose metamodel has all entity types that will
+   *          be stored in the database. Not null.
+   * @param onOpen
+   *          Receives the database once all of its entities were read. Not
+   *          null.
+   * @param onError
+   *          Receives the database name if IndexedDB is not supported, or the
+   *          database could not be opened or read. Later on, it receives the
+   *          database name when changes could not be written and no error
+   *          callback passed to {@link #whenWritten(RemoteCallback, ErrorCallback)}
+   *          was waiting for them. Not null.
+   */
+  public static void open(String databaseName, ErraiEntityManager entityManager,
+          RemoteCallback<IndexedDbDatabase> onOpen, ErrorCallback<String> onError) {
+    ErraiMetamodel metamodel = entityManager.getMetamodel();
+    List<String> storeNames = new ArrayList<String>();
+    for (EntityType<?> entityType : metamodel.getEntities()) {
+      storeNames.add(entityType.getJavaType().getName());
+    }
+
+    if (!isSupported()) {
+      String message = "IndexedDB is not supported by this browser";
+      logger.error("IndexedDB database " + databaseName + ": " + message);
+      onError.error(databaseName, new RuntimeException(message));
+      return;
+    }
+    open(databaseName, storeNames, new NativeDriver(), onOpen, onError);
+  }
+
+  /**
+   * Opens the given database through the given driver. See
+   * {@link #open(String, ErraiEntityManager, RemoteCallback, ErrorCallback)}.
+   *
+   * @return the database, which calls the given callback once it is open.
+   */
+  static IndexedDbDatabase open(String databaseName, List<String> storeNames, Driver driver,
+          RemoteCallback<IndexedDbDatabase> onOpen, ErrorCallback<String> onError) {
+    IndexedDbDatabase database = new IndexedDbDatabase(databaseName, storeNames, Assert.notNull(driver));
+    database.onOpen = Assert.notNull(onOpen);
+    database.onError = Assert.notNull(onError);
+    database.sendOpenRequest(0, Collections.<String> emptyList());
+    return database;
+  }
+
+  @Override
+  public StorageBackend createInstanceFor(ErraiEntityManager em) {
+    return new IndexedDbBackend(em, this);
+  }
+
+  /**
+   * Calls the given callback once all changes made so far are written to
+   * IndexedDB. If there are no such changes, the callback is called right
+   * away. If writing the changes fails, the error callback given to
+   * {@link #open} is called instead.
+   */
+  public void whenWritten(RemoteCallback<Void> callback) {
+    whenWritten(callback, null);
+  }
+
+  /**
+   * Calls the given callback once all changes made so far are written to
+   * IndexedDB, or the given error callback if writing any of them failed. If
+   * there are no such changes, the callback is called right away.
+   *
+   * @param callback
+   *          Called when the changes are written. Not null.
+   * @param errorCallback
+   *          Receives the database name and the cause if writing failed. If
+   *          null, failures are reported to the error callback given to
+   *          {@link #open}.
+   */
+  public void whenWritten(RemoteCallback<Void> callback, ErrorCallback<String> errorCallback) {
+    Assert.notNull(callback);
+    if (isIdle()) {
+      callback.callback(null);
+    }
+    else {
+      writeCallbacks.add(new WriteCallback(callback, errorCallback));
+    }
+  }
+
+  /**
+   * Returns the JSON of the stored entity with the given key, or null if there
+   * is none.
+   */
+  String get(String storeName, String keyJson) {
+    Map<String, String> store = entities.get(storeName);
+    return (store == null) ? null : store.get(keyJson);
+  }
+
+  /**
+   * Returns a snapshot of the keys and JSON of the stored entities of exactly
+   * the given type.
+   */
+  Collection<Map.Entry<String, String>> getAll(String storeName) {
+    Map<String, String> store = entities.get(storeName);
+    if (store == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<Map.Entry<String, String>>(store.entrySet());
+  }
+
+  void put(String storeName, String keyJson, String json) {
+    getStore(storeName).put(keyJson, json);
+    getPendingWrites(storeName).put(keyJson, json);
+    scheduleCommit();
+  }
+
+  void remove(String storeName, String keyJson) {
+    if (getStore(storeName).remove(keyJson) != null) {
+      getPendingWrites(storeName).put(keyJson, null);
+      scheduleCommit();
+    }
+  }
+
+  void clear() {
+    for (Map<String, String> store : entities.values()) {
+      store.clear();
+    }
+    pendingWrites.clear();
+    clearPending = true;
+    scheduleCommit();
+  }
+
+  private Map<String, String> getStore(String storeName) {
+    Map<String, String> store = entities.get(storeName);
+    if (store == null) {
+      throw new IllegalArgumentException(
+              "Entity type " + storeName + " has no object store in IndexedDB database " + name);
+    }
+    return store;
+  }
+
+  private Map<String, String> getPendingWrites(String storeName) {
+    Map<String, String> writes = pendingWrites.get(storeName);
+    if (writes == null) {
+      pendingWrites.put(storeName, writes = new LinkedHashMap<String, String>());
+    }
+    return writes;
+  }
+
+  private void scheduleCommit() {
+    if (!commitScheduled) {
+      commitScheduled = true;
+      Scheduler.get().scheduleFinally(new ScheduledCommand() {
+        @Override
+        public void execute() {
+          commit();
+        }
+      });
+    }
+  }
+
+  private void commit() {
+    commitScheduled = false;
+    if ((!clearPending && pendingWrites.isEmpty()) || storeNames.isEmpty()) {
+      pendingWrites.clear();
+      clearPending = false;
+      notifyIfWritten();
+      return;
+    }
+    if (db == null) {
+      // closed for another window's upgrade: the changes stay pending
+      if (!reopening) {
+        reopening = true;
+        sendOpenRequest(0, Collections.<String> emptyList());
+      }
+      return;
+    }
+
+    List<String> storeNamesToWrite = new ArrayList<String>(clearPending ? storeNames : pendingWrites.keySet());
+    List<String> writes = new ArrayList<String>();
+    for (Map.Entry<String, Map<String, String>> store : pendingWrites.entrySet()) {
+      for (Map.Entry<String, String> write : store.getValue().entrySet()) {
+        writes.add(store.getKey());
+        writes.add(write.getKey());
+        writes.add(write.getValue());
+      }
+    }
+    logger.trace("writing " + writes.size() / 3 + " changes to IndexedDB database " + name);
+
+    boolean clear = clearPending;
+    pendingWrites.clear();
+    clearPending = false;
+    transactionsInFlight++;
+    boolean started = false;
+    try {
+      driver.write(this, db, storeNamesToWrite, clear, writes);
+      started = true;
+    }
+    catch (RuntimeException e) {
+      logger.error("Failed to start writing to IndexedDB database " + name, e);
+      recordWriteError(String.valueOf(e.getMessage()));
+    }
+    finally {
+      if (!started) {
+        transactionsInFlight--;
+        notifyIfWritten();
+      }
+    }
+  }
+
+  private boolean isIdle() {
+    return !commitScheduled && !reopening && transactionsInFlight == 0;
+  }
+
+  private void recordWriteError(String error) {
+    if (writeError == null) {
+      writeError = error;
+    }
+  }
+
+  private void notifyIfWritten() {
+    if (!isIdle()) {
+      return;
+    }
+    String error = writeError;
+    writeError = null;
+    List<WriteCallback> callbacks = new ArrayList<WriteCallback>(writeCallbacks);
+    writeCallbacks.clear();
+
+    boolean reported = false;
+    for (WriteCallback callback : callbacks) {
+      if (error == null) {
+        callback.onWritten.callback(null);
+      }
+      else if (callback.onError != null) {
+        callback.onError.error(name, new RuntimeException("could not write changes: " + error));
+        reported = true;
+      }
+    }
+    if (error != null && !reported) {
+      onError.error(name, new RuntimeException("could not write changes: " + error));
+    }
+  }
+
+  private void failed(String message) {
+    logger.error("IndexedDB database " + name + ": " + message);
+    onError.error(name, new RuntimeException(message));
+  }
+
+  /**
+   * Opens the database, upgrading it to the given version to create the given
+   * object stores if the version is not 0.
+   */
+  private void sendOpenRequest(int version, List<String> newStoreNames) {
+    driver.open(this, ++openRequests, name, version, newStoreNames);
+  }
+
+  private void openFailed(String error) {
+    upgradeRetries = 0;
+    if (reopening) {
+      reopening = false;
+      logger.error("Failed to reopen IndexedDB database " + name + ": " + error);
+      // the changes that waited for the database are lost
+      pendingWrites.clear();
+      clearPending = false;
+      recordWriteError("could not reopen database: " + error);
+      notifyIfWritten();
+    }
+    else {
+      failed("could not open database: " + error);
+    }
+  }
+
+  // called by the driver
+
+  void onOpened(int request, Object db, int version, Collection<String> existingStoreNames) {
+    if (request != openRequests) {
+      // we gave up on this request
+      driver.close(db);
+      return;
+    }
+
+    List<String> missing = new ArrayList<String>(storeNames);
+    missing.removeAll(existingStoreNames);
+    if (!missing.isEmpty()) {
+      // object stores can only be created while upgrading to a new version
+      driver.close(db);
+      if (upgradeRetries++ == MAX_UPGRADE_RETRIES) {
+        openFailed("object stores " + missing + " were not created");
+      }
+      else {
+        // another window may have upgraded to the version we asked for without our object stores
+        sendOpenRequest(version + 1, missing);
+      }
+      return;
+    }
+
+    upgradeRetries = 0;
+    this.db = db;
+    if (reopening) {
+      reopening = false;
+      commit();
+    }
+    else if (storeNames.isEmpty()) {
+      onLoaded();
+    }
+    else if (!loaded) {
+      driver.read(this, db, storeNames);
+    }
+  }
+
+  void onOpenFailed(int request, String error) {
+    if (request != openRequests) {
+      return;
+    }
+    if ("VersionError".equals(error) && upgradeRetries++ < MAX_UPGRADE_RETRIES) {
+      // another window upgraded the database past the version we asked for
+      sendOpenRequest(0, Collections.<String> emptyList());
+    }
+    else {
+      openFailed(error);
+    }
+  }
+
+  void onBlocked(int request) {
+    if (request != openRequests) {
+      return;
+    }
+    // the request may still succeed once the other window closes the database, but we don't wait for that
+    openRequests++;
+    openFailed("upgrade blocked by another window that has the database open");
+  }
+
+  void onClosed(Object db) {
+    if (this.db == db) {
+      this.db = null;
+    }
+  }
+
+  void onRead(String storeName, String keyJson, String json) {
+    entities.get(storeName).put(keyJson, json);
+  }
+
+  void onLoaded() {
+    loaded = true;
+    onOpen.callback(this);
+  }
+
+  void onReadFailed(String error) {
+    failed("could not read entities: " + error);
+  }
+
+  void onWritten() {
+    transactionsInFlight--;
+    notifyIfWritten();
+  }
+
+  void onWriteFailed(String error) {
+    logger.error("Failed to write to IndexedDB database " + name + ": " + error);
+    recordWriteError(error);
+    onWritten();
+  }
+
+  /**
+   * The IndexedDB requests of a database, which report their outcome to the
+   * callbacks of the database. The database only depends on this interface, so
+   * it can be tested without IndexedDB.
+   */
+  interface Driver {
+
+    /**
+     * Opens the database and reports the connection, its version and its
+     * object stores to {@link IndexedDbDatabase#onOpened}. Failures go to
+     * {@link IndexedDbDatabase#onOpenFailed}, and an upgrade that waits for
+     * another window to close the database to {@link IndexedDbDatabase#onBlocked}.
+     * Once open, the connection reports to {@link IndexedDbDatabase#onClosed}
+     * when it is closed for another window's upgrade.
+     *
+     * @param request
+     *          passed back to the callbacks.
+     * @param version
+     *          the version to upgrade to, creating the given object stores if
+     *          they don't exist yet. 0 to open the current version.
+     */
+    void open(IndexedDbDatabase database, int request, String name, int version, List<String> newStoreNames);
+
+    void close(Object db);
+
+    /**
+     * Reads all entities of the given object stores, reporting them to
+     * {@link IndexedDbDatabase#onRead} and the end to
+     * {@link IndexedDbDatabase#onLoaded} or
+     * {@link IndexedDbDatabase#onReadFailed}.
+     */
+    void read(IndexedDbDatabase database, Object db, List<String> storeNames);
+
+    /**
+     * Writes the given changes in one transaction, reporting the end to
+     * {@link IndexedDbDatabase#onWritten} or
+     * {@link IndexedDbDatabase#onWriteFailed}.
+     *
+     * @param writes
+     *          triples of store name, key and entity JSON, or null to delete the
+     *          entity.
+     * @throws RuntimeException
+     *           if the transaction can't be started.
+     */
+    void write(IndexedDbDatabase database, Object db, List<String> storeNames, boolean clear, List<String> writes);
+  }
+
+  /**
+   * The driver that uses the browser's IndexedDB.
+   */
+  static class NativeDriver implements Driver {
+
+    @Override
+    public void open(IndexedDbDatabase database, int request, String name, int version, List<String> newStoreNames) {
+      openNative(database, request, name, version, toJsArray(newStoreNames));
+    }
+
+    @Override
+    public void close(Object db) {
+      closeNative((JavaScriptObject) db);
+    }
+
+    @Override
+    public void read(IndexedDbDatabase database, Object db, List<String> storeNames) {
+      readNative(database, (JavaScriptObject) db, toJsArray(storeNames));
+    }
+
+    @Override
+    public void write(IndexedDbDatabase database, Object db, List<String> storeNames, boolean clear, List<String> writes) {
+      writeNative(database, (JavaScriptObject) db, toJsArray(storeNames), clear, toJsArray(writes));
+    }
+
+    private static void opened(IndexedDbDatabase database, int request, JavaScriptObject db, int version,
+            JsArrayString storeNames) {
+      List<String> names = new ArrayList<String>();
+      for (int i = 0; i < storeNames.length(); i++) {
+        names.add(storeNames.get(i));
+      }
+      database.onOpened(request, db, version, names);
+    }
+
+    private static JsArrayString toJsArray(Collection<String> strings) {
+      JsArrayString array = JavaScriptObject.createArray().cast();
+      for (String s : strings) {
+        array.push(s);
+      }
+      return array;
+    }
+
+    private static native void openNative(IndexedDbDatabase database, int request, String name, int version,
+            JsArrayString newStoreNames) /*-{
+      var openRequest = version ? $wnd.indexedDB.open(name, version) : $wnd.indexedDB.open(name);
+      openRequest.onupgradeneeded = function() {
+        for (var i = 0; i < newStoreNames.length; i++) {
+          if (!openRequest.result.objectStoreNames.contains(newStoreNames[i])) {
+            openRequest.result.createObjectStore(newStoreNames[i]);
+          }
+        }
+      };
+      openRequest.onsuccess = $entry(function() {
+        var db = openRequest.result;
+        var closed = $entry(function() {
+          database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onClosed(Ljava/lang/Object;)(db);
+        });
+        // let other windows upgrade the database to create more object stores
+        db.onversionchange = function() {
+          db.close();
+          closed();
+        };
+        // closed by the browser, e.g. when the database was deleted
+        db.onclose = closed;
+        var storeNames = [];
+        for (var i = 0; i < db.objectStoreNames.length; i++) {
+          storeNames.push(db.objectStoreNames.item(i));
+        }
+        @org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase$NativeDriver::opened(Lorg/jboss/errai/jpa/client/local/backend/IndexedDbDatabase;ILcom/google/gwt/core/client/JavaScriptObject;ILcom/google/gwt/core/client/JsArrayString;)(
+            database, request, db, db.version, storeNames);
+      });
+      openRequest.onerror = $entry(function() {
+        database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onOpenFailed(ILjava/lang/String;)(
+            request, openRequest.error ? openRequest.error.name : "unknown error");
+      });
+      openRequest.onblocked = $entry(function() {
+        database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onBlocked(I)(request);
+      });
+    }-*/;
+
+    private static native void closeNative(JavaScriptObject db) /*-{
+      db.close();
+    }-*/;
+
+    private static native void readNative(IndexedDbDatabase database, JavaScriptObject db, JsArrayString storeNames) /*-{
+      var tx = db.transaction(storeNames, "readonly");
+      var read = function(storeName) {
+        tx.objectStore(storeName).openCursor().onsuccess = $entry(function(event) {
+          var cursor = event.target.result;
+          if (cursor) {
+            database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onRead(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)(
+                storeName, cursor.key, $wnd.JSON.stringify(cursor.value));
+            cursor["continue"]();
+          }
+        });
+      };
+      for (var i = 0; i < storeNames.length; i++) {
+        read(storeNames[i]);
+      }
+      tx.oncomplete = $entry(function() {
+        database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onLoaded()();
+      });
+      tx.onerror = $entry(function() {
+        database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onReadFailed(Ljava/lang/String;)(
+            tx.error ? tx.error.name : "unknown error");
+      });
+    }-*/;
+
+    private static native void writeNative(IndexedDbDatabase database, JavaScriptObject db, JsArrayString storeNames,
+            boolean clear, JsArrayString writes) /*-{
+      var tx = db.transaction(storeNames, "readwrite");
+      if (clear) {
+        for (var i = 0; i < storeNames.length; i++) {
+          tx.objectStore(storeNames[i]).clear();
+        }
+      }
+      for (var i = 0; i < writes.length; i += 3) {
+        var store = tx.objectStore(writes[i]);
+        if (writes[i + 2] === null) {
+          store["delete"](writes[i + 1]);
+        }
+        else {
+          store.put($wnd.JSON.parse(writes[i + 2]), writes[i + 1]);
+        }
+      }
+      tx.oncomplete = $entry(function() {
+        database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onWritten()();
+      });
+      tx.onabort = $entry(function() {
+        database.@org.jboss.errai.jpa.client.local.backend.IndexedDbDatabase::onWriteFailed(Ljava/lang/String;)(
+            tx.error ? tx.error.name : "transaction aborted");
+      });
+    }-*/;
+  }
+}
@@ -0,0 +1,245 @@
+package org.jboss.errai.jpa.client.local.backend;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.jboss.errai.jpa.client.local.AttributeRange;
+import org.jboss.errai.jpa.client.local.JsonUtil;
+
+import com.google.gwt.json.client.JSONNull;
+import com.google.gwt.json.client.JSONObject;
+import com.google.gwt.json.client.JSONParser;
+import com.google.gwt.json.client.JSONValue;
+
+/**
+ * A sorted index of the values of one {@code @Indexed} attribute of the
+ * entities of one type, kept by the {@link WebStorageKeyIndex}. The values are
+ * converted and compared the same way the generated JPQL matchers convert and
+ * compare them, so a lookup never misses an entity the matcher would accept.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+class WebStorageAttributeIndex {
+
+  private static final Comparator<Object> VALUE_COMPARATOR = new Comparator<Object>() {
+    @Override
+    public int compare(Object o1, Object o2) {
+      return compareValues(o1, o2);
+    }
+  };
+
+  private final String attributeName;
+  private final Class<?> valueType;
+
+  private final SortedMap<Object, Set<String>> keysByValue = new TreeMap<Object, Set<String>>(VALUE_COMPARATOR);
+  private final Set<String> nullKeys = new LinkedHashSet<String>();
+  private final Map<String, Object> valueByKey = new HashMap<String, Object>();
+  private final Map<String, JSONValue> jsonByKey = new HashMap<String, JSONValue>();
+
+  WebStorageAttributeIndex(String attributeName, Class<?> attributeType) {
+    this.attributeName = attributeName;
+    this.valueType = normalizedType(attributeType);
+  }
+
+  /**
+   * Indexes the value of this index's attribute in the given entity under the given key.
+   *
+   * @return true if the index changed.
+   */
+  boolean put(String keyJson, JSONObject entityJson) {
+    JSONValue json = entityJson.get(attributeName);
+    if (json == null) {
+      json = JSONNull.getInstance();
+    }
+    JSONValue oldJson = jsonByKey.get(keyJson);
+    if (oldJson != null && oldJson.toString().equals(json.toString())) {
+      return false;
+    }
+    remove(keyJson);
+
+    Object value = JsonUtil.basicValueFromJson(json, valueType);
+    jsonByKey.put(keyJson, json);
+    valueByKey.put(keyJson, value);
+    if (value == null) {
+      nullKeys.add(keyJson);
+    }
+    else {
+      Set<String> keys = keysByValue.get(value);
+      if (keys == null) {
+        keysByValue.put(value, keys = new LinkedHashSet<String>());
+      }
+      keys.add(keyJson);
+    }
+    return true;
+  }
+
+  /**
+   * Removes the given key from this index.
+   *
+   * @return true if the index changed.
+   */
+  boolean remove(String keyJson) {
+    if (!jsonByKey.containsKey(keyJson)) {
+      return false;
+    }
+    jsonByKey.remove(keyJson);
+    Object value = valueByKey.remove(keyJson);
+    if (value == null) {
+      nullKeys.remove(keyJson);
+    }
+    else {
+      Set<String> keys = keysByValue.get(value);
+      keys.remove(keyJson);
+      if (keys.isEmpty()) {
+        keysByValue.remove(value);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the indexed value of the given key.
+   */
+  Object getValue(String keyJson) {
+    return valueByKey.get(keyJson);
+  }
+
+  /**
+   * Returns true if the bounds of the given range can be compared with the
+   * values in this index. If not, the index can't be used for the range.
+   */
+  boolean canLookUp(AttributeRange range) {
+    return range.isEmpty() || (isComparable(range.getLowerBound()) && isComparable(range.getUpperBound()));
+  }
+
+  /**
+   * Returns the keys of the entities whose values are within the given range,
+   * ordered by value.
+   *
+   * @param range
+   *          the range to look up, or null for all keys (including those of
+   *          entities whose value is null, which sort first).
+   * @param descending
+   *          true to return the keys in descending order of value.
+   */
+  List<String> getKeys(AttributeRange range, boolean descending) {
+    List<String> result = new ArrayList<String>();
+    if (range == null) {
+      result.addAll(nullKeys);
+      for (Set<String> keys : keysByValue.values()) {
+        result.addAll(keys);
+      }
+    }
+    else if (!range.isEmpty()) {
+      Object lower = range.getLowerBound();
+      Object upper = range.getUpperBound();
+      SortedMap<Object, Set<String>> tail = (lower == null) ? keysByValue : keysByValue.tailMap(lower);
+      for (Map.Entry<Object, Set<String>> entry : tail.entrySet()) {
+        if (lower != null && !range.isLowerInclusive() && compareValues(entry.getKey(), lower) == 0) {
+          continue;
+        }
+        if (upper != null) {
+          int cmp = compareValues(entry.getKey(), upper);
+          if (cmp > 0 || (cmp == 0 && !range.isUpperInclusive())) {
+            break;
+          }
+        }
+        result.addAll(entry.getValue());
+      }
+    }
+
+    if (descending) {
+      Collections.reverse(result);
+    }
+    return result;
+  }
+
+  /**
+   * Restores this index from the format written by {@link #toJson()}.
+   */
+  void load(String stored) {
+    JSONObject object = JSONParser.parseStrict(stored).isObject();
+    for (String keyJson : object.keySet()) {
+      JSONObject entity = new JSONObject();
+      entity.put(attributeName, object.get(keyJson));
+      put(keyJson, entity);
+    }
+  }
+
+  /**
+   * Returns the indexed attribute values (as found in the entity JSON) by entity key.
+   */
+  String toJson() {
+    JSONObject object = new JSONObject();
+    for (Map.Entry<String, JSONValue> entry : jsonByKey.entrySet()) {
+      object.put(entry.getKey(), entry.getValue());
+    }
+    return object.toString();
+  }
+
+  private boolean isComparable(Object bound) {
+    if (bound == null) {
+      return true;
+    }
+    if (isNumeric(valueType)) {
+      return bound instanceof Number;
+    }
+    if (bound instanceof Enum) {
+      return ((Enum<?>) bound).getDeclaringClass() == valueType;
+    }
+    return bound.getClass() == valueType;
+  }
+
+  private static boolean isNumeric(Class<?> type) {
+    return type == Double.class || type == Long.class || type == BigInteger.class || type == BigDecimal.class;
+  }
+
+  /**
+   * Compares two non-null values like the JPQL comparisons do (see {@link Comparisons}).
+   */
+  @SuppressWarnings("unchecked")
+  static int compareValues(Object o1, Object o2) {
+    if (o1 instanceof Long && o2 instanceof Long) {
+      return ((Long) o1).compareTo((Long) o2);
+    }
+    if (o1 instanceof Number && o2 instanceof Number) {
+      return Double.compare(((Number) o1).doubleValue(), ((Number) o2).doubleValue());
+    }
+    return ((Comparable<Object>) o1).compareTo(o2);
+  }
+
+  /**
+   * Returns the type the generated JPQL matchers convert values of the given
+   * attribute type to. All numbers except longs are compared as doubles, and
+   * characters as strings.
+   */
+  private static Class<?> normalizedType(Class<?> type) {
+    if (type == Float.class || type == float.class
+            || type == Integer.class || type == int.class
+            || type == Short.class || type == short.class
+            || type == Byte.class || type == byte.class
+            || type == double.class) {
+      return Double.class;
+    }
+    else if (type == Character.class || type == char.class) {
+      return String.class;
+    }
+    else if (type == long.class) {
+      return Long.class;
+    }
+    else if (type == boolean.class) {
+      return Boolean.class;
+    }
+    return type;
+  }
+}
@@ -1,21 +1,28 @@
 package org.jboss.errai.jpa.client.local.backend;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.SingularAttribute;
 
 import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.jpa.client.local.AttributeRange;
 import org.jboss.errai.jpa.client.local.EntityJsonMatcher;
 import org.jboss.errai.jpa.client.local.ErraiEntityManager;
 import org.jboss.errai.jpa.client.local.ErraiIdentifiableType;
 import org.jboss.errai.jpa.client.local.ErraiManagedType;
+import org.jboss.errai.jpa.client.local.ErraiSingularAttribute;
+import org.jboss.errai.jpa.client.local.IndexedEntityJsonMatcher;
+import org.jboss.errai.jpa.client.local.JsonObjectOverlay;
 import org.jboss.errai.jpa.client.local.JsonUtil;
 import org.jboss.errai.jpa.client.local.Key;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gwt.json.client.JSONObject;
-import com.google.gwt.json.client.JSONParser;
-import com.google.gwt.json.client.JSONValue;
 
 /**
  * The storage backend for HTML WebStorage, a storage facility supported by most
@@ -27,6 +34,16 @@ import com.google.gwt.json.client.JSONValue;
  * <i>A</i> and <i>B</i> (<i>A</i> != <i>B</i>), the storage backend for
  * namespace <i>A</i> will never see, modify, or otherwise or interfere with
  * anything stored in the storage backend for namespace <i>B</i>.
+ * <p>
+ * Queries only read the entities of the queried types, using a
+ * {@link WebStorageKeyIndex}. Attributes annotated with
+ * {@link org.jboss.errai.jpa.client.shared.Indexed @Indexed} are indexed too,
+ * so that queries restricting or ordering by them read fewer entities.
+ * <p>
+ * The backend remembers the JSON it last wrote or read for each entity, so
+ * that checking an unchanged entity for modifications doesn't have to read and
+ * parse its stored value. This costs at most one extra copy of the entities in
+ * the namespace, which WebStorage limits to a few megabytes anyway.
  *
  * @author Jonathan Fuerth <jfuerth@gmail.com>
  */
@@ -41,7 +58,15 @@ public class WebStorageBackend implements StorageBackend {
 
   private final ErraiEntityManager em;
   private final String namespace;
-  
+  private final WebStorageKeyIndex index;
+  private final Map<ErraiManagedType<?>, List<ErraiSingularAttribute<?, ?>>> indexedAttributes =
+          new HashMap<ErraiManagedType<?>, List<ErraiSingularAttribute<?, ?>>>();
+
+  /**
+   * The JSON last written or read for each entity key (without namespace).
+   */
+  private final Map<String, String> snapshots = new HashMap<String, String>();
+
   private final Logger logger;
 
   /**
@@ -69,6 +94,7 @@ public class WebStorageBackend implements StorageBackend {
   public WebStorageBackend(ErraiEntityManager erraiEntityManager, String namespace) {
     em = Assert.notNull(erraiEntityManager);
     this.namespace = Assert.notNull(namespace);
+    this.index = WebStorageKeyIndex.forNamespace(namespace);
     this.logger = LoggerFactory.getLogger(WebStorageBackend.class);
   }
 
@@ -81,7 +107,7 @@ public class WebStorageBackend implements StorageBackend {
     LocalStorage.forEachKey(new EntryVisitor() {
       @Override
       public void visit(String key, String value) {
-        if (parseNamespacedKey(em, key, false) != null) {
+        if (parseNamespacedKey(em, key, false) != null || index.isIndexEntry(key)) {
           toRemove.add(key);
         }
       }
@@ -90,27 +116,36 @@ public class WebStorageBackend implements StorageBackend {
     for (String key : toRemove) {
       LocalStorage.remove(key);
     }
+    index.clear();
+    snapshots.clear();
   }
 
   @Override
   public <X> void put(Key<X,?> key, X value) {
     ErraiManagedType<X> entityType = key.getEntityType();
-    String keyJson = namespace + key.toJson();
-    JSONValue valueJson = entityType.toJson(em, value);
-    logger.trace(">>>put '" + keyJson + "'");
-    LocalStorage.put(keyJson, valueJson.toString());
+    String keyJson = key.toJson();
+    String json = entityType.toJsonString(em, value);
+    logger.trace(">>>put '" + namespace + keyJson + "'");
+    LocalStorage.put(namespace + keyJson, json);
+    snapshots.put(keyJson, json);
+    index.add(entityType.getJavaType().getName(), keyJson);
+    List<ErraiSingularAttribute<?, ?>> attributes = getIndexedAttributes(entityType);
+    if (!attributes.isEmpty()) {
+      index.putAttributes(entityType.getJavaType().getName(), keyJson, parseObject(json), attributes);
+    }
   }
 
   @Override
   public <X> X get(Key<X, ?> requestedKey) {
     for (ErraiManagedType<? extends X> entityType : requestedKey.getEntityType().getSubtypes()) {
       Key<X, ?> key = new Key<X, Object>((ErraiManagedType<X>) entityType, (Object) requestedKey.getId());
-      String keyJson = namespace + key.toJson();
-      String valueJson = LocalStorage.get(keyJson);
-      logger.trace("<<<get '" + keyJson + "' : " + valueJson);
+      String keyJson = key.toJson();
+      String valueJson = LocalStorage.get(namespace + keyJson);
+      logger.trace("<<<get '" + namespace + keyJson + "' : " + valueJson);
       X entity;
       if (valueJson != null) {
-        entity = entityType.fromJson(em, JSONParser.parseStrict(valueJson));
+        snapshots.put(keyJson, valueJson);
+        entity = ((ErraiIdentifiableType<? extends X>) entityType).fromJson(em, JsonObjectOverlay.parse(valueJson));
         logger.trace("   returning " + entity);
         return entity;
       }
@@ -120,41 +155,104 @@ public class WebStorageBackend implements StorageBackend {
 
   @Override
   public <X> List<X> getAll(final ErraiIdentifiableType<X> type, final EntityJsonMatcher matcher) {
-    // TODO index entries by entity type
-
     final List<X> entities = new ArrayList<X>();
-    LocalStorage.forEachKey(new EntryVisitor() {
-      @Override
-      public void visit(String key, String value) {
-        Key<?, ?> k = parseNamespacedKey(em, key, false);
-        if (k == null) return;
-        logger.trace("getAll(): considering " + value);
-        if (type.isSuperclassOf(k.getEntityType())) {
-          logger.trace(" --> correct type");
-          JSONObject candidate = JSONParser.parseStrict(value).isObject();
-          Assert.notNull(candidate);
-          if (matcher.matches(candidate)) {
-            @SuppressWarnings("unchecked")
-            Key<X, ?> typedKey = (Key<X, ?>) k;
-
-            // Unfortunately, this throws away a lot of work we've already done (getting the entity type,
-            // creating the key, doing a backend.get(), parsing the JSON value, ...)
-            // it would be nice to avoid this, but we have to go back to the entity manager in case the
-            // thing we want is in the persistence context.
-            entities.add((X) em.find(k.getEntityType().getJavaType(), typedKey.getId()));
+    for (ErraiManagedType<X> entityType : type.getSubtypes()) {
+      final String entityTypeName = entityType.getJavaType().getName();
+
+      List<String> keys = null;
+      WebStorageAttributeIndex orderIndex = null;
+      int limit = Integer.MAX_VALUE;
+      if (matcher instanceof IndexedEntityJsonMatcher) {
+        IndexedEntityJsonMatcher indexedMatcher = (IndexedEntityJsonMatcher) matcher;
+        for (AttributeRange range : indexedMatcher.getAttributeRanges()) {
+          WebStorageAttributeIndex attributeIndex = getAttributeIndex(entityType, range.getAttributeName());
+          if (attributeIndex != null && attributeIndex.canLookUp(range)) {
+            keys = attributeIndex.getKeys(range, false);
+            logger.trace("getAll(): " + keys.size() + " candidates in " + range);
+            break;
+          }
+        }
+        if (keys == null && indexedMatcher.getResultLimit() < Integer.MAX_VALUE) {
+          orderIndex = getAttributeIndex(entityType, indexedMatcher.getSortAttributeName());
+          if (orderIndex != null) {
+            keys = orderIndex.getKeys(null, indexedMatcher.isSortDescending());
+            limit = indexedMatcher.getResultLimit();
+          }
+        }
+      }
+      if (keys == null) {
+        keys = index.getKeys(entityTypeName);
+      }
+
+      int matches = 0;
+      Object lastValue = null;
+      for (String keyJson : keys) {
+        if (matches >= limit) {
+          // keep the matches that tie with the last one, the query orders them by its other ORDER BY items
+          Object value = orderIndex.getValue(keyJson);
+          if (lastValue == null ? value != null : value == null || WebStorageAttributeIndex.compareValues(lastValue, value) != 0) {
+            break;
           }
-          else {
-            logger.trace(" --> but not a match");
+        }
+        String value = LocalStorage.get(namespace + keyJson);
+        logger.trace("getAll(): considering " + value);
+        if (value == null) {
+          // removed behind our back (e.g. by LocalStorage.removeAll())
+          snapshots.remove(keyJson);
+          index.remove(entityTypeName, keyJson);
+          index.removeAttributes(entityTypeName, keyJson, getIndexedAttributes(entityType));
+          continue;
+        }
+        JSONObject candidate = parseObject(value);
+        if (matcher.matches(candidate)) {
+          Key<?, ?> k = Key.fromJson(em, keyJson, true);
+
+          // we have to go back to the entity manager in case the thing we want is in the persistence context.
+          entities.add(em.find(entityType.getJavaType(), k.getId()));
+          matches++;
+          if (orderIndex != null) {
+            lastValue = orderIndex.getValue(keyJson);
           }
         }
         else {
-          logger.trace(" --> wrong type");
+          logger.trace(" --> not a match");
         }
       }
-    });
+    }
     return entities;
   }
 
+  /**
+   * Returns the index of the given attribute of the entities of exactly the
+   * given type, or null if the attribute is not indexed.
+   */
+  private WebStorageAttributeIndex getAttributeIndex(ErraiManagedType<?> entityType, String attributeName) {
+    if (attributeName == null) {
+      return null;
+    }
+    for (ErraiSingularAttribute<?, ?> attribute : getIndexedAttributes(entityType)) {
+      if (attribute.getName().equals(attributeName)) {
+        return index.getAttributeIndex(entityType.getJavaType().getName(), attribute);
+      }
+    }
+    return null;
+  }
+
+  private List<ErraiSingularAttribute<?, ?>> getIndexedAttributes(ErraiManagedType<?> entityType) {
+    List<ErraiSingularAttribute<?, ?>> attributes = indexedAttributes.get(entityType);
+    if (attributes == null) {
+      attributes = new ArrayList<ErraiSingularAttribute<?, ?>>();
+      for (SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+        if (attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC
+                && ((ErraiSingularAttribute<?, ?>) attribute).isIndexed()) {
+          attributes.add((ErraiSingularAttribute<?, ?>) attribute);
+        }
+      }
+      indexedAttributes.put(entityType, attributes);
+    }
+    return attributes;
+  }
+
   @Override
   public <X, Y> boolean contains(Key<X, Y> key) {
     boolean contains = false;
@@ -170,25 +268,52 @@ public class WebStorageBackend implements StorageBackend {
 
   @Override
   public <X> void remove(Key<X, ?> key) {
-    String keyJson = namespace + key.toJson();
-    LocalStorage.remove(keyJson);
+    String keyJson = key.toJson();
+    LocalStorage.remove(namespace + keyJson);
+    snapshots.remove(keyJson);
+    index.remove(key.getEntityType().getJavaType().getName(), keyJson);
+    List<ErraiSingularAttribute<?, ?>> attributes = getIndexedAttributes(key.getEntityType());
+    if (!attributes.isEmpty()) {
+      index.removeAttributes(key.getEntityType().getJavaType().getName(), keyJson, attributes);
+    }
   }
 
   @Override
   public <X> boolean isModified(Key<X, ?> key, X value) {
     ErraiManagedType<X> entityType = key.getEntityType();
-    String keyJson = namespace + key.toJson();
-    JSONValue newValueJson = entityType.toJson(em, value);
-    JSONValue oldValueJson = JSONParser.parseStrict(LocalStorage.get(keyJson));
-    boolean modified = !JsonUtil.equals(newValueJson, oldValueJson);
-    if (modified) {
+    String keyJson = key.toJson();
+    String newValue = entityType.toJsonString(em, value);
+    if (newValue.equals(snapshots.get(keyJson))) {
+      return false;
+    }
+
+    // the snapshot is missing or differs: compare with the stored JSON, which may be ordered differently
+    String oldValue = LocalStorage.get(namespace + keyJson);
+    if (newValue.equals(oldValue)) {
+      snapshots.put(keyJson, oldValue);
+      return false;
+    }
+    boolean modified = oldValue == null || !JsonUtil.equals(parseObject(newValue), parseObject(oldValue));
+    if (!modified) {
+      snapshots.put(keyJson, newValue);
+    }
+    else {
       logger.trace("Detected modified entity " + key);
-      logger.trace("   Old: " + oldValueJson);
-      logger.trace("   New: " + newValueJson);
+      logger.trace("   Old: " + oldValue);
+      logger.trace("   New: " + newValue);
     }
     return modified;
   }
 
+  /**
+   * Parses the given JSON object text, which was written by this backend. The
+   * returned object wraps the parsed JavaScript object, whose attributes are
+   * only wrapped when they are read.
+   */
+  private static JSONObject parseObject(String json) {
+    return new JSONObject(JsonObjectOverlay.parse(json));
+  }
+
   private Key<?, ?> parseNamespacedKey(ErraiEntityManager em, String key, boolean failIfNotFound) {
     if ( (!key.startsWith(namespace)) || namespace.length() >= key.length()) return null;
     key = key.substring(namespace.length());
@@ -0,0 +1,346 @@
+package org.jboss.errai.jpa.client.local.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.errai.jpa.client.local.ErraiSingularAttribute;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.json.client.JSONArray;
+import com.google.gwt.json.client.JSONObject;
+import com.google.gwt.json.client.JSONParser;
+import com.google.gwt.json.client.JSONString;
+import com.google.gwt.json.client.JSONValue;
+import com.google.gwt.user.client.Random;
+
+/**
+ * The keys of the entities stored by the {@link WebStorageBackend} in one
+ * namespace, by entity type. This lets queries read the entities of the
+ * requested types only, instead of every entry in WebStorage. The index also
+ * keeps the {@link WebStorageAttributeIndex attribute indexes} of the
+ * namespace.
+ * <p>
+ * The index is kept in WebStorage too, as one entry per entity type holding a
+ * JSON array of entity keys, and one entry per attribute index. Attribute
+ * indexes that are not stored yet are built from the entities of their type
+ * when they are first used. Changes are written at the end of the current
+ * event loop, so that flushing many entities writes each index entry once. A
+ * marker entry says the stored index is complete: it is removed while changes
+ * are pending, and holds a new generation every time changes are written.
+ * <p>
+ * Other windows share the stored index, so the marker is checked every time
+ * the index is used. If the marker is missing, the index is rebuilt from the
+ * stored entities. If it holds a generation this index didn't write or read,
+ * another window changed the stored index, and it is read again. If another
+ * window wrote its changes while changes of this window are pending, the index
+ * is rebuilt too, because the entities hold the changes of both windows.
+ * <p>
+ * Queries verify that the entities listed in the index still exist, so an
+ * index that lists too many keys is harmless.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+class WebStorageKeyIndex {
+
+  /**
+   * Separates the namespace and entity type of an index entry. Does not start
+   * with '{', so the entries are never mistaken for entities.
+   */
+  private static final String INDEX_PREFIX = "[errai-jpa-index]";
+
+  /**
+   * Makes the generations written by this window differ from those of other
+   * windows.
+   */
+  private static final String WINDOW_ID = Integer.toHexString(Random.nextInt());
+
+  private static final Map<String, WebStorageKeyIndex> indexes = new HashMap<String, WebStorageKeyIndex>();
+
+  private final String namespace;
+  private final String markerKey;
+
+  private final Map<String, Set<String>> keysByType = new HashMap<String, Set<String>>();
+  private final Set<String> dirtyTypes = new HashSet<String>();
+  private final Map<String, WebStorageAttributeIndex> attributeIndexes = new HashMap<String, WebStorageAttributeIndex>();
+  private final Set<String> dirtyAttributeIndexes = new HashSet<String>();
+  /**
+   * The value of the marker entry that the cached index corresponds to, or
+   * null if nothing is cached.
+   */
+  private String generation;
+  private int flushCount;
+  private boolean flushScheduled;
+
+  private WebStorageKeyIndex(String namespace) {
+    this.namespace = namespace;
+    this.markerKey = namespace + INDEX_PREFIX;
+  }
+
+  /**
+   * Returns the index of the given namespace. All backends of a namespace
+   * share the same index.
+   */
+  static WebStorageKeyIndex forNamespace(String namespace) {
+    WebStorageKeyIndex index = indexes.get(namespace);
+    if (index == null) {
+      indexes.put(namespace, index = new WebStorageKeyIndex(namespace));
+    }
+    return index;
+  }
+
+  /**
+   * Returns true if the given WebStorage key is an entry of this index.
+   */
+  boolean isIndexEntry(String storageKey) {
+    return storageKey.startsWith(markerKey);
+  }
+
+  /**
+   * Returns a snapshot of the keys (without namespace) of the stored entities of exactly the given type.
+   */
+  List<String> getKeys(String entityTypeName) {
+    ensureCurrent();
+    return new ArrayList<String>(getKeySet(entityTypeName));
+  }
+
+  void add(String entityTypeName, String keyJson) {
+    ensureCurrent();
+    if (getKeySet(entityTypeName).add(keyJson)) {
+      markDirty(entityTypeName);
+    }
+  }
+
+  void remove(String entityTypeName, String keyJson) {
+    ensureCurrent();
+    if (getKeySet(entityTypeName).remove(keyJson)) {
+      markDirty(entityTypeName);
+    }
+  }
+
+  /**
+   * Returns the index of the given attribute of the entities of exactly the
+   * given type, building it if it isn't stored yet.
+   */
+  WebStorageAttributeIndex getAttributeIndex(String entityTypeName, ErraiSingularAttribute<?, ?> attribute) {
+    ensureCurrent();
+    String id = attributeIndexId(entityTypeName, attribute);
+    WebStorageAttributeIndex attributeIndex = attributeIndexes.get(id);
+    if (attributeIndex == null) {
+      attributeIndex = new WebStorageAttributeIndex(attribute.getName(), attribute.getJavaType());
+      String stored = LocalStorage.get(indexKey(id));
+      if (stored != null) {
+        attributeIndex.load(stored);
+      }
+      else {
+        for (String keyJson : getKeySet(entityTypeName)) {
+          String value = LocalStorage.get(namespace + keyJson);
+          if (value != null) {
+            attributeIndex.put(keyJson, JSONParser.parseStrict(value).isObject());
+          }
+        }
+        markAttributeIndexDirty(id);
+      }
+      attributeIndexes.put(id, attributeIndex);
+    }
+    return attributeIndex;
+  }
+
+  /**
+   * Updates the given attribute indexes with the values of a stored entity.
+   */
+  void putAttributes(String entityTypeName, String keyJson, JSONObject entityJson,
+          List<ErraiSingularAttribute<?, ?>> attributes) {
+    for (ErraiSingularAttribute<?, ?> attribute : attributes) {
+      if (getAttributeIndex(entityTypeName, attribute).put(keyJson, entityJson)) {
+        markAttributeIndexDirty(attributeIndexId(entityTypeName, attribute));
+      }
+    }
+  }
+
+  /**
+   * Removes a removed entity from the given attribute indexes.
+   */
+  void removeAttributes(String entityTypeName, String keyJson, List<ErraiSingularAttribute<?, ?>> attributes) {
+    for (ErraiSingularAttribute<?, ?> attribute : attributes) {
+      if (getAttributeIndex(entityTypeName, attribute).remove(keyJson)) {
+        markAttributeIndexDirty(attributeIndexId(entityTypeName, attribute));
+      }
+    }
+  }
+
+  /**
+   * Forgets all keys. Called after all entities and index entries of the
+   * namespace were removed from WebStorage.
+   */
+  void clear() {
+    keysByType.clear();
+    dirtyTypes.clear();
+    attributeIndexes.clear();
+    dirtyAttributeIndexes.clear();
+    writeMarker();
+  }
+
+  private Set<String> getKeySet(String entityTypeName) {
+    Set<String> keys = keysByType.get(entityTypeName);
+    if (keys == null) {
+      keys = new LinkedHashSet<String>();
+      String stored = LocalStorage.get(indexKey(entityTypeName));
+      if (stored != null) {
+        JSONArray array = JSONParser.parseStrict(stored).isArray();
+        for (int i = 0; i < array.size(); i++) {
+          keys.add(array.get(i).isString().stringValue());
+        }
+      }
+      keysByType.put(entityTypeName, keys);
+    }
+    return keys;
+  }
+
+  /**
+   * Makes sure the cached index matches the stored index, which other windows
+   * may have changed.
+   */
+  private void ensureCurrent() {
+    String marker = LocalStorage.get(markerKey);
+    if (flushScheduled) {
+      // this window removed the marker, so another window wrote it
+      if (marker != null && !marker.equals(generation)) {
+        reset();
+        rebuild();
+      }
+    }
+    else if (marker == null) {
+      reset();
+      rebuild();
+    }
+    else if (!marker.equals(generation)) {
+      // read lazily from the entries written by the other window
+      reset();
+      generation = marker;
+    }
+  }
+
+  private void reset() {
+    keysByType.clear();
+    dirtyTypes.clear();
+    attributeIndexes.clear();
+    dirtyAttributeIndexes.clear();
+  }
+
+  /**
+   * Indexes all entities of the namespace, replacing the stored index. The
+   * marker is written right away if nothing was found, otherwise it stays
+   * removed until the rebuilt index is flushed.
+   */
+  private void rebuild() {
+    final List<String> staleEntries = new ArrayList<String>();
+    LocalStorage.forEachKey(new EntryVisitor() {
+      @Override
+      public void visit(String key, String value) {
+        if (!key.startsWith(namespace)) return;
+        if (isIndexEntry(key)) {
+          staleEntries.add(key);
+          return;
+        }
+
+        String keyJson = key.substring(namespace.length());
+        if (keyJson.length() == 0 || keyJson.charAt(0) != '{') return;
+        JSONObject parsedKey = JSONParser.parseStrict(keyJson).isObject();
+        JSONValue entityType = (parsedKey == null) ? null : parsedKey.get("entityType");
+        if (entityType == null || entityType.isString() == null) return;
+
+        String entityTypeName = entityType.isString().stringValue();
+        Set<String> keys = keysByType.get(entityTypeName);
+        if (keys == null) {
+          keysByType.put(entityTypeName, keys = new LinkedHashSet<String>());
+        }
+        keys.add(keyJson);
+      }
+    });
+
+    for (String key : staleEntries) {
+      LocalStorage.remove(key);
+    }
+    for (String entityTypeName : keysByType.keySet()) {
+      markDirty(entityTypeName);
+    }
+    if (!flushScheduled) {
+      // nothing stored: the empty index is complete
+      writeMarker();
+    }
+    else {
+      // the marker of another window, if changes of this window were pending
+      LocalStorage.remove(markerKey);
+    }
+  }
+
+  private void markDirty(String entityTypeName) {
+    dirtyTypes.add(entityTypeName);
+    scheduleFlush();
+  }
+
+  private void markAttributeIndexDirty(String id) {
+    dirtyAttributeIndexes.add(id);
+    scheduleFlush();
+  }
+
+  private void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      LocalStorage.remove(markerKey);
+      Scheduler.get().scheduleFinally(new ScheduledCommand() {
+        @Override
+        public void execute() {
+          flush();
+        }
+      });
+    }
+  }
+
+  private void flush() {
+    // don't overwrite what another window wrote since the last check
+    ensureCurrent();
+    flushScheduled = false;
+    for (String entityTypeName : dirtyTypes) {
+      Set<String> keys = keysByType.get(entityTypeName);
+      if (keys == null || keys.isEmpty()) {
+        LocalStorage.remove(indexKey(entityTypeName));
+      }
+      else {
+        JSONArray array = new JSONArray();
+        for (String key : keys) {
+          array.set(array.size(), new JSONString(key));
+        }
+        LocalStorage.put(indexKey(entityTypeName), array.toString());
+      }
+    }
+    dirtyTypes.clear();
+    for (String id : dirtyAttributeIndexes) {
+      WebStorageAttributeIndex attributeIndex = attributeIndexes.get(id);
+      if (attributeIndex != null) {
+        LocalStorage.put(indexKey(id), attributeIndex.toJson());
+      }
+    }
+    dirtyAttributeIndexes.clear();
+    writeMarker();
+  }
+
+  private void writeMarker() {
+    generation = WINDOW_ID + ":" + (++flushCount);
+    LocalStorage.put(markerKey, generation);
+  }
+
+  private String indexKey(String entityTypeName) {
+    return markerKey + entityTypeName;
+  }
+
+  private static String attributeIndexId(String entityTypeName, ErraiSingularAttribute<?, ?> attribute) {
+    return entityTypeName + "#" + attribute.getName();
+  }
+}
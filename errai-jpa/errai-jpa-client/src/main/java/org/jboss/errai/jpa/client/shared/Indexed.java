@@ -0,0 +1,28 @@
+package org.jboss.errai.jpa.client.shared;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that client-side storage should keep a sorted index of the values
+ * of the target entity attribute. Queries that restrict the attribute to a
+ * single value or a range (such as {@code WHERE e.status = :s} or
+ * {@code WHERE e.dueDate < :d}), as well as queries ordered by the attribute
+ * with a maximum number of results, then only read the matching entities
+ * instead of every entity of the queried type.
+ * <p>
+ * Only attributes of comparable basic types (strings, numbers, booleans,
+ * characters, dates and enums) can be indexed. Each index has to be kept up to
+ * date whenever an entity is stored or removed, so it is only worth declaring
+ * for attributes that queries actually restrict or order by. This annotation
+ * has no effect on server-side persistence.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Indexed {
+
+}
@@ -6,7 +6,10 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
+import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.util.*;
 
 import javax.enterprise.util.TypeLiteral;
@@ -56,6 +59,7 @@ import org.jboss.errai.config.rebind.GenerateAsync;
 import org.jboss.errai.jpa.client.local.*;
 import org.jboss.errai.jpa.client.local.backend.WebStorageBackend;
 import org.jboss.errai.jpa.client.shared.GlobalEntityListener;
+import org.jboss.errai.jpa.client.shared.Indexed;
 
 import com.google.gwt.core.ext.GeneratorContext;
 import com.google.gwt.core.ext.TreeLogger;
@@ -79,6 +83,48 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
     LIFECYCLE_EVENT_TYPES = Collections.unmodifiableList(l);
   }
 
+  /**
+   * The JsonUtil methods that write the basic types which the generated JSON
+   * methods of the entity types handle directly. Enums are handled directly too.
+   */
+  private static final Map<Class<?>, String> JSON_WRITERS;
+
+  /**
+   * The JsonObjectOverlay methods that read the basic types in
+   * {@link #JSON_WRITERS}.
+   */
+  private static final Map<Class<?>, String> JSON_READERS;
+
+  static {
+    Map<Class<?>, String> w = new HashMap<Class<?>, String>();
+    Map<Class<?>, String> r = new HashMap<Class<?>, String>();
+    addJsonAccessors(w, r, "appendString", "getString", String.class);
+    addJsonAccessors(w, r, "appendBoolean", "getBoolean", boolean.class, Boolean.class);
+    addJsonAccessors(w, r, "appendInteger", "getByte", byte.class, Byte.class);
+    addJsonAccessors(w, r, "appendInteger", "getShort", short.class, Short.class);
+    addJsonAccessors(w, r, "appendInteger", "getInteger", int.class, Integer.class);
+    addJsonAccessors(w, r, "appendString", "getLong", long.class, Long.class);
+    addJsonAccessors(w, r, "appendDouble", "getFloat", float.class, Float.class);
+    addJsonAccessors(w, r, "appendDouble", "getDouble", double.class, Double.class);
+    addJsonAccessors(w, r, "appendString", "getCharacter", char.class, Character.class);
+    addJsonAccessors(w, r, "appendString", "getBigInteger", BigInteger.class);
+    addJsonAccessors(w, r, "appendString", "getBigDecimal", BigDecimal.class);
+    addJsonAccessors(w, r, "appendDate", "getDate", Date.class);
+    addJsonAccessors(w, r, "appendDate", "getSqlDate", java.sql.Date.class);
+    addJsonAccessors(w, r, "appendDate", "getTime", Time.class);
+    addJsonAccessors(w, r, "appendString", "getTimestamp", Timestamp.class);
+    JSON_WRITERS = Collections.unmodifiableMap(w);
+    JSON_READERS = Collections.unmodifiableMap(r);
+  }
+
+  private static void addJsonAccessors(
+      Map<Class<?>, String> writers, Map<Class<?>, String> readers, String writer, String reader, Class<?>... types) {
+    for (Class<?> type : types) {
+      writers.put(type, writer);
+      readers.put(type, reader);
+    }
+  }
+
   @Override
   public String generate(final TreeLogger logger, final GeneratorContext context,
                          String typeName) throws UnableToCompleteException {
@@ -260,6 +306,7 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
     }
 
     generateLifecycleEventDeliveryMethods(met, entityTypeSubclass, globalListeners);
+    generateJsonMethods(et, entityTypeSubclass);
 
     pmm.append(Stmt.declareVariable(ErraiEntityType.class).asFinal()
         .named(entityTypeVarName)
@@ -341,6 +388,123 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
     }
   }
 
+  /**
+   * Generates the overrides of {@code appendJsonAttributes()} and
+   * {@code parseJsonAttributes()} for the given JPA Entity type. They read and
+   * write the basic attributes whose types are in {@link #JSON_WRITERS} (and
+   * enums) straight from and to the entity, and leave the other attributes to
+   * the generic implementation in {@link ErraiManagedType}.
+   *
+   * @param et
+   *     The entity type to generate the methods for.
+   * @param classBuilder
+   *     The target builder to receive the generated methods. For the generated code to be
+   *     valid, this should be a builder of a subclass of {@link ErraiManagedType}.
+   */
+  protected void generateJsonMethods(EntityType<?> et, AnonymousClassStructureBuilder classBuilder) {
+    MetaClass entityType = MetaClassFactory.get(et.getJavaType());
+    BlockBuilder<AnonymousClassStructureBuilder> appendMethod =
+        classBuilder.protectedMethod(
+            Void.TYPE,
+            "appendJsonAttributes",
+            Parameter.of(StringBuilder.class, "out"),
+            Parameter.of(ErraiEntityManager.class, "eem"),
+            Parameter.of(entityType, "sourceEntity"));
+    BlockBuilder<AnonymousClassStructureBuilder> parseMethod =
+        classBuilder.protectedMethod(
+            Void.TYPE,
+            "parseJsonAttributes",
+            Parameter.of(ErraiEntityManager.class, "eem"),
+            Parameter.of(entityType, "targetEntity"),
+            Parameter.of(JsonObjectOverlay.class, "json"));
+
+    // sorted by name, so the generated code doesn't depend on hash order
+    Map<String, Attribute<?, ?>> attributes = new TreeMap<String, Attribute<?, ?>>();
+    for (Attribute<?, ?> attr : et.getAttributes()) {
+      attributes.put(attr.getName(), attr);
+    }
+
+    for (Attribute<?, ?> attr : attributes.values()) {
+      String name = attr.getName();
+      Class<?> type = attr.getJavaType();
+
+      if (!(attr instanceof SingularAttribute)
+          || attr.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC
+          || !(type.isEnum() || JSON_WRITERS.containsKey(type))) {
+        // XXX using StringStatement because the inherited methods take the type parameter X of ErraiManagedType
+        appendMethod.append(new StringStatement("appendAttributeJson(out, eem, sourceEntity, \"" + name + "\")"));
+        parseMethod.append(new StringStatement("parseAttributeJson(eem, targetEntity, json, \"" + name + "\")"));
+        continue;
+      }
+
+      if (getJavaMember(attr) instanceof Field) {
+        MetaField field = MetaClassFactory.get((Field) getJavaMember(attr));
+        PrivateAccessUtil.addPrivateAccessStubs(PrivateAccessType.Both, "jsni", classBuilder, field,
+            new Modifier[]{});
+      }
+      MetaClass boxedType = MetaClassFactory.get(type).asBoxed();
+
+      appendMethod.append(Stmt.loadVariable("out").invoke("append", Stmt.loadLiteral(",\"" + name + "\":")));
+      appendMethod.append(
+          Stmt.invokeStatic(JsonUtil.class, type.isEnum() ? "appendEnum" : JSON_WRITERS.get(type),
+              Stmt.loadVariable("out"),
+              Stmt.castTo(boxedType, generateAttributeRead(et, attr, "sourceEntity"))));
+
+      Statement jsonValue;
+      if (type.isEnum()) {
+        jsonValue = Stmt.loadVariable("json").invoke("getEnum", Stmt.loadLiteral(name), Stmt.loadLiteral(type));
+      }
+      else {
+        jsonValue = Stmt.loadVariable("json").invoke(JSON_READERS.get(type), Stmt.loadLiteral(name));
+      }
+
+      // attributes that did not exist when the entity was persisted keep their initial value
+      parseMethod.append(
+          If.cond(Stmt.loadVariable("json").invoke("has", Stmt.loadLiteral(name)))
+              .append(generateAttributeWrite(et, attr, "targetEntity", Stmt.castTo(boxedType, jsonValue)))
+              .finish());
+    }
+
+    appendMethod.finish();
+    parseMethod.finish();
+  }
+
+  /**
+   * Generates an expression that reads the given attribute of the entity in the given variable. If
+   * the attribute is a field, the private accessors for it must already exist in the class being
+   * generated.
+   */
+  private Statement generateAttributeRead(EntityType<?> et, Attribute<?, ?> attr, String entityVar) {
+    Member member = getJavaMember(attr);
+    if (member instanceof Field) {
+      MetaField field = MetaClassFactory.get((Field) member);
+      return Stmt.loadVariable("this")
+          .invoke(PrivateAccessUtil.getPrivateFieldInjectorName(field),
+              Stmt.castTo(et.getJavaType(), Stmt.loadVariable(entityVar)));
+    }
+    else {
+      return Stmt.castTo(et.getJavaType(), Stmt.loadVariable(entityVar)).invoke(member.getName());
+    }
+  }
+
+  /**
+   * Generates a statement that writes the given value to the given attribute of the entity in the
+   * given variable. If the attribute is a field, the private accessors for it must already exist in
+   * the class being generated.
+   */
+  private Statement generateAttributeWrite(EntityType<?> et, Attribute<?, ?> attr, String entityVar, Statement value) {
+    Member member = getJavaMember(attr);
+    if (member instanceof Field) {
+      MetaField field = MetaClassFactory.get((Field) member);
+      return Stmt.loadVariable("this")
+          .invoke(PrivateAccessUtil.getPrivateFieldInjectorName(field),
+              Stmt.castTo(et.getJavaType(), Stmt.loadVariable(entityVar)), value);
+    }
+    else {
+      return Stmt.castTo(et.getJavaType(), Stmt.loadVariable(entityVar)).invoke(getSetterMethodName(attr), value);
+    }
+  }
+
   /**
    * Returns true if the given Java member is annotated as a JPA generated value.
    * <p/>
@@ -363,6 +527,27 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
         + " but JPA attributes can only be a Field or a Method.");
   }
 
+  /**
+   * Returns true if the given attribute is annotated with {@link Indexed}.
+   *
+   * @throws GenerationException
+   *     if the attribute is annotated, but is not of a basic type whose values can be sorted.
+   */
+  private boolean isIndexed(SingularAttribute<?, ?> attr) {
+    AccessibleObject member = (AccessibleObject) getJavaMember(attr);
+    if (member.getAnnotation(Indexed.class) == null) {
+      return false;
+    }
+
+    Class<?> type = attr.getJavaType();
+    if (attr.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC
+        || !(type.isPrimitive() || type.isEnum() || Comparable.class.isAssignableFrom(type))) {
+      throw new GenerationException("Can't index " + attr.getDeclaringType().getJavaType().getName() + "."
+          + attr.getName() + ": only attributes of comparable basic types can be @Indexed");
+    }
+    return true;
+  }
+
   /**
    * Determines if the given attribute is an association. This is necessary because the Hibernate
    * implementation of SingularAttribute.isAssociation always returns false.
@@ -478,6 +663,11 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
         return generateGetValueGenerator(sourceObject, containingClassBuilder);
       }
 
+      // provide indication of indexed annotation
+      if (sourceObject instanceof SingularAttribute && method.getName().equals("isIndexed")) {
+        return Stmt.loadLiteral(isIndexed((SingularAttribute<?, ?>) sourceObject)).returnValue();
+      }
+
       // generate isAssociation because the Hibernate implementation is broken
       if (sourceObject instanceof SingularAttribute && method.getName().equals("isAssociation")) {
         SingularAttribute<?, ?> attr = (SingularAttribute<?, ?>) sourceObject;
@@ -645,24 +835,8 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
       }
       else if (getJavaMember(attr) instanceof Method) {
 
-        String memberName = getJavaMember(attr).getName();
-
-        // hack "getFoo" to "setFoo" by replacing first letter with s
-        String setterMethodName;
-        if (memberName.startsWith("get")) {
-          setterMethodName = "set" + memberName.substring(3);
-        }
-        else if (memberName.startsWith("is")) {
-          setterMethodName = "set" + memberName.substring(2);
-        }
-        else {
-          throw new RuntimeException(
-                  "I don't know how to convert method " + getJavaMember(attr) + " on entity type " +
-                          attr.getDeclaringType().getJavaType().getName() + " into a setter");
-        }
-
         return Stmt.castTo(et.getJavaType(), Stmt.loadVariable(entityInstanceParam))
-            .invoke(setterMethodName,
+            .invoke(getSetterMethodName(attr),
                 Stmt.castTo(MetaClassFactory.get(attr.getJavaType()).asBoxed(), Stmt.loadVariable(newValueParam)));
       }
       else {
@@ -718,6 +892,26 @@ public class ErraiEntityManagerGenerator extends AbstractAsyncGenerator {
     }
   }
 
+  /**
+   * Returns the name of the setter method that goes with the getter method of the given attribute.
+   */
+  private String getSetterMethodName(Attribute<?, ?> attr) {
+    String memberName = getJavaMember(attr).getName();
+
+    // hack "getFoo" to "setFoo" by replacing first letter with s
+    if (memberName.startsWith("get")) {
+      return "set" + memberName.substring(3);
+    }
+    else if (memberName.startsWith("is")) {
+      return "set" + memberName.substring(2);
+    }
+    else {
+      throw new RuntimeException(
+              "I don't know how to convert method " + getJavaMember(attr) + " on entity type " +
+                      attr.getDeclaringType().getJavaType().getName() + " into a setter");
+    }
+  }
+
   /**
    * Gets the Java member that defines the given Attribute. This needs to be done via reflection
    * because Attribute.getJavaMember() is hidden from the Java compiler by our GWT super-source
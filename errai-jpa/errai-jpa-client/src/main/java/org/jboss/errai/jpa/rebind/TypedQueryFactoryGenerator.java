@@ -3,6 +3,7 @@ package org.jboss.errai.jpa.rebind;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -48,6 +49,7 @@ import org.jboss.errai.codegen.util.Implementations;
 import org.jboss.errai.codegen.util.Implementations.StringBuilderBuilder;
 import org.jboss.errai.codegen.util.Stmt;
 import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.jpa.client.local.AttributeRange;
 import org.jboss.errai.jpa.client.local.ErraiAttribute;
 import org.jboss.errai.jpa.client.local.ErraiEntityManager;
 import org.jboss.errai.jpa.client.local.ErraiMetamodel;
@@ -138,6 +140,8 @@ public class TypedQueryFactoryGenerator {
             Stmt.loadVariable("parameters"));
     appendMatchesMethod(anonQueryClassBuilder);
     appendComparatorMethod(anonQueryClassBuilder, context);
+    appendAttributeRangesMethod(anonQueryClassBuilder);
+    appendSortAttributeMethods(anonQueryClassBuilder);
 
     AnonymousClassStructureBuilder factoryBuilder = ObjectBuilder.newInstanceOf(TypedQueryFactory.class, context).extend(
             Stmt.loadLiteral(resultType),
@@ -287,6 +291,196 @@ public class TypedQueryFactoryGenerator {
       .finish();
   }
 
+  /**
+   * Adds the {@code getAttributeRanges()} method to the given class builder if
+   * the WHERE clause of the query is a conjunction that includes comparisons
+   * of attributes with named parameters or literals. Storage backends use the
+   * ranges to look up candidate entities in attribute indexes.
+   *
+   * @param classBuilder
+   *          The class builder to add the method to. Should be a builder for a
+   *          subclass of ErraiTypedQuery.
+   */
+  private void appendAttributeRangesMethod(AnonymousClassStructureBuilder classBuilder) {
+    AstInorderTraversal traverser = new AstInorderTraversal(query.getSqlAST().getWalker().getAST());
+    AST whereClause = traverser.fastForwardTo(HqlSqlTokenTypes.WHERE);
+    if (whereClause == null) {
+      return;
+    }
+
+    List<AST> comparisons = new ArrayList<AST>();
+    collectAttributeComparisons(whereClause.getFirstChild(), comparisons);
+    if (comparisons.isEmpty()) {
+      return;
+    }
+
+    BlockBuilder<AnonymousClassStructureBuilder> rangesMethod = classBuilder.publicOverridesMethod("getAttributeRanges");
+    List<Statement> ranges = new ArrayList<Statement>();
+    for (AST comparison : comparisons) {
+      ranges.add(generateAttributeRange(comparison, rangesMethod));
+    }
+    rangesMethod.append(Stmt.invokeStatic(Arrays.class, "asList",
+            Stmt.newArray(AttributeRange.class).initialize(ranges.toArray())).returnValue());
+    rangesMethod.finish();
+  }
+
+  /**
+   * Collects the comparisons of a single-valued basic attribute of the entity
+   * with a named parameter or a literal that the given expression requires to
+   * be true, descending into the operands of ANDs.
+   */
+  private void collectAttributeComparisons(AST expression, List<AST> comparisons) {
+    switch (expression.getType()) {
+    case HqlSqlTokenTypes.AND:
+      collectAttributeComparisons(expression.getFirstChild(), comparisons);
+      collectAttributeComparisons(expression.getFirstChild().getNextSibling(), comparisons);
+      break;
+
+    case HqlSqlTokenTypes.EQ:
+    case HqlSqlTokenTypes.LT:
+    case HqlSqlTokenTypes.LE:
+    case HqlSqlTokenTypes.GT:
+    case HqlSqlTokenTypes.GE: {
+      AST lhs = expression.getFirstChild();
+      AST rhs = lhs.getNextSibling();
+      if ((isIndexableAttribute(lhs) && isConstant(rhs)) || (isConstant(lhs) && isIndexableAttribute(rhs))) {
+        comparisons.add(expression);
+      }
+      break;
+    }
+
+    case HqlSqlTokenTypes.BETWEEN: {
+      AST middle = expression.getFirstChild();
+      AST small = middle.getNextSibling();
+      AST big = small.getNextSibling();
+      if (isIndexableAttribute(middle) && isConstant(small) && isConstant(big)) {
+        comparisons.add(expression);
+      }
+      break;
+    }
+    }
+  }
+
+  /**
+   * Returns a statement that evaluates to the {@link AttributeRange} of the
+   * given comparison, which was accepted by
+   * {@link #collectAttributeComparisons(AST, List)}.
+   */
+  private Statement generateAttributeRange(AST comparison, BlockBuilder<?> containingMethod) {
+    JsonDotNodeResolver resolver = new JsonDotNodeResolver();
+    if (comparison.getType() == HqlSqlTokenTypes.BETWEEN) {
+      DotNode attribute = (DotNode) comparison.getFirstChild();
+      AST small = attribute.getNextSibling();
+      return Stmt.invokeStatic(AttributeRange.class, "between", attribute.getPropertyPath(),
+              generateExpression(new AstInorderTraversal(small), resolver, containingMethod),
+              generateExpression(new AstInorderTraversal(small.getNextSibling()), resolver, containingMethod));
+    }
+
+    AST lhs = comparison.getFirstChild();
+    AST rhs = lhs.getNextSibling();
+    int operator = comparison.getType();
+    DotNode attribute;
+    AST value;
+    if (isIndexableAttribute(lhs)) {
+      attribute = (DotNode) lhs;
+      value = rhs;
+    }
+    else {
+      // "value op attribute" restricts the attribute like "attribute reverse(op) value"
+      attribute = (DotNode) rhs;
+      value = lhs;
+      switch (operator) {
+      case HqlSqlTokenTypes.LT: operator = HqlSqlTokenTypes.GT; break;
+      case HqlSqlTokenTypes.LE: operator = HqlSqlTokenTypes.GE; break;
+      case HqlSqlTokenTypes.GT: operator = HqlSqlTokenTypes.LT; break;
+      case HqlSqlTokenTypes.GE: operator = HqlSqlTokenTypes.LE; break;
+      }
+    }
+
+    Statement valueStmt = generateExpression(new AstInorderTraversal(value), resolver, containingMethod);
+    switch (operator) {
+    case HqlSqlTokenTypes.EQ:
+      return Stmt.invokeStatic(AttributeRange.class, "equalTo", attribute.getPropertyPath(), valueStmt);
+    case HqlSqlTokenTypes.LT:
+      return Stmt.invokeStatic(AttributeRange.class, "lessThan", attribute.getPropertyPath(), valueStmt, false);
+    case HqlSqlTokenTypes.LE:
+      return Stmt.invokeStatic(AttributeRange.class, "lessThan", attribute.getPropertyPath(), valueStmt, true);
+    case HqlSqlTokenTypes.GT:
+      return Stmt.invokeStatic(AttributeRange.class, "greaterThan", attribute.getPropertyPath(), valueStmt, false);
+    case HqlSqlTokenTypes.GE:
+      return Stmt.invokeStatic(AttributeRange.class, "greaterThan", attribute.getPropertyPath(), valueStmt, true);
+    default:
+      throw new UnexpectedTokenException(operator, "a comparison operator");
+    }
+  }
+
+  /**
+   * Adds the {@code getSortAttributeName()} and {@code isSortDescending()}
+   * methods to the given class builder if the first ORDER BY item of the query
+   * is a single-valued basic attribute of the entity.
+   *
+   * @param classBuilder
+   *          The class builder to add the methods to. Should be a builder for a
+   *          subclass of ErraiTypedQuery.
+   */
+  private void appendSortAttributeMethods(AnonymousClassStructureBuilder classBuilder) {
+    AstInorderTraversal traverser = new AstInorderTraversal(query.getSqlAST().getWalker().getAST());
+    AST orderByParentNode = traverser.fastForwardTo(HqlSqlTokenTypes.ORDER);
+    if (orderByParentNode == null) {
+      return;
+    }
+
+    AST orderNode = orderByParentNode.getFirstChild();
+    if (!isIndexableAttribute(orderNode)) {
+      return;
+    }
+    AST nextNode = orderNode.getNextSibling();
+    boolean descending = nextNode != null && nextNode.getType() == HqlSqlTokenTypes.DESCENDING;
+
+    classBuilder.publicOverridesMethod("getSortAttributeName")
+      .append(Stmt.loadLiteral(((DotNode) orderNode).getPropertyPath()).returnValue())
+      .finish();
+    classBuilder.publicOverridesMethod("isSortDescending")
+      .append(Stmt.loadLiteral(descending).returnValue())
+      .finish();
+  }
+
+  /**
+   * Returns true if the given node is a reference to a single-valued attribute
+   * of a basic type of the entity itself (not of an embedded or related
+   * object).
+   */
+  private static boolean isIndexableAttribute(AST node) {
+    if (!(node instanceof DotNode)) {
+      return false;
+    }
+    DotNode dotNode = (DotNode) node;
+    Type dataType = dotNode.getDataType();
+    return dataType != null
+            && !dataType.isComponentType() && !dataType.isEntityType() && !dataType.isCollectionType()
+            && dotNode.getPropertyPath() != null && dotNode.getPropertyPath().indexOf('.') < 0;
+  }
+
+  /**
+   * Returns true if the given node is a named parameter or a literal, whose
+   * value does not depend on the candidate entity.
+   */
+  private static boolean isConstant(AST node) {
+    switch (node.getType()) {
+    case HqlSqlTokenTypes.NAMED_PARAM:
+    case HqlSqlTokenTypes.QUOTED_STRING:
+    case HqlSqlTokenTypes.NUM_INT:
+    case HqlSqlTokenTypes.NUM_DOUBLE:
+    case HqlSqlTokenTypes.NUM_FLOAT:
+    case HqlSqlTokenTypes.NUM_LONG:
+    case HqlSqlTokenTypes.TRUE:
+    case HqlSqlTokenTypes.FALSE:
+    case HqlSqlTokenTypes.JAVA_CONSTANT:
+      return true;
+    default:
+      return false;
+    }
+  }
 
   /**
    * Consumes the next token from the traverser and returns the equivalent Java
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.jpa.client.local.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.errai.common.client.api.ErrorCallback;
+import org.jboss.errai.common.client.api.RemoteCallback;
+
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Tests the states of an {@link IndexedDbDatabase} against a fake driver, as
+ * the browser the tests run in has no IndexedDB.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class IndexedDbDatabaseTest extends GWTTestCase {
+
+  private static final List<String> STORE_NAMES = Arrays.asList("Album", "Artist");
+
+  /**
+   * Records the requests of the database, which the tests answer through the
+   * database's callbacks.
+   */
+  private static class FakeDriver implements IndexedDbDatabase.Driver {
+    private final List<Integer> openRequests = new ArrayList<Integer>();
+    private final List<Integer> openVersions = new ArrayList<Integer>();
+    private final List<List<String>> openNewStoreNames = new ArrayList<List<String>>();
+    private final List<Object> closed = new ArrayList<Object>();
+    private int reads;
+    private final List<List<String>> writeStoreNames = new ArrayList<List<String>>();
+    private final List<Boolean> writeClears = new ArrayList<Boolean>();
+    private final List<List<String>> writes = new ArrayList<List<String>>();
+
+    @Override
+    public void open(IndexedDbDatabase database, int request, String name, int version, List<String> newStoreNames) {
+      openRequests.add(request);
+      openVersions.add(version);
+      openNewStoreNames.add(newStoreNames);
+    }
+
+    @Override
+    public void close(Object db) {
+      closed.add(db);
+    }
+
+    @Override
+    public void read(IndexedDbDatabase database, Object db, List<String> storeNames) {
+      reads++;
+    }
+
+    @Override
+    public void write(IndexedDbDatabase database, Object db, List<String> storeNames, boolean clear,
+            List<String> changes) {
+      writeStoreNames.add(storeNames);
+      writeClears.add(clear);
+      writes.add(changes);
+    }
+
+    int lastOpenRequest() {
+      return openRequests.get(openRequests.size() - 1);
+    }
+
+    int lastOpenVersion() {
+      return openVersions.get(openVersions.size() - 1);
+    }
+
+    List<String> lastOpenNewStoreNames() {
+      return openNewStoreNames.get(openNewStoreNames.size() - 1);
+    }
+  }
+
+  private static class Callbacks implements RemoteCallback<IndexedDbDatabase>, ErrorCallback<String> {
+    private int opened;
+    private final List<String> errors = new ArrayList<String>();
+
+    @Override
+    public void callback(IndexedDbDatabase database) {
+      opened++;
+    }
+
+    @Override
+    public boolean error(String name, Throwable throwable) {
+      errors.add(throwable.getMessage());
+      return false;
+    }
+  }
+
+  private static class WriteCallbacks implements RemoteCallback<Void>, ErrorCallback<String> {
+    private int written;
+    private final List<String> errors = new ArrayList<String>();
+
+    @Override
+    public void callback(Void response) {
+      written++;
+    }
+
+    @Override
+    public boolean error(String name, Throwable throwable) {
+      errors.add(throwable.getMessage());
+      return false;
+    }
+  }
+
+  private final FakeDriver driver = new FakeDriver();
+  private final Callbacks callbacks = new Callbacks();
+
+  @Override
+  public String getModuleName() {
+    return "org.jboss.errai.jpa.test.JpaTest";
+  }
+
+  /**
+   * Opens a database that has all object stores, and reads its entities.
+   */
+  private IndexedDbDatabase openLoaded(Object db) {
+    IndexedDbDatabase database = IndexedDbDatabase.open("test", STORE_NAMES, driver, callbacks, callbacks);
+    database.onOpened(driver.lastOpenRequest(), db, 1, STORE_NAMES);
+    database.onRead("Album", "1", "{\"name\":\"Abbey Road\"}");
+    database.onLoaded();
+    assertEquals(1, callbacks.opened);
+    return database;
+  }
+
+  /**
+   * Runs the given command after the writes scheduled so far were started.
+   */
+  private void afterCommit(final ScheduledCommand command) {
+    delayTestFinish(5000);
+    Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        command.execute();
+        finishTest();
+      }
+    });
+  }
+
+  public void testOpenReadsAllEntities() {
+    IndexedDbDatabase database = openLoaded("db");
+
+    assertEquals(Arrays.asList(0), driver.openVersions);
+    assertEquals(1, driver.reads);
+    assertEquals("{\"name\":\"Abbey Road\"}", database.get("Album", "1"));
+    assertEquals(1, database.getAll("Album").size());
+    assertEquals(0, database.getAll("Artist").size());
+  }
+
+  public void testMissingObjectStoresAreCreatedByUpgrade() {
+    IndexedDbDatabase database = IndexedDbDatabase.open("test", STORE_NAMES, driver, callbacks, callbacks);
+    database.onOpened(driver.lastOpenRequest(), "db v1", 1, Collections.singletonList("Album"));
+
+    assertEquals(Arrays.<Object> asList("db v1"), driver.closed);
+    assertEquals(2, driver.lastOpenVersion());
+    assertEquals(Arrays.asList("Artist"), driver.lastOpenNewStoreNames());
+    assertEquals(0, driver.reads);
+
+    database.onOpened(driver.lastOpenRequest(), "db v2", 2, STORE_NAMES);
+    assertEquals(1, driver.reads);
+    database.onLoaded();
+    assertEquals(1, callbacks.opened);
+    assertTrue(callbacks.errors.isEmpty());
+  }
+
+  public void testUpgradeIsRetriedWhenAnotherWindowUpgradedToTheSameVersion() {
+    IndexedDbDatabase database = IndexedDbDatabase.open("test", STORE_NAMES, driver, callbacks, callbacks);
+    database.onOpened(driver.lastOpenRequest(), "db v1", 1, Collections.<String> emptyList());
+
+    // the other window's upgrade to version 2 only created its own object store
+    database.onOpened(driver.lastOpenRequest(), "db v2", 2, Collections.singletonList("Album"));
+    assertEquals(Arrays.<Object> asList("db v1", "db v2"), driver.closed);
+    assertEquals(3, driver.lastOpenVersion());
+    assertEquals(Arrays.asList("Artist"), driver.lastOpenNewStoreNames());
+
+    // the other window got ahead again
+    database.onOpenFailed(driver.lastOpenRequest(), "VersionError");
+    assertEquals(0, driver.lastOpenVersion());
+
+    database.onOpened(driver.lastOpenRequest(), "db v4", 4, STORE_NAMES);
+    database.onLoaded();
+    assertEquals(1, callbacks.opened);
+    assertTrue(callbacks.errors.isEmpty());
+  }
+
+  public void testUpgradeGivesUpAfterRetries() {
+    IndexedDbDatabase database = IndexedDbDatabase.open("test", STORE_NAMES, driver, callbacks, callbacks);
+    for (int version = 1; version <= 4; version++) {
+      database.onOpened(driver.lastOpenRequest(), "db v" + version, version, Collections.<String> emptyList());
+    }
+
+    assertEquals(1, callbacks.errors.size());
+    assertEquals(4, driver.openRequests.size());
+    assertEquals(0, callbacks.opened);
+  }
+
+  public void testBlockedUpgradeIsReported() {
+    IndexedDbDatabase database = IndexedDbDatabase.open("test", STORE_NAMES, driver, callbacks, callbacks);
+    database.onOpened(driver.lastOpenRequest(), "db v1", 1, Collections.singletonList("Album"));
+    database.onBlocked(driver.lastOpenRequest());
+
+    assertEquals(1, callbacks.errors.size());
+    assertTrue(callbacks.errors.get(0), callbacks.errors.get(0).contains("blocked"));
+
+    // the other window closed the database after all, but we gave up on it
+    database.onOpened(driver.lastOpenRequest(), "db v2", 2, STORE_NAMES);
+    assertEquals(Arrays.<Object> asList("db v1", "db v2"), driver.closed);
+    assertEquals(0, driver.reads);
+    assertEquals(0, callbacks.opened);
+  }
+
+  public void testChangesAreWrittenInOneTransaction() {
+    final IndexedDbDatabase database = openLoaded("db");
+    final WriteCallbacks writeCallbacks = new WriteCallbacks();
+
+    database.put("Album", "2", "{\"name\":\"Let It Be\"}");
+    database.put("Artist", "1", "{\"name\":\"The Beatles\"}");
+    database.remove("Album", "1");
+    database.whenWritten(writeCallbacks, writeCallbacks);
+    assertEquals("{\"name\":\"Let It Be\"}", database.get("Album", "2"));
+    assertNull(database.get("Album", "1"));
+
+    afterCommit(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        assertEquals(1, driver.writes.size());
+        assertEquals(Arrays.asList("Album", "Artist"), driver.writeStoreNames.get(0));
+        assertFalse(driver.writeClears.get(0));
+        assertEquals(Arrays.asList(
+                "Album", "2", "{\"name\":\"Let It Be\"}",
+                "Album", "1", null,
+                "Artist", "1", "{\"name\":\"The Beatles\"}"), driver.writes.get(0));
+        assertEquals(0, writeCallbacks.written);
+
+        database.onWritten();
+        assertEquals(1, writeCallbacks.written);
+        assertTrue(writeCallbacks.errors.isEmpty());
+      }
+    });
+  }
+
+  public void testClearReplacesPendingChanges() {
+    final IndexedDbDatabase database = openLoaded("db");
+
+    database.put("Album", "2", "{\"name\":\"Let It Be\"}");
+    database.clear();
+    assertNull(database.get("Album", "1"));
+    assertNull(database.get("Album", "2"));
+
+    afterCommit(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        assertEquals(1, driver.writes.size());
+        assertEquals(STORE_NAMES, driver.writeStoreNames.get(0));
+        assertTrue(driver.writeClears.get(0));
+        assertTrue(driver.writes.get(0).isEmpty());
+      }
+    });
+  }
+
+  public void testWhenWrittenReportsFailedWrites() {
+    final IndexedDbDatabase database = openLoaded("db");
+    final WriteCallbacks writeCallbacks = new WriteCallbacks();
+
+    database.put("Album", "2", "{\"name\":\"Let It Be\"}");
+    database.whenWritten(writeCallbacks, writeCallbacks);
+
+    afterCommit(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        database.onWriteFailed("QuotaExceededError");
+        assertEquals(0, writeCallbacks.written);
+        assertEquals(1, writeCallbacks.errors.size());
+        assertTrue(callbacks.errors.isEmpty());
+
+        // nothing left to write
+        database.whenWritten(writeCallbacks, writeCallbacks);
+        assertEquals(1, writeCallbacks.written);
+      }
+    });
+  }
+
+  public void testReopensAfterVersionChange() {
+    final IndexedDbDatabase database = openLoaded("db v1");
+    final WriteCallbacks writeCallbacks = new WriteCallbacks();
+
+    // another window upgraded the database
+    database.onClosed("db v1");
+    database.put("Album", "2", "{\"name\":\"Let It Be\"}");
+    database.whenWritten(writeCallbacks, writeCallbacks);
+
+    afterCommit(new ScheduledCommand() {
+      @Override
+      public void execute() {
+        assertEquals(0, driver.writes.size());
+        assertEquals(2, driver.openRequests.size());
+        assertEquals(0, driver.lastOpenVersion());
+
+        Collection<String> storeNames = new ArrayList<String>(STORE_NAMES);
+        storeNames.add("Song");
+        database.onOpened(driver.lastOpenRequest(), "db v2", 2, storeNames);
+        assertEquals(1, driver.reads);
+        assertEquals(1, driver.writes.size());
+        assertEquals(Arrays.asList("Album", "2", "{\"name\":\"Let It Be\"}"), driver.writes.get(0));
+
+        database.onWritten();
+        assertEquals(1, writeCallbacks.written);
+        assertEquals(1, callbacks.opened);
+      }
+    });
+  }
+}
@@ -38,6 +38,8 @@ import org.junit.runners.Suite;
   ErraiCascadeTest.class,
   HibernateCascadeTest.class,
   JsonUtilTest.class,
-  NamespacedEntityManagerTest.class})
+  NamespacedEntityManagerTest.class,
+  WebStorageBackendBenchmarkTest.class,
+  WebStorageKeyIndexTest.class})
 public class AllJpaTests {
 }
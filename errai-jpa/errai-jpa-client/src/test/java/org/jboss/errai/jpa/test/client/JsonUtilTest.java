@@ -1,9 +1,22 @@
 package org.jboss.errai.jpa.test.client;
 
+import java.sql.Timestamp;
+import java.util.Date;
+
+import javax.persistence.PersistenceContextType;
+
+import org.jboss.errai.ioc.client.Container;
+import org.jboss.errai.ioc.client.container.IOCBeanManagerLifecycle;
+import org.jboss.errai.jpa.client.local.ErraiEntityManager;
+import org.jboss.errai.jpa.client.local.ErraiEntityType;
+import org.jboss.errai.jpa.client.local.JsonObjectOverlay;
 import org.jboss.errai.jpa.client.local.JsonUtil;
 import org.jboss.errai.jpa.test.client.res.JpaClientTestCase;
+import org.jboss.errai.jpa.test.entity.MethodAccessedZentity;
+import org.jboss.errai.jpa.test.entity.Zentity;
 
 import com.google.gwt.json.client.JSONNull;
+import com.google.gwt.json.client.JSONParser;
 
 public class JsonUtilTest extends JpaClientTestCase {
 
@@ -12,6 +25,38 @@ public class JsonUtilTest extends JpaClientTestCase {
     return "org.jboss.errai.jpa.test.JpaTest";
   }
 
+  @Override
+  protected void gwtSetUp() throws Exception {
+    super.gwtSetUp();
+
+    new IOCBeanManagerLifecycle().resetBeanManager();
+
+    // We need to bootstrap the IoC container manually because GWTTestCase
+    // doesn't call onModuleLoad() for us.
+    new Container().bootstrapContainer();
+  }
+
+  protected ErraiEntityManager getEntityManager() {
+    JpaTestClient testClient = JpaTestClient.INSTANCE;
+    assertNotNull(testClient);
+    assertNotNull(testClient.entityManager);
+    ((ErraiEntityManager) testClient.entityManager).removeAll();
+    return (ErraiEntityManager) testClient.entityManager;
+  }
+
+  private static Timestamp timestamp() {
+    Timestamp timestamp = new Timestamp(1234L);
+    timestamp.setNanos(4321);
+    return timestamp;
+  }
+
+  /**
+   * Removes the given attribute, as if it didn't exist when the JSON was stored.
+   */
+  private static native void removeAttribute(JsonObjectOverlay json, String name) /*-{
+    delete json[name];
+  }-*/;
+
   public void testBasicValueNullFromJson() throws Exception {
     assertNull(JsonUtil.basicValueFromJson(null, boolean.class));
   }
@@ -19,4 +64,107 @@ public class JsonUtilTest extends JpaClientTestCase {
   public void testNullToBasicJsonValue() throws Exception {
     assertSame(JSONNull.getInstance(), JsonUtil.basicValueToJson(null));
   }
+
+  public void testAppendedValuesMatchBasicJsonValues() throws Exception {
+    assertAppendedString("quote\" and backslash\\");
+    assertAppendedString(Long.MAX_VALUE);
+    assertAppendedString(null);
+
+    StringBuilder out = new StringBuilder();
+    JsonUtil.appendInteger(out, 42);
+    assertEquals(JsonUtil.basicValueToJson(42).toString(), out.toString());
+
+    out = new StringBuilder();
+    JsonUtil.appendDouble(out, 1.5);
+    assertEquals(JsonUtil.basicValueToJson(1.5).toString(), out.toString());
+
+    out = new StringBuilder();
+    JsonUtil.appendBoolean(out, true);
+    assertEquals(JsonUtil.basicValueToJson(true).toString(), out.toString());
+
+    Date date = new Date(1234567890123L);
+    out = new StringBuilder();
+    JsonUtil.appendDate(out, date);
+    assertEquals(JsonUtil.basicValueToJson(date).toString(), out.toString());
+  }
+
+  public void testOverlayReadsAppendedValues() throws Exception {
+    JsonObjectOverlay json = JsonObjectOverlay.parse("{\"long\":\"9223372036854775807\",\"int\":42,\"null\":null}");
+    assertEquals(Long.valueOf(Long.MAX_VALUE), json.getLong("long"));
+    assertEquals(Integer.valueOf(42), json.getInteger("int"));
+    assertTrue(json.has("null"));
+    assertNull(json.getInteger("null"));
+    assertFalse(json.has("missing"));
+  }
+
+  public void testGeneratedJsonRoundTripUsingFieldAccess() throws Exception {
+    Zentity original = new Zentity();
+    original.setPrimitiveInt(Integer.MIN_VALUE);
+    original.setPrimitiveDouble(1.5);
+    original.setString("quote\" and \u4292");
+    original.setSqlTimestamp(timestamp());
+    original.setEnumeration(PersistenceContextType.EXTENDED);
+
+    ErraiEntityManager em = getEntityManager();
+    em.persist(original);
+    em.flush();
+    ErraiEntityType<Zentity> type = em.getMetamodel().entity(Zentity.class);
+    String json = type.toJsonString(em, original);
+    assertTrue(JsonUtil.equals(type.toJson(em, original), JSONParser.parseStrict(json)));
+
+    em.clear();
+    Zentity parsed = type.fromJson(em, JsonObjectOverlay.parse(json));
+    assertNotSame(original, parsed);
+    assertEquals(original.toString(), parsed.toString());
+  }
+
+  public void testGeneratedJsonRoundTripUsingMethodAccess() throws Exception {
+    MethodAccessedZentity original = new MethodAccessedZentity();
+    original.setPrimitiveInt(Integer.MIN_VALUE);
+    original.setString("quote\" and \u4292");
+    original.setSqlTimestamp(timestamp());
+    original.setEnumeration(PersistenceContextType.EXTENDED);
+
+    ErraiEntityManager em = getEntityManager();
+    em.persist(original);
+    em.flush();
+    ErraiEntityType<MethodAccessedZentity> type = em.getMetamodel().entity(MethodAccessedZentity.class);
+    String json = type.toJsonString(em, original);
+    assertTrue(JsonUtil.equals(type.toJson(em, original), JSONParser.parseStrict(json)));
+
+    em.clear();
+    MethodAccessedZentity parsed = type.fromJson(em, JsonObjectOverlay.parse(json));
+    assertNotSame(original, parsed);
+    assertEquals(original.toString(), parsed.toString());
+  }
+
+  public void testAttributesMissingFromJsonKeepTheirInitialValue() throws Exception {
+    Zentity original = new Zentity();
+    original.setPrimitiveInt(42);
+    original.setString("kept");
+    original.setSqlTimestamp(timestamp());
+    original.setEnumeration(PersistenceContextType.EXTENDED);
+
+    ErraiEntityManager em = getEntityManager();
+    em.persist(original);
+    em.flush();
+    ErraiEntityType<Zentity> type = em.getMetamodel().entity(Zentity.class);
+    JsonObjectOverlay json = JsonObjectOverlay.parse(type.toJsonString(em, original));
+    removeAttribute(json, "primitiveInt");
+    removeAttribute(json, "sqlTimestamp");
+    removeAttribute(json, "enumeration");
+
+    em.clear();
+    Zentity parsed = type.fromJson(em, json);
+    assertEquals(0, parsed.getPrimitiveInt());
+    assertNull(parsed.getSqlTimestamp());
+    assertNull(parsed.getEnumeration());
+    assertEquals("kept", parsed.getString());
+  }
+
+  private static void assertAppendedString(Object value) {
+    StringBuilder out = new StringBuilder();
+    JsonUtil.appendString(out, value);
+    assertEquals(JsonUtil.basicValueToJson(value).toString(), out.toString());
+  }
 }
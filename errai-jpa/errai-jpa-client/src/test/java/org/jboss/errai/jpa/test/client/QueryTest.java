@@ -1053,6 +1053,27 @@ public class QueryTest extends JpaClientTestCase {
     assertEquals(resultStrings.get(4), zentity5.toString());
   }
 
+  public void testOrderByWithFirstAndMaxResults() {
+    EntityManager em = getEntityManagerAndClearStorageBackend();
+
+    for (int i : new int[] { 5, 1, 3, 2, 4, 2 }) {
+      Zentity zentity = new Zentity();
+      zentity.setPrimitiveInt(i);
+      em.persist(zentity);
+    }
+
+    em.flush();
+
+    TypedQuery<Zentity> q = em.createNamedQuery("zentityOrderByPrimitiveInt", Zentity.class);
+    q.setFirstResult(1);
+    q.setMaxResults(3);
+    List<Zentity> results = q.getResultList();
+    assertEquals(3, results.size());
+    assertEquals(2, results.get(0).getPrimitiveInt());
+    assertEquals(2, results.get(1).getPrimitiveInt());
+    assertEquals(3, results.get(2).getPrimitiveInt());
+  }
+
   public void testOrderByPrimitiveIntDesc() {
     EntityManager em = getEntityManagerAndClearStorageBackend();
 
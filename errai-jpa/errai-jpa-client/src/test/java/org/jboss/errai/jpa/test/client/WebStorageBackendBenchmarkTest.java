@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.jpa.test.client;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.jboss.errai.ioc.client.Container;
+import org.jboss.errai.ioc.client.container.IOCBeanManagerLifecycle;
+import org.jboss.errai.jpa.client.local.ErraiEntityManager;
+import org.jboss.errai.jpa.client.local.backend.EntryVisitor;
+import org.jboss.errai.jpa.client.local.backend.LocalStorage;
+import org.jboss.errai.jpa.test.client.res.JpaClientTestCase;
+import org.jboss.errai.jpa.test.entity.Album;
+import org.jboss.errai.jpa.test.entity.Genre;
+
+/**
+ * Compares querying a small entity type through the key index of the
+ * WebStorageBackend with visiting every entry in WebStorage, which is what
+ * queries had to do before the index existed. The timings are logged, not
+ * asserted on.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class WebStorageBackendBenchmarkTest extends JpaClientTestCase {
+
+  private static final int OTHER_ENTITIES = 2000;
+  private static final int QUERIES = 20;
+
+  @Override
+  public String getModuleName() {
+    return "org.jboss.errai.jpa.test.JpaTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    super.gwtSetUp();
+
+    new IOCBeanManagerLifecycle().resetBeanManager();
+
+    // We need to bootstrap the IoC container manually because GWTTestCase
+    // doesn't call onModuleLoad() for us.
+    new Container().bootstrapContainer();
+  }
+
+  protected EntityManager getEntityManager() {
+    JpaTestClient testClient = JpaTestClient.INSTANCE;
+    assertNotNull(testClient);
+    assertNotNull(testClient.entityManager);
+    ((ErraiEntityManager) testClient.entityManager).removeAll();
+    return testClient.entityManager;
+  }
+
+  public void testQuerySmallTypeAmongManyEntities() throws Exception {
+    EntityManager em = getEntityManager();
+    for (int i = 0; i < OTHER_ENTITIES; i++) {
+      em.persist(new Genre("genre" + i));
+    }
+    for (int i = 0; i < 5; i++) {
+      Album album = new Album();
+      album.setName("album" + i);
+      em.persist(album);
+    }
+    em.flush();
+    em.clear();
+
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < QUERIES; i++) {
+      TypedQuery<Album> q = em.createNamedQuery("selectAlbumByName", Album.class);
+      q.setParameter("name", "album3");
+      List<Album> albums = q.getResultList();
+      assertEquals(1, albums.size());
+      assertEquals("album3", albums.get(0).getName());
+    }
+    long indexedTime = System.currentTimeMillis() - start;
+
+    final int[] visited = new int[1];
+    start = System.currentTimeMillis();
+    for (int i = 0; i < QUERIES; i++) {
+      LocalStorage.forEachKey(new EntryVisitor() {
+        @Override
+        public void visit(String key, String value) {
+          visited[0]++;
+        }
+      });
+    }
+    long fullScanTime = System.currentTimeMillis() - start;
+
+    assertTrue(visited[0] >= QUERIES * (OTHER_ENTITIES + 5));
+    System.out.println(QUERIES + " indexed queries: " + indexedTime + "ms; "
+            + QUERIES + " visits of all " + (visited[0] / QUERIES) + " WebStorage entries: " + fullScanTime + "ms");
+  }
+}
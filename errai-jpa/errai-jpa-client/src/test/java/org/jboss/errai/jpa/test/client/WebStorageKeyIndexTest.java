@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.jpa.test.client;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.jboss.errai.ioc.client.Container;
+import org.jboss.errai.ioc.client.container.IOCBeanManagerLifecycle;
+import org.jboss.errai.jpa.client.local.ErraiEntityManager;
+import org.jboss.errai.jpa.client.local.backend.EntryVisitor;
+import org.jboss.errai.jpa.client.local.backend.LocalStorage;
+import org.jboss.errai.jpa.test.client.res.JpaClientTestCase;
+import org.jboss.errai.jpa.test.entity.Album;
+
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Tests that queries through the key index of the WebStorageBackend find the
+ * stored entities when WebStorage was changed behind the index's back, as
+ * another window of the same application would.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class WebStorageKeyIndexTest extends JpaClientTestCase {
+
+  private static final String INDEX_PREFIX = "[errai-jpa-index]";
+
+  @Override
+  public String getModuleName() {
+    return "org.jboss.errai.jpa.test.JpaTest";
+  }
+
+  @Override
+  protected void gwtSetUp() throws Exception {
+    super.gwtSetUp();
+
+    new IOCBeanManagerLifecycle().resetBeanManager();
+
+    // We need to bootstrap the IoC container manually because GWTTestCase
+    // doesn't call onModuleLoad() for us.
+    new Container().bootstrapContainer();
+  }
+
+  protected EntityManager getEntityManager() {
+    JpaTestClient testClient = JpaTestClient.INSTANCE;
+    assertNotNull(testClient);
+    assertNotNull(testClient.entityManager);
+    ((ErraiEntityManager) testClient.entityManager).removeAll();
+    return testClient.entityManager;
+  }
+
+  private static Album persistAlbum(EntityManager em, String name) {
+    Album album = new Album();
+    album.setName(name);
+    em.persist(album);
+    em.flush();
+    return album;
+  }
+
+  private static List<Album> findAlbums(EntityManager em, String name) {
+    TypedQuery<Album> q = em.createNamedQuery("selectAlbumByName", Album.class);
+    q.setParameter("name", name);
+    return q.getResultList();
+  }
+
+  /**
+   * Returns the stored Album entities and index entries of the default
+   * namespace.
+   */
+  private static Map<String, String> storedAlbumEntries() {
+    final Map<String, String> entries = new HashMap<String, String>();
+    LocalStorage.forEachKey(new EntryVisitor() {
+      @Override
+      public void visit(String key, String value) {
+        if (key.startsWith(INDEX_PREFIX) || (key.startsWith("{") && key.contains(Album.class.getName() + "\""))) {
+          entries.put(key, value);
+        }
+      }
+    });
+    return entries;
+  }
+
+  private static String storedAlbumKey() {
+    for (String key : storedAlbumEntries().keySet()) {
+      if (key.startsWith("{")) {
+        return key;
+      }
+    }
+    fail("No Album in WebStorage");
+    return null;
+  }
+
+  /**
+   * Runs the given steps in separate event loops, so that the index changes of
+   * each step are written before the next step runs, then finishes the test.
+   */
+  private void runInEventLoops(final Runnable... steps) {
+    delayTestFinish(10000);
+    new Timer() {
+      private int next;
+
+      @Override
+      public void run() {
+        steps[next++].run();
+        if (next < steps.length) {
+          schedule(1);
+        }
+        else {
+          finishTest();
+        }
+      }
+    }.schedule(1);
+  }
+
+  public void testIndexIsRebuiltWhenMarkerIsMissing() throws Exception {
+    final EntityManager em = getEntityManager();
+    final Album album = persistAlbum(em, "Abbey Road");
+    final String[] stored = new String[2];
+    runInEventLoops(new Runnable() {
+      @Override
+      public void run() {
+        stored[0] = storedAlbumKey();
+        stored[1] = LocalStorage.get(stored[0]);
+        em.remove(album);
+        em.flush();
+        em.clear();
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        assertEquals(0, findAlbums(em, "Abbey Road").size());
+
+        // another window stores the album and hasn't written its index changes yet
+        LocalStorage.put(stored[0], stored[1]);
+        LocalStorage.remove(INDEX_PREFIX);
+
+        List<Album> albums = findAlbums(em, "Abbey Road");
+        assertEquals(1, albums.size());
+        assertEquals("Abbey Road", albums.get(0).getName());
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        assertNotNull("The rebuilt index is complete", LocalStorage.get(INDEX_PREFIX));
+        em.clear();
+        assertEquals(1, findAlbums(em, "Abbey Road").size());
+      }
+    });
+  }
+
+  public void testIndexIsReloadedWhenAnotherWindowChangedIt() throws Exception {
+    final EntityManager em = getEntityManager();
+    final Album album = persistAlbum(em, "Let It Be");
+    final Map<String, String> stored = new HashMap<String, String>();
+    runInEventLoops(new Runnable() {
+      @Override
+      public void run() {
+        stored.putAll(storedAlbumEntries());
+        assertNotNull(stored.get(INDEX_PREFIX));
+        em.remove(album);
+        em.flush();
+        em.clear();
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        assertEquals(0, findAlbums(em, "Let It Be").size());
+        assertFalse(stored.get(INDEX_PREFIX).equals(LocalStorage.get(INDEX_PREFIX)));
+
+        // another window stores the album and writes its complete index
+        for (Map.Entry<String, String> entry : stored.entrySet()) {
+          LocalStorage.put(entry.getKey(), entry.getValue());
+        }
+
+        List<Album> albums = findAlbums(em, "Let It Be");
+        assertEquals(1, albums.size());
+        assertEquals("Let It Be", albums.get(0).getName());
+      }
+    });
+  }
+
+  public void testIndexIsRebuiltWhenAnotherWindowWritesDuringPendingChanges() throws Exception {
+    final EntityManager em = getEntityManager();
+    final Album album = persistAlbum(em, "Rubber Soul");
+    final Map<String, String> stored = new HashMap<String, String>();
+    runInEventLoops(new Runnable() {
+      @Override
+      public void run() {
+        stored.putAll(storedAlbumEntries());
+        em.remove(album);
+        em.flush();
+        em.clear();
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        persistAlbum(em, "Help!");
+
+        // while the index changes of this window are pending, another window
+        // stores the first album and writes its complete index
+        for (Map.Entry<String, String> entry : stored.entrySet()) {
+          LocalStorage.put(entry.getKey(), entry.getValue());
+        }
+
+        assertEquals(1, findAlbums(em, "Rubber Soul").size());
+        assertNull("The rebuilt index is not written yet", LocalStorage.get(INDEX_PREFIX));
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        assertNotNull("The rebuilt index is written", LocalStorage.get(INDEX_PREFIX));
+        em.clear();
+        assertEquals(1, findAlbums(em, "Rubber Soul").size());
+        assertEquals(1, findAlbums(em, "Help!").size());
+      }
+    });
+  }
+
+  public void testEntriesRemovedBehindTheIndexAreSkipped() throws Exception {
+    final EntityManager em = getEntityManager();
+    persistAlbum(em, "Revolver");
+    final String key = storedAlbumKey();
+    persistAlbum(em, "Revolver");
+    runInEventLoops(new Runnable() {
+      @Override
+      public void run() {
+        em.clear();
+        assertEquals(2, findAlbums(em, "Revolver").size());
+
+        LocalStorage.remove(key);
+
+        assertEquals(1, findAlbums(em, "Revolver").size());
+      }
+    });
+  }
+
+  public void testMarkerIsRemovedWhileChangesArePending() throws Exception {
+    final EntityManager em = getEntityManager();
+    final String[] marker = new String[1];
+    runInEventLoops(new Runnable() {
+      @Override
+      public void run() {
+        marker[0] = LocalStorage.get(INDEX_PREFIX);
+        assertNotNull("The index of the empty namespace is complete", marker[0]);
+
+        persistAlbum(em, "Yesterday");
+        assertNull(LocalStorage.get(INDEX_PREFIX));
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        String newMarker = LocalStorage.get(INDEX_PREFIX);
+        assertNotNull(newMarker);
+        assertFalse(marker[0].equals(newMarker));
+        assertNotNull(LocalStorage.get(INDEX_PREFIX + Album.class.getName()));
+      }
+    });
+  }
+}
@@ -15,6 +15,7 @@ import javax.persistence.NamedQuery;
 import javax.persistence.PersistenceContextType;
 
 import org.jboss.errai.ioc.client.api.TestOnly;
+import org.jboss.errai.jpa.client.shared.Indexed;
 
 /**
  * This is the Zen Entity: one with everything. We use it to ensure all the JPA
@@ -172,6 +173,7 @@ public class Zentity {
   private short primitiveShort;
   private Short boxedShort;
 
+  @Indexed
   private int primitiveInt;
   private Integer boxedInt;
 
@@ -182,8 +184,10 @@ public class Zentity {
   private Float boxedFloat;
 
   private double primitiveDouble;
+  @Indexed
   private Double boxedDouble;
 
+  @Indexed
   private String string;
 
   private BigInteger bigInteger;
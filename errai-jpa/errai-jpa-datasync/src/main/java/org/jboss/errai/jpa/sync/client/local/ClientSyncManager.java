@@ -2,6 +2,7 @@ package org.jboss.errai.jpa.sync.client.local;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,8 +13,14 @@ import javax.inject.Inject;
 import javax.persistence.NamedQuery;
 import javax.persistence.TypedQuery;
 
+import org.jboss.errai.bus.client.ErraiBus;
 import org.jboss.errai.bus.client.api.BusErrorCallback;
+import org.jboss.errai.bus.client.api.BusLifecycleAdapter;
+import org.jboss.errai.bus.client.api.BusLifecycleEvent;
+import org.jboss.errai.bus.client.api.ClientMessageBus;
+import org.jboss.errai.bus.client.api.base.MessageBuilder;
 import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.common.client.api.Assert;
 import org.jboss.errai.common.client.api.Caller;
 import org.jboss.errai.common.client.api.ErrorCallback;
@@ -99,6 +106,31 @@ public class ClientSyncManager {
    */
   private boolean syncInProgress;
 
+  /**
+   * The watermarks for the next incremental sync of each data set, by the data
+   * set of a cold sync. They are kept in memory only, so the first sync of a
+   * data set after a page load is a cold one.
+   */
+  private final Map<SyncableDataSet<?>, Date> watermarks = new HashMap<SyncableDataSet<?>, Date>();
+
+  /**
+   * The listeners for the changes the server pushes, by the data set of a cold
+   * sync. We are subscribed to the pushes of exactly these data sets.
+   */
+  private final Map<SyncableDataSet<?>, List<RemoteCallback<?>>> pushListeners = new HashMap<SyncableDataSet<?>, List<RemoteCallback<?>>>();
+
+  /**
+   * The pushes that arrived while a sync was in progress. They are applied
+   * when the sync is over, so they don't interfere with its responses.
+   */
+  private final List<Message> deferredPushes = new ArrayList<Message>();
+
+  /**
+   * True once we receive the pushes of the server, and renew our push
+   * subscriptions whenever the bus (re)connects.
+   */
+  private boolean pushSubjectSubscribed;
+
   /**
    * Returns the global instance of ClientSyncManager.
    */
@@ -142,7 +174,11 @@ public class ClientSyncManager {
    * Performs a "cold" synchronization on the results of the given query with the given parameters.
    * After a successful synchronization, both the expected state and desired state entity managers
    * will yield the same results as the server-side entity manager does for the given query with the
-   * given set of parameters.
+   * given set of parameters. Entities that did not change on the client since the last sync are
+   * sent as {@link EntityComparator#digest(Object) digests} of their state, and the server only
+   * returns the ones whose digest doesn't match. A cold sync also provides the starting point for the
+   * {@link #incrementalSync(String, Class, Map, RemoteCallback, ErrorCallback) incremental syncs} of
+   * the same data set.
    * 
    * @param queryName
    *          The name of a JPA named query. This query must be defined in a {@link NamedQuery}
@@ -158,7 +194,9 @@ public class ClientSyncManager {
    *          response operations have been applied to the expected state and desired state entity
    *          managers. Must not be null. In case of conflicts, the original client values are
    *          available in the list of SyncResponse objects, which gives you a chance to implement a
-   *          different conflict resolution policy.
+   *          different conflict resolution policy. If the server sends its responses in pages, this
+   *          is called once per page, and the responses of every page but the last end with a
+   *          {@link MoreResultsResponse}; the next page is already requested when this is called.
    * @param onError
    *          Called when the data sync fails: either because the remote service threw an exception,
    *          or because of a communication error. Can be null, in which case the default error
@@ -168,6 +206,43 @@ public class ClientSyncManager {
           String queryName, Class<E> queryResultType, Map<String, Object> queryParams,
           final RemoteCallback<List<SyncResponse<E>>> onCompletion,
           final ErrorCallback<?> onError) {
+    sync(queryName, queryResultType, queryParams, false, null, onCompletion, onError);
+  }
+
+  /**
+   * Performs an incremental synchronization on the results of the given query
+   * with the given parameters. Only the entities that were changed on the
+   * client are sent to the server, and only the entities that changed on the
+   * server since the previous sync of the same data set are returned. This
+   * falls back to a {@link #coldSync(String, Class, Map, RemoteCallback, ErrorCallback) cold sync}
+   * when there was no previous sync of the data set in this session, when the
+   * entities don't have a {@code Date} version attribute, and after entities
+   * were deleted or left the data set on the server.
+   * <p>
+   * The parameters are the same as those of
+   * {@link #coldSync(String, Class, Map, RemoteCallback, ErrorCallback)}.
+   */
+  public <E> void incrementalSync(
+          String queryName, Class<E> queryResultType, Map<String, Object> queryParams,
+          final RemoteCallback<List<SyncResponse<E>>> onCompletion,
+          final ErrorCallback<?> onError) {
+    if (watermarks.containsKey(dataSetKey(queryName, queryResultType, queryParams))) {
+      sync(queryName, queryResultType, queryParams, true, null, onCompletion, onError);
+    }
+    else {
+      coldSync(queryName, queryResultType, queryParams, onCompletion, onError);
+    }
+  }
+
+  /**
+   * Syncs the given data set, or the page of it that the given response of the
+   * previous page names.
+   */
+  private <E> void sync(
+          final String queryName, final Class<E> queryResultType, final Map<String, Object> queryParams,
+          final boolean incremental, final MoreResultsResponse<E> previousPage,
+          final RemoteCallback<List<SyncResponse<E>>> onCompletion,
+          final ErrorCallback<?> onError) {
     if (syncInProgress) {
       throw new IllegalStateException("A data sync operation is already in progress");
     }
@@ -184,7 +259,17 @@ public class ClientSyncManager {
       expectedResults.put((Key<E, Object>) expectedStateEm.keyFor(expectedState), expectedState);
     }
 
+    final SyncableDataSet<E> dataSetKey = dataSetKey(queryName, queryResultType, queryParams);
+    SyncableDataSet<E> syncSet = incremental ? dataSetKey.since(watermarks.get(dataSetKey)) : dataSetKey;
+    if (previousPage != null) {
+      syncSet = syncSet.page(previousPage.getNextPageStart(), previousPage.getNextPageEnd());
+    }
+
     final List<SyncRequestOperation<E>> syncRequests = new ArrayList<SyncRequestOperation<E>>();
+
+    // the unchanged entities we only send digests of, by ID
+    final Map<Object, E> digestedEntities = new HashMap<Object, E>();
+
     for (E desiredState : query.getResultList()) {
       Key<E, ?> key = desiredStateEm.keyFor(desiredState);
       E expectedState = expectedResults.remove(key);
@@ -194,8 +279,10 @@ public class ClientSyncManager {
       else if (entityComparator.isDifferent(desiredState, expectedState)) {
         syncRequests.add(SyncRequestOperation.updated(desiredState, expectedState));
       }
-      else /* desiredState == expectedState */ {
-        syncRequests.add(SyncRequestOperation.unchanged(expectedState));
+      else if (!incremental && syncSet.isInPage(key.getId())) /* desiredState == expectedState */ {
+        // the server ignores the digests of entities outside of the page
+        syncRequests.add(SyncRequestOperation.<E>digest(key.getId(), entityComparator.digest(expectedState)));
+        digestedEntities.put(key.getId(), expectedState);
       }
     }
 
@@ -208,18 +295,56 @@ public class ClientSyncManager {
       System.out.println("   " + sro);
     }
 
-    final SyncableDataSet<E> syncSet = SyncableDataSet.from(queryName, queryResultType, queryParams);
-
     RemoteCallback<List<SyncResponse<E>>> onSuccess = new RemoteCallback<List<SyncResponse<E>>>() {
       @Override
       public void callback(List<SyncResponse<E>> syncResponse) {
+        WatermarkResponse<E> watermarkResponse = null;
+        MoreResultsResponse<E> moreResultsResponse = null;
+        List<SyncResponse<E>> responses = new ArrayList<SyncResponse<E>>(syncResponse.size());
+        for (SyncResponse<E> response : syncResponse) {
+          if (response instanceof WatermarkResponse) {
+            watermarkResponse = (WatermarkResponse<E>) response;
+          }
+          else if (response instanceof MoreResultsResponse) {
+            moreResultsResponse = (MoreResultsResponse<E>) response;
+          }
+          else if (response instanceof MissingIdsResponse) {
+            for (Object id : ((MissingIdsResponse<E>) response).getIds()) {
+              E digestedEntity = digestedEntities.get(id);
+              if (digestedEntity != null) {
+                responses.add(new DeleteResponse<E>(digestedEntity));
+              }
+            }
+          }
+          else if (incremental && response instanceof UpdateResponse) {
+            SyncResponse<E> updateOrNew = updateOrNew((UpdateResponse<E>) response);
+            if (updateOrNew != null) {
+              responses.add(updateOrNew);
+            }
+          }
+          else {
+            responses.add(response);
+          }
+        }
+
         try {
-          applyResults(syncResponse);
+          applyResults(responses);
+          if (moreResultsResponse == null) {
+            updateWatermark(dataSetKey, watermarkResponse, expectedQuery);
+          }
         }
         finally {
           syncInProgress = false;
         }
-        onCompletion.callback(syncResponse);
+
+        if (moreResultsResponse != null) {
+          responses.add(moreResultsResponse);
+          sync(queryName, queryResultType, queryParams, incremental, moreResultsResponse, onCompletion, onError);
+        }
+        onCompletion.callback(responses);
+        if (moreResultsResponse == null) {
+          applyDeferredPushes();
+        }
       }
     };
 
@@ -230,13 +355,291 @@ public class ClientSyncManager {
       public boolean error(Object message, Throwable throwable) {
         syncInProgress = false;
         ErrorCallback rawOnError = onError == null ? DEFAULT_ERROR_CALLBACK : onError;
-        return rawOnError.error(message, throwable);
+        try {
+          return rawOnError.error(message, throwable);
+        }
+        finally {
+          applyDeferredPushes();
+        }
       }
     };
     
     dataSyncService.call(onSuccess, errorCallback).coldSync(syncSet, syncRequests);
   }
 
+  /**
+   * Returns the data set of a cold sync of the given query, which identifies
+   * the data set in {@link #watermarks}.
+   */
+  private static <E> SyncableDataSet<E> dataSetKey(
+          String queryName, Class<E> queryResultType, Map<String, Object> queryParams) {
+    return SyncableDataSet.from(queryName, queryResultType, new HashMap<String, Object>(queryParams));
+  }
+
+  /**
+   * The server sends an UpdateResponse for every entity that changed since
+   * shortly before the watermark of an incremental sync, because it doesn't
+   * know which of them we already have. This turns the ones we don't have into
+   * NewRemoteEntityResponses, and drops the ones we already have in the same
+   * state.
+   *
+   * @return the response to apply, or null if there is nothing to apply.
+   */
+  private <E> SyncResponse<E> updateOrNew(UpdateResponse<E> response) {
+    E entity = response.getEntity();
+    E expectedState = expectedStateEm.find(expectedStateEm.keyFor(entity), Collections.<String,Object>emptyMap());
+    if (expectedState == null) {
+      return new NewRemoteEntityResponse<E>(entity);
+    }
+    if (!entityComparator.isDifferent(entity, expectedState)) {
+      return null;
+    }
+    return response;
+  }
+
+  /**
+   * Remembers the watermark of the given response for the next incremental
+   * sync of the data set, or forgets the watermark if there is none or if
+   * entities were deleted from the data set on the server side, which only a
+   * cold sync can detect.
+   */
+  private <E> void updateWatermark(
+          SyncableDataSet<E> dataSetKey, WatermarkResponse<E> response, TypedQuery<E> expectedQuery) {
+    if (response == null) {
+      watermarks.remove(dataSetKey);
+      return;
+    }
+
+    List<Object> ids = new ArrayList<Object>();
+    for (E expectedState : expectedQuery.getResultList()) {
+      ids.add(expectedStateEm.keyFor(expectedState).getId());
+    }
+    if (ids.size() != response.getResultCount() || WatermarkResponse.digestIds(ids) != response.getIdDigest()) {
+      logger.info("Entities were removed from " + dataSetKey + " on the server. Next sync will be a cold sync.");
+      watermarks.remove(dataSetKey);
+    }
+    else {
+      watermarks.put(dataSetKey, response.getWatermark());
+    }
+  }
+
+  /**
+   * Returns true if the results of the given query in the desired state entity
+   * manager differ from the state last synced with the server: entities were
+   * created, changed or removed on the client since the last sync of the query.
+   * <p>
+   * The parameters are the same as those of
+   * {@link #coldSync(String, Class, Map, RemoteCallback, ErrorCallback)}.
+   */
+  public <E> boolean hasLocalChanges(String queryName, Class<E> queryResultType, Map<String, Object> queryParams) {
+    final TypedQuery<E> query = desiredStateEm.createNamedQuery(queryName, queryResultType);
+    final TypedQuery<E> expectedQuery = expectedStateEm.createNamedQuery(queryName, queryResultType);
+    for (Map.Entry<String, Object> param : queryParams.entrySet()) {
+      query.setParameter(param.getKey(), param.getValue());
+      expectedQuery.setParameter(param.getKey(), param.getValue());
+    }
+
+    List<E> desiredResults = query.getResultList();
+    List<E> expectedResults = expectedQuery.getResultList();
+    if (desiredResults.size() != expectedResults.size()) {
+      return true;
+    }
+    for (E desiredState : desiredResults) {
+      if (hasLocalChanges(desiredStateEm.keyFor(desiredState))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the entity with the given key was created, changed or
+   * removed on the client since it was last synced.
+   */
+  private <E> boolean hasLocalChanges(Key<E, ?> key) {
+    E desiredState = desiredStateEm.find(key, Collections.<String,Object>emptyMap());
+    E expectedState = expectedStateEm.find(key, Collections.<String,Object>emptyMap());
+    if (desiredState == null || expectedState == null) {
+      return desiredState != expectedState;
+    }
+    return entityComparator.isDifferent(desiredState, expectedState);
+  }
+
+  /**
+   * Registers a listener for the changes the server pushes for the results of
+   * the given query with the given parameters. The first listener of a data
+   * set subscribes to its changes on the server, which requires a
+   * {@code DataSyncPushService} on the server side.
+   * <p>
+   * Pushed changes are applied to the expected state and desired state entity
+   * managers before the listener is notified, except for changes of entities
+   * that were also changed on the client: these are left to the next sync of
+   * the data set, which reports them as conflicts. Pushes that arrive while a
+   * sync is in progress are applied after it.
+   *
+   * @param queryName
+   *          The name of a JPA named query, as for
+   *          {@link #coldSync(String, Class, Map, RemoteCallback, ErrorCallback)}.
+   * @param queryResultType
+   *          The result type returned by the query.
+   * @param queryParams
+   *          The name-value pairs to use for filling in the named parameters in
+   *          the query.
+   * @param listener
+   *          Called with the applied responses each time the server pushed
+   *          changes of the data set. Must not be null.
+   */
+  public <E> void addPushListener(
+          String queryName, Class<E> queryResultType, Map<String, Object> queryParams,
+          RemoteCallback<List<SyncResponse<E>>> listener) {
+    Assert.notNull(listener);
+    if (!pushSubjectSubscribed) {
+      ErraiBus.get().subscribe(DataSyncService.PUSH_SUBJECT, new MessageCallback() {
+        @Override
+        public void callback(Message message) {
+          if (syncInProgress) {
+            deferredPushes.add(message);
+          }
+          else {
+            applyPush(message);
+          }
+        }
+      });
+
+      // the server forgets our subscriptions when our session ends
+      ((ClientMessageBus) ErraiBus.get()).addLifecycleListener(new BusLifecycleAdapter() {
+        @Override
+        public void busOnline(BusLifecycleEvent e) {
+          for (SyncableDataSet<?> dataSetKey : pushListeners.keySet()) {
+            sendPushSubscription(dataSetKey);
+          }
+        }
+      });
+      pushSubjectSubscribed = true;
+    }
+
+    SyncableDataSet<E> dataSetKey = dataSetKey(queryName, queryResultType, queryParams);
+    List<RemoteCallback<?>> listeners = pushListeners.get(dataSetKey);
+    if (listeners == null) {
+      pushListeners.put(dataSetKey, listeners = new ArrayList<RemoteCallback<?>>());
+      sendPushSubscription(dataSetKey);
+    }
+    listeners.add(listener);
+  }
+
+  private void sendPushSubscription(SyncableDataSet<?> dataSetKey) {
+    MessageBuilder.createMessage()
+        .toSubject(DataSyncService.PUSH_SUBSCRIBE_SUBJECT)
+        .signalling()
+        .with(DataSyncService.PUSH_DATA_SET_PART, dataSetKey)
+        .noErrorHandling()
+        .sendNowWith(ErraiBus.get());
+  }
+
+  /**
+   * Removes a listener registered with
+   * {@link #addPushListener(String, Class, Map, RemoteCallback)} for the same
+   * query and parameters. Removing the last listener of a data set ends the
+   * subscription to its changes.
+   */
+  public <E> void removePushListener(
+          String queryName, Class<E> queryResultType, Map<String, Object> queryParams,
+          RemoteCallback<List<SyncResponse<E>>> listener) {
+    SyncableDataSet<E> dataSetKey = dataSetKey(queryName, queryResultType, queryParams);
+    List<RemoteCallback<?>> listeners = pushListeners.get(dataSetKey);
+    if (listeners == null || !listeners.remove(listener) || !listeners.isEmpty()) {
+      return;
+    }
+    pushListeners.remove(dataSetKey);
+    MessageBuilder.createMessage()
+        .toSubject(DataSyncService.PUSH_SUBSCRIBE_SUBJECT)
+        .command(DataSyncService.PUSH_UNSUBSCRIBE_COMMAND)
+        .with(DataSyncService.PUSH_DATA_SET_PART, dataSetKey)
+        .noErrorHandling()
+        .sendNowWith(ErraiBus.get());
+  }
+
+  private void applyDeferredPushes() {
+    List<Message> pushes = new ArrayList<Message>(deferredPushes);
+    deferredPushes.clear();
+    for (Message message : pushes) {
+      applyPush(message);
+    }
+  }
+
+  /**
+   * Applies the changes of the given push message and notifies the push
+   * listeners of its data set.
+   */
+  @SuppressWarnings("unchecked")
+  private void applyPush(Message message) {
+    SyncableDataSet<Object> dataSet = message.get(SyncableDataSet.class, DataSyncService.PUSH_DATA_SET_PART);
+    List<SyncResponse<Object>> pushed = message.get(List.class, DataSyncService.PUSH_RESPONSES_PART);
+    applyPush(dataSet, pushed);
+  }
+
+  private <E> void applyPush(SyncableDataSet<E> dataSet, List<SyncResponse<E>> pushed) {
+    List<RemoteCallback<?>> listeners = pushListeners.get(dataSet);
+    if (listeners == null) {
+      // we unsubscribed, but the server had already sent this
+      return;
+    }
+
+    List<SyncResponse<E>> responses = pushedResponses(dataSet, pushed);
+    if (responses.isEmpty()) {
+      return;
+    }
+    applyResults(responses);
+    for (RemoteCallback<?> listener : new ArrayList<RemoteCallback<?>>(listeners)) {
+      try {
+        @SuppressWarnings("unchecked")
+        RemoteCallback<List<SyncResponse<E>>> typedListener = (RemoteCallback<List<SyncResponse<E>>>) listener;
+        typedListener.callback(responses);
+      }
+      catch (Throwable t) {
+        logger.error("Ignoring Exception from push listener:", t);
+      }
+    }
+  }
+
+  /**
+   * Turns the responses pushed by the server into the responses to apply
+   * locally. Entities that changed on the client are left alone, and the IDs of
+   * entities that are no longer in the data set turn into
+   * {@link DeleteResponse}s for our copies.
+   */
+  private <E> List<SyncResponse<E>> pushedResponses(SyncableDataSet<E> dataSet, List<SyncResponse<E>> pushed) {
+    List<SyncResponse<E>> responses = new ArrayList<SyncResponse<E>>();
+    for (SyncResponse<E> response : pushed) {
+      if (response instanceof MissingIdsResponse) {
+        Map<Object, E> expectedResults = new HashMap<Object, E>();
+        for (E expectedState : dataSet.createQuery(expectedStateEm).getResultList()) {
+          expectedResults.put(expectedStateEm.keyFor(expectedState).getId(), expectedState);
+        }
+        for (Object id : ((MissingIdsResponse<E>) response).getIds()) {
+          E expectedState = expectedResults.get(id);
+          if (expectedState != null && !hasLocalChanges(expectedStateEm.keyFor(expectedState))) {
+            responses.add(new DeleteResponse<E>(expectedState));
+          }
+        }
+      }
+      else if (response instanceof UpdateResponse) {
+        E entity = ((UpdateResponse<E>) response).getEntity();
+        if (!hasLocalChanges(expectedStateEm.keyFor(entity))) {
+          // null if we already have this state, e.g. because we made the change ourselves
+          SyncResponse<E> updateOrNew = updateOrNew((UpdateResponse<E>) response);
+          if (updateOrNew != null) {
+            responses.add(updateOrNew);
+          }
+        }
+      }
+      else {
+        throw new RuntimeException("Unexpected kind of pushed response: " + response);
+      }
+    }
+    return responses;
+  }
+
   /**
    * Returns true if a sync request has been sent to the server for which no
    * response or error has yet been received; false if no sync operation is
@@ -400,5 +803,7 @@ public class ClientSyncManager {
   public void clear() {
     desiredStateEm.removeAll();
     expectedStateEm.removeAll();
+    watermarks.clear();
+    deferredPushes.clear();
   }
 }
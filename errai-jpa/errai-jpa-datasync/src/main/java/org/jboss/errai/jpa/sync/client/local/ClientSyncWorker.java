@@ -17,6 +17,7 @@
 package org.jboss.errai.jpa.sync.client.local;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +49,11 @@ import com.google.gwt.user.client.Timer;
  * New instances are in the "not yet started" state. You start them with a call to {@link #start()},
  * and stop them with a call to {@link #stop()}. Once started, a sync worker instance can be stopped
  * but not restarted. Once stopped, a sync worker cannot be restarted.
+ * <p>
+ * By default, a running worker polls the server for changes every few seconds. A worker with
+ * {@link #setPushEnabled(boolean) push enabled} receives the server's changes as they happen
+ * instead, and only contacts the server when there are local changes to send, and once in a while
+ * to catch changes the server could not push.
  * 
  * @author Jonathan Fuerth <jfuerth@redhat.com>
  * @author Christian Sadilek <csadilek@redhat.com>
@@ -59,6 +65,12 @@ public class ClientSyncWorker<E> {
 
   private static final int SYNC_PERIOD_MILLIS = 5000;
 
+  /**
+   * In push mode, the number of timer ticks without local changes after which
+   * the server is asked for changes anyway.
+   */
+  private static final int PUSH_MODE_SYNC_TICKS = 12;
+
   private static final Logger logger = LoggerFactory.getLogger(ClientSyncWorker.class);
 
   private final List<DataSyncCallback<E>> callbacks = new ArrayList<DataSyncCallback<E>>();
@@ -72,9 +84,25 @@ public class ClientSyncWorker<E> {
 
   private Map<String, Object> queryParams;
 
+  private boolean pushEnabled;
+
   /**
-   * The callback that gets notified by ClientSyncManager when a sync operation has completed.
-   * Notifies this worker's callbacks.
+   * The query params of the data set our push listener is registered for, or
+   * null if it is not registered.
+   */
+  private Map<String, Object> pushParams;
+
+  /**
+   * The number of timer ticks since the last sync with the server. Starts out high so the first
+   * tick syncs.
+   */
+  private int ticksSinceSync = PUSH_MODE_SYNC_TICKS;
+
+  private final ClientSyncManager manager;
+
+  /**
+   * The callback that gets notified by ClientSyncManager when a sync operation has completed, or
+   * when the server pushed changes in push mode. Notifies this worker's callbacks.
    */
   private final RemoteCallback<List<SyncResponse<E>>> onCompletion = new RemoteCallback<List<SyncResponse<E>>>() {
     @Override
@@ -99,7 +127,10 @@ public class ClientSyncWorker<E> {
         ClientSyncWorker.this.onCompletion.callback(responses);
       }
       finally {
-        scheduleTimerIfNotStopped(SYNC_PERIOD_MILLIS);
+        // the manager requests the following pages itself
+        if (new SyncResponses<E>(responses).isComplete()) {
+          scheduleTimerIfNotStopped(SYNC_PERIOD_MILLIS);
+        }
       }
     }
   };
@@ -187,7 +218,7 @@ public class ClientSyncWorker<E> {
   public ClientSyncWorker(final ClientSyncManager manager, final String queryName, final Class<E> queryResultType,
       final ErrorCallback<?> onError) {
 
-    Assert.notNull(manager);
+    this.manager = Assert.notNull(manager);
     this.queryName = Assert.notNull(queryName);
     this.queryResultType = Assert.notNull(queryResultType);
     this.onError = onError;
@@ -196,8 +227,17 @@ public class ClientSyncWorker<E> {
 
       @Override
       public void run() {
+        if (pushEnabled) {
+          updatePushListener();
+          if (++ticksSinceSync < PUSH_MODE_SYNC_TICKS && !manager.isSyncInProgress()
+                  && !manager.hasLocalChanges(ClientSyncWorker.this.queryName, ClientSyncWorker.this.queryResultType, queryParams)) {
+            scheduleTimerIfNotStopped(SYNC_PERIOD_MILLIS);
+            return;
+          }
+          ticksSinceSync = 0;
+        }
         try {
-          manager.coldSync(ClientSyncWorker.this.queryName, ClientSyncWorker.this.queryResultType, queryParams,
+          manager.incrementalSync(ClientSyncWorker.this.queryName, ClientSyncWorker.this.queryResultType, queryParams,
                   timerSchedulingRemoteCallback, timerSchedulingErrorCallback);
         }
         catch (Throwable t) {
@@ -221,6 +261,43 @@ public class ClientSyncWorker<E> {
     callbacks.add(onCompletion);
   }
 
+  /**
+   * Enables or disables push mode, in which this worker receives the changes of its data set from
+   * the server instead of polling for them. Push mode requires a {@code DataSyncPushService} on the
+   * server side. Must be called before the worker is started.
+   * 
+   * @throws IllegalStateException
+   *           if this sync worker has already been started.
+   */
+  public void setPushEnabled(boolean pushEnabled) {
+    if (started)
+      throw new IllegalStateException("This worker was already started");
+
+    this.pushEnabled = pushEnabled;
+  }
+
+  /**
+   * Registers our push listener for the data set of the current query params, replacing the
+   * listener for previous params.
+   */
+  private void updatePushListener() {
+    if (queryParams.equals(pushParams))
+      return;
+
+    removePushListener();
+    // the pushes for the new params start now, so catch up with what happened before
+    ticksSinceSync = PUSH_MODE_SYNC_TICKS;
+    pushParams = new HashMap<String, Object>(queryParams);
+    manager.addPushListener(queryName, queryResultType, pushParams, onCompletion);
+  }
+
+  private void removePushListener() {
+    if (pushParams != null) {
+      manager.removePushListener(queryName, queryResultType, pushParams, onCompletion);
+      pushParams = null;
+    }
+  }
+
   /**
    * Starts this sync worker if it has not already been started or stopped.
    * 
@@ -299,6 +376,7 @@ public class ClientSyncWorker<E> {
     if (beanlifecycleListener != null && managedBeanInstance != null) {
       IOC.unregisterLifecycleListener(managedBeanInstance, beanlifecycleListener);
     }
+    removePushListener();
     timer.cancel();
   }
 
@@ -30,7 +30,8 @@ import org.jboss.errai.jpa.sync.client.shared.SyncResponses;
 public interface DataSyncCallback<E> {
 
   /**
-   * Invoked when a synchronization operation has completed.
+   * Invoked when a synchronization operation has completed, and for each page of the responses if
+   * the server sends them in pages (see {@link SyncResponses#isComplete()}).
    * 
    * @param responses
    *          result of the sync operation, never null.
@@ -57,4 +57,11 @@ public @interface Sync {
    */
   SyncParam[] params() default {};
 
+  /**
+   * If true, the server pushes the changes of the data set as they happen, and the client only
+   * sends its own changes instead of polling the server. Requires a
+   * {@code DataSyncPushService} on the server side.
+   */
+  boolean push() default false;
+
 }
\ No newline at end of file
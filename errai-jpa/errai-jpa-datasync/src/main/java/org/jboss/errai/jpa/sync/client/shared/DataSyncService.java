@@ -17,18 +17,52 @@ import org.jboss.errai.jpa.sync.server.DataSyncServiceImpl;
 @Remote
 public interface DataSyncService {
 
+  /**
+   * The bus subject on which clients receive the changes pushed by
+   * {@code org.jboss.errai.jpa.sync.server.DataSyncPushService}.
+   */
+  public static final String PUSH_SUBJECT = "ErraiDataSyncPush";
+
+  /**
+   * The bus subject on which clients subscribe to the changes of a data set.
+   * The command type of an unsubscribe message is
+   * {@link #PUSH_UNSUBSCRIBE_COMMAND}.
+   */
+  public static final String PUSH_SUBSCRIBE_SUBJECT = "ErraiDataSyncPushSubscription";
+
+  /**
+   * The command type of a message that ends a subscription.
+   */
+  public static final String PUSH_UNSUBSCRIBE_COMMAND = "Unsubscribe";
+
+  /**
+   * The message part of a pushed change or subscription that holds the
+   * SyncableDataSet.
+   */
+  public static final String PUSH_DATA_SET_PART = "DataSet";
+
+  /**
+   * The message part of a pushed change that holds the list of SyncResponses.
+   */
+  public static final String PUSH_RESPONSES_PART = "Responses";
+
   /**
    * Performs a cold synchronization, usually by delegating to
    * {@link DataSyncServiceImpl#coldSync(SyncableDataSet, List)}. This method is
    * not normally invoked directly by application code; rather, application code calls
    * {@link ClientSyncManager#coldSync(String, Class, java.util.Map, org.jboss.errai.common.client.api.RemoteCallback, org.jboss.errai.common.client.api.ErrorCallback)}
    * and that method calls this one via an Errai RPC {@link Caller}.
+   * <p>
+   * If the data set has a {@link SyncableDataSet#getWatermark() watermark},
+   * this is an incremental sync, started by
+   * {@link ClientSyncManager#incrementalSync(String, Class, java.util.Map, org.jboss.errai.common.client.api.RemoteCallback, org.jboss.errai.common.client.api.ErrorCallback)}.
    *
    * @param dataSet
    *          The SyncableDataSet to synchronize between client and server.
    * @param remoteResults
    *          The list of SyncRequestOperations produced by the
-   *          ClientSyncManager for the given dataset.
+   *          ClientSyncManager for the given dataset. For an incremental sync,
+   *          this only contains the entities the client changed.
    * @return the list of sync responses produced by the server-side DataSyncServiceImpl.
    */
   <X> List<SyncResponse<X>> coldSync(SyncableDataSet<X> dataSet, List<SyncRequestOperation<X>> remoteResults);
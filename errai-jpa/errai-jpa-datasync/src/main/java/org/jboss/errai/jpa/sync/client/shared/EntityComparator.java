@@ -1,8 +1,13 @@
 package org.jboss.errai.jpa.sync.client.shared;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.ManagedType;
@@ -12,6 +17,19 @@ import org.jboss.errai.common.client.api.Assert;
 
 public class EntityComparator {
 
+  private static final Comparator<Attribute<?, ?>> ATTRIBUTE_NAME_ORDER = new Comparator<Attribute<?, ?>>() {
+    @Override
+    public int compare(Attribute<?, ?> o1, Attribute<?, ?> o2) {
+      return o1.getName().compareTo(o2.getName());
+    }
+  };
+
+  /**
+   * The initial value of a 64-bit FNV-1a hash.
+   */
+  static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
   private final Metamodel metamodel;
   private final JpaAttributeAccessor attributeAccessor;
 
@@ -98,4 +116,194 @@ public class EntityComparator {
 
     return false;
   }
+
+  /**
+   * Returns a digest of the state of the given JPA Managed Type instance. The
+   * client and the server compute the same digest for entities that
+   * {@link #isDifferent(Object, Object) are not different}, so the digest can
+   * stand in for the state of an entity the other side already has. The digest
+   * is a 64-bit FNV-1a hash of a description of the state in which numbers are
+   * written the same way on the client and the server.
+   *
+   * @param entity
+   *          the entity to digest. Must not be null.
+   * @return the digest. Never null.
+   */
+  public <X> String digest(X entity) {
+    StringBuilder state = new StringBuilder();
+    appendDigestParts(Assert.notNull(entity), state, new IdentityHashMap<Object, Object>());
+    return Long.toHexString(fnv1a(FNV_OFFSET_BASIS, state.toString()));
+  }
+
+  /**
+   * Private recursive subroutine of {@link #digest(Object)}. Visits the same
+   * attributes as {@link #isDifferent(Object, Object)}, in order of name.
+   */
+  private <X> void appendDigestParts(X entity, StringBuilder parts, IdentityHashMap<Object, Object> encountered) {
+    if (encountered.containsKey(entity)) {
+      parts.append("^");
+      return;
+    }
+    encountered.put(entity, entity);
+
+    // XXX probably need to pass in the actual entity class rather than this cast
+    // (because dynamic proxies will fool it)
+    @SuppressWarnings("unchecked")
+    ManagedType<X> jpaType = metamodel.managedType((Class<X>) entity.getClass());
+
+    List<Attribute<? super X, ?>> attributes = new ArrayList<Attribute<? super X, ?>>(jpaType.getAttributes());
+    Collections.sort(attributes, ATTRIBUTE_NAME_ORDER);
+
+    parts.append("{");
+    for (Attribute<? super X, ?> attr : attributes) {
+      Object value = attributeAccessor.get(attr, entity);
+      parts.append(attr.getName() + "=");
+
+      if (value == null) {
+        parts.append("~");
+        continue;
+      }
+
+      switch (attr.getPersistentAttributeType()) {
+      case BASIC:
+        parts.append(digestPart(value));
+        break;
+
+      case ELEMENT_COLLECTION: {
+        List<String> elementParts = new ArrayList<String>();
+        for (Object element : (Collection<?>) value) {
+          elementParts.add(element == null ? "~" : digestPart(element));
+        }
+        appendCollectionParts(value, elementParts, parts);
+        break;
+      }
+
+      case EMBEDDED:
+      case MANY_TO_ONE:
+      case ONE_TO_ONE:
+        appendDigestParts(value, parts, encountered);
+        break;
+
+      case MANY_TO_MANY:
+      case ONE_TO_MANY: {
+        List<String> elementParts = new ArrayList<String>();
+        for (Object element : (Collection<?>) value) {
+          if (element == null) {
+            elementParts.add("~");
+          }
+          else {
+            // each element only sees its own ancestors, so its part doesn't depend on the iteration order
+            StringBuilder elementPart = new StringBuilder();
+            appendDigestParts(element, elementPart, new IdentityHashMap<Object, Object>(encountered));
+            elementParts.add(elementPart.toString());
+          }
+        }
+        appendCollectionParts(value, elementParts, parts);
+        break;
+      }
+
+      default:
+        throw new RuntimeException("Unknown JPA attribute type: " + attr.getPersistentAttributeType());
+      }
+    }
+    parts.append("}");
+  }
+
+  /**
+   * Appends the digest parts of the elements of the given collection. The
+   * parts of unordered collections are sorted, because the iteration order of
+   * sets differs between the client and the server.
+   */
+  private static void appendCollectionParts(Object collection, List<String> elementParts, StringBuilder parts) {
+    if (!(collection instanceof List)) {
+      Collections.sort(elementParts);
+    }
+    parts.append("[");
+    for (String elementPart : elementParts) {
+      parts.append(elementPart);
+    }
+    parts.append("]");
+  }
+
+  /**
+   * Returns the string form of the given basic value, prefixed with its length
+   * so that consecutive values can't run together.
+   */
+  private static String digestPart(Object value) {
+    String string;
+    if (value instanceof Float) {
+      // floats are doubles in GWT, parsed from the shortest decimal form of the server's float
+      string = binaryDigits(Double.parseDouble(String.valueOf(value)));
+    }
+    else if (value instanceof Double) {
+      string = binaryDigits((Double) value);
+    }
+    else if (value instanceof Date) {
+      string = String.valueOf(((Date) value).getTime());
+    }
+    else if (value instanceof Enum) {
+      string = ((Enum<?>) value).name();
+    }
+    else if (value instanceof byte[]) {
+      StringBuilder sb = new StringBuilder();
+      for (byte b : (byte[]) value) {
+        sb.append(b).append(',');
+      }
+      string = sb.toString();
+    }
+    else if (value instanceof char[]) {
+      string = new String((char[]) value);
+    }
+    else if (value instanceof Object[]) {
+      StringBuilder sb = new StringBuilder();
+      for (Object element : (Object[]) value) {
+        sb.append(element == null ? "~" : digestPart(element));
+      }
+      string = sb.toString();
+    }
+    else {
+      string = String.valueOf(value);
+    }
+    return string.length() + ":" + string;
+  }
+
+  /**
+   * Returns the exact value of the given double as a whole number times a
+   * power of two. Unlike the decimal form, which differs between GWT and the
+   * JVM (for example "1.0E-5" vs. "0.00001"), this is the same on the client
+   * and the server.
+   */
+  private static String binaryDigits(double d) {
+    if (Double.isNaN(d) || Double.isInfinite(d) || d == 0) {
+      // also makes -0.0 and 0.0 equal, as they are in JavaScript
+      return (d == 0) ? "0" : String.valueOf(d);
+    }
+    String sign = (d < 0) ? "-" : "";
+    d = Math.abs(d);
+    int exponent = 0;
+    // scaling by two is exact, and 2^53 is the first double without fraction digits
+    while (d >= 9007199254740992.0) {
+      d /= 2;
+      exponent++;
+    }
+    while (d != Math.floor(d)) {
+      d *= 2;
+      exponent--;
+    }
+    return sign + (long) d + "p" + exponent;
+  }
+
+  /**
+   * Continues the given 64-bit FNV-1a hash with the characters of the given
+   * string. Uses only long arithmetic, which GWT emulates exactly, so the
+   * client and the server compute the same hash.
+   */
+  static long fnv1a(long hash, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+      hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+    }
+    return hash;
+  }
 }
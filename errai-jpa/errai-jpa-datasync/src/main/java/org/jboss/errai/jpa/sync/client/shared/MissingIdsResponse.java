@@ -0,0 +1,40 @@
+package org.jboss.errai.jpa.sync.client.shared;
+
+import java.util.List;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.common.client.api.annotations.MapsTo;
+import org.jboss.errai.common.client.api.annotations.Portable;
+
+/**
+ * Sync response that lists the IDs of the entities the client sent as
+ * {@link SyncRequestOperation.Type#DIGEST digests}, but which are no longer in
+ * the data set on the server. The server only knows the IDs of these entities,
+ * so the client turns them into {@link DeleteResponse}s for its own copies.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ *
+ * @param <X>
+ *          the entity type
+ */
+@Portable
+public class MissingIdsResponse<X> extends SyncResponse<X> {
+
+  private final List<Object> ids;
+
+  public MissingIdsResponse(@MapsTo("ids") List<Object> ids) {
+    this.ids = Assert.notNull(ids);
+  }
+
+  /**
+   * Returns the IDs of the entities that are missing on the server.
+   */
+  public List<Object> getIds() {
+    return ids;
+  }
+
+  @Override
+  public String toString() {
+    return "Missing: " + ids;
+  }
+}
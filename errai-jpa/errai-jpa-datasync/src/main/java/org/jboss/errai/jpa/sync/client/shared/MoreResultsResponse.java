@@ -0,0 +1,62 @@
+package org.jboss.errai.jpa.sync.client.shared;
+
+import org.jboss.errai.common.client.api.annotations.MapsTo;
+import org.jboss.errai.common.client.api.annotations.Portable;
+
+/**
+ * Sync response that tells the client the responses of a sync were cut off
+ * after one page, because the server limits the number of entities it sends at
+ * once. It is the last response of the page, and there is no
+ * {@link WatermarkResponse} before it. The client syncs the
+ * {@link SyncableDataSet#page(String, String) page} of the data set between
+ * {@link #getNextPageStart()} and {@link #getNextPageEnd()} to get the next
+ * page, and only sends the digests of its entities in that page.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ *
+ * @param <X>
+ *          the entity type
+ */
+@Portable
+public class MoreResultsResponse<X> extends SyncResponse<X> {
+
+  private final int remainingCount;
+  private final String nextPageStart;
+  private final String nextPageEnd;
+
+  public MoreResultsResponse(
+          @MapsTo("remainingCount") int remainingCount,
+          @MapsTo("nextPageStart") String nextPageStart,
+          @MapsTo("nextPageEnd") String nextPageEnd) {
+    this.remainingCount = remainingCount;
+    this.nextPageStart = nextPageStart;
+    this.nextPageEnd = nextPageEnd;
+  }
+
+  /**
+   * Returns the number of entities the server did not send yet.
+   */
+  public int getRemainingCount() {
+    return remainingCount;
+  }
+
+  /**
+   * Returns the page key after which the next page starts. Never null.
+   */
+  public String getNextPageStart() {
+    return nextPageStart;
+  }
+
+  /**
+   * Returns the page key of the last entity of the next page, or null if the
+   * next page is the last one.
+   */
+  public String getNextPageEnd() {
+    return nextPageEnd;
+  }
+
+  @Override
+  public String toString() {
+    return "More results: " + remainingCount + " after " + nextPageStart;
+  }
+}
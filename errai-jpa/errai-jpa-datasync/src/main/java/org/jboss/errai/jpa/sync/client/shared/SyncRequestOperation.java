@@ -9,6 +9,8 @@ public class SyncRequestOperation<X> {
   private final Type type;
   private final X newState;
   private final X expectedState;
+  private final Object id;
+  private final String digest;
 
   public enum Type {
     /**
@@ -33,16 +35,32 @@ public class SyncRequestOperation<X> {
     /**
      * Indicates an entity instance that has not changed since the last sync request.
      */
-    UNCHANGED
+    UNCHANGED,
+
+    /**
+     * Indicates an entity instance that has not changed since the last sync
+     * request, sent as its ID and the {@link EntityComparator#digest(Object)
+     * digest} of its state instead of the state itself.
+     */
+    DIGEST
   }
 
-  public SyncRequestOperation(
+  public SyncRequestOperation(Type type, X newState, X expectedState) {
+    this(type, newState, expectedState, null, null);
+  }
+
+  // Errai Marshalling constructor
+  private SyncRequestOperation(
           @MapsTo("type") Type type,
           @MapsTo("newState") X newState,
-          @MapsTo("expectedState") X expectedState) {
+          @MapsTo("expectedState") X expectedState,
+          @MapsTo("id") Object id,
+          @MapsTo("digest") String digest) {
     this.type = type;
     this.newState = newState;
     this.expectedState = expectedState;
+    this.id = id;
+    this.digest = digest;
   }
 
   public static <X> SyncRequestOperation<X> created(X newState) {
@@ -59,6 +77,10 @@ public class SyncRequestOperation<X> {
     return new SyncRequestOperation<X>(Type.UNCHANGED, null, knownState);
   }
 
+  public static <X> SyncRequestOperation<X> digest(Object id, String digest) {
+    return new SyncRequestOperation<X>(Type.DIGEST, null, null, id, digest);
+  }
+
   public static <X> SyncRequestOperation<X> deleted(X knownState) {
     // XXX would be better to use a type hierarchy of SyncRequestOperations than to say newState is null
     return new SyncRequestOperation<X>(Type.DELETED, null, knownState);
@@ -76,8 +98,27 @@ public class SyncRequestOperation<X> {
     return expectedState;
   }
 
+  /**
+   * Returns the ID of the entity of a {@link Type#DIGEST DIGEST} operation, or
+   * null for other types of operations.
+   */
+  public Object getId() {
+    return id;
+  }
+
+  /**
+   * Returns the digest of the entity state of a {@link Type#DIGEST DIGEST}
+   * operation, or null for other types of operations.
+   */
+  public String getDigest() {
+    return digest;
+  }
+
   @Override
   public String toString() {
+    if (type == Type.DIGEST) {
+      return type + " id: " + id + "; digest: " + digest;
+    }
     return type + " newState: " + newState + "; expectedState: " + expectedState;
   }
 }
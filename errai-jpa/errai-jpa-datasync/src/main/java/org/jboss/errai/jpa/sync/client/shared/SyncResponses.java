@@ -19,7 +19,10 @@ package org.jboss.errai.jpa.sync.client.shared;
 import java.util.List;
 
 /**
- * Provides information about a completed sync operation.
+ * Provides information about a completed sync operation. When the server sends
+ * the responses of a large data set in pages, each page is reported on its
+ * own, and {@link #isComplete()} and {@link #getRemainingCount()} tell the
+ * progress.
  * 
  * @author Jonathan Fuerth <jfuerth@redhat.com>
  * @author Christian Sadilek <csadilek@redhat.com>
@@ -39,4 +42,29 @@ public class SyncResponses<E> {
     return responses;
   }
 
+  /**
+   * Returns false if these are the responses of a page of a sync that is not
+   * finished yet, and true otherwise.
+   */
+  public boolean isComplete() {
+    return getMoreResultsResponse() == null;
+  }
+
+  /**
+   * Returns the number of entities the server still has to send in the
+   * following pages of the sync. Zero if the sync is complete, but also if
+   * the following pages only have to check the client's entities.
+   */
+  public int getRemainingCount() {
+    MoreResultsResponse<E> moreResultsResponse = getMoreResultsResponse();
+    return (moreResultsResponse == null) ? 0 : moreResultsResponse.getRemainingCount();
+  }
+
+  private MoreResultsResponse<E> getMoreResultsResponse() {
+    if (!responses.isEmpty() && responses.get(responses.size() - 1) instanceof MoreResultsResponse) {
+      return (MoreResultsResponse<E>) responses.get(responses.size() - 1);
+    }
+    return null;
+  }
+
 }
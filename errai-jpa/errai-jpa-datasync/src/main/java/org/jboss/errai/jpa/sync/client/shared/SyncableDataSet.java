@@ -1,6 +1,8 @@
 package org.jboss.errai.jpa.sync.client.shared;
 
+import java.math.BigInteger;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Map;
 
 import javax.persistence.EntityManager;
@@ -20,23 +22,126 @@ public class SyncableDataSet<E> {
   /** Stored as a string so to keep SyncableDataSet marshallable. */
   private final String resultTypeFqcn;
 
+  /**
+   * The watermark of an incremental sync, or null for a cold sync. See
+   * {@link #since(Date)}.
+   */
+  private final Date watermark;
+
+  /**
+   * The {@link #pageKey(Object) page key} after which the page of a paged sync
+   * starts, or null for the first page. See {@link #page(String, String)}.
+   */
+  private final String pageStart;
+
+  /**
+   * The {@link #pageKey(Object) page key} of the last entity of the page of a
+   * paged sync, or null if the page extends to the end of the data set.
+   */
+  private final String pageEnd;
+
   // FIXME need to allow app to specify TemporalType for date params
   public static <E> SyncableDataSet<E> from(String queryName, Class<E> resultType, Map<String, Object> params) {
     return new SyncableDataSet<E>(queryName, resultType, params);
   }
 
   private SyncableDataSet(String queryName, Class<E> resultType, Map<String, Object> params) {
-    this(queryName, resultType.getName(), params);
+    this(queryName, resultType.getName(), params, null, null, null);
   }
 
   // Errai Marshalling constructor
   private SyncableDataSet(
           @MapsTo("queryName") String queryName,
           @MapsTo("resultTypeFqcn") String resultTypeFqcn,
-          @MapsTo("params") Map<String, Object> params) {
+          @MapsTo("params") Map<String, Object> params,
+          @MapsTo("watermark") Date watermark,
+          @MapsTo("pageStart") String pageStart,
+          @MapsTo("pageEnd") String pageEnd) {
     this.queryName = Assert.notNull(queryName);
     this.resultTypeFqcn = resultTypeFqcn;
     this.params = Collections.unmodifiableMap(params);
+    this.watermark = watermark;
+    this.pageStart = pageStart;
+    this.pageEnd = pageEnd;
+  }
+
+  /**
+   * Returns the key that orders the entities of a data set into the pages of a
+   * paged sync. The client and the server compute the same key for the same
+   * ID, so the client knows which entities a page covers.
+   *
+   * @param id
+   *          the ID of an entity. Must not be null.
+   * @throws IllegalArgumentException
+   *           if entities with the given ID can't be synced in pages. See
+   *           {@link #isPageable(Object)}.
+   */
+  public static String pageKey(Object id) {
+    if (!isPageable(Assert.notNull(id))) {
+      throw new IllegalArgumentException("Entities with IDs of type " + id.getClass().getName()
+              + " can't be synced in pages");
+    }
+    return String.valueOf(id);
+  }
+
+  /**
+   * Returns true if entities with the given ID can be synced in pages. Only
+   * strings, characters and whole numbers have a string form that is the same
+   * in client code and on the server, so data sets with other IDs are synced in
+   * one go.
+   *
+   * @param id
+   *          the ID of an entity. Must not be null.
+   */
+  public static boolean isPageable(Object id) {
+    return id instanceof String || id instanceof Character || id instanceof Long || id instanceof Integer
+            || id instanceof Short || id instanceof Byte || id instanceof BigInteger;
+  }
+
+  /**
+   * Returns a copy of this data set for an incremental sync. The client of an
+   * incremental sync only sends the entities it created, updated or deleted,
+   * and the server only returns the entities whose version is not older than
+   * the given watermark. Incremental syncs are only possible for entities with
+   * a {@link javax.persistence.Version} attribute of type {@link Date}, whose
+   * values grow across all entities of the data set.
+   *
+   * @param watermark
+   *          the watermark from the {@link WatermarkResponse} of the previous
+   *          sync of this data set. Must not be null.
+   */
+  public SyncableDataSet<E> since(Date watermark) {
+    return new SyncableDataSet<E>(queryName, resultTypeFqcn, params, Assert.notNull(watermark), pageStart, pageEnd);
+  }
+
+  /**
+   * Returns a copy of this data set for the given page of a paged sync. The
+   * page covers the entities whose {@link #pageKey(Object) page key} comes
+   * after {@code start} and not after {@code end}, and the client only sends
+   * the digests of its entities in that range.
+   *
+   * @param start
+   *          the {@link MoreResultsResponse#getNextPageStart() start} of the
+   *          next page from the previous page. Must not be null.
+   * @param end
+   *          the {@link MoreResultsResponse#getNextPageEnd() end} of the next
+   *          page from the previous page. Null if the page extends to the end
+   *          of the data set.
+   */
+  public SyncableDataSet<E> page(String start, String end) {
+    return new SyncableDataSet<E>(queryName, resultTypeFqcn, params, watermark, Assert.notNull(start), end);
+  }
+
+  /**
+   * Returns true if the entity with the given ID is part of the page of this
+   * data set. Every entity is part of a data set that is not a page.
+   */
+  public boolean isInPage(Object id) {
+    if (pageStart == null && pageEnd == null) {
+      return true;
+    }
+    String key = pageKey(id);
+    return (pageStart == null || key.compareTo(pageStart) > 0) && (pageEnd == null || key.compareTo(pageEnd) <= 0);
   }
 
   public TypedQuery<E> createQuery(EntityManager em) {
@@ -48,8 +153,17 @@ public class SyncableDataSet<E> {
     return query;
   }
 
+  /**
+   * Returns the entity type of this data set's query results, as known to the
+   * given entity manager.
+   *
+   * @return the result type. {@code Object.class} if the data set was created
+   *         for results of any type.
+   * @throws IllegalStateException
+   *           if the result type is not known to the given entity manager.
+   */
   @SuppressWarnings("unchecked")
-  private Class<E> getResultType(EntityManager em) {
+  public Class<E> getResultType(EntityManager em) {
     // We support this so users don't have to specify the query return type when using @Sync.
     if (resultTypeFqcn.equals("java.lang.Object")) {
       return (Class<E>) Object.class;
@@ -84,10 +198,86 @@ public class SyncableDataSet<E> {
     return params;
   }
 
+  /**
+   * Returns this data set without the watermark of an incremental sync and
+   * without the page of a paged sync.
+   */
+  public SyncableDataSet<E> withoutWatermark() {
+    if (watermark == null && pageStart == null) {
+      return this;
+    }
+    return new SyncableDataSet<E>(queryName, resultTypeFqcn, params, null, null, null);
+  }
+
+  /**
+   * Returns the watermark of an incremental sync of this data set.
+   *
+   * @return the watermark, or null if this data set is for a cold sync.
+   */
+  public Date getWatermark() {
+    return watermark;
+  }
+
+  /**
+   * Returns the page key after which the page of this data set starts.
+   *
+   * @return the start of the page, or null if this data set is not a page
+   *         after the first one.
+   */
+  public String getPageStart() {
+    return pageStart;
+  }
+
+  /**
+   * Returns the page key of the last entity in the page of this data set.
+   *
+   * @return the end of the page, or null if the page extends to the end of the
+   *         data set.
+   */
+  public String getPageEnd() {
+    return pageEnd;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + queryName.hashCode();
+    result = prime * result + ((params == null) ? 0 : params.hashCode());
+    result = prime * result + ((resultTypeFqcn == null) ? 0 : resultTypeFqcn.hashCode());
+    result = prime * result + ((watermark == null) ? 0 : watermark.hashCode());
+    result = prime * result + ((pageStart == null) ? 0 : pageStart.hashCode());
+    result = prime * result + ((pageEnd == null) ? 0 : pageEnd.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof SyncableDataSet))
+      return false;
+    SyncableDataSet<?> other = (SyncableDataSet<?>) obj;
+    if (!queryName.equals(other.queryName))
+      return false;
+    if (params == null ? other.params != null : !params.equals(other.params))
+      return false;
+    if (resultTypeFqcn == null ? other.resultTypeFqcn != null : !resultTypeFqcn.equals(other.resultTypeFqcn))
+      return false;
+    if (watermark == null ? other.watermark != null : !watermark.equals(other.watermark))
+      return false;
+    if (pageStart == null ? other.pageStart != null : !pageStart.equals(other.pageStart))
+      return false;
+    if (pageEnd == null ? other.pageEnd != null : !pageEnd.equals(other.pageEnd))
+      return false;
+    return true;
+  }
+
   @Override
   public String toString() {
     return "SyncableDataSet [queryName=" + queryName + ", params=" + params + ", resultType=" + resultTypeFqcn
-            + "]";
+            + (watermark == null ? "" : ", watermark=" + watermark.getTime())
+            + (pageStart == null ? "" : ", page=(" + pageStart + ", " + pageEnd + "]") + "]";
   }
 
 
@@ -0,0 +1,78 @@
+package org.jboss.errai.jpa.sync.client.shared;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.common.client.api.annotations.MapsTo;
+import org.jboss.errai.common.client.api.annotations.Portable;
+
+/**
+ * Sync response that tells the client where the next incremental sync of the
+ * data set can start (see {@link SyncableDataSet#since(Date)}). It is the last
+ * response of every sync whose entities have a {@code Date} version attribute.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ *
+ * @param <X>
+ *          the entity type
+ */
+@Portable
+public class WatermarkResponse<X> extends SyncResponse<X> {
+
+  private final Date watermark;
+  private final int resultCount;
+  private final long idDigest;
+
+  public WatermarkResponse(
+          @MapsTo("watermark") Date watermark,
+          @MapsTo("resultCount") int resultCount,
+          @MapsTo("idDigest") long idDigest) {
+    this.watermark = Assert.notNull(watermark);
+    this.resultCount = resultCount;
+    this.idDigest = idDigest;
+  }
+
+  /**
+   * Returns a digest of the given entity IDs that doesn't depend on their
+   * order, and that the client and the server compute the same way.
+   */
+  public static long digestIds(Collection<?> ids) {
+    long digest = 0;
+    for (Object id : ids) {
+      digest += EntityComparator.fnv1a(EntityComparator.FNV_OFFSET_BASIS, String.valueOf(id));
+    }
+    return digest;
+  }
+
+  /**
+   * Returns the newest version of the entities in the data set.
+   */
+  public Date getWatermark() {
+    return watermark;
+  }
+
+  /**
+   * Returns the number of entities in the data set after the sync. If the
+   * client holds a different number of entities, some entities were deleted or
+   * left the data set, which only a cold sync can tell.
+   */
+  public int getResultCount() {
+    return resultCount;
+  }
+
+  /**
+   * Returns the {@link #digestIds(Collection) digest} of the IDs of the
+   * entities in the data set after the sync. If the client holds entities with
+   * other IDs, entities were replaced in the data set, which only a cold sync
+   * can tell.
+   */
+  public long getIdDigest() {
+    return idDigest;
+  }
+
+  @Override
+  public String toString() {
+    return "Watermark: " + watermark.getTime() + " resultCount=" + resultCount + " idDigest=" + idDigest;
+  }
+}
@@ -145,6 +145,9 @@ public class SyncDecorator extends IOCDecoratorExtension<Sync> {
     method.append(
         Stmt.loadVariable("syncWorkerHolder").invoke("get").invoke("addSyncCallback", createSyncCallback(ctx)));
 
+    if (syncAnnotation.push()) {
+      method.append(Stmt.loadVariable("syncWorkerHolder").invoke("get").invoke("setPushEnabled", true));
+    }
 
     return method
         .append(Stmt.loadVariable("syncWorkerHolder").invoke("get")
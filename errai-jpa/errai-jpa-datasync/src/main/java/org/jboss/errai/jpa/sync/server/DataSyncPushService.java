@@ -0,0 +1,392 @@
+package org.jboss.errai.jpa.sync.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.SessionEndEvent;
+import org.jboss.errai.bus.client.api.SessionEndListener;
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.base.MessageBuilder;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.client.api.messaging.MessageParts;
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.jpa.sync.client.shared.DataSyncService;
+import org.jboss.errai.jpa.sync.client.shared.MissingIdsResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
+import org.jboss.errai.jpa.sync.client.shared.UpdateResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes the changes of server-side entities to the clients that subscribed to
+ * a data set containing them, so these clients don't have to poll the server
+ * for changes.
+ * <p>
+ * Clients subscribe through
+ * {@code ClientSyncManager.addPushListener(String, Class, Map, RemoteCallback)}.
+ * The {@link SyncEntityListener} reports the entities changed in a JTA
+ * transaction once it has been committed, and they are pushed together right
+ * away. The query of each affected data set is run once, no matter how many
+ * clients subscribed to it, and every subscriber receives an
+ * {@link UpdateResponse} for each changed entity in the data set, and a
+ * {@link MissingIdsResponse} listing the changed entities that are not (or no
+ * longer) in the data set.
+ * <p>
+ * Changes made outside of a JTA transaction can't be pushed when they are
+ * reported, because they are not committed yet. They are recorded and pushed
+ * with the next committed transaction, so applications that use
+ * resource-local transactions should call {@link #pushChanges()} after
+ * committing.
+ * <p>
+ * Pushed entities are marshalled after the entity manager that loaded them was
+ * closed, so the named queries of pushed data sets have to fetch all
+ * associations the client needs. Pushes can miss changes made outside of JPA
+ * or in another server instance, so clients should still sync now and then.
+ * <p>
+ * Create one instance per application and persistence unit (for example, in an
+ * application scoped bean), and {@link #close() close} it when the application
+ * stops.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public abstract class DataSyncPushService {
+
+  private static final Logger logger = LoggerFactory.getLogger(DataSyncPushService.class);
+
+  /**
+   * The open instances, which are notified by
+   * {@link #entitiesChanged(Collection, boolean)}.
+   */
+  private static final List<DataSyncPushService> instances = new CopyOnWriteArrayList<DataSyncPushService>();
+
+  private final EntityManagerFactory emf;
+  private final MessageBus bus;
+  private final Subscription subscription;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+  /**
+   * The IDs of the sessions subscribed to each data set. Data sets without
+   * subscribers are removed.
+   */
+  private final ConcurrentMap<SyncableDataSet<?>, Set<String>> subscribers = new ConcurrentHashMap<SyncableDataSet<?>, Set<String>>();
+
+  /**
+   * The sessions we are listening to, so we can unsubscribe them when they end.
+   */
+  private final Set<String> knownSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  /**
+   * The IDs of the entities that changed since the last push, by entity class.
+   * Guarded by itself.
+   */
+  private final Map<Class<?>, Set<Object>> changes = new HashMap<Class<?>, Set<Object>>();
+
+  /**
+   * Creates a push service for the entities of the given persistence unit and
+   * starts accepting subscriptions on the given bus.
+   *
+   * @param emf
+   *          The factory for the entity managers that run the queries of the
+   *          subscribed data sets. Must not be null.
+   * @param bus
+   *          The bus that receives subscriptions and delivers the pushed
+   *          changes. Must not be null.
+   */
+  public DataSyncPushService(EntityManagerFactory emf, MessageBus bus) {
+    this.emf = Assert.notNull(emf);
+    this.bus = Assert.notNull(bus);
+    this.subscription = bus.subscribe(DataSyncService.PUSH_SUBSCRIBE_SUBJECT, new MessageCallback() {
+      @Override
+      public void callback(Message message) {
+        QueueSession session = message.getResource(QueueSession.class, "Session");
+        SyncableDataSet<?> dataSet = message.get(SyncableDataSet.class, DataSyncService.PUSH_DATA_SET_PART);
+        if (DataSyncService.PUSH_UNSUBSCRIBE_COMMAND.equals(message.getCommandType())) {
+          unsubscribe(dataSet, session.getSessionId());
+        }
+        else {
+          subscribe(dataSet, session);
+        }
+      }
+    });
+    instances.add(this);
+  }
+
+  /**
+   * Decides whether the given session may receive the changes of the given
+   * data set. Implementations should apply the same checks as the
+   * application's {@link DataSyncService}.
+   *
+   * @param dataSet
+   *          the data set a client wants to subscribe to. Never null.
+   * @param session
+   *          the session of the subscribing client. Never null.
+   * @return true if the subscription is allowed; false if it is ignored.
+   */
+  protected abstract boolean authorize(SyncableDataSet<?> dataSet, QueueSession session);
+
+  /**
+   * Subscribes the given session to the changes of the given data set, if the
+   * subscription is {@link #authorize(SyncableDataSet, QueueSession) authorized}.
+   */
+  public void subscribe(SyncableDataSet<?> dataSet, QueueSession session) {
+    if (!authorize(dataSet, session)) {
+      logger.warn("Refused subscription of session " + session.getSessionId() + " to " + dataSet);
+      return;
+    }
+    SyncableDataSet<?> key = dataSet.withoutWatermark();
+    Set<String> sessionIds;
+    do {
+      sessionIds = subscribers.get(key);
+      if (sessionIds == null) {
+        Set<String> newSessionIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        sessionIds = subscribers.putIfAbsent(key, newSessionIds);
+        if (sessionIds == null) {
+          sessionIds = newSessionIds;
+        }
+      }
+      sessionIds.add(session.getSessionId());
+
+      // try again if the set was removed by a concurrent unsubscribe
+    } while (subscribers.get(key) != sessionIds);
+
+    if (knownSessions.add(session.getSessionId())) {
+      session.addSessionEndListener(new SessionEndListener() {
+        @Override
+        public void onSessionEnd(SessionEndEvent event) {
+          unsubscribeAll(event.getSession().getSessionId());
+        }
+      });
+    }
+  }
+
+  /**
+   * Ends the subscription of the given session to the given data set.
+   */
+  public void unsubscribe(SyncableDataSet<?> dataSet, String sessionId) {
+    SyncableDataSet<?> key = dataSet.withoutWatermark();
+    Set<String> sessionIds = subscribers.get(key);
+    if (sessionIds != null) {
+      unsubscribe(key, sessionIds, sessionId);
+    }
+  }
+
+  private void unsubscribeAll(String sessionId) {
+    knownSessions.remove(sessionId);
+    for (Map.Entry<SyncableDataSet<?>, Set<String>> subscription : subscribers.entrySet()) {
+      unsubscribe(subscription.getKey(), subscription.getValue(), sessionId);
+    }
+  }
+
+  private void unsubscribe(SyncableDataSet<?> key, Set<String> sessionIds, String sessionId) {
+    if (sessionIds.remove(sessionId) && sessionIds.isEmpty()) {
+      subscribers.remove(key, sessionIds);
+    }
+  }
+
+  /**
+   * Returns true if some session is subscribed to the given data set.
+   */
+  public boolean hasSubscribers(SyncableDataSet<?> dataSet) {
+    return subscribers.containsKey(dataSet.withoutWatermark());
+  }
+
+  /**
+   * Records the changes of the given entities in every open push service that
+   * manages their types. Called by the {@link SyncEntityListener}.
+   *
+   * @param entities
+   *          the entities that were persisted, updated or removed. Must not be
+   *          null.
+   * @param committed
+   *          true if the changes are committed, so they can be pushed right
+   *          away; false if they are only recorded until the next push.
+   */
+  public static void entitiesChanged(Collection<?> entities, boolean committed) {
+    for (DataSyncPushService instance : instances) {
+      boolean recorded = false;
+      for (Object entity : entities) {
+        recorded |= instance.recordChange(entity);
+      }
+      if (recorded && committed) {
+        instance.schedulePush();
+      }
+    }
+  }
+
+  private void schedulePush() {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            pushChanges();
+          }
+          catch (RuntimeException e) {
+            logger.error("Failed to push entity changes", e);
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // closed in the meantime
+    }
+  }
+
+  /**
+   * Records the change of the given entity, if it can be pushed.
+   *
+   * @return true if the change was recorded.
+   */
+  private boolean recordChange(Object entity) {
+    if (subscribers.isEmpty()) {
+      return false;
+    }
+
+    Object id;
+    try {
+      emf.getMetamodel().entity(entity.getClass());
+      PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+      id = util.getIdentifier(entity);
+    }
+    catch (IllegalArgumentException e) {
+      // not an entity of our persistence unit
+      return false;
+    }
+    if (id == null) {
+      return false;
+    }
+
+    synchronized (changes) {
+      Set<Object> ids = changes.get(entity.getClass());
+      if (ids == null) {
+        changes.put(entity.getClass(), ids = new HashSet<Object>());
+      }
+      ids.add(id);
+    }
+    return true;
+  }
+
+  /**
+   * Pushes the changes recorded so far to the subscribed clients. Changes of
+   * committed JTA transactions are pushed automatically; call this after
+   * committing changes made outside of a JTA transaction.
+   */
+  public void pushChanges() {
+    Map<Class<?>, Set<Object>> changedIds;
+    synchronized (changes) {
+      if (changes.isEmpty()) {
+        return;
+      }
+      changedIds = new HashMap<Class<?>, Set<Object>>(changes);
+      changes.clear();
+    }
+
+    EntityManager em = emf.createEntityManager();
+    try {
+      for (Map.Entry<SyncableDataSet<?>, Set<String>> subscription : subscribers.entrySet()) {
+        if (subscription.getValue().isEmpty()) {
+          continue;
+        }
+        List<SyncResponse<Object>> responses = responsesFor(em, subscription.getKey(), changedIds);
+        if (!responses.isEmpty()) {
+          for (String sessionId : subscription.getValue()) {
+            send(sessionId, subscription.getKey(), responses);
+          }
+        }
+      }
+    }
+    finally {
+      em.close();
+    }
+  }
+
+  /**
+   * Returns the responses that bring a subscriber of the given data set up to
+   * date with the given changes. Runs the query of the data set only if some of
+   * the changed entities can be in its results.
+   */
+  @SuppressWarnings("unchecked")
+  private List<SyncResponse<Object>> responsesFor(
+          EntityManager em, SyncableDataSet<?> dataSet, Map<Class<?>, Set<Object>> changedIds) {
+    Class<?> resultType = dataSet.getResultType(em);
+    Set<Object> relevantIds = new HashSet<Object>();
+    for (Map.Entry<Class<?>, Set<Object>> change : changedIds.entrySet()) {
+      if (resultType.isAssignableFrom(change.getKey())) {
+        relevantIds.addAll(change.getValue());
+      }
+    }
+
+    List<SyncResponse<Object>> responses = new ArrayList<SyncResponse<Object>>();
+    if (relevantIds.isEmpty()) {
+      return responses;
+    }
+
+    Map<Object, Object> results = new LinkedHashMap<Object, Object>();
+    PersistenceUnitUtil util = emf.getPersistenceUnitUtil();
+    for (Object entity : ((SyncableDataSet<Object>) dataSet).createQuery(em).getResultList()) {
+      results.put(util.getIdentifier(entity), entity);
+    }
+
+    List<Object> missingIds = new ArrayList<Object>();
+    for (Object id : relevantIds) {
+      Object entity = results.get(id);
+      if (entity == null) {
+        missingIds.add(id);
+      }
+      else {
+        responses.add(new UpdateResponse<Object>(entity));
+      }
+    }
+    if (!missingIds.isEmpty()) {
+      responses.add(new MissingIdsResponse<Object>(missingIds));
+    }
+    return responses;
+  }
+
+  /**
+   * Sends the given responses for the given data set to the client with the
+   * given session ID.
+   */
+  protected void send(String sessionId, SyncableDataSet<?> dataSet, List<? extends SyncResponse<?>> responses) {
+    MessageBuilder.createMessage()
+        .toSubject(DataSyncService.PUSH_SUBJECT)
+        .signalling()
+        .with(MessageParts.SessionID, sessionId)
+        .with(DataSyncService.PUSH_DATA_SET_PART, dataSet)
+        .with(DataSyncService.PUSH_RESPONSES_PART, responses)
+        .noErrorHandling()
+        .sendNowWith(bus);
+  }
+
+  /**
+   * Stops accepting subscriptions and pushing changes. Changes that were not
+   * pushed yet are discarded.
+   */
+  public void close() {
+    instances.remove(this);
+    subscription.remove();
+    executor.shutdownNow();
+    subscribers.clear();
+  }
+}
@@ -1,12 +1,18 @@
 package org.jboss.errai.jpa.sync.server;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
 
@@ -17,40 +23,129 @@ import org.jboss.errai.jpa.sync.client.shared.DeleteResponse;
 import org.jboss.errai.jpa.sync.client.shared.EntityComparator;
 import org.jboss.errai.jpa.sync.client.shared.IdChangeResponse;
 import org.jboss.errai.jpa.sync.client.shared.JpaAttributeAccessor;
+import org.jboss.errai.jpa.sync.client.shared.MissingIdsResponse;
+import org.jboss.errai.jpa.sync.client.shared.MoreResultsResponse;
 import org.jboss.errai.jpa.sync.client.shared.NewRemoteEntityResponse;
 import org.jboss.errai.jpa.sync.client.shared.SyncRequestOperation;
 import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
 import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
 import org.jboss.errai.jpa.sync.client.shared.UpdateResponse;
+import org.jboss.errai.jpa.sync.client.shared.WatermarkResponse;
 
 public class DataSyncServiceImpl implements DataSyncService {
 
+  /**
+   * The default {@link #setWatermarkOverlap(long) watermark overlap} in
+   * milliseconds.
+   */
+  public static final long DEFAULT_WATERMARK_OVERLAP = 60000;
+
+  /**
+   * Stands for entity types without a {@code Date} version attribute in
+   * {@link #watermarkAttributes}, which can't hold null.
+   */
+  private static final Object NO_WATERMARK_ATTRIBUTE = new Object();
+
   private final EntityManager em;
   private final JpaAttributeAccessor attributeAccessor;
   private final EntityComparator entityComparator;
+  private final QueryResultCache queryResultCache;
+
+  /**
+   * The maximum number of entities of the data set one page of a sync covers.
+   * Zero for no limit.
+   */
+  private int pageSize;
+
+  private long watermarkOverlap = DEFAULT_WATERMARK_OVERLAP;
+
+  /**
+   * The {@code Date} version attribute of each entity type, or
+   * {@link #NO_WATERMARK_ATTRIBUTE} for entity types that don't have one.
+   */
+  private final ConcurrentMap<Class<?>, Object> watermarkAttributes = new ConcurrentHashMap<Class<?>, Object>();
 
   public DataSyncServiceImpl(EntityManager em, JpaAttributeAccessor attributeAccessor) {
+    this(em, attributeAccessor, null);
+  }
+
+  /**
+   * Creates a DataSyncServiceImpl that reads the query results of the data sets
+   * from the given cache, which can be shared by the instances serving all
+   * clients.
+   *
+   * @param queryResultCache
+   *          The cache of query results. Null to run the query of each sync.
+   */
+  public DataSyncServiceImpl(EntityManager em, JpaAttributeAccessor attributeAccessor, QueryResultCache queryResultCache) {
     this.em = Assert.notNull(em);
     this.attributeAccessor = Assert.notNull(attributeAccessor);
     this.entityComparator = new EntityComparator(em.getMetamodel(), attributeAccessor);
+    this.queryResultCache = queryResultCache;
   }
 
+  /**
+   * Synchronizes the given data set with the given client requests. If the data
+   * set has a {@link SyncableDataSet#getWatermark() watermark}, the requests
+   * only contain the entities the client changed, and only the entities whose
+   * version is not older than the watermark minus the
+   * {@link #setWatermarkOverlap(long) watermark overlap} are returned; otherwise the
+   * requests must contain every entity the client holds, either in full or as
+   * a {@link SyncRequestOperation.Type#DIGEST digest}. If the entities have
+   * a {@code Date} version attribute, the last response is a
+   * {@link WatermarkResponse} for the next incremental sync.
+   * <p>
+   * If a {@link #setPageSize(int) page size} is set and the data set has more
+   * entities than fit in one page, the last response is a
+   * {@link MoreResultsResponse} instead, and the client has to sync the
+   * {@link SyncableDataSet#page(String, String) page} it names next. A page
+   * covers the entities in the order of their
+   * {@link SyncableDataSet#pageKey(Object) page keys}, and digests of entities
+   * outside of the page are ignored.
+   */
   @Override
   public <E> List<SyncResponse<E>> coldSync(SyncableDataSet<E> dataSet, List<SyncRequestOperation<E>> syncRequestOps) {
-    TypedQuery<E> query = dataSet.createQuery(em);
-    Map<Object, E> localResults = new HashMap<Object, E>();
-    for (E localEntity : query.getResultList()) {
+    final Date watermark = dataSet.getWatermark();
+
+    // cached results are detached and shared with other syncs, so we only read them
+    List<E> queryResults;
+    if (queryResultCache == null) {
+      queryResults = dataSet.createQuery(em).getResultList();
+    }
+    else {
+      queryResults = queryResultCache.getResultList(dataSet);
+    }
+    Map<Object, E> localResults = new LinkedHashMap<Object, E>();
+    for (E localEntity : queryResults) {
       localResults.put(id(localEntity), localEntity);
     }
+    final Date since = (watermark == null) ? null : new Date(watermark.getTime() - watermarkOverlap);
 
     // maps the old remote ID -> new local persistent entity
     Map<Object, E> newLocalEntities = new HashMap<Object, E>();
 
+    // the IDs of the entities the client deleted
+    List<Object> deletedIds = new ArrayList<Object>();
+
+    // the entities we merged the client's state into
+    List<E> updatedLocalEntities = new ArrayList<E>();
+
     // the response we will return
     List<SyncResponse<E>> syncResponse = new ArrayList<SyncResponse<E>>();
 
+    // the IDs of digested entities we don't have (anymore)
+    List<Object> missingIds = new ArrayList<Object>();
+
+    // the digests of the unchanged entities the client has, by ID
+    Map<Object, String> digests = new LinkedHashMap<Object, String>();
+
     for (SyncRequestOperation<E> syncReq : syncRequestOps) {
 
+      if (syncReq.getType() == SyncRequestOperation.Type.DIGEST) {
+        digests.put(syncReq.getId(), syncReq.getDigest());
+        continue;
+      }
+
       // the new state desired by the client. Can be null (for example, entity was remotely deleted).
       final E remoteNewState = syncReq.getEntity();
 
@@ -81,7 +176,9 @@ public class DataSyncServiceImpl implements DataSyncService {
           syncResponse.add(new ConflictResponse<E>(remoteExpectedState, localState, remoteNewState));
         }
         else {
-          syncResponse.add(new UpdateResponse<E>(em.merge(remoteNewState)));
+          E updated = em.merge(remoteNewState);
+          updatedLocalEntities.add(updated);
+          syncResponse.add(new UpdateResponse<E>(updated));
         }
         break;
 
@@ -108,8 +205,12 @@ public class DataSyncServiceImpl implements DataSyncService {
         if (localState != null) {
           // FIXME need to compare expected state with actual; issue conflict if they differ
           localResults.remove(remoteId);
-          em.remove(localState);
+          E managedState = managed(localState, remoteId);
+          if (managedState != null) {
+            em.remove(managedState);
+          }
           syncResponse.add(new DeleteResponse<E>(localState));
+          deletedIds.add(remoteId);
         }
         break;
 
@@ -118,19 +219,240 @@ public class DataSyncServiceImpl implements DataSyncService {
       }
     }
 
+    // the entities of this page the client might not have in their current state, by ID
+    Map<Object, E> pageEntities = new LinkedHashMap<Object, E>();
+
+    // the page keys of the entities after this page, in order
+    List<String> laterKeys = new ArrayList<String>();
+
+    // page keys are only portable for some types of IDs, so other data sets are synced in one go
+    int limit = (pageSize > 0 && isPageable(localResults.keySet())) ? pageSize : 0;
+    String pageEnd = dataSet.getPageEnd();
+    boolean paged = limit > 0 || dataSet.getPageStart() != null || pageEnd != null;
+
+    // the IDs of the entities that might be part of this page, by page key
+    Map<String, Object> candidateIds = new TreeMap<String, Object>();
+    for (Map.Entry<Object, E> localResult : localResults.entrySet()) {
+      if (since != null && isOlderThan(localResult.getValue(), since)) {
+        continue;
+      }
+      if (!paged) {
+        // without paging, the entities keep the order of the query results
+        pageEntities.put(localResult.getKey(), localResult.getValue());
+        continue;
+      }
+      String key = SyncableDataSet.pageKey(localResult.getKey());
+      if (dataSet.getPageStart() == null || key.compareTo(dataSet.getPageStart()) > 0) {
+        candidateIds.put(key, localResult.getKey());
+      }
+    }
+
+    // the page ends after limit entities, matching or not, so every page makes progress
+    String lastKey = null;
+    for (Map.Entry<String, Object> candidateId : candidateIds.entrySet()) {
+      String key = candidateId.getKey();
+      if (!laterKeys.isEmpty()
+              || (limit > 0 && pageEntities.size() == limit)
+              || (pageEnd != null && key.compareTo(pageEnd) > 0)) {
+        laterKeys.add(key);
+      }
+      else {
+        pageEntities.put(candidateId.getValue(), localResults.get(candidateId.getValue()));
+        lastKey = key;
+      }
+    }
+    if (limit > 0 && pageEntities.size() == limit && !laterKeys.isEmpty()) {
+      pageEnd = lastKey;
+    }
+
+    for (Map.Entry<Object, String> digest : digests.entrySet()) {
+      Object id = digest.getKey();
+      if (paged && (!dataSet.isInPage(id) || (pageEnd != null && SyncableDataSet.pageKey(id).compareTo(pageEnd) > 0))) {
+        // the client sends this digest again with its page
+        continue;
+      }
+      E localState = localResults.get(id);
+      pageEntities.remove(id);
+      if (localState == null) {
+        missingIds.add(id);
+      }
+      else if (!entityComparator.digest(localState).equals(digest.getValue())) {
+        syncResponse.add(new UpdateResponse<E>(localState));
+      }
+    }
+
     em.flush();
 
+    if (!missingIds.isEmpty()) {
+      syncResponse.add(new MissingIdsResponse<E>(missingIds));
+    }
+
     // pick up new IDs (this has to be done after the flush)
     for (Map.Entry<Object, E> newLocalEntity : newLocalEntities.entrySet()) {
       syncResponse.add(new IdChangeResponse<E>(newLocalEntity.getKey(), newLocalEntity.getValue()));
     }
 
-    for (E newOnThisSide : localResults.values()) {
-      syncResponse.add(new NewRemoteEntityResponse<E>(newOnThisSide));
+    for (E newOnThisSide : pageEntities.values()) {
+      if (watermark == null) {
+        syncResponse.add(new NewRemoteEntityResponse<E>(newOnThisSide));
+      }
+      else {
+        // we can't tell if the client already has this entity, so it decides between update and new
+        syncResponse.add(new UpdateResponse<E>(newOnThisSide));
+      }
+    }
+
+    if (pageEnd != null) {
+      // the watermark and result count are only meaningful once the client has everything
+      String nextPageEnd = (limit > 0 && laterKeys.size() > limit) ? laterKeys.get(limit - 1) : null;
+      syncResponse.add(new MoreResultsResponse<E>(laterKeys.size(), pageEnd, nextPageEnd));
+      return syncResponse;
+    }
+
+    // the versions of updated and new entities are current after the flush
+    List<E> versionedEntities = new ArrayList<E>(queryResults);
+    versionedEntities.addAll(updatedLocalEntities);
+    versionedEntities.addAll(newLocalEntities.values());
+    Date newWatermark = null;
+    for (E entity : versionedEntities) {
+      if (!hasWatermarkAttribute(entity)) {
+        return syncResponse;
+      }
+      Date version = version(entity);
+      if (version != null && (newWatermark == null || version.after(newWatermark))) {
+        newWatermark = version;
+      }
+    }
+    if (newWatermark == null) {
+      newWatermark = watermark;
+    }
+    if (newWatermark != null) {
+      Set<Object> resultIds = new LinkedHashSet<Object>();
+      for (E entity : queryResults) {
+        resultIds.add(id(entity));
+      }
+      resultIds.removeAll(deletedIds);
+      for (E entity : newLocalEntities.values()) {
+        resultIds.add(id(entity));
+      }
+      syncResponse.add(new WatermarkResponse<E>(newWatermark, resultIds.size(), WatermarkResponse.digestIds(resultIds)));
     }
     return syncResponse;
   }
 
+  /**
+   * Makes incremental syncs also return the entities whose version is older
+   * than the client's watermark by up to the given time. Otherwise, entities
+   * whose version was set before the watermark but that were committed after
+   * the previous sync, or by a server whose clock is behind, would never be
+   * returned. The client ignores the entities it already has in the same
+   * state. The default is {@value #DEFAULT_WATERMARK_OVERLAP} milliseconds.
+   *
+   * @param watermarkOverlap
+   *          the overlap in milliseconds. Should be longer than the longest
+   *          transaction that changes entities, plus the clock differences
+   *          between servers.
+   */
+  public void setWatermarkOverlap(long watermarkOverlap) {
+    if (watermarkOverlap < 0) {
+      throw new IllegalArgumentException("Watermark overlap must not be negative: " + watermarkOverlap);
+    }
+    this.watermarkOverlap = watermarkOverlap;
+  }
+
+  /**
+   * Limits the number of entities one sync covers, which keeps the messages of
+   * the first sync of a large data set small. The client gets the remaining
+   * entities by syncing the next pages, and only sends the digests of the
+   * entities in the page. Responses to the client's own changes are not
+   * limited. The default is no limit. Data sets whose entities don't all have
+   * IDs of a {@link SyncableDataSet#isPageable(Object) pageable} type are never
+   * limited.
+   *
+   * @param pageSize
+   *          the maximum number of entities of the data set one sync covers,
+   *          whether the client has them or not. Zero for no limit.
+   */
+  public void setPageSize(int pageSize) {
+    if (pageSize < 0) {
+      throw new IllegalArgumentException("Page size must not be negative: " + pageSize);
+    }
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Returns true if all the given IDs have a {@link SyncableDataSet#pageKey(Object)
+   * page key}.
+   */
+  private static boolean isPageable(Iterable<Object> ids) {
+    for (Object id : ids) {
+      if (!SyncableDataSet.isPageable(id)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the instance of the given query result that is managed by our
+   * entity manager. Results from the cache are detached, and can be stale.
+   *
+   * @return the managed instance, or null if the entity no longer exists.
+   */
+  private <X> X managed(X entity, Object id) {
+    if (em.contains(entity)) {
+      return entity;
+    }
+    @SuppressWarnings("unchecked")
+    X managed = em.find((Class<X>) entity.getClass(), id);
+    return managed;
+  }
+
+  /**
+   * Returns true if the version of the given entity is older than the given
+   * watermark. Entities without a version are never older.
+   */
+  private <X> boolean isOlderThan(X entity, Date watermark) {
+    Date version = hasWatermarkAttribute(entity) ? version(entity) : null;
+    return version != null && version.before(watermark);
+  }
+
+  /**
+   * Returns true if the given entity has a version attribute of type
+   * {@code Date}, which incremental syncs can be based on.
+   */
+  private boolean hasWatermarkAttribute(Object entity) {
+    return watermarkAttribute(entity) != null;
+  }
+
+  /**
+   * Returns the value of the {@code Date} version attribute of the given
+   * entity, which must have one.
+   */
+  private <X> Date version(X entity) {
+    @SuppressWarnings("unchecked")
+    SingularAttribute<? super X, ?> attr = (SingularAttribute<? super X, ?>) watermarkAttribute(entity);
+    return (Date) attributeAccessor.get(attr, entity);
+  }
+
+  private SingularAttribute<?, ?> watermarkAttribute(Object entity) {
+    Class<?> entityClass = entity.getClass();
+    Object watermarkAttribute = watermarkAttributes.get(entityClass);
+    if (watermarkAttribute == null) {
+      watermarkAttribute = NO_WATERMARK_ATTRIBUTE;
+      EntityType<?> type = em.getMetamodel().entity(entityClass);
+      if (type.hasVersionAttribute()) {
+        for (SingularAttribute<?, ?> attr : type.getSingularAttributes()) {
+          if (attr.isVersion() && Date.class.isAssignableFrom(attr.getJavaType())) {
+            watermarkAttribute = attr;
+          }
+        }
+      }
+      watermarkAttributes.putIfAbsent(entityClass, watermarkAttribute);
+    }
+    return (watermarkAttribute == NO_WATERMARK_ATTRIBUTE) ? null : (SingularAttribute<?, ?>) watermarkAttribute;
+  }
+
   /**
    * Returns the ID of the given object, which must be a JPA entity.
    *
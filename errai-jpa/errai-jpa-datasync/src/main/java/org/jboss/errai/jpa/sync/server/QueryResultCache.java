@@ -0,0 +1,197 @@
+package org.jboss.errai.jpa.sync.server;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
+
+/**
+ * Caches the query results of data sets for a short time, so that the syncs
+ * of the same data set by many clients share one database round trip.
+ * Concurrent requests for a data set that is not cached wait for the same
+ * query.
+ * <p>
+ * Results are loaded by an entity manager of the cache's own, which is closed
+ * right away, so the cached entities are detached and shared by all requests:
+ * they must not be modified, and the named queries of cached data sets have to
+ * fetch all associations the client needs. An entry is dropped when its time
+ * to live is over, and when the {@link SyncEntityListener} reports a change of
+ * an entity of its result type, which it does once the change is committed.
+ * Changes to related entities of other types and changes made outside of JPA
+ * or in another server instance are only seen after the time to live.
+ * <p>
+ * Create one instance per application and persistence unit, pass it to the
+ * {@link DataSyncServiceImpl}, and {@link #close() close} it when the
+ * application stops.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class QueryResultCache {
+
+  /**
+   * The open instances, which are notified by {@link #entityChanged(Object)}.
+   */
+  private static final List<QueryResultCache> instances = new CopyOnWriteArrayList<QueryResultCache>();
+
+  private final EntityManagerFactory emf;
+  private final long timeToLiveMillis;
+
+  /**
+   * The cached and loading query results, by data set without watermark.
+   */
+  private final ConcurrentMap<SyncableDataSet<?>, Entry> entries = new ConcurrentHashMap<SyncableDataSet<?>, Entry>();
+
+  /**
+   * The query results of one data set, which are loaded by the first request
+   * for them.
+   */
+  private class Entry {
+    final FutureTask<List<?>> results;
+
+    /**
+     * The result type of the query. Null while it is not known yet.
+     */
+    volatile Class<?> resultType;
+
+    /**
+     * When the results were loaded. Zero while they are loading.
+     */
+    volatile long loadedAt;
+
+    Entry(final SyncableDataSet<?> dataSet) {
+      this.results = new FutureTask<List<?>>(new Callable<List<?>>() {
+        @Override
+        public List<?> call() {
+          return load(dataSet, Entry.this);
+        }
+      });
+    }
+  }
+
+  /**
+   * Creates a cache for the query results of the given persistence unit.
+   *
+   * @param emf
+   *          The factory for the entity managers that load the query results.
+   *          Must not be null.
+   * @param timeToLiveMillis
+   *          How long query results are used before they are loaded again.
+   *          Should be short (a few seconds), because the cache doesn't see
+   *          every change.
+   */
+  public QueryResultCache(EntityManagerFactory emf, long timeToLiveMillis) {
+    this.emf = Assert.notNull(emf);
+    this.timeToLiveMillis = timeToLiveMillis;
+    instances.add(this);
+  }
+
+  /**
+   * Returns the query results of the given data set, from the cache if
+   * possible. The watermark of the data set is ignored.
+   *
+   * @return The detached entities of the query results, in query order. The
+   *         list is unmodifiable and must be treated as read-only, as must the
+   *         entities.
+   */
+  @SuppressWarnings("unchecked")
+  public <E> List<E> getResultList(SyncableDataSet<E> dataSet) {
+    SyncableDataSet<E> key = dataSet.withoutWatermark();
+    while (true) {
+      Entry entry = entries.get(key);
+      if (entry != null && isExpired(entry)) {
+        entries.remove(key, entry);
+        entry = null;
+      }
+
+      if (entry == null) {
+        Entry newEntry = new Entry(key);
+        entry = entries.putIfAbsent(key, newEntry);
+        if (entry == null) {
+          entry = newEntry;
+          newEntry.results.run();
+          newEntry.loadedAt = System.currentTimeMillis();
+        }
+      }
+
+      try {
+        return (List<E>) entry.results.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the results of " + key, e);
+      }
+      catch (ExecutionException e) {
+        entries.remove(key, entry);
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("Failed to load the results of " + key, e.getCause());
+      }
+    }
+  }
+
+  private <E> List<E> load(SyncableDataSet<E> dataSet, Entry entry) {
+    EntityManager em = emf.createEntityManager();
+    try {
+      entry.resultType = dataSet.getResultType(em);
+      return Collections.unmodifiableList(dataSet.createQuery(em).getResultList());
+    }
+    finally {
+      em.close();
+    }
+  }
+
+  private boolean isExpired(Entry entry) {
+    long loadedAt = entry.loadedAt;
+    return loadedAt != 0 && System.currentTimeMillis() - loadedAt >= timeToLiveMillis;
+  }
+
+  /**
+   * Drops the cached query results that can contain the given entity from
+   * every open cache. Called by the {@link SyncEntityListener}.
+   *
+   * @param entity
+   *          the entity that was persisted, updated or removed. Must not be
+   *          null.
+   */
+  public static void entityChanged(Object entity) {
+    for (QueryResultCache instance : instances) {
+      instance.invalidate(entity.getClass());
+    }
+  }
+
+  private void invalidate(Class<?> entityClass) {
+    for (Map.Entry<SyncableDataSet<?>, Entry> entry : entries.entrySet()) {
+      Class<?> resultType = entry.getValue().resultType;
+      if (resultType == null || resultType.isAssignableFrom(entityClass)) {
+        entries.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Drops all cached query results.
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Drops all cached query results and stops listening for entity changes.
+   */
+  public void close() {
+    instances.remove(this);
+    entries.clear();
+  }
+}
@@ -0,0 +1,129 @@
+package org.jboss.errai.jpa.sync.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JPA entity listener that reports changed entities to the open
+ * {@link DataSyncPushService} and {@link QueryResultCache} instances. Because
+ * the entities of a data set are shared with the client, which can't see this
+ * class, register it as a default entity listener in the
+ * {@code META-INF/orm.xml} of the persistence unit:
+ *
+ * <pre>
+ * &lt;persistence-unit-metadata&gt;
+ *   &lt;persistence-unit-defaults&gt;
+ *     &lt;entity-listeners&gt;
+ *       &lt;entity-listener class="org.jboss.errai.jpa.sync.server.SyncEntityListener"/&gt;
+ *     &lt;/entity-listeners&gt;
+ *   &lt;/persistence-unit-defaults&gt;
+ * &lt;/persistence-unit-metadata&gt;
+ * </pre>
+ *
+ * The JPA callbacks run when changes are flushed, before they are committed,
+ * so the changes made in a JTA transaction are only reported once it has been
+ * committed, and not at all if it is rolled back. Otherwise another thread
+ * could read and cache the state from before the commit. The transaction is
+ * found through the {@link TransactionSynchronizationRegistry} in JNDI.
+ * Changes made outside of a JTA transaction are reported right away, because
+ * resource-local transactions have no standard commit callback; the push
+ * service only records them until {@link DataSyncPushService#pushChanges()} is
+ * called.
+ *
+ * @author Jonathan Fuerth <jfuerth@redhat.com>
+ */
+public class SyncEntityListener {
+
+  private static final String REGISTRY_JNDI_NAME = "java:comp/TransactionSynchronizationRegistry";
+
+  private static final Logger logger = LoggerFactory.getLogger(SyncEntityListener.class);
+
+  /**
+   * The key of the entities changed in the current transaction among the
+   * resources of the transaction.
+   */
+  private static final Object CHANGED_ENTITIES_KEY = SyncEntityListener.class.getName() + ".changedEntities";
+
+  private static volatile TransactionSynchronizationRegistry registry;
+  private static volatile boolean registryLookedUp;
+
+  @PostPersist
+  @PostUpdate
+  @PostRemove
+  public void entityChanged(Object entity) {
+    TransactionSynchronizationRegistry registry = getRegistry();
+    if (registry == null || registry.getTransactionKey() == null) {
+      // no transaction to wait for
+      entitiesChanged(Collections.singletonList(entity), false);
+      return;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object> changedEntities = (List<Object>) registry.getResource(CHANGED_ENTITIES_KEY);
+    if (changedEntities == null) {
+      final List<Object> newChangedEntities = new ArrayList<Object>();
+      registry.putResource(CHANGED_ENTITIES_KEY, newChangedEntities);
+      registry.registerInterposedSynchronization(new Synchronization() {
+        @Override
+        public void beforeCompletion() {
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          if (status == Status.STATUS_COMMITTED) {
+            entitiesChanged(newChangedEntities, true);
+          }
+        }
+      });
+      changedEntities = newChangedEntities;
+    }
+    changedEntities.add(entity);
+  }
+
+  private static void entitiesChanged(List<Object> entities, boolean committed) {
+    for (Object entity : entities) {
+      QueryResultCache.entityChanged(entity);
+    }
+    DataSyncPushService.entitiesChanged(entities, committed);
+  }
+
+  /**
+   * Uses the given registry to find the current JTA transaction, instead of
+   * the one in JNDI. This is for environments that manage JTA transactions
+   * without binding the registry to {@value #REGISTRY_JNDI_NAME}.
+   *
+   * @param registry
+   *          The registry of the transaction manager, or null to look it up in
+   *          JNDI again.
+   */
+  public static void setTransactionSynchronizationRegistry(TransactionSynchronizationRegistry registry) {
+    SyncEntityListener.registry = registry;
+    registryLookedUp = (registry != null);
+  }
+
+  private static TransactionSynchronizationRegistry getRegistry() {
+    if (!registryLookedUp) {
+      try {
+        registry = (TransactionSynchronizationRegistry) new InitialContext().lookup(REGISTRY_JNDI_NAME);
+      }
+      catch (NamingException e) {
+        logger.info("No JTA transaction synchronization registry found. Entity changes are reported when they are flushed.");
+      }
+      registryLookedUp = true;
+    }
+    return registry;
+  }
+}
@@ -3,12 +3,23 @@ package org.jboss.errai.jpa.sync.test.client;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.AssertionFailedError;
 
+import org.jboss.errai.bus.client.ErraiBus;
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.base.MessageBuilder;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.client.framework.BusState;
+import org.jboss.errai.bus.client.framework.ClientMessageBusImpl;
 import org.jboss.errai.common.client.api.Caller;
 import org.jboss.errai.common.client.api.ErrorCallback;
 import org.jboss.errai.common.client.api.RemoteCallback;
@@ -21,14 +32,19 @@ import org.jboss.errai.ioc.client.container.IOCBeanManagerLifecycle;
 import org.jboss.errai.ioc.client.lifecycle.api.StateChange;
 import org.jboss.errai.jpa.client.local.ErraiEntityManager;
 import org.jboss.errai.jpa.sync.client.local.ClientSyncManager;
+import org.jboss.errai.jpa.sync.client.local.ErraiAttributeAccessor;
 import org.jboss.errai.jpa.sync.client.shared.DataSyncService;
 import org.jboss.errai.jpa.sync.client.shared.DeleteResponse;
+import org.jboss.errai.jpa.sync.client.shared.EntityComparator;
 import org.jboss.errai.jpa.sync.client.shared.IdChangeResponse;
+import org.jboss.errai.jpa.sync.client.shared.MissingIdsResponse;
+import org.jboss.errai.jpa.sync.client.shared.MoreResultsResponse;
 import org.jboss.errai.jpa.sync.client.shared.NewRemoteEntityResponse;
 import org.jboss.errai.jpa.sync.client.shared.SyncRequestOperation;
 import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
 import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
 import org.jboss.errai.jpa.sync.client.shared.UpdateResponse;
+import org.jboss.errai.jpa.sync.client.shared.WatermarkResponse;
 import org.jboss.errai.jpa.sync.test.client.entity.SimpleEntity;
 import org.jboss.errai.jpa.sync.test.client.ioc.DependentScopedSyncBean;
 
@@ -40,6 +56,20 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
   private ClientSyncManager csm;
   private DependentScopedSyncBean syncBean;
 
+  /**
+   * The push subscription messages the ClientSyncManager sent to the server.
+   */
+  private final List<Message> subscriptionMessages = new ArrayList<Message>();
+  private Subscription subscriptionRecorder;
+
+  /**
+   * The push listeners the test registered, which are removed after the test
+   * so that the ClientSyncManager of the next test is the only one that
+   * applies pushes.
+   */
+  private final List<RemoteCallback<List<SyncResponse<SimpleEntity>>>> pushListeners =
+      new ArrayList<RemoteCallback<List<SyncResponse<SimpleEntity>>>>();
+
   public native void setRemoteCommunicationEnabled(boolean enabled) /*-{
     $wnd.erraiBusRemoteCommunicationEnabled = enabled;
   }-*/;
@@ -71,6 +101,14 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
 
     csm.getDesiredStateEm().removeAll();
     csm.getExpectedStateEm().removeAll();
+
+    subscriptionMessages.clear();
+    subscriptionRecorder = ErraiBus.get().subscribe(DataSyncService.PUSH_SUBSCRIBE_SUBJECT, new MessageCallback() {
+      @Override
+      public void callback(Message message) {
+        subscriptionMessages.add(message);
+      }
+    });
   }
 
   @Override
@@ -81,6 +119,12 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
       IOC.getBeanManager().destroyBean(syncBean);
     }
 
+    for (RemoteCallback<List<SyncResponse<SimpleEntity>>> listener : pushListeners) {
+      csm.removePushListener("allSimpleEntities", SimpleEntity.class, Collections.<String, Object> emptyMap(), listener);
+    }
+    pushListeners.clear();
+    subscriptionRecorder.remove();
+
     InitVotes.reset();
     setRemoteCommunicationEnabled(true);
     super.gwtTearDown();
@@ -219,7 +263,7 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
 
     List<SyncRequestOperation<SimpleEntity>> expectedClientRequests =
         new ArrayList<SyncRequestOperation<SimpleEntity>>();
-    expectedClientRequests.add(SyncRequestOperation.unchanged(originalEntityState));
+    expectedClientRequests.add(SyncRequestOperation.<SimpleEntity>digest(originalEntityState.getId(), digest(originalEntityState)));
 
     // now cook up a server response that says something changed
     SimpleEntity.setId(newEntity, originalEntityState.getId());
@@ -257,11 +301,11 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
 
     List<SyncRequestOperation<SimpleEntity>> expectedClientRequests =
         new ArrayList<SyncRequestOperation<SimpleEntity>>();
-    expectedClientRequests.add(SyncRequestOperation.unchanged(originalEntityState));
+    expectedClientRequests.add(SyncRequestOperation.<SimpleEntity>digest(originalEntityState.getId(), digest(originalEntityState)));
 
-    // now cook up a server response that says it got deleted
+    // now cook up a server response that says it got deleted (the server only knows the ID)
     List<SyncResponse<SimpleEntity>> fakeServerResponses = new ArrayList<SyncResponse<SimpleEntity>>();
-    fakeServerResponses.add(new DeleteResponse<SimpleEntity>(newEntity));
+    fakeServerResponses.add(new MissingIdsResponse<SimpleEntity>(Collections.<Object>singletonList(originalEntityState.getId())));
     performColdSync(expectedClientRequests, fakeServerResponses);
 
     assertNull(esem.find(SimpleEntity.class, newEntity.getId()));
@@ -620,6 +664,458 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
     }.schedule(7000);
   }
 
+  public void testPushListenerSubscribesToDataSet() {
+    addPushListener(new CountingPushListener());
+    addPushListener(new CountingPushListener());
+
+    // the second listener of the same data set doesn't subscribe again
+    assertEquals(1, subscriptionMessages.size());
+    assertNull(subscriptionMessages.get(0).getCommandType());
+    assertEquals(allSimpleEntities(), subscriptionMessages.get(0).get(SyncableDataSet.class, DataSyncService.PUSH_DATA_SET_PART));
+  }
+
+  public void testRemovingLastPushListenerUnsubscribes() {
+    SimpleEntity entity = persistSynced("the string value");
+    CountingPushListener first = new CountingPushListener();
+    CountingPushListener second = new CountingPushListener();
+    addPushListener(first);
+    addPushListener(second);
+    subscriptionMessages.clear();
+
+    removePushListener(first);
+    assertEquals(0, subscriptionMessages.size());
+
+    removePushListener(second);
+    assertEquals(1, subscriptionMessages.size());
+    assertEquals(DataSyncService.PUSH_UNSUBSCRIBE_COMMAND, subscriptionMessages.get(0).getCommandType());
+    assertEquals(allSimpleEntities(), subscriptionMessages.get(0).get(SyncableDataSet.class, DataSyncService.PUSH_DATA_SET_PART));
+
+    // the server had already sent this when we unsubscribed
+    push(new UpdateResponse<SimpleEntity>(serverState(entity, "changed on the server")));
+    assertEquals(0, first.getCallbackCount());
+    assertEquals(0, second.getCallbackCount());
+    assertEquals("the string value", csm.getDesiredStateEm().find(SimpleEntity.class, entity.getId()).getString());
+  }
+
+  public void testPushedChangeIsApplied() {
+    SimpleEntity entity = persistSynced("the string value");
+    CountingPushListener listener = new CountingPushListener();
+    addPushListener(listener);
+
+    SimpleEntity changed = serverState(entity, "changed on the server");
+    push(new UpdateResponse<SimpleEntity>(changed));
+
+    assertEquals(1, listener.getCallbackCount());
+    assertEquals(1, listener.getLastResponses().size());
+    assertTrue(listener.getLastResponses().get(0) instanceof UpdateResponse);
+    assertEquals(changed.toString(), csm.getExpectedStateEm().find(SimpleEntity.class, entity.getId()).toString());
+    assertEquals(changed.toString(), csm.getDesiredStateEm().find(SimpleEntity.class, entity.getId()).toString());
+  }
+
+  public void testPushOfOwnChangeIsIgnored() {
+    SimpleEntity entity = persistSynced("the string value");
+    CountingPushListener listener = new CountingPushListener();
+    addPushListener(listener);
+
+    // the server pushes to every subscribed session, including the one that made the change
+    push(new UpdateResponse<SimpleEntity>(serverState(entity, "the string value")));
+
+    assertEquals(0, listener.getCallbackCount());
+    assertEquals(entity.toString(), csm.getDesiredStateEm().find(SimpleEntity.class, entity.getId()).toString());
+  }
+
+  public void testPushDoesNotOverwriteLocalChanges() {
+    SimpleEntity entity = persistSynced("the string value");
+    ErraiEntityManager dsem = csm.getDesiredStateEm();
+    dsem.find(SimpleEntity.class, entity.getId()).setString("changed on the client");
+    dsem.flush();
+    CountingPushListener listener = new CountingPushListener();
+    addPushListener(listener);
+
+    push(new UpdateResponse<SimpleEntity>(serverState(entity, "changed on the server")));
+
+    // left to the next sync, which reports the conflict
+    assertEquals(0, listener.getCallbackCount());
+    assertEquals("changed on the client", dsem.find(SimpleEntity.class, entity.getId()).getString());
+    assertEquals("the string value", csm.getExpectedStateEm().find(SimpleEntity.class, entity.getId()).getString());
+  }
+
+  public void testPushesDuringSyncAreDeferred() {
+    final SimpleEntity entity = persistSynced("the string value");
+    final CountingPushListener listener = new CountingPushListener();
+    addPushListener(listener);
+
+    List<SyncRequestOperation<SimpleEntity>> expectedClientRequests =
+        new ArrayList<SyncRequestOperation<SimpleEntity>>();
+    expectedClientRequests.add(SyncRequestOperation.<SimpleEntity>digest(entity.getId(), digest(entity)));
+
+    final SimpleEntity changed = serverState(entity, "changed on the server");
+    performColdSync(expectedClientRequests, new ArrayList<SyncResponse<SimpleEntity>>(), new Runnable() {
+      @Override
+      public void run() {
+        push(new UpdateResponse<SimpleEntity>(changed));
+        assertEquals(0, listener.getCallbackCount());
+      }
+    });
+
+    assertEquals(1, listener.getCallbackCount());
+    assertEquals(changed.toString(), csm.getDesiredStateEm().find(SimpleEntity.class, entity.getId()).toString());
+  }
+
+  public void testPushSubscriptionsAreRenewedWhenBusComesOnline() {
+    addPushListener(new CountingPushListener());
+    subscriptionMessages.clear();
+
+    ClientMessageBusImpl bus = (ClientMessageBusImpl) ErraiBus.get();
+    BusState previousState = bus.getState();
+    try {
+      // the server forgot our subscriptions along with our previous session
+      bus.setState(BusState.CONNECTED);
+    }
+    finally {
+      bus.setState(previousState);
+    }
+
+    assertEquals(1, subscriptionMessages.size());
+    assertNull(subscriptionMessages.get(0).getCommandType());
+    assertEquals(allSimpleEntities(), subscriptionMessages.get(0).get(SyncableDataSet.class, DataSyncService.PUSH_DATA_SET_PART));
+  }
+
+  public void testPagedSyncRequestsEachPageBeforeCompletion() {
+    List<SimpleEntity> entities = persistSyncedInPageOrder(3);
+    String firstKey = SyncableDataSet.pageKey(entities.get(0).getId());
+    String secondKey = SyncableDataSet.pageKey(entities.get(1).getId());
+
+    // a server with a page size of 1
+    final PagingServer server = new PagingServer();
+    server.addPage(moreResults(2, firstKey, secondKey), null);
+    server.addPage(moreResults(1, secondKey, null), null);
+    server.addPage(new ArrayList<SyncResponse<SimpleEntity>>(), null);
+
+    final List<Integer> pagesRequestedAtCompletion = new ArrayList<Integer>();
+    sync(server, false, new RemoteCallback<List<SyncResponse<SimpleEntity>>>() {
+      @Override
+      public void callback(List<SyncResponse<SimpleEntity>> responses) {
+        pagesRequestedAtCompletion.add(server.getRequestCount());
+      }
+    });
+
+    // the completion of each page comes after the request for the next one
+    assertEquals(3, server.getRequestCount());
+    assertEquals(3, pagesRequestedAtCompletion.size());
+    for (int requested : pagesRequestedAtCompletion) {
+      assertEquals(3, requested);
+    }
+
+    // the client doesn't know the page size, so it sends all digests with the first page
+    assertNull(server.getDataSet(0).getPageStart());
+    assertEquals(digestsOf(entities), server.getRequests(0));
+
+    assertEquals(firstKey, server.getDataSet(1).getPageStart());
+    assertEquals(secondKey, server.getDataSet(1).getPageEnd());
+    assertEquals(digestsOf(entities.subList(1, 2)), server.getRequests(1));
+
+    assertEquals(secondKey, server.getDataSet(2).getPageStart());
+    assertNull(server.getDataSet(2).getPageEnd());
+    assertEquals(digestsOf(entities.subList(2, 3)), server.getRequests(2));
+  }
+
+  public void testPagedSyncOnlyUpdatesWatermarkAfterLastPage() {
+    List<SimpleEntity> entities = persistSyncedInPageOrder(2);
+    String firstKey = SyncableDataSet.pageKey(entities.get(0).getId());
+    Date firstWatermark = new Date(1000L);
+    Date secondWatermark = new Date(2000L);
+
+    PagingServer server = new PagingServer();
+    server.addPage(watermark(firstWatermark, entities), null);
+    server.addPage(moreResults(1, firstKey, null), null);
+    server.addPage(watermark(secondWatermark, entities), null);
+    server.addPage(new ArrayList<SyncResponse<SimpleEntity>>(), null);
+
+    sync(server, false, null);
+    sync(server, true, null);
+    sync(server, true, null);
+
+    assertEquals(4, server.getRequestCount());
+    assertNull(server.getDataSet(0).getWatermark());
+    assertEquals(firstWatermark, server.getDataSet(1).getWatermark());
+
+    // the first page didn't end the incremental sync since the first watermark
+    assertEquals(firstKey, server.getDataSet(2).getPageStart());
+    assertEquals(firstWatermark, server.getDataSet(2).getWatermark());
+
+    assertNull(server.getDataSet(3).getPageStart());
+    assertEquals(secondWatermark, server.getDataSet(3).getWatermark());
+  }
+
+  public void testPushesDuringPagedSyncAreDeferredUntilLastPage() {
+    List<SimpleEntity> entities = persistSyncedInPageOrder(2);
+    String firstKey = SyncableDataSet.pageKey(entities.get(0).getId());
+    final CountingPushListener listener = new CountingPushListener();
+    addPushListener(listener);
+
+    final SimpleEntity changed = serverState(entities.get(0), "changed on the server");
+    PagingServer server = new PagingServer();
+    server.addPage(moreResults(1, firstKey, null), new Runnable() {
+      @Override
+      public void run() {
+        push(new UpdateResponse<SimpleEntity>(changed));
+      }
+    });
+    server.addPage(new ArrayList<SyncResponse<SimpleEntity>>(), new Runnable() {
+      @Override
+      public void run() {
+        assertEquals(0, listener.getCallbackCount());
+      }
+    });
+
+    sync(server, false, null);
+
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, listener.getCallbackCount());
+    assertEquals(changed.toString(), csm.getDesiredStateEm().find(SimpleEntity.class, changed.getId()).toString());
+  }
+
+  /**
+   * Counts the pushes it is notified of.
+   */
+  private static class CountingPushListener implements RemoteCallback<List<SyncResponse<SimpleEntity>>> {
+    private int callbackCount;
+    private List<SyncResponse<SimpleEntity>> lastResponses;
+
+    @Override
+    public void callback(List<SyncResponse<SimpleEntity>> responses) {
+      callbackCount++;
+      lastResponses = responses;
+    }
+
+    public int getCallbackCount() {
+      return callbackCount;
+    }
+
+    public List<SyncResponse<SimpleEntity>> getLastResponses() {
+      return lastResponses;
+    }
+  }
+
+  private void addPushListener(RemoteCallback<List<SyncResponse<SimpleEntity>>> listener) {
+    csm.addPushListener("allSimpleEntities", SimpleEntity.class, Collections.<String, Object> emptyMap(), listener);
+    pushListeners.add(listener);
+  }
+
+  private void removePushListener(RemoteCallback<List<SyncResponse<SimpleEntity>>> listener) {
+    csm.removePushListener("allSimpleEntities", SimpleEntity.class, Collections.<String, Object> emptyMap(), listener);
+    pushListeners.remove(listener);
+  }
+
+  private static SyncableDataSet<SimpleEntity> allSimpleEntities() {
+    return SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, new HashMap<String, Object>());
+  }
+
+  /**
+   * Delivers the given responses to the ClientSyncManager as the server would
+   * push them for the data set of all SimpleEntities.
+   */
+  private static void push(SyncResponse<SimpleEntity> response) {
+    List<SyncResponse<SimpleEntity>> responses = new ArrayList<SyncResponse<SimpleEntity>>();
+    responses.add(response);
+    MessageBuilder.createMessage()
+        .toSubject(DataSyncService.PUSH_SUBJECT)
+        .signalling()
+        .with(DataSyncService.PUSH_DATA_SET_PART, allSimpleEntities())
+        .with(DataSyncService.PUSH_RESPONSES_PART, responses)
+        .noErrorHandling()
+        .sendNowWith(ErraiBus.get());
+  }
+
+  /**
+   * Persists a new entity with the given string as both the expected and the
+   * desired state, as if it had just been synced.
+   *
+   * @return the persisted state.
+   */
+  private SimpleEntity persistSynced(String string) {
+    SimpleEntity entity = new SimpleEntity();
+    entity.setString(string);
+    entity.setDate(new Timestamp(1234567L));
+    entity.setInteger(9999);
+
+    ErraiEntityManager esem = csm.getExpectedStateEm();
+    ErraiEntityManager dsem = csm.getDesiredStateEm();
+
+    SimpleEntity entityState = esem.merge(entity);
+    esem.flush();
+    esem.clear();
+
+    dsem.persist(entityState);
+    dsem.flush();
+    dsem.clear();
+    return entityState;
+  }
+
+  /**
+   * Returns a separate instance of the expected state of the given entity,
+   * with the given string, as the server would send it.
+   */
+  private SimpleEntity serverState(SimpleEntity entity, String string) {
+    ErraiEntityManager esem = csm.getExpectedStateEm();
+    SimpleEntity serverState = esem.find(SimpleEntity.class, entity.getId());
+    esem.detach(serverState);
+    serverState.setString(string);
+    return serverState;
+  }
+
+  /**
+   * Persists the given number of synced entities, as {@link #persistSynced(String)} does.
+   *
+   * @return the persisted states, in the order of their page keys.
+   */
+  private List<SimpleEntity> persistSyncedInPageOrder(int count) {
+    List<SimpleEntity> entities = new ArrayList<SimpleEntity>();
+    for (int i = 0; i < count; i++) {
+      entities.add(persistSynced("entity " + i));
+    }
+    Collections.sort(entities, new Comparator<SimpleEntity>() {
+      @Override
+      public int compare(SimpleEntity o1, SimpleEntity o2) {
+        return SyncableDataSet.pageKey(o1.getId()).compareTo(SyncableDataSet.pageKey(o2.getId()));
+      }
+    });
+    return entities;
+  }
+
+  private static List<SyncResponse<SimpleEntity>> moreResults(int remaining, String nextStart, String nextEnd) {
+    List<SyncResponse<SimpleEntity>> responses = new ArrayList<SyncResponse<SimpleEntity>>();
+    responses.add(new MoreResultsResponse<SimpleEntity>(remaining, nextStart, nextEnd));
+    return responses;
+  }
+
+  /**
+   * Returns the watermark response the server sends at the end of a sync of
+   * the given entities.
+   */
+  private static List<SyncResponse<SimpleEntity>> watermark(Date watermark, List<SimpleEntity> entities) {
+    List<Object> ids = new ArrayList<Object>();
+    for (SimpleEntity entity : entities) {
+      ids.add(entity.getId());
+    }
+    List<SyncResponse<SimpleEntity>> responses = new ArrayList<SyncResponse<SimpleEntity>>();
+    responses.add(new WatermarkResponse<SimpleEntity>(watermark, ids.size(), WatermarkResponse.digestIds(ids)));
+    return responses;
+  }
+
+  private Set<String> digestsOf(List<SimpleEntity> entities) {
+    Set<String> digests = new HashSet<String>();
+    for (SimpleEntity entity : entities) {
+      digests.add(stringify(SyncRequestOperation.<SimpleEntity>digest(entity.getId(), digest(entity))));
+    }
+    return digests;
+  }
+
+  /**
+   * Syncs the data set of all SimpleEntities with the given fake server.
+   *
+   * @param onCompletion
+   *          notified of the responses of each page. Can be null.
+   */
+  private void sync(PagingServer server, boolean incremental,
+          final RemoteCallback<List<SyncResponse<SimpleEntity>>> onCompletion) {
+    csm.dataSyncService = server;
+    RemoteCallback<List<SyncResponse<SimpleEntity>>> callback = new RemoteCallback<List<SyncResponse<SimpleEntity>>>() {
+      @Override
+      public void callback(List<SyncResponse<SimpleEntity>> responses) {
+        if (onCompletion != null) {
+          onCompletion.callback(responses);
+        }
+      }
+    };
+    if (incremental) {
+      csm.incrementalSync("allSimpleEntities", SimpleEntity.class, Collections.<String, Object> emptyMap(), callback, null);
+    }
+    else {
+      csm.coldSync("allSimpleEntities", SimpleEntity.class, Collections.<String, Object> emptyMap(), callback, null);
+    }
+  }
+
+  /**
+   * A fake server that answers each sync request with the next of the pages of
+   * responses it was given, as a server with a small page size would, and
+   * records the data sets and requests it receives. Its responses are
+   * delivered immediately.
+   */
+  private static class PagingServer implements Caller<DataSyncService> {
+    private final List<List<SyncResponse<SimpleEntity>>> pages = new ArrayList<List<SyncResponse<SimpleEntity>>>();
+    private final List<Runnable> duringPages = new ArrayList<Runnable>();
+    private final List<SyncableDataSet<?>> dataSets = new ArrayList<SyncableDataSet<?>>();
+    private final List<Set<String>> requests = new ArrayList<Set<String>>();
+
+    /**
+     * Adds the responses to the next sync request.
+     *
+     * @param doDuringPage
+     *          If non-null, this runnable is executed before the responses are
+     *          delivered to the ClientSyncManager.
+     */
+    public void addPage(List<SyncResponse<SimpleEntity>> responses, Runnable doDuringPage) {
+      pages.add(responses);
+      duringPages.add(doDuringPage);
+    }
+
+    public int getRequestCount() {
+      return dataSets.size();
+    }
+
+    public SyncableDataSet<?> getDataSet(int request) {
+      return dataSets.get(request);
+    }
+
+    /**
+     * Returns the string forms of the operations of the given request, in no
+     * particular order.
+     */
+    public Set<String> getRequests(int request) {
+      return requests.get(request);
+    }
+
+    @Override
+    public DataSyncService call(final RemoteCallback<?> callback) {
+      return new DataSyncService() {
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public <X> List<SyncResponse<X>> coldSync(SyncableDataSet<X> dataSet, List<SyncRequestOperation<X>> ops) {
+          int page = dataSets.size();
+          assertTrue("Unexpected request for page " + page, page < pages.size());
+          dataSets.add(dataSet);
+          Set<String> stringifiedOps = new HashSet<String>();
+          for (SyncRequestOperation<X> op : ops) {
+            stringifiedOps.add(stringify(op));
+          }
+          requests.add(stringifiedOps);
+
+          if (duringPages.get(page) != null) {
+            duringPages.get(page).run();
+          }
+
+          RemoteCallback erasedCallback = callback;
+          erasedCallback.callback(pages.get(page));
+          return null;
+        }
+      };
+    }
+
+    @Override
+    public DataSyncService call(final RemoteCallback<?> callback, final ErrorCallback<?> errorCallback) {
+      return call(callback);
+    }
+
+    @Override
+    public DataSyncService call() {
+      fail("Unexpected use of callback");
+      return null; // NOTREACHED
+    }
+  }
+
   /**
    * Calls ClientSyncManager.coldSync() in a way that no actual server communication happens. The
    * given "fake" server response is returned immediately to the ClientSyncManager's callback
@@ -728,7 +1224,12 @@ public class ClientSyncManagerIntegrationTest extends GWTTestCase {
   }
 
   private static <X> String stringify(SyncRequestOperation<X> op) {
-    return "[" + op.getType() + ": expected=" + op.getExpectedState() + ", desired=" + op.getEntity() + "]";
+    return "[" + op.getType() + ": expected=" + op.getExpectedState() + ", desired=" + op.getEntity()
+            + ", id=" + op.getId() + ", digest=" + op.getDigest() + "]";
+  }
+
+  private String digest(SimpleEntity entity) {
+    return new EntityComparator(csm.getDesiredStateEm().getMetamodel(), new ErraiAttributeAccessor()).digest(entity);
   }
 
 }
@@ -127,4 +127,75 @@ public class ClientSyncWorkerIntegrationTest extends GWTTestCase {
     }.schedule(7000);
     syncWorker.stop();
   }
+
+  @Test
+  public void testPushModeOnlySyncsWithLocalChanges() {
+    delayTestFinish(25000);
+    syncWorker.setPushEnabled(true);
+    syncWorker.start(Collections.<String, Object> emptyMap());
+
+    // the first sync catches up with the changes from before the subscription
+    assertEquals(1, mockManager.getColdSyncCallCount());
+    assertEquals(1, mockManager.getPushListenerCount());
+    new Timer() {
+      @Override
+      public void run() {
+        // the tick after 5 seconds found nothing to send
+        assertEquals(1, mockManager.getColdSyncCallCount());
+        mockManager.setLocalChanges(true);
+        new Timer() {
+          @Override
+          public void run() {
+            assertEquals(2, mockManager.getColdSyncCallCount());
+            syncWorker.stop();
+            assertEquals(0, mockManager.getPushListenerCount());
+            finishTest();
+          }
+        }.schedule(5000);
+      }
+    }.schedule(7000);
+  }
+
+  @Test
+  public void testTimerOnlyRescheduledAfterLastPage() {
+    delayTestFinish(25000);
+    final CountingDataSyncCallback countingSyncCallback = new CountingDataSyncCallback();
+    syncWorker.addSyncCallback(countingSyncCallback);
+    mockManager.setPaged(true);
+    syncWorker.start(Collections.<String, Object> emptyMap());
+    assertEquals(1, countingSyncCallback.getCallbackCount());
+    new Timer() {
+      @Override
+      public void run() {
+        // the sync isn't over until the manager delivers the last page
+        assertEquals(1, mockManager.getColdSyncCallCount());
+        mockManager.setPaged(false);
+        mockManager.deliverLastPage();
+        assertEquals(2, countingSyncCallback.getCallbackCount());
+        new Timer() {
+          @Override
+          public void run() {
+            assertEquals(2, mockManager.getColdSyncCallCount());
+            syncWorker.stop();
+            finishTest();
+          }
+        }.schedule(7000);
+      }
+    }.schedule(7000);
+  }
+
+  @Test
+  public void testSetPushEnabledAfterStartFails() {
+    syncWorker.start(Collections.<String, Object> emptyMap());
+    try {
+      syncWorker.setPushEnabled(true);
+      fail("setPushEnabled() must fail on a started worker");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    finally {
+      syncWorker.stop();
+    }
+  }
 }
@@ -17,17 +17,21 @@
 package org.jboss.errai.jpa.sync.test.client;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.jboss.errai.common.client.api.ErrorCallback;
 import org.jboss.errai.common.client.api.RemoteCallback;
 import org.jboss.errai.jpa.sync.client.local.ClientSyncManager;
+import org.jboss.errai.jpa.sync.client.shared.MoreResultsResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
 
 /**
  * A subclass of the real ClientSyncManager that overrides
- * {@link #coldSync(String, Class, Map, RemoteCallback, ErrorCallback)} so it
- * just captures its arguments and does not attempt to communicate with the
- * server.
+ * {@link #coldSync(String, Class, Map, RemoteCallback, ErrorCallback)} and the
+ * push listener methods so they just capture their arguments and do not
+ * attempt to communicate with the server. Syncs complete immediately, or with
+ * their last page on request.
  * <p>
  * Note that this bean is blacklisted in ErraiApp.properties so that it does not
  * get injected in place of the real ClientSyncManager.
@@ -35,15 +39,69 @@ import org.jboss.errai.jpa.sync.client.local.ClientSyncManager;
 @SuppressWarnings("rawtypes")
 public class MockClientSyncManager extends ClientSyncManager {
   private int coldSyncCallCount;
+  private int pushListenerCount;
+  private boolean localChanges;
+  private boolean paged;
+  private RemoteCallback lastPageCallback;
 
   @SuppressWarnings("unchecked")
   @Override
   public void coldSync(String queryName, Class queryResultType, Map queryParams, RemoteCallback onCompletion,  ErrorCallback onError) {
     coldSyncCallCount++;
-    onCompletion.callback(Collections.emptyList());
+    if (paged) {
+      lastPageCallback = onCompletion;
+      onCompletion.callback(Collections.singletonList(new MoreResultsResponse(1, "1", null)));
+    }
+    else {
+      onCompletion.callback(Collections.emptyList());
+    }
+  }
+
+  @Override
+  public <E> void addPushListener(String queryName, Class<E> queryResultType, Map<String, Object> queryParams,
+          RemoteCallback<List<SyncResponse<E>>> listener) {
+    pushListenerCount++;
+  }
+
+  @Override
+  public <E> void removePushListener(String queryName, Class<E> queryResultType, Map<String, Object> queryParams,
+          RemoteCallback<List<SyncResponse<E>>> listener) {
+    pushListenerCount--;
+  }
+
+  @Override
+  public <E> boolean hasLocalChanges(String queryName, Class<E> queryResultType, Map<String, Object> queryParams) {
+    return localChanges;
   }
 
   public int getColdSyncCallCount() {
     return coldSyncCallCount;
   }
+
+  /**
+   * Returns the number of push listeners that are currently registered.
+   */
+  public int getPushListenerCount() {
+    return pushListenerCount;
+  }
+
+  public void setLocalChanges(boolean localChanges) {
+    this.localChanges = localChanges;
+  }
+
+  /**
+   * Makes the following syncs deliver a first page that announces one more
+   * page, which is only delivered by {@link #deliverLastPage()}.
+   */
+  public void setPaged(boolean paged) {
+    this.paged = paged;
+  }
+
+  /**
+   * Delivers the empty last page of the previous paged sync.
+   */
+  @SuppressWarnings("unchecked")
+  public void deliverLastPage() {
+    lastPageCallback.callback(Collections.emptyList());
+  }
 }
\ No newline at end of file
@@ -1,7 +1,12 @@
 package org.jboss.errai.jpa.sync.test.client;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.math.BigDecimal;
+import java.util.Date;
 import java.util.HashMap;
 
 import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
@@ -31,4 +36,31 @@ public class SyncableDataSetTest {
     }
   }
 
+  @Test
+  public void testOnlyIdsWithPortableStringFormArePageable() {
+    assertTrue(SyncableDataSet.isPageable("a"));
+    assertTrue(SyncableDataSet.isPageable(1));
+    assertTrue(SyncableDataSet.isPageable(1L));
+    assertFalse(SyncableDataSet.isPageable(1.0));
+    assertFalse(SyncableDataSet.isPageable(new BigDecimal("1.0")));
+    assertFalse(SyncableDataSet.isPageable(new Date(0)));
+
+    assertEquals("10", SyncableDataSet.pageKey(10L));
+    try {
+      SyncableDataSet.pageKey(new Date(0));
+      fail("Dates don't have a portable page key");
+    } catch (IllegalArgumentException expected) {
+      // expected
+    }
+  }
+
+  @Test
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void testEveryIdIsInDataSetThatIsNotPaged() {
+    SyncableDataSet dataSet = SyncableDataSet.from("testQuery", Object.class, new HashMap());
+    assertTrue(dataSet.isInPage(new Date(0)));
+    assertFalse(dataSet.page("1", "3").isInPage(4L));
+    assertTrue(dataSet.page("1", "3").isInPage(2L));
+  }
+
 }
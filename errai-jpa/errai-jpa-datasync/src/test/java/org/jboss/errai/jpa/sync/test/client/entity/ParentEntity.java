@@ -1,11 +1,14 @@
 package org.jboss.errai.jpa.sync.test.client.entity;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
 
 @Entity
@@ -20,6 +23,9 @@ public class ParentEntity implements Cloneable {
   @OneToMany(mappedBy="parent")
   private List<ChildEntity> children = new ArrayList<ChildEntity>();
 
+  @ManyToMany
+  private Set<ChildEntity> favourites = new HashSet<ChildEntity>();
+
   public ParentEntity() {
   }
 
@@ -55,6 +61,14 @@ public class ParentEntity implements Cloneable {
     this.children = children;
   }
 
+  public Set<ChildEntity> getFavourites() {
+    return favourites;
+  }
+
+  public void setFavourites(Set<ChildEntity> favourites) {
+    this.favourites = favourites;
+  }
+
   public void addChild(ChildEntity child) {
     child.setParent(this);
     children.add(child);
@@ -62,6 +76,7 @@ public class ParentEntity implements Cloneable {
 
   @Override
   public String toString() {
-    return "ParentEntity [id=" + id + ", string=" + string + ", integer=" + integer + ", children=" + children + "]";
+    return "ParentEntity [id=" + id + ", string=" + string + ", integer=" + integer + ", children=" + children
+            + ", favourites=" + favourites + "]";
   }
 }
@@ -0,0 +1,55 @@
+package org.jboss.errai.jpa.sync.test.client.entity;
+
+import java.sql.Timestamp;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.NamedQuery;
+import javax.persistence.Version;
+
+/**
+ * An entity with a timestamp version, which makes it eligible for incremental
+ * data sync.
+ */
+@Entity
+@NamedQuery(name = "allTimestampedEntities", query = "SELECT te FROM TimestampedEntity te")
+public class TimestampedEntity {
+
+  @Id
+  @GeneratedValue
+  private Long id;
+
+  @Version
+  private Timestamp version;
+
+  private String string;
+
+  public TimestampedEntity() {}
+
+  public TimestampedEntity(String string, Timestamp version) {
+    this.string = string;
+    this.version = version;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public Timestamp getVersion() {
+    return version;
+  }
+
+  public String getString() {
+    return string;
+  }
+
+  public void setString(String string) {
+    this.string = string;
+  }
+
+  @Override
+  public String toString() {
+    return "TimestampedEntity [id=" + id + ", version=" + version + ", string=" + string + "]";
+  }
+}
@@ -12,19 +12,21 @@ import org.junit.Before;
 
 public class AbstractServerSideDataSyncTest {
 
+  protected EntityManagerFactory emf;
   protected EntityManager em;
 
   @Before
   public void setup() {
     Map<String, String> properties = new HashMap<String, String>();
     properties.put("hibernate.connection.driver_class", "org.h2.Driver");
-    properties.put("hibernate.connection.url", "jdbc:h2:mem:temporary");
+    // MVCC lets other connections read the committed state while a transaction is in progress
+    properties.put("hibernate.connection.url", "jdbc:h2:mem:temporary;MVCC=TRUE");
     properties.put("hibernate.connection.username", "sa");
     properties.put("hibernate.connection.password", "");
     properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
     properties.put("hibernate.hbm2ddl.auto", "update");
     properties.put("javax.persistence.validation.mode", "none");
-    EntityManagerFactory emf = Persistence.createEntityManagerFactory("ErraiDataSyncTests", properties);
+    emf = Persistence.createEntityManagerFactory("ErraiDataSyncTests", properties);
     em = emf.createEntityManager();
     em.getTransaction().begin();
   }
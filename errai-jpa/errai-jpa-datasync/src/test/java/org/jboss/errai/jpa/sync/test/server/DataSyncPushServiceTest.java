@@ -0,0 +1,342 @@
+package org.jboss.errai.jpa.sync.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+
+import org.jboss.errai.bus.client.api.BusMonitor;
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.SessionEndListener;
+import org.jboss.errai.bus.client.api.SubscribeListener;
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.UnsubscribeListener;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.jpa.sync.client.shared.MissingIdsResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
+import org.jboss.errai.jpa.sync.client.shared.UpdateResponse;
+import org.jboss.errai.jpa.sync.server.DataSyncPushService;
+import org.jboss.errai.jpa.sync.server.SyncEntityListener;
+import org.jboss.errai.jpa.sync.test.client.entity.SimpleEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DataSyncPushServiceTest extends AbstractServerSideDataSyncTest {
+
+  private final Map<String, Object> NO_PARAMS = Collections.emptyMap();
+
+  /**
+   * The responses pushed to each session, in the order they were sent. Guarded
+   * by itself, because changes of committed transactions are pushed on another
+   * thread.
+   */
+  private final Map<String, List<SyncResponse<?>>> pushed = new HashMap<String, List<SyncResponse<?>>>();
+
+  private DataSyncPushService pushService;
+
+  private boolean authorized = true;
+
+  @Before
+  public void setupPushService() {
+    pushService = new DataSyncPushService(emf, new StubMessageBus()) {
+      @Override
+      protected boolean authorize(SyncableDataSet<?> dataSet, QueueSession session) {
+        return authorized;
+      }
+
+      @Override
+      protected void send(String sessionId, SyncableDataSet<?> dataSet, List<? extends SyncResponse<?>> responses) {
+        synchronized (pushed) {
+          if (!pushed.containsKey(sessionId)) {
+            pushed.put(sessionId, new ArrayList<SyncResponse<?>>());
+          }
+          pushed.get(sessionId).addAll(responses);
+        }
+      }
+    };
+  }
+
+  @After
+  public void closePushService() {
+    SyncEntityListener.setTransactionSynchronizationRegistry(null);
+    pushService.close();
+
+    // the pushed changes had to be committed, so we clean up after ourselves
+    if (em.getTransaction().isActive()) {
+      em.getTransaction().rollback();
+    }
+    em.getTransaction().begin();
+    for (SimpleEntity entity : em.createQuery("SELECT se FROM SimpleEntity se", SimpleEntity.class).getResultList()) {
+      em.remove(entity);
+    }
+    em.getTransaction().commit();
+  }
+
+  private SimpleEntity persistAndCommit(String string) {
+    SimpleEntity entity = new SimpleEntity();
+    entity.setString(string);
+    entity.setInteger(42);
+    em.persist(entity);
+    em.getTransaction().commit();
+    em.getTransaction().begin();
+    return entity;
+  }
+
+  /**
+   * Returns the responses pushed to the given session, waiting a few seconds
+   * for them to arrive.
+   */
+  private List<SyncResponse<?>> awaitPushed(String sessionId) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      synchronized (pushed) {
+        if (pushed.containsKey(sessionId)) {
+          return pushed.get(sessionId);
+        }
+      }
+      Thread.sleep(10);
+    }
+    return null;
+  }
+
+  @Test
+  public void testPushUpdatedEntityToAllSubscribers() {
+    SimpleEntity entity = persistAndCommit("before");
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    pushService.subscribe(sds, new StubQueueSession("session-1"));
+    pushService.subscribe(sds, new StubQueueSession("session-2"));
+
+    entity.setString("after");
+    em.getTransaction().commit();
+    pushService.pushChanges();
+
+    assertEquals(2, pushed.size());
+    for (List<SyncResponse<?>> responses : pushed.values()) {
+      assertEquals(1, responses.size());
+      UpdateResponse<?> response = (UpdateResponse<?>) responses.get(0);
+      assertEquals("after", ((SimpleEntity) response.getEntity()).getString());
+    }
+  }
+
+  @Test
+  public void testPushIdsOfEntitiesThatLeftTheDataSet() {
+    SimpleEntity entity = persistAndCommit("before");
+    SimpleEntity removedEntity = persistAndCommit("before");
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("id", entity.getId());
+    params.put("string", "before");
+    params.put("literal", "literal");
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("simpleEntitiesByIdAndString", SimpleEntity.class, params);
+    pushService.subscribe(sds, new StubQueueSession("session-1"));
+
+    entity.setString("after");
+    em.remove(removedEntity);
+    em.getTransaction().commit();
+    pushService.pushChanges();
+
+    List<SyncResponse<?>> responses = pushed.get("session-1");
+    assertEquals(1, responses.size());
+    MissingIdsResponse<?> response = (MissingIdsResponse<?>) responses.get(0);
+    assertTrue(response.getIds().containsAll(Arrays.asList(entity.getId(), removedEntity.getId())));
+    assertEquals(2, response.getIds().size());
+  }
+
+  @Test
+  public void testNoPushWithoutChangesInSubscribedDataSets() {
+    SimpleEntity entity = persistAndCommit("before");
+    pushService.subscribe(
+            SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS), new StubQueueSession("session-1"));
+    pushService.pushChanges();
+    assertTrue(pushed.isEmpty());
+
+    pushService.unsubscribe(SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS), "session-1");
+    entity.setString("after");
+    em.getTransaction().commit();
+    pushService.pushChanges();
+    assertTrue(pushed.isEmpty());
+  }
+
+  @Test
+  public void testUnauthorizedSubscriptionIsIgnored() {
+    SimpleEntity entity = persistAndCommit("before");
+    authorized = false;
+    pushService.subscribe(
+            SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS), new StubQueueSession("session-1"));
+
+    entity.setString("after");
+    em.getTransaction().commit();
+    pushService.pushChanges();
+
+    assertTrue(pushed.isEmpty());
+  }
+
+  @Test
+  public void testCommittedTransactionIsPushedRightAway() throws Exception {
+    SimpleEntity entity = persistAndCommit("before");
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    pushService.subscribe(sds, new StubQueueSession("session-1"));
+    StubTransactionSynchronizationRegistry transaction = new StubTransactionSynchronizationRegistry();
+    SyncEntityListener.setTransactionSynchronizationRegistry(transaction);
+
+    entity.setString("after");
+    em.flush();
+    assertTrue(pushed.isEmpty());
+
+    em.getTransaction().commit();
+    transaction.complete(Status.STATUS_COMMITTED);
+
+    List<SyncResponse<?>> responses = awaitPushed("session-1");
+    assertEquals(1, responses.size());
+    UpdateResponse<?> response = (UpdateResponse<?>) responses.get(0);
+    assertEquals("after", ((SimpleEntity) response.getEntity()).getString());
+  }
+
+  @Test
+  public void testRolledBackTransactionIsNotPushed() {
+    SimpleEntity entity = persistAndCommit("before");
+    pushService.subscribe(
+            SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS), new StubQueueSession("session-1"));
+    StubTransactionSynchronizationRegistry transaction = new StubTransactionSynchronizationRegistry();
+    SyncEntityListener.setTransactionSynchronizationRegistry(transaction);
+
+    entity.setString("after");
+    em.flush();
+    em.getTransaction().rollback();
+    transaction.complete(Status.STATUS_ROLLEDBACK);
+    pushService.pushChanges();
+
+    assertTrue(pushed.isEmpty());
+  }
+
+  @Test
+  public void testUnsubscribingLastSessionRemovesDataSet() {
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    pushService.subscribe(sds, new StubQueueSession("session-1"));
+    pushService.subscribe(sds, new StubQueueSession("session-2"));
+
+    pushService.unsubscribe(sds, "session-1");
+    assertTrue(pushService.hasSubscribers(sds));
+
+    pushService.unsubscribe(sds, "session-2");
+    assertFalse(pushService.hasSubscribers(sds));
+  }
+
+  private static class StubQueueSession implements QueueSession {
+    private final String sessionId;
+
+    StubQueueSession(String sessionId) {
+      this.sessionId = sessionId;
+    }
+
+    @Override
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    @Override
+    public String getParentSessionId() {
+      return sessionId;
+    }
+
+    @Override
+    public boolean endSession() {
+      return false;
+    }
+
+    @Override
+    public void setAttribute(String attribute, Object value) {
+    }
+
+    @Override
+    public <T> T getAttribute(Class<T> type, String attribute) {
+      return null;
+    }
+
+    @Override
+    public Collection<String> getAttributeNames() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean hasAttribute(String attribute) {
+      return false;
+    }
+
+    @Override
+    public Object removeAttribute(String attribute) {
+      return null;
+    }
+
+    @Override
+    public void addSessionEndListener(SessionEndListener listener) {
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+  }
+
+  private static class StubMessageBus implements MessageBus {
+
+    @Override
+    public void sendGlobal(Message message) {
+    }
+
+    @Override
+    public void send(Message message) {
+    }
+
+    @Override
+    public void send(Message message, boolean fireListeners) {
+    }
+
+    @Override
+    public Subscription subscribe(String subject, MessageCallback receiver) {
+      return new Subscription() {
+        @Override
+        public void remove() {
+        }
+      };
+    }
+
+    @Override
+    public Subscription subscribeLocal(String subject, MessageCallback receiver) {
+      return subscribe(subject, receiver);
+    }
+
+    @Override
+    public void unsubscribeAll(String subject) {
+    }
+
+    @Override
+    public boolean isSubscribed(String subject) {
+      return false;
+    }
+
+    @Override
+    public void addSubscribeListener(SubscribeListener listener) {
+    }
+
+    @Override
+    public void addUnsubscribeListener(UnsubscribeListener listener) {
+    }
+
+    @Override
+    public void attachMonitor(BusMonitor monitor) {
+    }
+  }
+}
@@ -1,28 +1,37 @@
 package org.jboss.errai.jpa.sync.test.server;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.TypedQuery;
 
 import org.jboss.errai.jpa.sync.client.shared.ConflictResponse;
 import org.jboss.errai.jpa.sync.client.shared.DeleteResponse;
+import org.jboss.errai.jpa.sync.client.shared.EntityComparator;
 import org.jboss.errai.jpa.sync.client.shared.IdChangeResponse;
+import org.jboss.errai.jpa.sync.client.shared.MissingIdsResponse;
+import org.jboss.errai.jpa.sync.client.shared.MoreResultsResponse;
 import org.jboss.errai.jpa.sync.client.shared.NewRemoteEntityResponse;
 import org.jboss.errai.jpa.sync.client.shared.SyncRequestOperation;
 import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
 import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
 import org.jboss.errai.jpa.sync.client.shared.UpdateResponse;
+import org.jboss.errai.jpa.sync.client.shared.WatermarkResponse;
 import org.jboss.errai.jpa.sync.server.DataSyncServiceImpl;
 import org.jboss.errai.jpa.sync.server.JavaReflectionAttributeAccessor;
 import org.jboss.errai.jpa.sync.test.client.entity.SimpleEntity;
+import org.jboss.errai.jpa.sync.test.client.entity.TimestampedEntity;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -332,4 +341,283 @@ public class DataSyncServiceUnitTest extends AbstractServerSideDataSyncTest {
     assertSame(unrelatedRemoteEntity, queryResult.get(1));
   }
 
+  @Test
+  public void testColdSyncReturnsWatermarkForTimestampVersions() {
+    em.persist(new TimestampedEntity("old", new Timestamp(1000L)));
+    em.persist(new TimestampedEntity("newer", new Timestamp(2000L)));
+    em.flush();
+
+    SyncableDataSet<TimestampedEntity> sds = SyncableDataSet.from("allTimestampedEntities", TimestampedEntity.class, NO_PARAMS);
+    List<SyncResponse<TimestampedEntity>> syncResponse =
+            dss.coldSync(sds, new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    assertEquals("Got unexpected response: " + syncResponse, 3, syncResponse.size());
+    assertTrue(syncResponse.get(0) instanceof NewRemoteEntityResponse);
+    assertTrue(syncResponse.get(1) instanceof NewRemoteEntityResponse);
+    WatermarkResponse<TimestampedEntity> watermarkResponse = (WatermarkResponse<TimestampedEntity>) syncResponse.get(2);
+    assertEquals(2000L, watermarkResponse.getWatermark().getTime());
+    assertEquals(2, watermarkResponse.getResultCount());
+  }
+
+  @Test
+  public void testIncrementalSyncOnlyReturnsEntitiesChangedSinceWatermark() {
+    TimestampedEntity unchanged = new TimestampedEntity("unchanged", new Timestamp(1000L));
+    TimestampedEntity changed = new TimestampedEntity("changed", new Timestamp(1500L));
+    em.persist(unchanged);
+    em.persist(changed);
+    em.flush();
+    changed.setString("changed again");
+    em.flush();
+    dss.setWatermarkOverlap(0);
+
+    SyncableDataSet<TimestampedEntity> sds = SyncableDataSet.from("allTimestampedEntities", TimestampedEntity.class, NO_PARAMS);
+    List<SyncResponse<TimestampedEntity>> syncResponse =
+            dss.coldSync(sds.since(new Timestamp(1500L)), new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    assertEquals("Got unexpected response: " + syncResponse, 2, syncResponse.size());
+    UpdateResponse<TimestampedEntity> updateResponse = (UpdateResponse<TimestampedEntity>) syncResponse.get(0);
+    assertSame(changed, updateResponse.getEntity());
+    WatermarkResponse<TimestampedEntity> watermarkResponse = (WatermarkResponse<TimestampedEntity>) syncResponse.get(1);
+    assertEquals(changed.getVersion().getTime(), watermarkResponse.getWatermark().getTime());
+    assertEquals(2, watermarkResponse.getResultCount());
+  }
+
+  @Test
+  public void testIncrementalSyncReturnsLateCommitsWithinOverlap() {
+    // committed after the client's previous sync, but versioned before it
+    TimestampedEntity lateCommit = new TimestampedEntity("late", new Timestamp(1000L));
+    em.persist(lateCommit);
+    em.flush();
+
+    SyncableDataSet<TimestampedEntity> sds = SyncableDataSet.from("allTimestampedEntities", TimestampedEntity.class, NO_PARAMS);
+    dss.setWatermarkOverlap(1000L);
+    List<SyncResponse<TimestampedEntity>> syncResponse =
+            dss.coldSync(sds.since(new Timestamp(2000L)), new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    assertEquals("Got unexpected response: " + syncResponse, 2, syncResponse.size());
+    assertSame(lateCommit, ((UpdateResponse<TimestampedEntity>) syncResponse.get(0)).getEntity());
+
+    dss.setWatermarkOverlap(999L);
+    syncResponse = dss.coldSync(sds.since(new Timestamp(2000L)), new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    assertEquals("Got unexpected response: " + syncResponse, 1, syncResponse.size());
+    assertTrue(syncResponse.get(0) instanceof WatermarkResponse);
+  }
+
+  @Test
+  public void testWatermarkIdDigestChangesWhenEntityIsReplaced() {
+    TimestampedEntity removed = new TimestampedEntity("removed", new Timestamp(1000L));
+    em.persist(removed);
+    em.persist(new TimestampedEntity("kept", new Timestamp(1000L)));
+    em.flush();
+
+    SyncableDataSet<TimestampedEntity> sds = SyncableDataSet.from("allTimestampedEntities", TimestampedEntity.class, NO_PARAMS);
+    List<SyncResponse<TimestampedEntity>> before = dss.coldSync(sds, new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    em.remove(removed);
+    em.persist(new TimestampedEntity("added", new Timestamp(1000L)));
+    em.flush();
+    List<SyncResponse<TimestampedEntity>> after = dss.coldSync(sds, new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    WatermarkResponse<TimestampedEntity> beforeWatermark = (WatermarkResponse<TimestampedEntity>) before.get(before.size() - 1);
+    WatermarkResponse<TimestampedEntity> afterWatermark = (WatermarkResponse<TimestampedEntity>) after.get(after.size() - 1);
+    assertEquals(beforeWatermark.getResultCount(), afterWatermark.getResultCount());
+    assertTrue(beforeWatermark.getIdDigest() != afterWatermark.getIdDigest());
+  }
+
+  @Test
+  public void testIncrementalSyncWithLocalChanges() {
+    TimestampedEntity remoteEntity = new TimestampedEntity("remote", new Timestamp(1000L));
+    em.persist(remoteEntity);
+    em.flush();
+    em.detach(remoteEntity);
+
+    TimestampedEntity localEntityNewState = new TimestampedEntity("local", null);
+
+    List<SyncRequestOperation<TimestampedEntity>> syncRequest = new ArrayList<SyncRequestOperation<TimestampedEntity>>();
+    syncRequest.add(SyncRequestOperation.deleted(remoteEntity));
+    syncRequest.add(SyncRequestOperation.created(localEntityNewState));
+
+    SyncableDataSet<TimestampedEntity> sds = SyncableDataSet.from("allTimestampedEntities", TimestampedEntity.class, NO_PARAMS);
+    List<SyncResponse<TimestampedEntity>> syncResponse = dss.coldSync(sds.since(new Timestamp(1000L)), syncRequest);
+
+    assertEquals("Got unexpected response: " + syncResponse, 3, syncResponse.size());
+    assertTrue(syncResponse.get(0) instanceof DeleteResponse);
+    assertTrue(syncResponse.get(1) instanceof IdChangeResponse);
+    WatermarkResponse<TimestampedEntity> watermarkResponse = (WatermarkResponse<TimestampedEntity>) syncResponse.get(2);
+    assertEquals(1, watermarkResponse.getResultCount());
+  }
+
+  @Test
+  public void testNoWatermarkForNumericVersions() {
+    em.persist(new SimpleEntity());
+    em.flush();
+
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    List<SyncResponse<SimpleEntity>> syncResponse =
+            dss.coldSync(sds, new ArrayList<SyncRequestOperation<SimpleEntity>>());
+
+    assertEquals("Got unexpected response: " + syncResponse, 1, syncResponse.size());
+    assertTrue(syncResponse.get(0) instanceof NewRemoteEntityResponse);
+  }
+
+  @Test
+  public void testDigestOfUnchangedEntity() {
+    SimpleEntity remoteSimpleEntity = new SimpleEntity();
+    remoteSimpleEntity.setDate(new Timestamp(8917200000L));
+    remoteSimpleEntity.setInteger(123456);
+    remoteSimpleEntity.setString("Houston, we've had a problem.");
+    em.persist(remoteSimpleEntity);
+    em.flush();
+
+    String digest = new EntityComparator(em.getMetamodel(), new JavaReflectionAttributeAccessor()).digest(remoteSimpleEntity);
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    List<SyncRequestOperation<SimpleEntity>> syncRequest = new ArrayList<SyncRequestOperation<SimpleEntity>>();
+    syncRequest.add(SyncRequestOperation.<SimpleEntity>digest(remoteSimpleEntity.getId(), digest));
+
+    List<SyncResponse<SimpleEntity>> syncResponse = dss.coldSync(sds, syncRequest);
+
+    assertEquals("Got unexpected response: " + syncResponse, 0, syncResponse.size());
+  }
+
+  @Test
+  public void testDigestOfRemotelyUpdatedEntity() {
+    SimpleEntity remoteSimpleEntity = new SimpleEntity();
+    remoteSimpleEntity.setInteger(1);
+    remoteSimpleEntity.setString("before");
+    em.persist(remoteSimpleEntity);
+    em.flush();
+
+    String digest = new EntityComparator(em.getMetamodel(), new JavaReflectionAttributeAccessor()).digest(remoteSimpleEntity);
+    remoteSimpleEntity.setString("after");
+    em.flush();
+
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    List<SyncRequestOperation<SimpleEntity>> syncRequest = new ArrayList<SyncRequestOperation<SimpleEntity>>();
+    syncRequest.add(SyncRequestOperation.<SimpleEntity>digest(remoteSimpleEntity.getId(), digest));
+
+    List<SyncResponse<SimpleEntity>> syncResponse = dss.coldSync(sds, syncRequest);
+
+    assertEquals("Got unexpected response: " + syncResponse, 1, syncResponse.size());
+    UpdateResponse<SimpleEntity> updateResponse = (UpdateResponse<SimpleEntity>) syncResponse.get(0);
+    assertSame(remoteSimpleEntity, updateResponse.getEntity());
+  }
+
+  @Test
+  public void testDigestOfRemotelyDeletedEntity() {
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+    List<SyncRequestOperation<SimpleEntity>> syncRequest = new ArrayList<SyncRequestOperation<SimpleEntity>>();
+    syncRequest.add(SyncRequestOperation.<SimpleEntity>digest(123L, "cafe.babe"));
+
+    List<SyncResponse<SimpleEntity>> syncResponse = dss.coldSync(sds, syncRequest);
+
+    assertEquals("Got unexpected response: " + syncResponse, 1, syncResponse.size());
+    MissingIdsResponse<SimpleEntity> missingIdsResponse = (MissingIdsResponse<SimpleEntity>) syncResponse.get(0);
+    assertEquals(Collections.<Object>singletonList(123L), missingIdsResponse.getIds());
+  }
+
+  @Test
+  public void testPagedColdSync() {
+    for (int i = 0; i < 3; i++) {
+      SimpleEntity remoteSimpleEntity = new SimpleEntity();
+      remoteSimpleEntity.setInteger(i);
+      em.persist(remoteSimpleEntity);
+    }
+    em.flush();
+    dss.setPageSize(2);
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+
+    // first page
+    List<SyncRequestOperation<SimpleEntity>> syncRequest = new ArrayList<SyncRequestOperation<SimpleEntity>>();
+    List<SyncResponse<SimpleEntity>> syncResponse = dss.coldSync(sds, syncRequest);
+
+    assertEquals("Got unexpected response: " + syncResponse, 3, syncResponse.size());
+    MoreResultsResponse<SimpleEntity> moreResults = (MoreResultsResponse<SimpleEntity>) syncResponse.get(2);
+    assertEquals(1, moreResults.getRemainingCount());
+    assertNull(moreResults.getNextPageEnd());
+    SyncableDataSet<SimpleEntity> nextPage = sds.page(moreResults.getNextPageStart(), moreResults.getNextPageEnd());
+    for (SyncResponse<SimpleEntity> response : syncResponse.subList(0, 2)) {
+      SimpleEntity received = ((NewRemoteEntityResponse<SimpleEntity>) response).getEntity();
+      assertFalse(nextPage.isInPage(received.getId()));
+    }
+
+    // second (and last) page: the client only sends digests of the entities in the page, so none
+    syncResponse = dss.coldSync(nextPage, syncRequest);
+
+    assertEquals("Got unexpected response: " + syncResponse, 1, syncResponse.size());
+    assertTrue(syncResponse.get(0) instanceof NewRemoteEntityResponse);
+  }
+
+  @Test
+  public void testPagedColdSyncProgressesPastMismatchedDigests() {
+    List<Long> ids = new ArrayList<Long>();
+    for (int i = 0; i < 4; i++) {
+      SimpleEntity remoteSimpleEntity = new SimpleEntity();
+      remoteSimpleEntity.setInteger(i);
+      em.persist(remoteSimpleEntity);
+      ids.add(remoteSimpleEntity.getId());
+    }
+    em.flush();
+    dss.setPageSize(2);
+    SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+
+    // a client whose digests never match, and which has an entity we deleted (its page key sorts last)
+    List<Long> clientIds = new ArrayList<Long>(ids);
+    clientIds.add(999999L);
+
+    Set<Long> updatedIds = new HashSet<Long>();
+    List<Object> missingIds = new ArrayList<Object>();
+    SyncableDataSet<SimpleEntity> page = sds;
+    for (int pageCount = 1; ; pageCount++) {
+      assertTrue("Sync did not finish", pageCount <= 3);
+      List<SyncRequestOperation<SimpleEntity>> syncRequest = new ArrayList<SyncRequestOperation<SimpleEntity>>();
+      for (Long id : clientIds) {
+        if (page.isInPage(id)) {
+          syncRequest.add(SyncRequestOperation.<SimpleEntity>digest(id, "mismatch"));
+        }
+      }
+
+      List<SyncResponse<SimpleEntity>> syncResponse = dss.coldSync(page, syncRequest);
+
+      MoreResultsResponse<SimpleEntity> moreResults = null;
+      for (SyncResponse<SimpleEntity> response : syncResponse) {
+        if (response instanceof UpdateResponse) {
+          assertTrue(updatedIds.add(((UpdateResponse<SimpleEntity>) response).getEntity().getId()));
+        }
+        else if (response instanceof MissingIdsResponse) {
+          missingIds.addAll(((MissingIdsResponse<SimpleEntity>) response).getIds());
+        }
+        else {
+          moreResults = (MoreResultsResponse<SimpleEntity>) response;
+        }
+      }
+      if (moreResults == null) {
+        assertEquals(2, pageCount);
+        break;
+      }
+      assertEquals("Got unexpected response: " + syncResponse, 3, syncResponse.size());
+      page = sds.page(moreResults.getNextPageStart(), moreResults.getNextPageEnd());
+    }
+
+    assertEquals(new HashSet<Long>(ids), updatedIds);
+    assertEquals(Collections.<Object>singletonList(999999L), missingIds);
+  }
+
+  @Test
+  public void testPagedSyncHasNoWatermarkBeforeLastPage() {
+    for (int i = 0; i < 2; i++) {
+      TimestampedEntity entity = new TimestampedEntity();
+      entity.setString("entity " + i);
+      em.persist(entity);
+    }
+    em.flush();
+    dss.setPageSize(1);
+
+    SyncableDataSet<TimestampedEntity> sds = SyncableDataSet.from("allTimestampedEntities", TimestampedEntity.class, NO_PARAMS);
+    List<SyncResponse<TimestampedEntity>> syncResponse = dss.coldSync(sds, new ArrayList<SyncRequestOperation<TimestampedEntity>>());
+
+    assertEquals("Got unexpected response: " + syncResponse, 2, syncResponse.size());
+    assertTrue(syncResponse.get(0) instanceof NewRemoteEntityResponse);
+    assertTrue(syncResponse.get(1) instanceof MoreResultsResponse);
+  }
 }
@@ -1,9 +1,11 @@
 package org.jboss.errai.jpa.sync.test.server;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.sql.Timestamp;
+import java.util.LinkedHashSet;
 
 import org.jboss.errai.jpa.sync.client.shared.EntityComparator;
 import org.jboss.errai.jpa.sync.server.JavaReflectionAttributeAccessor;
@@ -164,4 +166,102 @@ public class EntityComparatorTest extends AbstractServerSideDataSyncTest {
     assertFalse(comparator.isDifferent(lhs, rhs));
   }
 
+  @Test
+  public void testDigestSameForEqualEntities() throws Exception {
+    Zentity lhs = new Zentity();
+    Zentity rhs = new Zentity();
+
+    lhs.setString("a string");
+    rhs.setString("a string");
+    lhs.setPrimitiveDouble(42.0);
+    rhs.setPrimitiveDouble(42.0);
+    lhs.setBoxedByteArray(new Byte[] { 1, 2, 3 });
+    rhs.setBoxedByteArray(new Byte[] { 1, 2, 3 });
+    lhs.setSqlTimestamp(new Timestamp(123123123L));
+    rhs.setSqlTimestamp(new Timestamp(123123123L));
+
+    assertEquals(comparator.digest(lhs), comparator.digest(rhs));
+  }
+
+  @Test
+  public void testDigestDiffersForDifferentEntities() throws Exception {
+    Zentity lhs = new Zentity();
+    Zentity rhs = new Zentity();
+
+    lhs.setString("ab");
+    lhs.setBoxedChar('c');
+    rhs.setString("a");
+    rhs.setBoxedChar('b');
+
+    assertFalse(comparator.digest(lhs).equals(comparator.digest(rhs)));
+  }
+
+  @Test
+  public void testDigestOfNestedEntities() throws Exception {
+    ParentEntity lhs = new ParentEntity();
+    ParentEntity rhs = new ParentEntity();
+
+    lhs.addChild(new ChildEntity("a string", 43));
+    rhs.addChild(new ChildEntity("a string", 43));
+    assertEquals(comparator.digest(lhs), comparator.digest(rhs));
+
+    rhs.getChildren().get(0).setString("a different string");
+    assertFalse(comparator.digest(lhs).equals(comparator.digest(rhs)));
+  }
+
+  @Test
+  public void testDigestOfSetIgnoresIterationOrder() throws Exception {
+    ParentEntity lhs = new ParentEntity();
+    ParentEntity rhs = new ParentEntity();
+
+    // the iteration order of a HashSet differs between the client and the server
+    lhs.setFavourites(new LinkedHashSet<ChildEntity>());
+    lhs.getFavourites().add(new ChildEntity("a string", 43));
+    lhs.getFavourites().add(new ChildEntity("another string", 42));
+    rhs.setFavourites(new LinkedHashSet<ChildEntity>());
+    rhs.getFavourites().add(new ChildEntity("another string", 42));
+    rhs.getFavourites().add(new ChildEntity("a string", 43));
+    assertEquals(comparator.digest(lhs), comparator.digest(rhs));
+
+    rhs.getFavourites().iterator().next().setInteger(41);
+    assertFalse(comparator.digest(lhs).equals(comparator.digest(rhs)));
+  }
+
+  @Test
+  public void testDigestOfListKeepsOrder() throws Exception {
+    ParentEntity lhs = new ParentEntity();
+    ParentEntity rhs = new ParentEntity();
+
+    lhs.addChild(new ChildEntity("a string", 43));
+    lhs.addChild(new ChildEntity("another string", 42));
+    rhs.addChild(new ChildEntity("another string", 42));
+    rhs.addChild(new ChildEntity("a string", 43));
+
+    assertFalse(comparator.digest(lhs).equals(comparator.digest(rhs)));
+  }
+
+  @Test
+  public void testDigestOfStringsWithEqualHashCodes() throws Exception {
+    Zentity lhs = new Zentity();
+    Zentity rhs = new Zentity();
+
+    // "Aa".hashCode() == "BB".hashCode()
+    lhs.setString("xAay");
+    rhs.setString("xBBy");
+
+    assertFalse(comparator.digest(lhs).equals(comparator.digest(rhs)));
+  }
+
+  @Test
+  public void testDigestOfDoublesDifferingInLastBit() throws Exception {
+    Zentity lhs = new Zentity();
+    Zentity rhs = new Zentity();
+
+    lhs.setBoxedDouble(0.00001);
+    rhs.setBoxedDouble(Math.nextUp(0.00001));
+    assertFalse(comparator.digest(lhs).equals(comparator.digest(rhs)));
+
+    rhs.setBoxedDouble(Double.valueOf("1.0E-5"));
+    assertEquals(comparator.digest(lhs), comparator.digest(rhs));
+  }
 }
@@ -0,0 +1,144 @@
+package org.jboss.errai.jpa.sync.test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+
+import org.jboss.errai.jpa.sync.client.shared.DeleteResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncRequestOperation;
+import org.jboss.errai.jpa.sync.client.shared.SyncResponse;
+import org.jboss.errai.jpa.sync.client.shared.SyncableDataSet;
+import org.jboss.errai.jpa.sync.server.DataSyncServiceImpl;
+import org.jboss.errai.jpa.sync.server.JavaReflectionAttributeAccessor;
+import org.jboss.errai.jpa.sync.server.QueryResultCache;
+import org.jboss.errai.jpa.sync.server.SyncEntityListener;
+import org.jboss.errai.jpa.sync.test.client.entity.SimpleEntity;
+import org.junit.After;
+import org.junit.Test;
+
+public class QueryResultCacheTest extends AbstractServerSideDataSyncTest {
+
+  private final Map<String, Object> NO_PARAMS = Collections.emptyMap();
+
+  private final SyncableDataSet<SimpleEntity> sds = SyncableDataSet.from("allSimpleEntities", SimpleEntity.class, NO_PARAMS);
+
+  private QueryResultCache cache;
+
+  @After
+  public void closeCache() {
+    SyncEntityListener.setTransactionSynchronizationRegistry(null);
+    if (cache != null) {
+      cache.close();
+    }
+
+    // the cache only sees committed entities, so we clean up after ourselves
+    if (em.getTransaction().isActive()) {
+      em.getTransaction().rollback();
+    }
+    em.getTransaction().begin();
+    for (SimpleEntity entity : em.createQuery("SELECT se FROM SimpleEntity se", SimpleEntity.class).getResultList()) {
+      em.remove(entity);
+    }
+    em.getTransaction().commit();
+  }
+
+  private SimpleEntity persistAndCommit(String string) {
+    SimpleEntity entity = new SimpleEntity();
+    entity.setString(string);
+    em.persist(entity);
+    em.getTransaction().commit();
+    em.getTransaction().begin();
+    return entity;
+  }
+
+  @Test
+  public void testResultsAreSharedWithinTimeToLive() {
+    persistAndCommit("cached");
+    cache = new QueryResultCache(emf, 60000);
+
+    List<SimpleEntity> results = cache.getResultList(sds);
+    assertEquals(1, results.size());
+    assertSame(results, cache.getResultList(sds));
+    assertSame(results, cache.getResultList(sds.since(new Date())));
+  }
+
+  @Test
+  public void testResultsAreReloadedAfterTimeToLive() {
+    persistAndCommit("cached");
+    cache = new QueryResultCache(emf, 0);
+
+    assertNotSame(cache.getResultList(sds), cache.getResultList(sds));
+  }
+
+  @Test
+  public void testEntityChangeInvalidatesResults() {
+    cache = new QueryResultCache(emf, 60000);
+    assertEquals(0, cache.getResultList(sds).size());
+
+    persistAndCommit("new");
+
+    assertEquals(1, cache.getResultList(sds).size());
+  }
+
+  @Test
+  public void testDeleteCachedEntity() {
+    SimpleEntity entity = persistAndCommit("doomed");
+    em.detach(entity);
+    cache = new QueryResultCache(emf, 60000);
+    DataSyncServiceImpl dss = new DataSyncServiceImpl(em, new JavaReflectionAttributeAccessor(), cache);
+
+    List<SyncRequestOperation<SimpleEntity>> syncRequest = new ArrayList<SyncRequestOperation<SimpleEntity>>();
+    syncRequest.add(SyncRequestOperation.deleted(new SimpleEntity(entity)));
+    List<SyncResponse<SimpleEntity>> syncResponse = dss.coldSync(sds, syncRequest);
+
+    assertEquals(1, syncResponse.size());
+    assertEquals(entity.getId(), ((DeleteResponse<SimpleEntity>) syncResponse.get(0)).getEntity().getId());
+    assertNull(em.find(SimpleEntity.class, entity.getId()));
+  }
+
+  @Test
+  public void testResultsLoadedBeforeCommitAreInvalidatedByCommit() {
+    SimpleEntity entity = persistAndCommit("before");
+    cache = new QueryResultCache(emf, 60000);
+    StubTransactionSynchronizationRegistry transaction = new StubTransactionSynchronizationRegistry();
+    SyncEntityListener.setTransactionSynchronizationRegistry(transaction);
+
+    entity.setString("after");
+    em.flush();
+
+    // another sync loads the results after the flush, but before the commit
+    List<SimpleEntity> results = cache.getResultList(sds);
+    assertEquals("before", results.get(0).getString());
+    assertSame(results, cache.getResultList(sds));
+
+    em.getTransaction().commit();
+    transaction.complete(Status.STATUS_COMMITTED);
+
+    assertEquals("after", cache.getResultList(sds).get(0).getString());
+  }
+
+  @Test
+  public void testRolledBackChangeKeepsResults() {
+    SimpleEntity entity = persistAndCommit("before");
+    cache = new QueryResultCache(emf, 60000);
+    List<SimpleEntity> results = cache.getResultList(sds);
+    StubTransactionSynchronizationRegistry transaction = new StubTransactionSynchronizationRegistry();
+    SyncEntityListener.setTransactionSynchronizationRegistry(transaction);
+
+    entity.setString("after");
+    em.flush();
+    em.getTransaction().rollback();
+    transaction.complete(Status.STATUS_ROLLEDBACK);
+
+    assertSame(results, cache.getResultList(sds));
+  }
+}
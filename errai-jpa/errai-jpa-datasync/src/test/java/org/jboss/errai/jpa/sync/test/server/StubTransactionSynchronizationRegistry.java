@@ -0,0 +1,68 @@
+package org.jboss.errai.jpa.sync.test.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Stands in for the registry of a JTA transaction manager with one
+ * transaction, which the test ends by calling {@link #complete(int)}.
+ */
+class StubTransactionSynchronizationRegistry implements TransactionSynchronizationRegistry {
+
+  private final Object transactionKey = new Object();
+  private final Map<Object, Object> resources = new HashMap<Object, Object>();
+  private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+  private int status = Status.STATUS_ACTIVE;
+
+  /**
+   * Ends the transaction with the given status, which calls the registered
+   * synchronizations.
+   */
+  void complete(int status) {
+    this.status = status;
+    for (Synchronization synchronization : synchronizations) {
+      synchronization.afterCompletion(status);
+    }
+  }
+
+  @Override
+  public Object getTransactionKey() {
+    return (status == Status.STATUS_ACTIVE) ? transactionKey : null;
+  }
+
+  @Override
+  public void putResource(Object key, Object value) {
+    resources.put(key, value);
+  }
+
+  @Override
+  public Object getResource(Object key) {
+    return resources.get(key);
+  }
+
+  @Override
+  public void registerInterposedSynchronization(Synchronization sync) {
+    synchronizations.add(sync);
+  }
+
+  @Override
+  public int getTransactionStatus() {
+    return status;
+  }
+
+  @Override
+  public void setRollbackOnly() {
+    status = Status.STATUS_MARKED_ROLLBACK;
+  }
+
+  @Override
+  public boolean getRollbackOnly() {
+    return status == Status.STATUS_MARKED_ROLLBACK;
+  }
+}
@@ -219,6 +219,12 @@ public class MarshallersGenerator extends AbstractAsyncGenerator {
     return false;
   }
 
+  @Override
+  protected boolean isPersistentCacheEnabled() {
+    // generating the marshallers also deposits the server-side marshallers, which must happen on every compile
+    return false;
+  }
+
   @Override
   public String generate(final TreeLogger logger, final GeneratorContext context, final String typeName)
       throws UnableToCompleteException {
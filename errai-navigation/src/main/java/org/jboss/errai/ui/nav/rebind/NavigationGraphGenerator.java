@@ -705,4 +705,10 @@ public class NavigationGraphGenerator extends AbstractAsyncGenerator {
   protected boolean isRelevantNewClass(MetaClass clazz) {
     return clazz.isAnnotationPresent(Page.class);
   }
+
+  @Override
+  protected boolean isPersistentCacheEnabled() {
+    // the navigation graph is also rendered to a file in the .errai directory, which must happen on every compile
+    return false;
+  }
 }
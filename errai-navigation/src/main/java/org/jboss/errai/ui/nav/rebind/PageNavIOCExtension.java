@@ -16,6 +16,7 @@
 
 package org.jboss.errai.ui.nav.rebind;
 
+import org.jboss.errai.config.rebind.EnvUtil;
 import org.jboss.errai.ioc.client.api.IOCExtension;
 import org.jboss.errai.ioc.rebind.ioc.bootstrapper.IOCConfigProcessor;
 import org.jboss.errai.ioc.rebind.ioc.bootstrapper.IOCProcessingContext;
@@ -29,9 +30,21 @@ import org.jboss.errai.ui.nav.client.local.Page;
  */
 @IOCExtension
 public class PageNavIOCExtension implements IOCExtensionConfigurator {
+
+  /**
+   * If set to true, every page is loaded behind a split point of its own, as if it was annotated with
+   * {@link org.jboss.errai.ioc.client.api.LoadAsync}. Requires the asynchronous bean manager.
+   */
+  public static final String SPLIT_PAGES_PROPERTY = "errai.navigation.split_pages";
+
   @Override
   public void configure(IOCProcessingContext context, InjectionContext injectionContext, IOCConfigProcessor procFactory) {
     injectionContext.mapElementType(WiringElementType.DependentBean, Page.class);
+
+    if (injectionContext.isAsync()
+        && Boolean.parseBoolean(EnvUtil.getEnvironmentConfig().getFrameworkOrSystemProperty(SPLIT_PAGES_PROPERTY))) {
+      injectionContext.mapElementType(WiringElementType.LoadAsyncBean, Page.class);
+    }
   }
 
   @Override
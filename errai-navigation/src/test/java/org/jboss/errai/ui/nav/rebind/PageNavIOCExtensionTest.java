@@ -0,0 +1,60 @@
+package org.jboss.errai.ui.nav.rebind;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.jboss.errai.ioc.rebind.ioc.injector.api.InjectionContext;
+import org.jboss.errai.ioc.rebind.ioc.injector.api.WiringElementType;
+import org.jboss.errai.ui.nav.client.local.Page;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PageNavIOCExtensionTest {
+
+  @Mock
+  private InjectionContext injectionContext;
+
+  private final PageNavIOCExtension extension = new PageNavIOCExtension();
+
+  @After
+  public void clearProperty() {
+    System.clearProperty(PageNavIOCExtension.SPLIT_PAGES_PROPERTY);
+  }
+
+  @Test
+  public void testPagesAreDependentBeans() {
+    extension.configure(null, injectionContext, null);
+    verify(injectionContext).mapElementType(WiringElementType.DependentBean, Page.class);
+  }
+
+  @Test
+  public void testPagesAreLoadedAsyncIfSplitPagesIsEnabled() {
+    System.setProperty(PageNavIOCExtension.SPLIT_PAGES_PROPERTY, "true");
+    when(injectionContext.isAsync()).thenReturn(true);
+
+    extension.configure(null, injectionContext, null);
+    verify(injectionContext).mapElementType(WiringElementType.LoadAsyncBean, Page.class);
+  }
+
+  @Test
+  public void testPagesAreNotLoadedAsyncByDefault() {
+    when(injectionContext.isAsync()).thenReturn(true);
+
+    extension.configure(null, injectionContext, null);
+    verify(injectionContext, never()).mapElementType(WiringElementType.LoadAsyncBean, Page.class);
+  }
+
+  @Test
+  public void testSplitPagesRequiresAsyncBeanManager() {
+    System.setProperty(PageNavIOCExtension.SPLIT_PAGES_PROPERTY, "true");
+    when(injectionContext.isAsync()).thenReturn(false);
+
+    extension.configure(null, injectionContext, null);
+    verify(injectionContext, never()).mapElementType(WiringElementType.LoadAsyncBean, Page.class);
+  }
+}
@@ -0,0 +1,154 @@
+package org.jboss.errai.reflections.serializers;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.jboss.errai.reflections.Reflections;
+import org.jboss.errai.reflections.ReflectionsException;
+import org.jboss.errai.reflections.util.ConfigurationBuilder;
+import org.jboss.errai.reflections.util.Utils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compact binary serialization of Reflections, meant for caching scan results rather than for humans to read.
+ * <p/>
+ * <p>all distinct strings (index names, keys and values) are written once into a string table, and the indexes refer
+ * to them by position. since the same class names show up as values in many indexes, this keeps the output small and
+ * makes reading it much cheaper than parsing xml:
+ * <pre>
+ * int magic, int version
+ * int stringCount, (int length, utf-8 bytes) * stringCount
+ * int indexCount, (int name, int keyCount, (int key, int valueCount, int value * valueCount) * keyCount) * indexCount
+ * </pre>
+ */
+public class BinarySerializer implements Serializer {
+  private static final int MAGIC = 0x45524246;
+  private static final int VERSION = 1;
+
+  public Reflections read(final InputStream inputStream) {
+    final Reflections reflections = new Reflections(new ConfigurationBuilder()) {
+    };
+
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new ReflectionsException("not a binary reflections store, or written by another version");
+      }
+
+      final String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        strings[i] = new String(bytes, "UTF-8");
+      }
+
+      final int indexCount = in.readInt();
+      for (int i = 0; i < indexCount; i++) {
+        final String indexName = strings[in.readInt()];
+        Multimap<String, String> index = reflections.getStore().getStoreMap().get(indexName);
+        if (index == null) {
+          reflections.getStore().getStoreMap().put(indexName, index = HashMultimap.<String, String>create());
+        }
+
+        final int keyCount = in.readInt();
+        for (int k = 0; k < keyCount; k++) {
+          final String key = strings[in.readInt()];
+          final int valueCount = in.readInt();
+          for (int v = 0; v < valueCount; v++) {
+            index.put(key, strings[in.readInt()]);
+          }
+        }
+      }
+    }
+    catch (IOException e) {
+      throw new ReflectionsException("could not read binary reflections store", e);
+    }
+
+    return reflections;
+  }
+
+  public File save(final Reflections reflections, final String filename) {
+    final File file = Utils.prepareFile(filename);
+
+    OutputStream outputStream = null;
+    try {
+      outputStream = new FileOutputStream(file);
+      write(reflections, outputStream);
+    }
+    catch (IOException e) {
+      throw new ReflectionsException("could not save to file " + filename, e);
+    }
+    finally {
+      if (outputStream != null) try {
+        outputStream.close();
+      }
+      catch (IOException e) { /* the file is incomplete, but we already failed */ }
+    }
+
+    return file;
+  }
+
+  public String toString(final Reflections reflections) {
+    final StringBuilder sb = new StringBuilder();
+    final Map<String, Multimap<String, String>> map = reflections.getStore().getStoreMap();
+    for (final String indexName : map.keySet()) {
+      sb.append(indexName).append('\n');
+      for (final Map.Entry<String, Collection<String>> entry : map.get(indexName).asMap().entrySet()) {
+        sb.append("  ").append(entry.getKey()).append(" -> ").append(entry.getValue()).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  public void write(final Reflections reflections, final OutputStream outputStream) throws IOException {
+    final Map<String, Multimap<String, String>> map = reflections.getStore().getStoreMap();
+
+    final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    final List<String> strings = new ArrayList<String>();
+    for (final String indexName : map.keySet()) {
+      intern(indexName, stringIds, strings);
+      for (final Map.Entry<String, String> entry : map.get(indexName).entries()) {
+        intern(entry.getKey(), stringIds, strings);
+        intern(entry.getValue(), stringIds, strings);
+      }
+    }
+
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    out.writeInt(strings.size());
+    for (final String string : strings) {
+      final byte[] bytes = string.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    out.writeInt(map.size());
+    for (final String indexName : map.keySet()) {
+      final Map<String, Collection<String>> index = map.get(indexName).asMap();
+      out.writeInt(stringIds.get(indexName));
+      out.writeInt(index.size());
+      for (final Map.Entry<String, Collection<String>> entry : index.entrySet()) {
+        out.writeInt(stringIds.get(entry.getKey()));
+        out.writeInt(entry.getValue().size());
+        for (final String value : entry.getValue()) {
+          out.writeInt(stringIds.get(value));
+        }
+      }
+    }
+    out.flush();
+  }
+
+  private static void intern(final String string, final Map<String, Integer> stringIds, final List<String> strings) {
+    if (!stringIds.containsKey(string)) {
+      stringIds.put(string, strings.size());
+      strings.add(string);
+    }
+  }
+}
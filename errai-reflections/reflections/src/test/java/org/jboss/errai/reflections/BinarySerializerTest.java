@@ -0,0 +1,61 @@
+package org.jboss.errai.reflections;
+
+import static java.util.Arrays.asList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jboss.errai.reflections.scanners.FieldAnnotationsScanner;
+import org.jboss.errai.reflections.scanners.MethodAnnotationsScanner;
+import org.jboss.errai.reflections.scanners.SubTypesScanner;
+import org.jboss.errai.reflections.scanners.TypeAnnotationsScanner;
+import org.jboss.errai.reflections.serializers.BinarySerializer;
+import org.jboss.errai.reflections.util.ClasspathHelper;
+import org.jboss.errai.reflections.util.ConfigurationBuilder;
+import org.jboss.errai.reflections.util.FilterBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+/** */
+public class BinarySerializerTest {
+
+  @Test
+  public void writeAndReadYieldTheSameStore() throws IOException {
+    final Predicate<String> filter = new FilterBuilder().include("org.jboss.errai.reflections.TestModel\\$.*");
+    final Reflections reflections = new Reflections(new ConfigurationBuilder()
+        .filterInputsBy(filter)
+        .setScanners(
+            new SubTypesScanner().filterResultsBy(filter),
+            new TypeAnnotationsScanner().filterResultsBy(filter),
+            new FieldAnnotationsScanner().filterResultsBy(filter),
+            new MethodAnnotationsScanner().filterResultsBy(filter))
+        .setUrls(asList(ClasspathHelper.forClass(TestModel.class))));
+    reflections.scan();
+
+    final BinarySerializer serializer = new BinarySerializer();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    serializer.write(reflections, out);
+    final Reflections read = serializer.read(new ByteArrayInputStream(out.toByteArray()));
+
+    final Map<String, Multimap<String, String>> expected = reflections.getStore().getStoreMap();
+    final Map<String, Multimap<String, String>> actual = read.getStore().getStoreMap();
+    Assert.assertEquals(expected.keySet(), actual.keySet());
+    for (final String indexName : expected.keySet()) {
+      Assert.assertEquals(HashMultimap.create(expected.get(indexName)), HashMultimap.create(actual.get(indexName)));
+    }
+
+    Assert.assertEquals(reflections.getTypesAnnotatedWith(TestModel.AC1.class),
+        read.getTypesAnnotatedWith(TestModel.AC1.class));
+  }
+
+  @Test(expected = ReflectionsException.class)
+  public void readingOtherFormatsFails() {
+    new BinarySerializer().read(new ByteArrayInputStream("<Reflections/>".getBytes()));
+  }
+}
@@ -80,4 +80,9 @@ public class SecurityPropertiesGenerator extends AbstractAsyncGenerator {
     return false;
   }
 
+  @Override
+  protected boolean isPersistentCacheEnabled() {
+    return false;
+  }
+
 }
@@ -229,6 +229,13 @@ public class TranslationServiceGenerator extends AbstractAsyncGenerator {
     return classBuilder.toJavaString();
   }
 
+  @Override
+  protected boolean isPersistentCacheEnabled() {
+    // generating the service also writes the i18n helper files to the .errai directory, which must happen on every
+    // compile
+    return false;
+  }
+
   private Collection<URL> getScannableUrls(final Collection<MetaClass> bundleAnnotatedClasses) {
     final Collection<URL> urls = new HashSet<URL>();
 